@@ -0,0 +1,53 @@
+package rag.bench;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.parser.apache.tika.ApacheTikaDocumentParser;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Données communes aux bancs d'essai : PDF du projet, segments réels et vecteurs synthétiques.
+ */
+final class Corpus {
+
+    private Corpus() {
+    }
+
+    static byte[] lire(String fichier) {
+        try {
+            return Files.readAllBytes(Paths.get("src/main/resources", fichier));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static Document analyser(byte[] pdf) {
+        return new ApacheTikaDocumentParser().parse(new ByteArrayInputStream(pdf));
+    }
+
+    static List<TextSegment> segments(String fichier, int taille, int chevauchement) {
+        return DocumentSplitters.recursive(taille, chevauchement).split(analyser(lire(fichier)));
+    }
+
+    /**
+     * Vecteurs gaussiens reproductibles (graine fixe).
+     */
+    static float[][] vecteurs(int nombre, int dimension, long graine) {
+        Random aleatoire = new Random(graine);
+        float[][] vecteurs = new float[nombre][dimension];
+        for (float[] vecteur : vecteurs) {
+            for (int i = 0; i < dimension; i++) {
+                vecteur[i] = (float) aleatoire.nextGaussian();
+            }
+        }
+        return vecteurs;
+    }
+}
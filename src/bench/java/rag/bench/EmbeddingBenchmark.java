@@ -0,0 +1,53 @@
+package rag.bench;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Débit de {@code embedAll} selon la taille de lot : chaque invocation embedde les mêmes
+ * {@value #SEGMENTS} segments réels de {@code rag.pdf} (300/30), découpés en lots de la taille
+ * donnée. Le score est donc un nombre de segments par seconde, comparable d'un lot à l'autre.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class EmbeddingBenchmark {
+
+    static final int SEGMENTS = 128;
+
+    @Param({"1", "8", "32", "128"})
+    public int lot;
+
+    private AllMiniLmL6V2EmbeddingModel model;
+    private List<TextSegment> segments;
+
+    @Setup
+    public void preparer() {
+        model = new AllMiniLmL6V2EmbeddingModel();
+        List<TextSegment> tous = Corpus.segments("rag.pdf", 300, 30);
+        segments = tous.subList(0, Math.min(SEGMENTS, tous.size()));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SEGMENTS)
+    public void embedAll(Blackhole trou) {
+        for (int debut = 0; debut < segments.size(); debut += lot) {
+            List<Embedding> embeddings = model.embedAll(segments.subList(debut, Math.min(debut + lot, segments.size()))).content();
+            trou.consume(embeddings);
+        }
+    }
+}
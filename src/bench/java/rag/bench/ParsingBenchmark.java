@@ -0,0 +1,37 @@
+package rag.bench;
+
+import dev.langchain4j.data.document.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Extraction du texte des PDF par Tika (fichier déjà en mémoire : seule l'analyse est mesurée).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ParsingBenchmark {
+
+    @Param({"rag.pdf", "Easy_recipes.pdf"})
+    public String fichier;
+
+    private byte[] pdf;
+
+    @Setup
+    public void charger() {
+        pdf = Corpus.lire(fichier);
+    }
+
+    @Benchmark
+    public Document analyser() {
+        return Corpus.analyser(pdf);
+    }
+}
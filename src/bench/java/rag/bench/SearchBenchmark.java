@@ -0,0 +1,86 @@
+package rag.bench;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import rag.store.DenseEmbeddingStore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recherche top-k exacte sur des vecteurs synthétiques de dimension 384 : le magasin de
+ * langchain4j sert de référence, le stockage contigu du projet de point de comparaison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class SearchBenchmark {
+
+    private static final int DIMENSION = 384;
+    private static final int REQUETES = 64;
+
+    @Param({"1000", "100000", "1000000"})
+    public int taille;
+
+    @Param({"memoire", "dense"})
+    public String magasin;
+
+    @Param({"5"})
+    public int k;
+
+    private EmbeddingStore<TextSegment> store;
+    private List<EmbeddingSearchRequest> requetes;
+    private int suivante;
+
+    @Setup(Level.Trial)
+    public void remplir() {
+        float[][] vecteurs = Corpus.vecteurs(taille, DIMENSION, 42);
+        if ("dense".equals(magasin)) {
+            DenseEmbeddingStore dense = new DenseEmbeddingStore();
+            for (int i = 0; i < vecteurs.length; i++) {
+                dense.ajouter("v" + i, vecteurs[i], null);
+            }
+            store = dense;
+        } else {
+            InMemoryEmbeddingStore<TextSegment> memoire = new InMemoryEmbeddingStore<>();
+            List<Embedding> embeddings = new ArrayList<>(vecteurs.length);
+            for (float[] vecteur : vecteurs) {
+                embeddings.add(Embedding.from(vecteur));
+            }
+            memoire.addAll(embeddings);
+            store = memoire;
+        }
+
+        requetes = new ArrayList<>(REQUETES);
+        for (float[] requete : Corpus.vecteurs(REQUETES, DIMENSION, 7)) {
+            requetes.add(EmbeddingSearchRequest.builder()
+                    .queryEmbedding(Embedding.from(requete))
+                    .maxResults(k)
+                    .minScore(0.0)
+                    .build());
+        }
+    }
+
+    @Benchmark
+    public EmbeddingSearchResult<TextSegment> rechercher() {
+        EmbeddingSearchRequest requete = requetes.get(suivante);
+        suivante = (suivante + 1) % REQUETES;
+        return store.search(requete);
+    }
+}
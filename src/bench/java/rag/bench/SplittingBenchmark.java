@@ -0,0 +1,47 @@
+package rag.bench;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.segment.TextSegment;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Découpage récursif aux réglages des points d'entrée : 500/0 (RagNaif) et 300/30 (les autres).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SplittingBenchmark {
+
+    @Param({"rag.pdf", "Easy_recipes.pdf"})
+    public String fichier;
+
+    @Param({"500/0", "300/30"})
+    public String reglage;
+
+    private Document document;
+    private DocumentSplitter splitter;
+
+    @Setup
+    public void preparer() {
+        document = Corpus.analyser(Corpus.lire(fichier));
+        String[] valeurs = reglage.split("/");
+        splitter = DocumentSplitters.recursive(Integer.parseInt(valeurs[0]), Integer.parseInt(valeurs[1]));
+    }
+
+    @Benchmark
+    public List<TextSegment> decouper() {
+        return splitter.split(document);
+    }
+}
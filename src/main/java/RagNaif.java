@@ -1,18 +1,17 @@
-import dev.langchain4j.data.document.Document;
-import dev.langchain4j.data.document.DocumentSplitter;
-import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
-import dev.langchain4j.data.document.parser.apache.tika.ApacheTikaDocumentParser;
-import dev.langchain4j.data.document.splitter.DocumentSplitters;
-import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.data.segment.TextSegment;
-import dev.langchain4j.model.embedding.EmbeddingModel;
-import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
-import dev.langchain4j.model.googleai.GoogleAiGeminiChatModel;
-import dev.langchain4j.retriever.EmbeddingStoreRetriever;
-import dev.langchain4j.store.embedding.EmbeddingStore;
-import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import rag.cache.CachingEmbeddingModel;
+import rag.cache.SemanticResponseCache;
+import rag.embedding.ParallelEmbeddingModel;
+import rag.llm.AffichageEnFlux;
+import rag.llm.GeminiStreamingChatModel;
+import rag.memoire.MemoiresResumees;
+import rag.ingestion.IncrementalIngestor;
+import rag.metrics.Instrumentation;
+import rag.retrieval.AdaptatifContentRetriever;
+import rag.pipeline.Pipelines;
+import rag.pipeline.RagRuntime;
+import rag.store.MappedEmbeddingStore;
 
-import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
 import java.util.Scanner;
@@ -20,14 +19,23 @@ import java.util.logging.ConsoleHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
 import dev.langchain4j.memory.ChatMemory;
-import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+import dev.langchain4j.model.googleai.GoogleAiGeminiChatModel;
 import dev.langchain4j.service.AiServices;
+import dev.langchain4j.store.embedding.EmbeddingStore;
 
 public class RagNaif {
 
+    /**
+     * Journalisation détaillée de langchain4j, seulement avec {@code -Drag.debug=true} : elle
+     * affiche les requêtes et réponses complètes et ralentit chaque appel. Les mesures courantes
+     * sont publiées en JMX par {@link Instrumentation}.
+     */
     private static void configureLogger() {
+        if (!Boolean.getBoolean("rag.debug")) {
+            return;
+        }
         Logger packageLogger = Logger.getLogger("dev.langchain4j");
         packageLogger.setLevel(Level.FINE);
         ConsoleHandler handler = new ConsoleHandler();
@@ -43,33 +51,28 @@ public class RagNaif {
 
             System.out.println("=== Phase 1 : Enregistrement des embeddings ===");
 
-            // 1. Récupération du Path du fichier PDF
-            Path pdfPath = Paths.get("src/main/resources/rag.pdf");
-            System.out.println("Chargement du fichier : " + pdfPath);
-
-            // 2. Création du parser PDF
-            ApacheTikaDocumentParser parser = new ApacheTikaDocumentParser();
-
-            // 3. Chargement du document
-            Document document = FileSystemDocumentLoader.loadDocument(pdfPath, parser);
-            System.out.println("Document chargé !");
-
-            // 4. Création du DocumentSplitter et découpage en chunks
-            DocumentSplitter splitter = DocumentSplitters.recursive(500, 0);
-            List<TextSegment> segments = splitter.split(document);
-            System.out.println("Document découpé en " + segments.size() + " segments");
-
-            // 5. Création du modèle d'embedding
-            EmbeddingModel embeddingModel = new AllMiniLmL6V2EmbeddingModel();
-
-            // 6. Création des embeddings pour les segments
-            List<Embedding> embeddings = embeddingModel.embedAll(segments).content();
-            System.out.println(embeddings.size() + " embeddings créés");
+            // 1. Modèle d'embedding et index chargés une fois par le runtime partagé ; l'index
+            // persistant a ses vecteurs projetés en mémoire
+            RagRuntime runtime = RagRuntime.partage();
+            MappedEmbeddingStore embeddingStore = runtime.store("rag-500-0");
+            ParallelEmbeddingModel embeddingModel = runtime.embeddingModel();
+
+            // 2-3. Ingestion incrémentale : seuls les segments nouveaux ou modifiés sont embeddés
+            IncrementalIngestor ingestor = IncrementalIngestor.builder()
+                    .store(embeddingStore)
+                    .embeddingModel(embeddingModel)
+                    .splitter(500, 0)
+                    .build();
+            IncrementalIngestor.Rapport rapport = ingestor.ingerer(List.of(Paths.get("src/main/resources/rag.pdf")));
+            System.out.println("Ingestion : " + rapport);
+            System.out.println("Embedding : " + embeddingModel.statistiques());
+            System.out.println("Index : " + embeddingStore.taille() + " segments");
 
-            // 7. Stockage dans un magasin d'embeddings en mémoire
-            EmbeddingStore<TextSegment> embeddingStore = new InMemoryEmbeddingStore<>();
-            embeddingStore.addAll(embeddings, segments);
-            System.out.println("Embeddings stockés dans le magasin");
+            // 4. Index de recherche en mémoire (exact et contigu, ou HNSW pour les gros corpus), mesuré
+            // comme les autres composants ; les mesures sont publiées en JMX sous rag:type=Metriques
+            Instrumentation instrumentation = Instrumentation.globale();
+            EmbeddingStore<TextSegment> indexRecherche = instrumentation.embeddingStore("IA",
+                    runtime.recherche("rag-500-0"));
 
             System.out.println("Phase 1 terminée avec succès!");
 
@@ -79,36 +82,60 @@ public class RagNaif {
 
             System.out.println("\n=== Phase 2 : Configuration de l'assistant RAG ===");
 
-            // Création du ChatModel
-            ChatLanguageModel chatModel = GoogleAiGeminiChatModel.builder()
-                    .apiKey(System.getenv("GeminiKey"))
-                    .modelName("gemini-2.5-flash")
-                    .logRequestsAndResponses(true)
-                    .temperature(0.2)
-                    .build();
-
-            // Création du ContentRetriever avec EmbeddingStoreRetriever
-            EmbeddingStoreRetriever retriever = EmbeddingStoreRetriever.from(
-                    embeddingStore,
-                    embeddingModel,
-                    3,
-                    0.7     
-            );
-
-            // Ajout d'une mémoire pour 10 messages
-            ChatMemory chatMemory = MessageWindowChatMemory.withMaxMessages(10);
+            // Création du ChatModel (en flux : les jetons sont affichés dès leur arrivée)
+            StreamingChatLanguageModel chatModel = instrumentation.streamingChatModel("gemini-flux",
+                    GeminiStreamingChatModel.builder()
+                            .apiKey(System.getenv("GeminiKey"))
+                            .modelName("gemini-2.5-flash")
+                            .temperature(0.2)
+                            .build());
+
+            // Embeddings des requêtes mémorisés : une question n'est embeddée qu'une fois, quel que soit
+            // le nombre de retrievers et de caches qui la consultent
+            CachingEmbeddingModel modeleRequetes = new CachingEmbeddingModel(
+                    instrumentation.embeddingModel("requêtes", embeddingModel), 1024);
+            instrumentation.cache("embeddings", modeleRequetes::tauxSucces);
+
+            // Recherche adaptative : le nombre de segments dépend des scores de chaque question
+            // (coude de la courbe des scores, 6 au plus, 600 jetons au plus)
+            AdaptatifContentRetriever retriever = Pipelines.adaptatif(instrumentation, "IA",
+                    indexRecherche, modeleRequetes);
+
+            // Mémoire bornée à -Drag.memoire.budget jetons : les tours anciens sont résumés par Gemini
+            // en arrière-plan, et la session (-Drag.session, "console" par défaut) reprend au
+            // prochain lancement
+            MemoiresResumees memoires = Pipelines.memoires(instrumentation,
+                    instrumentation.chatModel("gemini-résumé", GoogleAiGeminiChatModel.builder()
+                            .apiKey(System.getenv("GeminiKey"))
+                            .modelName("gemini-2.5-flash")
+                            .temperature(0.2)
+                            .build()),
+                    runtime.journalSessions());
+            ChatMemory chatMemory = memoires.get(System.getProperty("rag.session", "console") + ":naif");
 
             // Création de l'assistant avec le pattern builder
-            Assistant assistant = AiServices.builder(Assistant.class)
-                    .chatLanguageModel(chatModel)
+            StreamingAssistant assistant = AiServices.builder(StreamingAssistant.class)
+                    .streamingChatLanguageModel(chatModel)
                     .chatMemory(chatMemory)
-                    .retriever(retriever)
+                    .contentRetriever(retriever)
+                    .build();
+
+            // Cache sémantique : une question quasi identique, avec le même contexte, n'appelle plus le LLM
+            SemanticResponseCache cache = SemanticResponseCache.builder()
+                    .embeddingModel(modeleRequetes)
+                    .contexte(retriever)
+                    .memoire(chatMemory)
                     .build();
+            instrumentation.cache("réponses", cache::tauxSucces);
 
+            // JIT et ONNX préchauffés avant la première question
+            runtime.prechauffer();
+            System.out.println(runtime.statistiques());
             System.out.println("Assistant RAG configuré avec succès!");
             System.out.println("Vous pouvez maintenant poser vos questions...");
 
             // Boucle de questions-réponses
+            AffichageEnFlux affichage = new AffichageEnFlux();
             Scanner scanner = new Scanner(System.in);
             while (true) {
                 System.out.print("\nPosez votre question (ou 'exit' pour quitter) : ");
@@ -122,15 +149,22 @@ public class RagNaif {
                     continue;
                 }
 
+                long debut = System.nanoTime();
                 try {
-                    String response = assistant.chat(question);
-                    System.out.println("\n Réponse : " + response);
+                    affichage.repondre("\n Réponse : ", question, assistant::chat, cache);
+                    runtime.reponse(debut);
                 } catch (Exception e) {
                     System.out.println("\n Erreur lors de la génération de la réponse : " + e.getMessage());
                 }
             }
 
             scanner.close();
+            System.out.println(cache.statistiques());
+            System.out.println(modeleRequetes.statistiques());
+            System.out.println(retriever.statistiques());
+            System.out.println(affichage.statistiques());
+            System.out.println(memoires.statistiques());
+            System.out.println(runtime.statistiques());
             System.out.println("Au revoir !");
 
         } catch (Exception e) {
@@ -0,0 +1,143 @@
+package rag.cache;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import rag.store.Versionne;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link EmbeddingStoreContentRetriever} dont les résultats sont mémorisés (LRU borné), par texte
+ * de requête normalisé et configuration (maxResults, minScore).
+ * <p>
+ * Si le magasin est {@link Versionne}, tout le cache est invalidé dès que sa version change ;
+ * sinon {@link #vider()} doit être appelée après une modification du magasin.
+ */
+public class CachingContentRetriever implements ContentRetriever {
+
+    private final ContentRetriever delegate;
+    private final Versionne versionne;
+    private final String configuration;
+    private final int tailleMax;
+
+    private final LinkedHashMap<String, List<Content>> entrees = new LinkedHashMap<>(16, 0.75f, true);
+    private long versionVue;
+
+    private final AtomicLong succes = new AtomicLong();
+    private final AtomicLong echecs = new AtomicLong();
+
+    private CachingContentRetriever(Builder builder) {
+        this.delegate = EmbeddingStoreContentRetriever.builder()
+                .embeddingStore(builder.embeddingStore)
+                .embeddingModel(builder.embeddingModel)
+                .maxResults(builder.maxResults)
+                .minScore(builder.minScore)
+                .build();
+        this.versionne = builder.embeddingStore instanceof Versionne ? (Versionne) builder.embeddingStore : null;
+        this.configuration = "maxResults=" + builder.maxResults + ";minScore=" + builder.minScore;
+        this.tailleMax = builder.tailleMax;
+        this.versionVue = version();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public List<Content> retrieve(Query query) {
+        String cle = configuration + '\n' + CachingEmbeddingModel.normaliser(query.text());
+        long version = version();
+        synchronized (this) {
+            if (version != versionVue) {
+                entrees.clear();
+                versionVue = version;
+            }
+            List<Content> contenus = entrees.get(cle);
+            if (contenus != null) {
+                succes.incrementAndGet();
+                return contenus;
+            }
+        }
+        echecs.incrementAndGet();
+
+        List<Content> contenus = List.copyOf(delegate.retrieve(query));
+        synchronized (this) {
+            // Un résultat calculé pendant une modification du magasin n'est pas mémorisé
+            if (version() == version && versionVue == version) {
+                entrees.put(cle, contenus);
+                Iterator<String> plusAnciennes = entrees.keySet().iterator();
+                while (entrees.size() > tailleMax && plusAnciennes.hasNext()) {
+                    plusAnciennes.next();
+                    plusAnciennes.remove();
+                }
+            }
+        }
+        return contenus;
+    }
+
+    public synchronized void vider() {
+        entrees.clear();
+    }
+
+    public double tauxSucces() {
+        long total = succes.get() + echecs.get();
+        return total == 0 ? 0 : (double) succes.get() / total;
+    }
+
+    public synchronized String statistiques() {
+        return String.format("cache de recherche (%s) : %d succès / %d requêtes (%.0f%%), %d entrées",
+                configuration, succes.get(), succes.get() + echecs.get(), 100 * tauxSucces(), entrees.size());
+    }
+
+    private long version() {
+        return versionne == null ? 0 : versionne.version();
+    }
+
+    public static class Builder {
+        private EmbeddingStore<TextSegment> embeddingStore;
+        private EmbeddingModel embeddingModel;
+        private int maxResults = 3;
+        private double minScore = 0;
+        private int tailleMax = 256;
+
+        public Builder embeddingStore(EmbeddingStore<TextSegment> embeddingStore) {
+            this.embeddingStore = embeddingStore;
+            return this;
+        }
+
+        public Builder embeddingModel(EmbeddingModel embeddingModel) {
+            this.embeddingModel = embeddingModel;
+            return this;
+        }
+
+        public Builder maxResults(int maxResults) {
+            this.maxResults = maxResults;
+            return this;
+        }
+
+        public Builder minScore(double minScore) {
+            this.minScore = minScore;
+            return this;
+        }
+
+        public Builder tailleMax(int tailleMax) {
+            this.tailleMax = tailleMax;
+            return this;
+        }
+
+        public CachingContentRetriever build() {
+            if (embeddingStore == null || embeddingModel == null) {
+                throw new IllegalStateException("embeddingStore et embeddingModel sont obligatoires");
+            }
+            return new CachingContentRetriever(this);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package rag.cache;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Décorateur d'{@link EmbeddingModel} qui mémorise les embeddings des derniers textes (LRU borné).
+ * <p>
+ * Destiné aux requêtes : la même question passe par le cache sémantique, le routeur et chaque
+ * retriever, mais ne provoque qu'une seule inférence. Deux appels concurrents sur un même texte
+ * attendent le même calcul au lieu de le lancer deux fois. La clé est le texte aux espaces
+ * près ; la casse est conservée, le modèle décoré pouvant y être sensible.
+ */
+public class CachingEmbeddingModel implements EmbeddingModel {
+
+    private final EmbeddingModel delegate;
+    private final int tailleMax;
+    private final LinkedHashMap<String, CompletableFuture<Embedding>> entrees = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final AtomicLong succes = new AtomicLong();
+    private final AtomicLong echecs = new AtomicLong();
+
+    public CachingEmbeddingModel(EmbeddingModel delegate, int tailleMax) {
+        if (tailleMax < 1) {
+            throw new IllegalArgumentException("tailleMax doit être positive");
+        }
+        this.delegate = delegate;
+        this.tailleMax = tailleMax;
+    }
+
+    /**
+     * Forme normalisée d'un texte de requête : espaces de début et de fin retirés, suites
+     * d'espaces réduites à un seul.
+     */
+    public static String normaliser(String texte) {
+        return texte.trim().replaceAll("\\s+", " ");
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+        List<CompletableFuture<Embedding>> futurs = new ArrayList<>(segments.size());
+        List<TextSegment> aCalculer = new ArrayList<>();
+        List<String> clesACalculer = new ArrayList<>();
+        List<CompletableFuture<Embedding>> aCompleter = new ArrayList<>();
+
+        synchronized (this) {
+            for (TextSegment segment : segments) {
+                String cle = normaliser(segment.text());
+                CompletableFuture<Embedding> futur = entrees.get(cle);
+                if (futur == null) {
+                    futur = new CompletableFuture<>();
+                    entrees.put(cle, futur);
+                    aCalculer.add(segment);
+                    clesACalculer.add(cle);
+                    aCompleter.add(futur);
+                    echecs.incrementAndGet();
+                } else {
+                    succes.incrementAndGet();
+                }
+                futurs.add(futur);
+            }
+            evincer();
+        }
+
+        if (!aCalculer.isEmpty()) {
+            try {
+                List<Embedding> calcules = delegate.embedAll(aCalculer).content();
+                for (int i = 0; i < calcules.size(); i++) {
+                    aCompleter.get(i).complete(calcules.get(i));
+                }
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    for (int i = 0; i < clesACalculer.size(); i++) {
+                        entrees.remove(clesACalculer.get(i), aCompleter.get(i));
+                    }
+                }
+                aCompleter.forEach(futur -> futur.completeExceptionally(e));
+                throw e;
+            }
+        }
+
+        List<Embedding> embeddings = new ArrayList<>(futurs.size());
+        for (CompletableFuture<Embedding> futur : futurs) {
+            try {
+                embeddings.add(futur.join());
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        return Response.from(embeddings);
+    }
+
+    @Override
+    public int dimension() {
+        return delegate.dimension();
+    }
+
+    public synchronized void vider() {
+        entrees.clear();
+    }
+
+    public double tauxSucces() {
+        long total = succes.get() + echecs.get();
+        return total == 0 ? 0 : (double) succes.get() / total;
+    }
+
+    public synchronized String statistiques() {
+        return String.format("cache d'embeddings : %d succès / %d textes (%.0f%%), %d entrées",
+                succes.get(), succes.get() + echecs.get(), 100 * tauxSucces(), entrees.size());
+    }
+
+    private void evincer() {
+        Iterator<String> plusAnciennes = entrees.keySet().iterator();
+        while (entrees.size() > tailleMax && plusAnciennes.hasNext()) {
+            plusAnciennes.next();
+            plusAnciennes.remove();
+        }
+    }
+}
@@ -0,0 +1,415 @@
+package rag.cache;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import dev.langchain4j.web.search.WebSearchEngine;
+import dev.langchain4j.web.search.WebSearchInformationResult;
+import dev.langchain4j.web.search.WebSearchOrganicResult;
+import dev.langchain4j.web.search.WebSearchRequest;
+import dev.langchain4j.web.search.WebSearchResults;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link WebSearchEngine} dont les résultats sont mémorisés, par requête normalisée et réglages
+ * (nombre de résultats, langue, pays...), sur deux niveaux :
+ * <ul>
+ *     <li>en mémoire, LRU borné à {@code tailleMax} requêtes ;</li>
+ *     <li>sur disque (facultatif), un fichier JSON par requête dans {@code repertoire}, borné à
+ *     {@code tailleDisqueMax} fichiers (les plus anciens sont supprimés) : les résultats survivent
+ *     à un redémarrage et un succès sur disque remonte en mémoire.</li>
+ * </ul>
+ * Les deux niveaux expirent après le même TTL, compté en temps réel depuis la recherche d'origine.
+ * Une requête déjà en cours n'est pas relancée : les appels identiques attendent son résultat.
+ * Les erreurs du moteur ne sont jamais mémorisées.
+ * <p>
+ * Les métadonnées propres au moteur (celles de la recherche et de chaque résultat) ne sont pas
+ * conservées : seuls le titre, l'URL, l'extrait et le contenu le sont, ce qu'utilise
+ * {@code WebSearchContentRetriever}.
+ */
+public class CachingWebSearchEngine implements WebSearchEngine {
+
+    private final WebSearchEngine delegate;
+    private final int tailleMax;
+    private final long ttlMillis;
+    private final Path repertoire;
+    private final int tailleDisqueMax;
+
+    private final LinkedHashMap<String, Entree> entrees = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, CompletableFuture<WebSearchResults>> enCours = new ConcurrentHashMap<>();
+    private final AtomicInteger fichiers = new AtomicInteger();
+
+    private final AtomicLong succesMemoire = new AtomicLong();
+    private final AtomicLong succesDisque = new AtomicLong();
+    private final AtomicLong partages = new AtomicLong();
+    private final AtomicLong echecs = new AtomicLong();
+
+    private CachingWebSearchEngine(Builder builder) {
+        this.delegate = builder.delegate;
+        this.tailleMax = builder.tailleMax;
+        this.ttlMillis = builder.ttl.toMillis();
+        this.repertoire = builder.repertoire;
+        this.tailleDisqueMax = builder.tailleDisqueMax;
+        if (repertoire != null) {
+            try {
+                Files.createDirectories(repertoire);
+                fichiers.set(fichiersDuCache().size());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Répertoire du cache web inutilisable : " + repertoire, e);
+            }
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public WebSearchResults search(WebSearchRequest request) {
+        String cle = cle(request);
+        long maintenant = System.currentTimeMillis();
+        synchronized (this) {
+            Entree entree = entrees.get(cle);
+            if (entree != null && maintenant - entree.creation <= ttlMillis) {
+                succesMemoire.incrementAndGet();
+                return entree.resultats;
+            }
+            if (entree != null) {
+                entrees.remove(cle);
+            }
+        }
+        Entree surDisque = lire(cle, maintenant);
+        if (surDisque != null) {
+            succesDisque.incrementAndGet();
+            memoriser(cle, surDisque);
+            return surDisque.resultats;
+        }
+
+        CompletableFuture<WebSearchResults> attente = new CompletableFuture<>();
+        CompletableFuture<WebSearchResults> premier = enCours.putIfAbsent(cle, attente);
+        if (premier != null) {
+            partages.incrementAndGet();
+            try {
+                return premier.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        synchronized (this) {
+            // Une recherche identique a pu se terminer entre le premier examen et l'inscription
+            Entree entree = entrees.get(cle);
+            if (entree != null) {
+                enCours.remove(cle, attente);
+                attente.complete(entree.resultats);
+                partages.incrementAndGet();
+                return entree.resultats;
+            }
+        }
+        echecs.incrementAndGet();
+        try {
+            WebSearchResults resultats = delegate.search(request);
+            Entree nouvelle = new Entree(resultats, System.currentTimeMillis());
+            memoriser(cle, nouvelle);
+            ecrire(cle, request.searchTerms(), nouvelle);
+            attente.complete(resultats);
+            return resultats;
+        } catch (RuntimeException e) {
+            attente.completeExceptionally(e);
+            throw e;
+        } finally {
+            enCours.remove(cle, attente);
+        }
+    }
+
+    public synchronized void vider() {
+        entrees.clear();
+    }
+
+    public double tauxSucces() {
+        long succes = succesMemoire.get() + succesDisque.get() + partages.get();
+        long total = succes + echecs.get();
+        return total == 0 ? 0 : (double) succes / total;
+    }
+
+    public synchronized String statistiques() {
+        long succes = succesMemoire.get() + succesDisque.get() + partages.get();
+        return String.format("cache de recherche web : %d succès / %d requêtes (%.0f%%) dont %d en mémoire, %d sur disque, %d partagées en vol ; %d entrées en mémoire%s",
+                succes, succes + echecs.get(), 100 * tauxSucces(), succesMemoire.get(), succesDisque.get(),
+                partages.get(), entrees.size(), repertoire != null ? ", " + fichiers.get() + " sur disque" : "");
+    }
+
+    private synchronized void memoriser(String cle, Entree entree) {
+        entrees.put(cle, entree);
+        Iterator<String> plusAnciennes = entrees.keySet().iterator();
+        while (entrees.size() > tailleMax && plusAnciennes.hasNext()) {
+            plusAnciennes.next();
+            plusAnciennes.remove();
+        }
+    }
+
+    /**
+     * Clé d'une requête : termes normalisés (espaces, casse) et tous les réglages qui changent les
+     * résultats.
+     */
+    static String cle(WebSearchRequest request) {
+        return CachingEmbeddingModel.normaliser(request.searchTerms()).toLowerCase(Locale.ROOT)
+                + "\nmaxResults=" + request.maxResults()
+                + ";language=" + request.language()
+                + ";geoLocation=" + request.geoLocation()
+                + ";startPage=" + request.startPage()
+                + ";startIndex=" + request.startIndex()
+                + ";safeSearch=" + request.safeSearch()
+                + ";additionalParams=" + request.additionalParams();
+    }
+
+    // --- Niveau disque ---
+
+    private Path fichier(String cle) {
+        try {
+            byte[] empreinte = MessageDigest.getInstance("SHA-256").digest(cle.getBytes(StandardCharsets.UTF_8));
+            StringBuilder nom = new StringBuilder(empreinte.length * 2 + 5);
+            for (byte octet : empreinte) {
+                nom.append(Character.forDigit((octet >> 4) & 0xF, 16)).append(Character.forDigit(octet & 0xF, 16));
+            }
+            return repertoire.resolve(nom.append(".json").toString());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Entrée enregistrée sur disque pour la clé, ou {@code null} si elle est absente, expirée (le
+     * fichier est alors supprimé) ou illisible.
+     */
+    private Entree lire(String cle, long maintenant) {
+        if (repertoire == null) {
+            return null;
+        }
+        Path fichier = fichier(cle);
+        if (!Files.exists(fichier)) {
+            return null;
+        }
+        try {
+            JsonObject json = JsonParser.parseString(Files.readString(fichier, StandardCharsets.UTF_8)).getAsJsonObject();
+            long creation = json.get("creation").getAsLong();
+            if (!cle.equals(json.get("cle").getAsString()) || maintenant - creation > ttlMillis) {
+                if (supprimer(fichier)) {
+                    fichiers.decrementAndGet();
+                }
+                return null;
+            }
+            return new Entree(resultats(json), creation);
+        } catch (IOException | RuntimeException e) {
+            // Fichier tronqué ou d'un autre format : la recherche est refaite et le réécrit
+            return null;
+        }
+    }
+
+    /**
+     * Écrit l'entrée dans un fichier temporaire ensuite renommé, puis supprime les plus anciens
+     * fichiers au-delà de {@code tailleDisqueMax}. Un échec d'écriture ne fait pas échouer la
+     * recherche.
+     */
+    private void ecrire(String cle, String requete, Entree entree) {
+        if (repertoire == null) {
+            return;
+        }
+        Path fichier = fichier(cle);
+        try {
+            boolean nouveau = !Files.exists(fichier);
+            Path temporaire = Files.createTempFile(repertoire, "recherche", ".tmp");
+            Files.writeString(temporaire, json(cle, requete, entree).toString(), StandardCharsets.UTF_8);
+            try {
+                Files.move(temporaire, fichier, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporaire, fichier, StandardCopyOption.REPLACE_EXISTING);
+            }
+            if (nouveau && fichiers.incrementAndGet() > tailleDisqueMax) {
+                elaguer();
+            }
+        } catch (IOException | UncheckedIOException e) {
+            // Le niveau mémoire reste valable
+        }
+    }
+
+    private synchronized void elaguer() throws IOException {
+        List<Path> liste = fichiersDuCache();
+        if (liste.size() <= tailleDisqueMax) {
+            fichiers.set(liste.size());
+            return;
+        }
+        liste.sort(Comparator.comparingLong(CachingWebSearchEngine::dateModification));
+        // Un dixième de marge, pour ne pas relister le répertoire à chaque nouvelle requête
+        int aGarder = Math.max(1, tailleDisqueMax - tailleDisqueMax / 10);
+        for (Path fichier : liste.subList(0, liste.size() - aGarder)) {
+            supprimer(fichier);
+        }
+        fichiers.set(aGarder);
+    }
+
+    private List<Path> fichiersDuCache() throws IOException {
+        List<Path> liste = new ArrayList<>();
+        try (DirectoryStream<Path> contenu = Files.newDirectoryStream(repertoire, "*.json")) {
+            contenu.forEach(liste::add);
+        }
+        return liste;
+    }
+
+    private static long dateModification(Path fichier) {
+        try {
+            return Files.getLastModifiedTime(fichier).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static boolean supprimer(Path fichier) {
+        try {
+            return Files.deleteIfExists(fichier);
+        } catch (IOException e) {
+            // Sera retenté au prochain élagage
+            return false;
+        }
+    }
+
+    /**
+     * Format d'un fichier du cache, relu aussi par {@code rag.charge.FichierWebSearchEngine} :
+     * {@code {cle, requete, creation, total, resultats: [{titre, url, extrait, contenu}]}}.
+     */
+    static JsonObject json(String cle, String requete, Entree entree) {
+        JsonObject json = new JsonObject();
+        json.addProperty("cle", cle);
+        json.addProperty("requete", requete);
+        json.addProperty("creation", entree.creation);
+        WebSearchInformationResult information = entree.resultats.searchInformation();
+        if (information != null && information.totalResults() != null) {
+            json.addProperty("total", information.totalResults());
+        }
+        json.add("resultats", resultats(entree.resultats.results()));
+        return json;
+    }
+
+    private static JsonArray resultats(List<WebSearchOrganicResult> resultats) {
+        JsonArray liste = new JsonArray();
+        for (WebSearchOrganicResult resultat : resultats) {
+            JsonObject objet = new JsonObject();
+            objet.addProperty("titre", resultat.title());
+            objet.addProperty("url", resultat.url().toString());
+            objet.addProperty("extrait", resultat.snippet());
+            objet.addProperty("contenu", resultat.content());
+            liste.add(objet);
+        }
+        return liste;
+    }
+
+    /**
+     * Résultats décrits par un objet JSON au format du cache (champs {@code total} et
+     * {@code resultats}).
+     */
+    public static WebSearchResults resultats(JsonObject json) {
+        List<WebSearchOrganicResult> liste = new ArrayList<>();
+        for (JsonElement element : json.getAsJsonArray("resultats")) {
+            JsonObject objet = element.getAsJsonObject();
+            liste.add(WebSearchOrganicResult.from(
+                    objet.get("titre").getAsString(),
+                    URI.create(objet.get("url").getAsString()),
+                    texte(objet, "extrait"),
+                    texte(objet, "contenu")));
+        }
+        long total = json.has("total") ? json.get("total").getAsLong() : liste.size();
+        return WebSearchResults.from(WebSearchInformationResult.from(total), liste);
+    }
+
+    private static String texte(JsonObject objet, String champ) {
+        JsonElement valeur = objet.get(champ);
+        if (valeur == null || valeur.isJsonNull()) {
+            return null;
+        }
+        if (!valeur.isJsonPrimitive()) {
+            throw new JsonParseException("Champ " + champ + " attendu en texte");
+        }
+        return valeur.getAsString();
+    }
+
+    static final class Entree {
+        final WebSearchResults resultats;
+        final long creation;
+
+        Entree(WebSearchResults resultats, long creation) {
+            this.resultats = resultats;
+            this.creation = creation;
+        }
+    }
+
+    public static class Builder {
+        private WebSearchEngine delegate;
+        private int tailleMax = 256;
+        private Duration ttl = Duration.ofHours(1);
+        private Path repertoire;
+        private int tailleDisqueMax = 5000;
+
+        public Builder delegate(WebSearchEngine delegate) {
+            this.delegate = delegate;
+            return this;
+        }
+
+        public Builder tailleMax(int tailleMax) {
+            this.tailleMax = tailleMax;
+            return this;
+        }
+
+        /**
+         * Durée de validité d'un résultat, en mémoire comme sur disque (1 heure par défaut).
+         */
+        public Builder ttl(Duration ttl) {
+            this.ttl = ttl;
+            return this;
+        }
+
+        /**
+         * Répertoire du niveau disque, créé au besoin ; sans répertoire, le cache reste en mémoire.
+         */
+        public Builder repertoire(Path repertoire) {
+            this.repertoire = repertoire;
+            return this;
+        }
+
+        public Builder tailleDisqueMax(int tailleDisqueMax) {
+            this.tailleDisqueMax = tailleDisqueMax;
+            return this;
+        }
+
+        public CachingWebSearchEngine build() {
+            if (delegate == null) {
+                throw new IllegalStateException("delegate est obligatoire");
+            }
+            return new CachingWebSearchEngine(this);
+        }
+    }
+}
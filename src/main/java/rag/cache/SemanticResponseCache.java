@@ -0,0 +1,293 @@
+package rag.cache;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.store.embedding.CosineSimilarity;
+import rag.memoire.MemoireResumee;
+import rag.retrieval.CompressionConditionnelleQueryTransformer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Cache sémantique des réponses de l'assistant.
+ * <p>
+ * Une question est reconnue si son embedding est assez proche (cosinus ≥ seuil) de celui d'une
+ * question déjà posée <em>et</em> si la recherche locale renvoie exactement le même contexte :
+ * une question voisine mais qui tomberait sur d'autres segments repasse par le LLM. Les entrées
+ * expirent après un TTL et les moins récemment utilisées sont évincées au-delà d'une taille
+ * maximale.
+ * <p>
+ * Une réponse servie depuis le cache ne passe pas par l'assistant : l'échange est ajouté à sa
+ * mémoire de conversation ({@link Builder#memoire}) pour que les questions suivantes puissent y
+ * renvoyer. Une question qui reprend la conversation (« explique-le plus simplement », voir
+ * {@link CompressionConditionnelleQueryTransformer#contientReprise}) alors que la mémoire contient
+ * déjà des échanges ou leur résumé dépend de l'historique : elle passe directement par
+ * l'assistant, sans être mémorisée.
+ */
+public class SemanticResponseCache {
+
+    private final EmbeddingModel embeddingModel;
+    private final List<ContentRetriever> retrievers;
+    private final double seuilSimilarite;
+    private final int tailleMax;
+    private final long ttlNanos;
+    private final ChatMemory memoire;
+
+    private final LinkedHashMap<Long, Entree> entrees = new LinkedHashMap<>(16, 0.75f, true);
+    private long prochainNumero;
+
+    private final AtomicLong succes = new AtomicLong();
+    private final AtomicLong echecs = new AtomicLong();
+    private final AtomicLong contournements = new AtomicLong();
+
+    private SemanticResponseCache(Builder builder) {
+        this.embeddingModel = builder.embeddingModel;
+        this.retrievers = builder.retrievers;
+        this.seuilSimilarite = builder.seuilSimilarite;
+        this.tailleMax = builder.tailleMax;
+        this.ttlNanos = builder.ttl.toNanos();
+        this.memoire = builder.memoire;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Renvoie la réponse en cache si elle existe, sinon interroge l'assistant et mémorise sa
+     * réponse.
+     */
+    public String repondre(String question, Function<String, String> assistant) {
+        Recherche recherche = rechercher(question);
+        if (recherche.reponse().isPresent()) {
+            return recherche.reponse().get();
+        }
+        String reponse = assistant.apply(question);
+        enregistrer(recherche, reponse);
+        return reponse;
+    }
+
+    /**
+     * Cherche une réponse en cache ; une réponse trouvée est ajoutée, avec la question, à la
+     * mémoire de l'assistant. La recherche conserve l'embedding et l'empreinte du contexte
+     * calculés, pour un éventuel {@link #enregistrer(Recherche, String)}.
+     */
+    public Recherche rechercher(String question) {
+        if (CompressionConditionnelleQueryTransformer.contientReprise(question) && conversationEnCours()) {
+            contournements.incrementAndGet();
+            return new Recherche(null, null, null);
+        }
+        Embedding embedding = embeddingModel.embed(question).content();
+        String contexte = empreinteContexte(question);
+        long maintenant = System.nanoTime();
+
+        String reponseTrouvee = null;
+        synchronized (this) {
+            Entree meilleure = null;
+            double meilleureSimilarite = seuilSimilarite;
+            Iterator<Entree> iterateur = entrees.values().iterator();
+            while (iterateur.hasNext()) {
+                Entree entree = iterateur.next();
+                if (maintenant - entree.creation > ttlNanos) {
+                    iterateur.remove();
+                    continue;
+                }
+                if (!entree.contexte.equals(contexte)) {
+                    continue;
+                }
+                double similarite = CosineSimilarity.between(embedding, entree.embedding);
+                if (similarite >= meilleureSimilarite) {
+                    meilleure = entree;
+                    meilleureSimilarite = similarite;
+                }
+            }
+            if (meilleure != null) {
+                entrees.get(meilleure.numero); // marque l'entrée comme récemment utilisée
+                succes.incrementAndGet();
+                reponseTrouvee = meilleure.reponse;
+            }
+        }
+        if (reponseTrouvee != null) {
+            if (memoire != null) {
+                memoire.add(UserMessage.from(question));
+                memoire.add(AiMessage.from(reponseTrouvee));
+            }
+            return new Recherche(embedding, contexte, reponseTrouvee);
+        }
+        echecs.incrementAndGet();
+        return new Recherche(embedding, contexte, null);
+    }
+
+    public synchronized void enregistrer(Recherche recherche, String reponse) {
+        if (recherche.contexte == null || reponse == null || reponse.isBlank()) {
+            return;
+        }
+        long numero = prochainNumero++;
+        entrees.put(numero, new Entree(numero, recherche.embedding, recherche.contexte, reponse, System.nanoTime()));
+        while (entrees.size() > tailleMax) {
+            Iterator<Long> plusAncienne = entrees.keySet().iterator();
+            plusAncienne.next();
+            plusAncienne.remove();
+        }
+    }
+
+    public synchronized void vider() {
+        entrees.clear();
+    }
+
+    public double tauxSucces() {
+        long total = succes.get() + echecs.get();
+        return total == 0 ? 0 : (double) succes.get() / total;
+    }
+
+    public synchronized String statistiques() {
+        return String.format("cache de réponses : %d succès / %d requêtes (%.0f%%), %d entrées, %d reprise(s) de la conversation non cachées",
+                succes.get(), succes.get() + echecs.get(), 100 * tauxSucces(), entrees.size(), contournements.get());
+    }
+
+    /**
+     * Vrai si la mémoire contient un échange (question ou réponse) ou le résumé d'échanges plus
+     * anciens.
+     */
+    private boolean conversationEnCours() {
+        if (memoire == null) {
+            return false;
+        }
+        if (memoire instanceof MemoireResumee && !((MemoireResumee) memoire).resume().isEmpty()) {
+            return true;
+        }
+        return memoire.messages().stream().anyMatch(message -> !(message instanceof SystemMessage));
+    }
+
+    // SHA-256 de l'ensemble trié des segments que la recherche locale fournirait au LLM : deux
+    // contextes différents n'ont pas la même empreinte, quel que soit l'ordre des segments
+    private String empreinteContexte(String question) {
+        TreeSet<String> textes = new TreeSet<>();
+        Query query = Query.from(question);
+        for (ContentRetriever retriever : retrievers) {
+            for (Content content : retriever.retrieve(query)) {
+                textes.add(content.textSegment().text());
+            }
+        }
+        MessageDigest sha256;
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (String texte : textes) {
+            byte[] octets = texte.getBytes(StandardCharsets.UTF_8);
+            // Longueur en tête : la concaténation de textes différents ne peut pas coïncider
+            sha256.update(ByteBuffer.allocate(Integer.BYTES).putInt(octets.length).array());
+            sha256.update(octets);
+        }
+        return HexFormat.of().formatHex(sha256.digest());
+    }
+
+    public static final class Recherche {
+        private final Embedding embedding;
+        private final String contexte;
+        private final String reponse;
+
+        private Recherche(Embedding embedding, String contexte, String reponse) {
+            this.embedding = embedding;
+            this.contexte = contexte;
+            this.reponse = reponse;
+        }
+
+        public Optional<String> reponse() {
+            return Optional.ofNullable(reponse);
+        }
+    }
+
+    private static final class Entree {
+        final long numero;
+        final Embedding embedding;
+        final String contexte;
+        final String reponse;
+        final long creation;
+
+        Entree(long numero, Embedding embedding, String contexte, String reponse, long creation) {
+            this.numero = numero;
+            this.embedding = embedding;
+            this.contexte = contexte;
+            this.reponse = reponse;
+            this.creation = creation;
+        }
+    }
+
+    public static class Builder {
+        private EmbeddingModel embeddingModel;
+        private List<ContentRetriever> retrievers = new ArrayList<>();
+        private double seuilSimilarite = 0.95;
+        private int tailleMax = 256;
+        private Duration ttl = Duration.ofMinutes(30);
+        private ChatMemory memoire;
+
+        public Builder embeddingModel(EmbeddingModel embeddingModel) {
+            this.embeddingModel = embeddingModel;
+            return this;
+        }
+
+        /**
+         * Retrievers dont les résultats forment le contexte qui doit être identique pour qu'une
+         * réponse soit réutilisée.
+         */
+        public Builder contexte(ContentRetriever... retrievers) {
+            this.retrievers = List.of(retrievers);
+            return this;
+        }
+
+        /**
+         * Mémoire de conversation de l'assistant dont les réponses sont cachées : les réponses
+         * servies y sont ajoutées, et les questions qui reprennent ses échanges contournent le
+         * cache.
+         */
+        public Builder memoire(ChatMemory memoire) {
+            this.memoire = memoire;
+            return this;
+        }
+
+        public Builder seuilSimilarite(double seuilSimilarite) {
+            this.seuilSimilarite = seuilSimilarite;
+            return this;
+        }
+
+        public Builder tailleMax(int tailleMax) {
+            this.tailleMax = tailleMax;
+            return this;
+        }
+
+        public Builder ttl(Duration ttl) {
+            this.ttl = ttl;
+            return this;
+        }
+
+        public SemanticResponseCache build() {
+            if (embeddingModel == null) {
+                throw new IllegalStateException("embeddingModel est obligatoire");
+            }
+            return new SemanticResponseCache(this);
+        }
+    }
+}
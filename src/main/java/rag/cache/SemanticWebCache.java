@@ -0,0 +1,274 @@
+package rag.cache;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.store.embedding.CosineSimilarity;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache vectoriel de courte durée des résultats d'une recherche web : les segments renvoyés par le
+ * web sont embeddés et gardés quelques minutes, et une question suivante assez proche d'eux y est
+ * répondue localement, sans nouvel appel au moteur.
+ * <p>
+ * À chaque question, les segments en cache dont le cosinus avec la question atteint
+ * {@code seuilSimilarite} sont classés ; s'il y en a au moins {@code minResultats}, les
+ * {@code maxResultats} meilleurs sont renvoyés. Sinon la recherche est déléguée, et ses segments
+ * sont embeddés puis ajoutés au cache sur un thread à part, hors du chemin de la question. Les
+ * segments expirent après un TTL compté depuis leur ajout ; au-delà de {@code tailleMax}, les plus
+ * anciens sont évincés. Un même texte n'est gardé qu'une fois.
+ * <p>
+ * Contrairement à {@link CachingWebSearchEngine}, qui ne reconnaît qu'une requête identique, ce
+ * cache sert aussi les reformulations et les questions voisines d'une recherche déjà faite.
+ * <p>
+ * Les segments du web peuvent être embeddés par un autre modèle que les questions
+ * ({@link Builder#modeleSegments}) : les questions passent en général par le cache des embeddings
+ * de requêtes, que ces segments, vus une seule fois, ne feraient qu'évincer.
+ */
+public class SemanticWebCache implements ContentRetriever, AutoCloseable {
+
+    private final ContentRetriever delegate;
+    private final EmbeddingModel embeddingModel;
+    private final EmbeddingModel modeleSegments;
+    private final double seuilSimilarite;
+    private final int minResultats;
+    private final int maxResultats;
+    private final int tailleMax;
+    private final long ttlNanos;
+    private final ExecutorService executor;
+
+    // Par ordre d'ajout, donc d'expiration
+    private final Deque<Entree> entrees = new ArrayDeque<>();
+    private final Set<String> textes = new HashSet<>();
+
+    private final AtomicLong succes = new AtomicLong();
+    private final AtomicLong echecs = new AtomicLong();
+    private final AtomicLong ajouts = new AtomicLong();
+
+    private SemanticWebCache(Builder builder) {
+        this.delegate = builder.delegate;
+        this.embeddingModel = builder.embeddingModel;
+        this.modeleSegments = builder.modeleSegments != null ? builder.modeleSegments : builder.embeddingModel;
+        this.seuilSimilarite = builder.seuilSimilarite;
+        this.minResultats = builder.minResultats;
+        this.maxResultats = builder.maxResultats;
+        this.tailleMax = builder.tailleMax;
+        this.ttlNanos = builder.ttl.toNanos();
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cache-web");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public List<Content> retrieve(Query query) {
+        Embedding embedding = embeddingModel.embed(query.text()).content();
+        List<Candidat> candidats = new ArrayList<>();
+        synchronized (this) {
+            expirer(System.nanoTime());
+            for (Entree entree : entrees) {
+                double similarite = CosineSimilarity.between(embedding, entree.embedding);
+                if (similarite >= seuilSimilarite) {
+                    candidats.add(new Candidat(entree.segment, similarite));
+                }
+            }
+        }
+        if (candidats.size() >= minResultats) {
+            succes.incrementAndGet();
+            candidats.sort(Comparator.comparingDouble((Candidat candidat) -> candidat.similarite).reversed());
+            List<Content> contenus = new ArrayList<>(Math.min(maxResultats, candidats.size()));
+            for (Candidat candidat : candidats.subList(0, Math.min(maxResultats, candidats.size()))) {
+                contenus.add(Content.from(candidat.segment));
+            }
+            return contenus;
+        }
+
+        echecs.incrementAndGet();
+        List<Content> contenus = delegate.retrieve(query);
+        ajouter(contenus);
+        return contenus;
+    }
+
+    /**
+     * Embedde et ajoute les segments, sur le thread du cache ; un échec d'embedding ne fait que
+     * priver le cache de ces segments.
+     */
+    private void ajouter(List<Content> contenus) {
+        List<TextSegment> segments = new ArrayList<>(contenus.size());
+        synchronized (this) {
+            for (Content contenu : contenus) {
+                if (!textes.contains(contenu.textSegment().text())) {
+                    segments.add(contenu.textSegment());
+                }
+            }
+        }
+        if (segments.isEmpty()) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                List<Embedding> embeddings;
+                try {
+                    embeddings = modeleSegments.embedAll(segments).content();
+                } catch (RuntimeException e) {
+                    return;
+                }
+                long maintenant = System.nanoTime();
+                synchronized (this) {
+                    for (int i = 0; i < segments.size(); i++) {
+                        if (textes.add(segments.get(i).text())) {
+                            entrees.addLast(new Entree(segments.get(i), embeddings.get(i), maintenant));
+                            ajouts.incrementAndGet();
+                        }
+                    }
+                    expirer(maintenant);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Cache fermé : la recherche reste servie par le délégué
+        }
+    }
+
+    private void expirer(long maintenant) {
+        while (!entrees.isEmpty()
+                && (entrees.size() > tailleMax || maintenant - entrees.peekFirst().ajout > ttlNanos)) {
+            textes.remove(entrees.removeFirst().segment.text());
+        }
+    }
+
+    public synchronized void vider() {
+        entrees.clear();
+        textes.clear();
+    }
+
+    public double tauxSucces() {
+        long total = succes.get() + echecs.get();
+        return total == 0 ? 0 : (double) succes.get() / total;
+    }
+
+    public synchronized String statistiques() {
+        return String.format("cache sémantique web : %d succès / %d questions (%.0f%%), %d segments ajoutés, %d en cache",
+                succes.get(), succes.get() + echecs.get(), 100 * tauxSucces(), ajouts.get(), entrees.size());
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private static final class Entree {
+        final TextSegment segment;
+        final Embedding embedding;
+        final long ajout;
+
+        Entree(TextSegment segment, Embedding embedding, long ajout) {
+            this.segment = segment;
+            this.embedding = embedding;
+            this.ajout = ajout;
+        }
+    }
+
+    private static final class Candidat {
+        final TextSegment segment;
+        final double similarite;
+
+        Candidat(TextSegment segment, double similarite) {
+            this.segment = segment;
+            this.similarite = similarite;
+        }
+    }
+
+    public static class Builder {
+        private ContentRetriever delegate;
+        private EmbeddingModel embeddingModel;
+        private EmbeddingModel modeleSegments;
+        private double seuilSimilarite = 0.6;
+        private int minResultats = 2;
+        private int maxResultats = 3;
+        private int tailleMax = 500;
+        private Duration ttl = Duration.ofMinutes(15);
+
+        /**
+         * Retriever de la recherche web, interrogé quand le cache ne suffit pas.
+         */
+        public Builder delegate(ContentRetriever delegate) {
+            this.delegate = delegate;
+            return this;
+        }
+
+        public Builder embeddingModel(EmbeddingModel embeddingModel) {
+            this.embeddingModel = embeddingModel;
+            return this;
+        }
+
+        /**
+         * Modèle des segments du web, du même espace que {@code embeddingModel} mais sans son
+         * cache ; {@code embeddingModel} par défaut.
+         */
+        public Builder modeleSegments(EmbeddingModel modeleSegments) {
+            this.modeleSegments = modeleSegments;
+            return this;
+        }
+
+        /**
+         * Cosinus minimal entre la question et un segment en cache pour que celui-ci soit servi.
+         */
+        public Builder seuilSimilarite(double seuilSimilarite) {
+            this.seuilSimilarite = seuilSimilarite;
+            return this;
+        }
+
+        /**
+         * Nombre de segments assez proches en dessous duquel la recherche web est refaite.
+         */
+        public Builder minResultats(int minResultats) {
+            this.minResultats = minResultats;
+            return this;
+        }
+
+        public Builder maxResultats(int maxResultats) {
+            this.maxResultats = maxResultats;
+            return this;
+        }
+
+        public Builder tailleMax(int tailleMax) {
+            this.tailleMax = tailleMax;
+            return this;
+        }
+
+        public Builder ttl(Duration ttl) {
+            this.ttl = ttl;
+            return this;
+        }
+
+        public SemanticWebCache build() {
+            if (delegate == null || embeddingModel == null) {
+                throw new IllegalStateException("delegate et embeddingModel sont obligatoires");
+            }
+            if (minResultats < 1 || maxResultats < minResultats) {
+                throw new IllegalStateException("Il faut 1 <= minResultats <= maxResultats");
+            }
+            return new SemanticWebCache(this);
+        }
+    }
+}
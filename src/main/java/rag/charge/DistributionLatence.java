@@ -0,0 +1,72 @@
+package rag.charge;
+
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Distribution de latences simulées, en nanosecondes, pour les composants factices des tests de
+ * charge (LLM, recherche web).
+ */
+@FunctionalInterface
+public interface DistributionLatence {
+
+    long tirerNanos();
+
+    /**
+     * Attend une latence tirée de la distribution.
+     */
+    default void attendre() {
+        long nanos = tirerNanos();
+        if (nanos <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(nanos / 1_000_000, (int) (nanos % 1_000_000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Attente simulée interrompue", e);
+        }
+    }
+
+    static DistributionLatence aucune() {
+        return () -> 0;
+    }
+
+    static DistributionLatence fixe(Duration latence) {
+        long nanos = latence.toNanos();
+        return () -> nanos;
+    }
+
+    /**
+     * Latence log-normale de médiane donnée : {@code sigma} règle la longueur de la queue (0,5
+     * donne un p99 d'environ 3,2 fois la médiane).
+     */
+    static DistributionLatence logNormale(Duration mediane, double sigma) {
+        long nanos = mediane.toNanos();
+        return () -> (long) (nanos * Math.exp(sigma * ThreadLocalRandom.current().nextGaussian()));
+    }
+
+    /**
+     * Comme {@link #logNormale(Duration, double)}, avec une graine : deux exécutions tirent la
+     * même suite de latences.
+     */
+    static DistributionLatence logNormale(Duration mediane, double sigma, long graine) {
+        long nanos = mediane.toNanos();
+        Random aleatoire = new Random(graine);
+        return () -> (long) (nanos * Math.exp(sigma * aleatoire.nextGaussian()));
+    }
+
+    /**
+     * Lit une distribution écrite {@code "800"} (fixe, en ms) ou {@code "800:0.5"} (log-normale de
+     * médiane 800 ms et de sigma 0,5).
+     */
+    static DistributionLatence depuis(String specification, long graine) {
+        String[] valeurs = specification.trim().split(":");
+        Duration mediane = Duration.ofMillis(Long.parseLong(valeurs[0]));
+        if (valeurs.length == 1) {
+            return mediane.isZero() ? aucune() : fixe(mediane);
+        }
+        return logNormale(mediane, Double.parseDouble(valeurs[1]), graine);
+    }
+}
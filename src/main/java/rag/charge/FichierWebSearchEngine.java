@@ -0,0 +1,198 @@
+package rag.charge;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import dev.langchain4j.web.search.WebSearchEngine;
+import dev.langchain4j.web.search.WebSearchInformationResult;
+import dev.langchain4j.web.search.WebSearchOrganicResult;
+import dev.langchain4j.web.search.WebSearchRequest;
+import dev.langchain4j.web.search.WebSearchResults;
+import rag.cache.CachingEmbeddingModel;
+import rag.cache.CachingWebSearchEngine;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Moteur de recherche web hors ligne qui rejoue des résultats enregistrés, pour mesurer le RAG
+ * hybride sans accès au réseau avec des pages réalistes (contrairement à
+ * {@link StubWebSearchEngine}, qui fabrique ses résultats).
+ * <p>
+ * La source est soit un fichier JSON Lines (une recherche par ligne), soit le répertoire disque
+ * d'un {@link CachingWebSearchEngine} (un fichier JSON par recherche) : une session réelle avec
+ * Tavily peut ainsi être rejouée telle quelle. Chaque recherche enregistrée a la forme
+ * {@code {"requete": "...", "resultats": [{"titre", "url", "extrait", "contenu"}]}}.
+ * <p>
+ * Une requête déjà enregistrée (à la casse et aux espaces près) reçoit ses résultats ; sinon, ce
+ * sont ceux de la requête enregistrée la plus proche si elles partagent au moins la moitié de leurs
+ * mots (indice de Jaccard), et à défaut les pages dont le texte partage le plus de mots avec elle. La latence simulée éventuelle est attendue avant de répondre.
+ */
+public class FichierWebSearchEngine implements WebSearchEngine {
+
+    // Indice de Jaccard minimal entre les mots de deux requêtes pour les juger équivalentes
+    private static final double SIMILARITE_REQUETES = 0.5;
+
+    private final DistributionLatence latence;
+    private final Map<String, Enregistrement> parRequete = new LinkedHashMap<>();
+    private final List<Page> pages = new ArrayList<>();
+
+    private final AtomicLong exactes = new AtomicLong();
+    private final AtomicLong approchees = new AtomicLong();
+    private final AtomicLong parPages = new AtomicLong();
+
+    /**
+     * @param latence latence simulée de chaque recherche, ou {@code null} pour répondre aussitôt
+     */
+    public FichierWebSearchEngine(Path source, DistributionLatence latence) {
+        this.latence = latence;
+        try {
+            if (Files.isDirectory(source)) {
+                try (DirectoryStream<Path> fichiers = Files.newDirectoryStream(source, "*.json")) {
+                    for (Path fichier : fichiers) {
+                        charger(Files.readString(fichier, StandardCharsets.UTF_8));
+                    }
+                }
+            } else {
+                for (String ligne : Files.readAllLines(source, StandardCharsets.UTF_8)) {
+                    if (!ligne.isBlank()) {
+                        charger(ligne);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Lecture des recherches enregistrées impossible : " + source, e);
+        }
+        if (parRequete.isEmpty()) {
+            throw new IllegalArgumentException("Aucune recherche enregistrée dans " + source);
+        }
+    }
+
+    private void charger(String texte) {
+        JsonObject json = JsonParser.parseString(texte).getAsJsonObject();
+        String requete = json.get("requete").getAsString();
+        WebSearchResults resultats = CachingWebSearchEngine.resultats(json);
+        parRequete.put(normaliser(requete), new Enregistrement(mots(requete), resultats));
+        for (WebSearchOrganicResult resultat : resultats.results()) {
+            pages.add(new Page(resultat, mots(resultat.title() + " " + Objects.toString(resultat.snippet(), "")
+                    + " " + Objects.toString(resultat.content(), ""))));
+        }
+    }
+
+    @Override
+    public WebSearchResults search(WebSearchRequest request) {
+        if (latence != null) {
+            latence.attendre();
+        }
+        int nombre = request.maxResults() != null ? request.maxResults() : 5;
+        Enregistrement exact = parRequete.get(normaliser(request.searchTerms()));
+        if (exact != null) {
+            exactes.incrementAndGet();
+            return limiter(exact.resultats.results(), nombre);
+        }
+
+        Set<String> mots = mots(request.searchTerms());
+        Enregistrement proche = null;
+        double meilleur = SIMILARITE_REQUETES;
+        for (Enregistrement enregistrement : parRequete.values()) {
+            double jaccard = jaccard(mots, enregistrement.mots);
+            if (jaccard >= meilleur) {
+                meilleur = jaccard;
+                proche = enregistrement;
+            }
+        }
+        if (proche != null) {
+            approchees.incrementAndGet();
+            return limiter(proche.resultats.results(), nombre);
+        }
+
+        parPages.incrementAndGet();
+        List<Page> classees = new ArrayList<>(pages);
+        classees.sort(Comparator.comparingInt((Page page) -> communs(mots, page.mots)).reversed());
+        List<WebSearchOrganicResult> resultats = new ArrayList<>();
+        for (Page page : classees) {
+            if (resultats.size() == nombre || communs(mots, page.mots) == 0) {
+                break;
+            }
+            if (!resultats.contains(page.resultat)) {
+                resultats.add(page.resultat);
+            }
+        }
+        return limiter(resultats, nombre);
+    }
+
+    public String statistiques() {
+        return String.format("recherche web enregistrée : %d recherche(s), %d page(s) ; %d requête(s) exacte(s), %d approchée(s), %d par les pages",
+                parRequete.size(), pages.size(), exactes.get(), approchees.get(), parPages.get());
+    }
+
+    private static WebSearchResults limiter(List<WebSearchOrganicResult> resultats, int nombre) {
+        List<WebSearchOrganicResult> liste = resultats.subList(0, Math.min(nombre, resultats.size()));
+        return WebSearchResults.from(WebSearchInformationResult.from((long) liste.size()), liste);
+    }
+
+    private static String normaliser(String requete) {
+        return CachingEmbeddingModel.normaliser(requete).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Mots de trois lettres ou plus, en minuscules.
+     */
+    private static Set<String> mots(String texte) {
+        Set<String> mots = new HashSet<>();
+        for (String mot : texte.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (mot.length() >= 3) {
+                mots.add(mot);
+            }
+        }
+        return mots;
+    }
+
+    private static int communs(Set<String> a, Set<String> b) {
+        int communs = 0;
+        for (String mot : a) {
+            if (b.contains(mot)) {
+                communs++;
+            }
+        }
+        return communs;
+    }
+
+    private static double jaccard(Set<String> a, Set<String> b) {
+        int communs = communs(a, b);
+        return communs == 0 ? 0 : (double) communs / (a.size() + b.size() - communs);
+    }
+
+    private static final class Enregistrement {
+        final Set<String> mots;
+        final WebSearchResults resultats;
+
+        Enregistrement(Set<String> mots, WebSearchResults resultats) {
+            this.mots = mots;
+            this.resultats = resultats;
+        }
+    }
+
+    private static final class Page {
+        final WebSearchOrganicResult resultat;
+        final Set<String> mots;
+
+        Page(WebSearchOrganicResult resultat, Set<String> mots) {
+            this.resultat = resultat;
+            this.mots = mots;
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package rag.charge;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.rag.AugmentationRequest;
+import dev.langchain4j.rag.AugmentationResult;
+import dev.langchain4j.rag.RetrievalAugmentor;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Metadata;
+import dev.langchain4j.service.AiServices;
+import dev.langchain4j.service.MemoryId;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.web.search.WebSearchEngine;
+import rag.cache.CachingEmbeddingModel;
+import rag.cache.CachingWebSearchEngine;
+import rag.injection.CompactageContentInjector;
+import rag.ingestion.Corpus;
+import rag.llm.StubChatLanguageModel;
+import rag.memoire.MemoiresResumees;
+import rag.metrics.Instrumentation;
+import rag.metrics.LatencyHistogram;
+import rag.metrics.RegistreMetriques;
+import rag.pipeline.Pipelines;
+import rag.pipeline.RagRuntime;
+import rag.store.MappedEmbeddingStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Générateur de charge hors ligne : rejoue une série de questions, à débit cible, à travers la
+ * vraie pile {@code AiServices} + {@code DefaultRetrievalAugmentor} des pipelines de
+ * {@link Pipelines}, Gemini et Tavily étant remplacés par des composants factices à latence
+ * programmable.
+ * <p>
+ * La charge est en boucle ouverte : chaque question part à son heure prévue, que les précédentes
+ * aient répondu ou non, et sa latence est comptée depuis cette heure (l'attente d'un thread libre
+ * fait donc partie du total). Chaque étape est mesurée séparément ; « local » est le total moins
+ * le temps passé dans les LLM simulés, c'est-à-dire ce que coûte le pipeline lui-même (la
+ * recherche web simulée y reste comptée : elle s'exécute sur les threads du fan-out, et son poids
+ * se lit sur la ligne {@code retriever:web}).
+ * <p>
+ * Réglages (propriétés système) :
+ * <ul>
+ *     <li>{@code rag.charge.pipeline} : {@code basique}, {@code avance} (défaut), {@code routage}
+ *     ou {@code hybride} ;</li>
+ *     <li>{@code rag.charge.qps} (5), {@code rag.charge.requetes} (200),
+ *     {@code rag.charge.sessions} (20), {@code rag.charge.threads} (64),
+ *     {@code rag.charge.echauffement} (20 requêtes non comptées) ;</li>
+ *     <li>{@code rag.charge.llm} ({@code 800:0.5}), {@code rag.charge.llmAuxiliaire}
+ *     ({@code 300:0.3}), {@code rag.charge.web} ({@code 600:0.6}) : latences au format de
+ *     {@link DistributionLatence#depuis} ;</li>
+ *     <li>{@code rag.charge.graine} (42) et {@code rag.charge.fichier} (une question par ligne,
+ *     sinon une série intégrée) ;</li>
+ *     <li>pour le pipeline hybride, {@code rag.charge.webFichier} (recherches enregistrées rejouées
+ *     par {@link FichierWebSearchEngine}, sinon résultats de {@link StubWebSearchEngine}) et
+ *     {@code rag.charge.cacheWeb} ({@code true} : cache des recherches et cache sémantique des
+ *     segments web).</li>
+ * </ul>
+ */
+public class GenerateurCharge {
+
+    private static final List<String> QUESTIONS = List.of(
+            "Qu'est-ce que le RAG ?",
+            "Quelle est la différence entre RAG et fine-tuning ?",
+            "Comment fonctionne un modèle d'embedding ?",
+            "À quoi sert un magasin de vecteurs ?",
+            "Comment découper un document en segments ?",
+            "Qu'est-ce qu'un retriever ?",
+            "Comment faire une recette simple ?",
+            "Quels ingrédients faut-il pour un gâteau au chocolat ?",
+            "Combien de temps faut-il cuire les pâtes ?",
+            "Comment préparer une salade rapide ?",
+            "Quelle recette avec des œufs ?",
+            "Pourquoi ajouter une recherche web à un RAG ?");
+
+    interface Assistant {
+        String chat(@MemoryId String session, @dev.langchain4j.service.UserMessage String question);
+    }
+
+    private final LatencyHistogram attente = new LatencyHistogram("attente");
+    private final LatencyHistogram augmentation = new LatencyHistogram("augmentation");
+    private final LatencyHistogram local = new LatencyHistogram("local");
+    private final LatencyHistogram total = new LatencyHistogram("total");
+
+    // Mesures par composant (embedding, magasins, retrievers, routeurs, LLM), propres à ce générateur
+    private final RegistreMetriques registre = new RegistreMetriques();
+    private final Instrumentation instrumentation = new Instrumentation(registre);
+
+    // Temps passé dans les LLM simulés par la requête en cours (ils sont appelés sur son thread)
+    private CompactageContentInjector compactage;
+    private Pipelines.Assemblage assemblage;
+    private MemoiresResumees memoires;
+    private CachingWebSearchEngine cacheWeb;
+    private FichierWebSearchEngine moteurEnregistre;
+    private final ThreadLocal<long[]> nanosLLM = ThreadLocal.withInitial(() -> new long[1]);
+    private final RagRuntime runtime = RagRuntime.partage();
+
+    public static void main(String[] args) throws Exception {
+        String pipeline = System.getProperty("rag.charge.pipeline", "avance");
+        double qps = Double.parseDouble(System.getProperty("rag.charge.qps", "5"));
+        int requetes = Integer.getInteger("rag.charge.requetes", 200);
+        int sessions = Integer.getInteger("rag.charge.sessions", 20);
+        int threads = Integer.getInteger("rag.charge.threads", 64);
+        int echauffement = Integer.getInteger("rag.charge.echauffement", 20);
+        long graine = Long.getLong("rag.charge.graine", 42);
+        List<String> questions = questions(System.getProperty("rag.charge.fichier"));
+
+        GenerateurCharge generateur = new GenerateurCharge();
+        Assistant assistant = generateur.assembler(pipeline,
+                DistributionLatence.depuis(System.getProperty("rag.charge.llm", "800:0.5"), graine),
+                DistributionLatence.depuis(System.getProperty("rag.charge.llmAuxiliaire", "300:0.3"), graine + 1),
+                DistributionLatence.depuis(System.getProperty("rag.charge.web", "600:0.6"), graine + 2));
+
+        System.out.printf("Pipeline %s : %d requêtes à %.1f req/s, %d sessions, %d threads%n",
+                pipeline, requetes, qps, sessions, threads);
+        if (echauffement > 0) {
+            // Premier passage du JIT, du modèle ONNX et des caches, hors mesure
+            generateur.executer(assistant, questions, echauffement, 1000, 1, sessions);
+            generateur.reinitialiser();
+        }
+        System.out.println(generateur.executer(assistant, questions, requetes, qps, threads, sessions));
+        System.out.println(generateur.rapport());
+    }
+
+    private static List<String> questions(String fichier) throws IOException {
+        if (fichier == null) {
+            return QUESTIONS;
+        }
+        return Files.readAllLines(Paths.get(fichier)).stream()
+                .map(String::trim)
+                .filter(ligne -> !ligne.isEmpty())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Construit le pipeline demandé sur les index persistants, avec des modèles factices
+     * instrumentés.
+     */
+    Assistant assembler(String pipeline, DistributionLatence latenceLLM, DistributionLatence latenceAuxiliaire,
+                        DistributionLatence latenceWeb) {
+        // Corpus réglés par -Drag.corpus.ia, -Drag.corpus.recettes et -Drag.corpus.shards
+        Corpus corpusIA = Pipelines.corpusIA();
+        runtime.ingerer(corpusIA).forEach((nom, rapport) -> System.out.println("Ingestion " + nom + " : " + rapport));
+        List<MappedEmbeddingStore> storeIA = runtime.stores(corpusIA);
+
+        // Seuls les embeddings réellement calculés (absents du cache) sont mesurés
+        CachingEmbeddingModel modeleRequetes = new CachingEmbeddingModel(
+                instrumentation.embeddingModel("requêtes", runtime.embeddingModel()), 1024);
+        instrumentation.cache("embeddings", modeleRequetes::tauxSucces);
+        ChatLanguageModel auxiliaire = compterLLM(
+                instrumentation.chatModel("auxiliaire", StubChatLanguageModel.auxiliaire(latenceAuxiliaire)));
+        EmbeddingStore<TextSegment> indexIA = instrumentation.embeddingStore("IA", runtime.recherche(corpusIA));
+        ContentRetriever retrieverIA = instrumentation.retriever("IA",
+                Pipelines.fusion(instrumentation, "IA", indexIA, storeIA, modeleRequetes, 3));
+
+        compactage = Pipelines.compactage(instrumentation, runtime.embeddingModel());
+        switch (pipeline) {
+            case "basique":
+                assemblage = Pipelines.basique(retrieverIA);
+                break;
+            case "avance":
+                assemblage = Pipelines.avance(instrumentation, auxiliaire, instrumentation.retriever("avancé",
+                        Pipelines.fusion(instrumentation, "avancé", indexIA, storeIA, modeleRequetes, 3, 0.3)),
+                        null, compactage);
+                break;
+            case "routage":
+                Corpus corpusRecettes = Pipelines.corpusRecettes();
+                runtime.ingerer(corpusRecettes)
+                        .forEach((nom, rapport) -> System.out.println("Ingestion " + nom + " : " + rapport));
+                List<MappedEmbeddingStore> storeRecettes = runtime.stores(corpusRecettes);
+                ContentRetriever retrieverRecettes = instrumentation.retriever("Recettes", Pipelines.fusion(
+                        instrumentation, "Recettes",
+                        instrumentation.embeddingStore("Recettes", runtime.recherche(corpusRecettes)),
+                        storeRecettes, modeleRequetes, 3));
+                assemblage = Pipelines.routage(instrumentation, auxiliaire, modeleRequetes,
+                        retrieverIA, storeIA, retrieverRecettes, storeRecettes, compactage);
+                break;
+            case "hybride":
+                // Recherches enregistrées rejouées si rag.charge.webFichier est renseigné, sinon
+                // résultats fabriqués ; les deux caches web se coupent avec -Drag.charge.cacheWeb=false
+                String fichierWeb = System.getProperty("rag.charge.webFichier");
+                if (fichierWeb != null) {
+                    moteurEnregistre = new FichierWebSearchEngine(Paths.get(fichierWeb), latenceWeb);
+                }
+                WebSearchEngine moteur = moteurEnregistre != null ? moteurEnregistre : new StubWebSearchEngine(latenceWeb, 5);
+                boolean cache = Boolean.parseBoolean(System.getProperty("rag.charge.cacheWeb", "true"));
+                if (cache) {
+                    cacheWeb = Pipelines.cacheWeb(instrumentation, moteur, null);
+                    moteur = cacheWeb;
+                }
+                assemblage = Pipelines.hybride(instrumentation, retrieverIA, moteur, cache ? modeleRequetes : null,
+                        runtime.embeddingModel(), compactage);
+                break;
+            default:
+                throw new IllegalArgumentException("Pipeline inconnu : " + pipeline
+                        + " (basique, avance, routage ou hybride)");
+        }
+
+        // Mémoires résumées, sans journal : les résumés passent par un LLM simulé de latence
+        // auxiliaire, sur leur propre thread, hors du temps LLM de la requête
+        memoires = Pipelines.memoires(instrumentation, instrumentation.chatModel("résumé",
+                StubChatLanguageModel.resumeur(latenceAuxiliaire, 150)), null);
+
+        runtime.prechauffer();
+        return AiServices.builder(Assistant.class)
+                .chatLanguageModel(compterLLM(
+                        instrumentation.chatModel("génération", new StubChatLanguageModel(latenceLLM))))
+                .chatMemoryProvider(memoires)
+                .retrievalAugmentor(mesure(assemblage.augmentor()))
+                .build();
+    }
+
+    /**
+     * Envoie {@code nombre} questions au débit donné, réparties en tourniquet sur les sessions, et
+     * renvoie le débit obtenu. Les tours d'une même session sont sérialisés, comme pour un utilisateur
+     * réel.
+     */
+    String executer(Assistant assistant, List<String> questions, int nombre, double qps, int threads,
+                    int sessions) throws InterruptedException {
+        Object[] verrous = new Object[sessions];
+        for (int s = 0; s < sessions; s++) {
+            verrous[s] = new Object();
+        }
+        AtomicInteger compteur = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "charge-" + compteur.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicLong erreurs = new AtomicLong();
+        long intervalle = (long) (1e9 / qps);
+        long debut = System.nanoTime();
+
+        for (int i = 0; i < nombre; i++) {
+            long prevue = debut + i * intervalle;
+            long avance = prevue - System.nanoTime();
+            if (avance > 0) {
+                TimeUnit.NANOSECONDS.sleep(avance);
+            }
+            int session = i % sessions;
+            String question = questions.get(i % questions.size());
+            pool.execute(() -> {
+                attente.enregistrerNanos(System.nanoTime() - prevue);
+                try {
+                    synchronized (verrous[session]) {
+                        nanosLLM.get()[0] = 0;
+                        assistant.chat("session-" + session, question);
+                        runtime.reponse(prevue);
+                        long fin = System.nanoTime();
+                        total.enregistrerNanos(fin - prevue);
+                        local.enregistrerNanos(fin - prevue - nanosLLM.get()[0]);
+                    }
+                } catch (RuntimeException e) {
+                    erreurs.incrementAndGet();
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.HOURS);
+        double secondes = (System.nanoTime() - debut) / 1e9;
+
+        return String.format("%d requêtes en %.1f s : %.2f req/s visées, %.2f req/s obtenues, %d erreurs",
+                nombre, secondes, qps, (nombre - erreurs.get()) / secondes, erreurs.get());
+    }
+
+    String rapport() {
+        List<LatencyHistogram> etapes = new ArrayList<>(List.of(attente, augmentation));
+        etapes.addAll(registre.latences());
+        etapes.add(local);
+        etapes.add(total);
+        StringBuilder texte = new StringBuilder("latences par étape :");
+        for (LatencyHistogram etape : etapes) {
+            if (etape.nombre() > 0) {
+                texte.append(System.lineSeparator()).append("  ").append(etape.resume());
+            }
+        }
+        if (assemblage != null && !assemblage.statistiques().isEmpty()) {
+            texte.append(System.lineSeparator()).append(assemblage.statistiques());
+        }
+        if (compactage != null) {
+            texte.append(System.lineSeparator()).append(compactage.statistiques());
+        }
+        if (memoires != null) {
+            texte.append(System.lineSeparator()).append(memoires.statistiques());
+        }
+        if (cacheWeb != null) {
+            texte.append(System.lineSeparator()).append(cacheWeb.statistiques());
+        }
+        if (moteurEnregistre != null) {
+            texte.append(System.lineSeparator()).append(moteurEnregistre.statistiques());
+        }
+        texte.append(System.lineSeparator()).append(runtime.statistiques());
+        return texte.toString();
+    }
+
+    void reinitialiser() {
+        List.of(attente, augmentation, local, total).forEach(LatencyHistogram::reinitialiser);
+        registre.reinitialiser();
+    }
+
+    private <T> T chronometrer(LatencyHistogram histogramme, Supplier<T> appel) {
+        long debut = System.nanoTime();
+        try {
+            return appel.get();
+        } finally {
+            histogramme.enregistrerNanos(System.nanoTime() - debut);
+        }
+    }
+
+    /**
+     * Ajoute le temps passé dans le modèle au compte LLM de la requête en cours.
+     */
+    private ChatLanguageModel compterLLM(ChatLanguageModel delegate) {
+        return new ChatLanguageModel() {
+            @Override
+            public Response<AiMessage> generate(List<ChatMessage> messages) {
+                long debut = System.nanoTime();
+                try {
+                    return delegate.generate(messages);
+                } finally {
+                    nanosLLM.get()[0] += System.nanoTime() - debut;
+                }
+            }
+        };
+    }
+
+    private RetrievalAugmentor mesure(RetrievalAugmentor delegate) {
+        return new RetrievalAugmentor() {
+            @Override
+            public AugmentationResult augment(AugmentationRequest request) {
+                return chronometrer(augmentation, () -> delegate.augment(request));
+            }
+
+            @Override
+            @SuppressWarnings("deprecation")
+            public UserMessage augment(UserMessage userMessage, Metadata metadata) {
+                return chronometrer(augmentation, () -> delegate.augment(userMessage, metadata));
+            }
+        };
+    }
+}
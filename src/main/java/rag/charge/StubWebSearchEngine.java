@@ -0,0 +1,44 @@
+package rag.charge;
+
+import dev.langchain4j.web.search.WebSearchEngine;
+import dev.langchain4j.web.search.WebSearchInformationResult;
+import dev.langchain4j.web.search.WebSearchOrganicResult;
+import dev.langchain4j.web.search.WebSearchRequest;
+import dev.langchain4j.web.search.WebSearchResults;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Moteur de recherche web factice, à la place de Tavily dans les tests de charge : il attend une
+ * latence simulée puis renvoie des résultats fabriqués à partir de la requête (mêmes résultats
+ * pour la même requête).
+ */
+public class StubWebSearchEngine implements WebSearchEngine {
+
+    private final DistributionLatence latence;
+    private final int resultats;
+
+    public StubWebSearchEngine(DistributionLatence latence, int resultats) {
+        this.latence = latence;
+        this.resultats = resultats;
+    }
+
+    @Override
+    public WebSearchResults search(WebSearchRequest request) {
+        latence.attendre();
+        String requete = request.searchTerms();
+        int nombre = request.maxResults() != null ? Math.min(request.maxResults(), resultats) : resultats;
+        List<WebSearchOrganicResult> liste = new ArrayList<>(nombre);
+        for (int i = 1; i <= nombre; i++) {
+            String page = Integer.toHexString(requete.hashCode()) + "-" + i;
+            liste.add(WebSearchOrganicResult.from(
+                    "Résultat " + i + " pour « " + requete + " »",
+                    URI.create("https://exemple.invalid/" + page),
+                    "Extrait simulé " + i + " à propos de : " + requete,
+                    null));
+        }
+        return WebSearchResults.from(WebSearchInformationResult.from((long) nombre), liste);
+    }
+}
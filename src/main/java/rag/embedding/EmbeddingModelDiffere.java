@@ -0,0 +1,56 @@
+package rag.embedding;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Modèle d'embedding chargé en arrière-plan dès la construction : le démarrage continue (ouverture
+ * des index, vérification des fichiers à ingérer, assemblage des pipelines) pendant que la session
+ * ONNX se crée, et seul le premier appel au modèle attend la fin du chargement.
+ */
+public class EmbeddingModelDiffere implements EmbeddingModel {
+
+    private final CompletableFuture<EmbeddingModel> chargement = new CompletableFuture<>();
+
+    public EmbeddingModelDiffere(Supplier<EmbeddingModel> fabrique) {
+        Thread thread = new Thread(() -> {
+            try {
+                chargement.complete(fabrique.get());
+            } catch (RuntimeException | Error e) {
+                chargement.completeExceptionally(e);
+            }
+        }, "chargement-modele");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+        return modele().embedAll(segments);
+    }
+
+    @Override
+    public int dimension() {
+        return modele().dimension();
+    }
+
+    public boolean estCharge() {
+        return chargement.isDone() && !chargement.isCompletedExceptionally();
+    }
+
+    private EmbeddingModel modele() {
+        try {
+            return chargement.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+                    : new IllegalStateException("Chargement du modèle d'embedding impossible", e.getCause());
+        }
+    }
+}
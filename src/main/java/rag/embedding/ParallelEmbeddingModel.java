@@ -0,0 +1,185 @@
+package rag.embedding;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.OnnxEmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.PoolingMode;
+import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Moteur d'embedding parallèle : découpe les segments en micro-lots de taille réglable et les
+ * répartit sur un pool borné de threads. Les embeddings sont rendus dans l'ordre des segments.
+ * <p>
+ * Le modèle délégué doit calculer chaque lot dans le thread appelant (voir {@link #allMiniLmL6V2()}),
+ * sinon les deux niveaux de parallélisme se concurrencent pour les mêmes cœurs.
+ */
+public class ParallelEmbeddingModel implements EmbeddingModel, AutoCloseable {
+
+    private final EmbeddingModel delegate;
+    private final int tailleLot;
+    private final int threads;
+    private final ExecutorService executor;
+
+    private final LongAdder segmentsTraites = new LongAdder();
+    private final LongAdder nanosCumules = new LongAdder();
+
+    public ParallelEmbeddingModel(EmbeddingModel delegate, int tailleLot, int threads) {
+        if (tailleLot < 1 || threads < 1) {
+            throw new IllegalArgumentException("tailleLot et threads doivent être positifs");
+        }
+        this.delegate = delegate;
+        this.tailleLot = tailleLot;
+        this.threads = threads;
+        AtomicInteger compteur = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, tache -> {
+            Thread thread = new Thread(tache, "embedding-" + compteur.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * AllMiniLmL6V2 configuré pour calculer chaque lot dans le thread appelant. La taille des lots
+     * et le nombre de threads se règlent avec {@code -Drag.embedding.batch} et
+     * {@code -Drag.embedding.threads} (par défaut, un thread par cœur disponible).
+     */
+    public static ParallelEmbeddingModel allMiniLmL6V2() {
+        return allMiniLmL6V2(chargerAllMiniLmL6V2());
+    }
+
+    /**
+     * Comme {@link #allMiniLmL6V2()}, sur un AllMiniLmL6V2 déjà créé (ou en cours de chargement,
+     * voir {@link EmbeddingModelDiffere}).
+     */
+    public static ParallelEmbeddingModel allMiniLmL6V2(EmbeddingModel modele) {
+        return new ParallelEmbeddingModel(
+                modele,
+                Integer.getInteger("rag.embedding.batch", 32),
+                Integer.getInteger("rag.embedding.threads", Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * AllMiniLmL6V2 calculant dans le thread appelant. Le modèle (91 Mo) et son tokenizer sont
+     * copiés une fois hors du jar, dans {@code -Drag.modeles} ({@code index/modeles} par défaut),
+     * puis lus depuis ce fichier : cela évite de les décompresser à chaque démarrage. Si la copie
+     * échoue, ils sont lus depuis le jar comme auparavant.
+     */
+    public static EmbeddingModel chargerAllMiniLmL6V2() {
+        Path repertoire = Paths.get(System.getProperty("rag.modeles", "index/modeles"));
+        try {
+            Path modele = extraire(repertoire, "all-minilm-l6-v2.onnx");
+            Path tokenizer = extraire(repertoire, "all-minilm-l6-v2-tokenizer.json");
+            return new OnnxEmbeddingModel(modele, tokenizer, PoolingMode.MEAN, Runnable::run);
+        } catch (IOException e) {
+            return new AllMiniLmL6V2EmbeddingModel(Runnable::run);
+        }
+    }
+
+    /**
+     * Copie la ressource du jar d'AllMiniLmL6V2 dans le répertoire si elle n'y est pas déjà ; la
+     * copie passe par un fichier temporaire pour qu'un arrêt en cours de route ne laisse pas de
+     * fichier tronqué.
+     */
+    private static Path extraire(Path repertoire, String ressource) throws IOException {
+        Path fichier = repertoire.resolve(ressource);
+        if (Files.isRegularFile(fichier)) {
+            return fichier;
+        }
+        Files.createDirectories(repertoire);
+        try (InputStream in = AllMiniLmL6V2EmbeddingModel.class.getResourceAsStream("/" + ressource)) {
+            if (in == null) {
+                throw new FileNotFoundException(ressource);
+            }
+            Path temporaire = Files.createTempFile(repertoire, ressource, ".tmp");
+            try {
+                Files.copy(in, temporaire, StandardCopyOption.REPLACE_EXISTING);
+                Files.move(temporaire, fichier, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temporaire);
+            }
+        }
+        return fichier;
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+        if (segments.size() <= tailleLot) {
+            // Une requête utilisateur ou un petit lot : pas de saut de thread
+            return delegate.embedAll(segments);
+        }
+
+        long debut = System.nanoTime();
+        List<Future<Response<List<Embedding>>>> lots = new ArrayList<>();
+        for (int i = 0; i < segments.size(); i += tailleLot) {
+            List<TextSegment> lot = segments.subList(i, Math.min(i + tailleLot, segments.size()));
+            lots.add(executor.submit(() -> delegate.embedAll(lot)));
+        }
+
+        List<Embedding> embeddings = new ArrayList<>(segments.size());
+        try {
+            for (Future<Response<List<Embedding>>> lot : lots) {
+                embeddings.addAll(lot.get().content());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            lots.forEach(lot -> lot.cancel(true));
+            throw new IllegalStateException("Calcul des embeddings interrompu", e);
+        } catch (ExecutionException e) {
+            lots.forEach(lot -> lot.cancel(true));
+            throw new IllegalStateException("Échec du calcul des embeddings : " + e.getCause().getMessage(), e.getCause());
+        }
+
+        segmentsTraites.add(segments.size());
+        nanosCumules.add(System.nanoTime() - debut);
+        return Response.from(embeddings);
+    }
+
+    @Override
+    public int dimension() {
+        return delegate.dimension();
+    }
+
+    /**
+     * Nombre de segments d'un appel à {@link #embedAll} qui occupe tous les threads : un lot
+     * par thread.
+     */
+    public int segmentsParAppel() {
+        return tailleLot * threads;
+    }
+
+    /**
+     * Débit cumulé des appels parallélisés, en segments par seconde.
+     */
+    public double segmentsParSeconde() {
+        long nanos = nanosCumules.sum();
+        return nanos == 0 ? 0 : segmentsTraites.sum() * 1e9 / nanos;
+    }
+
+    public String statistiques() {
+        return String.format("%d segments embeddés (%d threads, lots de %d) : %.1f segments/s",
+                segmentsTraites.sum(), threads, tailleLot, segmentsParSeconde());
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,150 @@
+package rag.ingestion;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * Documents d'un corpus répartis en index : un fichier, un répertoire (parcouru récursivement)
+ * ou un motif glob ({@code docs/**.pdf}) désigne les fichiers, et chacun est rangé dans un index
+ * nommé d'après le corpus.
+ * <p>
+ * Les fichiers d'un sous-répertoire de premier niveau forment une collection à part
+ * ({@code nom-sousRepertoire}), ceux de la racine la collection {@code nom}. Avec
+ * {@code shards > 1}, chaque collection est en plus répartie en {@code shards} index
+ * ({@code nom-0}, {@code nom-1}...) d'après l'empreinte du chemin relatif de chaque fichier :
+ * un fichier reste dans le même index d'une exécution à l'autre, ce qui garde l'ingestion
+ * incrémentale, et un nouveau fichier ne déplace pas les autres.
+ * <p>
+ * Dans un répertoire, seuls les formats que Tika sait lire sont retenus ; un motif glob est pris
+ * tel quel.
+ */
+public final class Corpus {
+
+    private static final Set<String> EXTENSIONS = Set.of(
+            "pdf", "txt", "md", "html", "htm", "xml", "doc", "docx", "odt", "rtf", "ppt", "pptx", "epub");
+
+    private final String nom;
+    private final Map<String, List<Path>> index;
+
+    private Corpus(String nom, Map<String, List<Path>> index) {
+        this.nom = nom;
+        this.index = index;
+    }
+
+    /**
+     * Corpus désigné par {@code source} (fichier, répertoire ou motif glob), réparti en collections
+     * et en {@code shards} index par collection.
+     */
+    public static Corpus depuis(String nom, String source, int shards) {
+        if (shards < 1) {
+            throw new IllegalArgumentException("shards doit être au moins 1");
+        }
+        Path racine;
+        List<Path> fichiers = new ArrayList<>();
+        try {
+            if (estMotif(source)) {
+                racine = racineDuMotif(source);
+                PathMatcher motif = FileSystems.getDefault().getPathMatcher("glob:" + source);
+                try (Stream<Path> chemins = Files.walk(racine)) {
+                    chemins.filter(Files::isRegularFile).filter(chemin -> motif.matches(chemin.normalize()))
+                            .forEach(fichiers::add);
+                }
+            } else if (Files.isDirectory(Paths.get(source))) {
+                racine = Paths.get(source);
+                try (Stream<Path> chemins = Files.walk(racine)) {
+                    chemins.filter(Files::isRegularFile).filter(Corpus::lisible).forEach(fichiers::add);
+                }
+            } else {
+                Path fichier = Paths.get(source);
+                if (!Files.isRegularFile(fichier)) {
+                    throw new IllegalArgumentException("Corpus introuvable : " + source);
+                }
+                racine = fichier.toAbsolutePath().getParent();
+                fichiers.add(fichier);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Parcours du corpus impossible : " + source, e);
+        }
+
+        Map<String, List<Path>> index = new TreeMap<>();
+        for (Path fichier : fichiers) {
+            Path relatif = racine.toAbsolutePath().normalize().relativize(fichier.toAbsolutePath().normalize());
+            String collection = relatif.getNameCount() > 1 ? nom + "-" + relatif.getName(0) : nom;
+            if (shards > 1) {
+                // Chemin relatif avec des '/' : même shard quel que soit le système
+                String cle = relatif.toString().replace('\\', '/');
+                collection += "-" + Math.floorMod(cle.hashCode(), shards);
+            }
+            index.computeIfAbsent(collection, c -> new ArrayList<>()).add(fichier);
+        }
+        index.values().forEach(Collections::sort);
+        return new Corpus(nom, Collections.unmodifiableMap(index));
+    }
+
+    public String nom() {
+        return nom;
+    }
+
+    /**
+     * Fichiers de chaque index, par nom d'index.
+     */
+    public Map<String, List<Path>> index() {
+        return index;
+    }
+
+    public int fichiers() {
+        return index.values().stream().mapToInt(List::size).sum();
+    }
+
+    public boolean estVide() {
+        return index.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("corpus %s : %d fichier(s) en %d index", nom, fichiers(), index.size());
+    }
+
+    private static boolean estMotif(String source) {
+        return source.chars().anyMatch(c -> c == '*' || c == '?' || c == '[' || c == '{');
+    }
+
+    /**
+     * Répertoire à parcourir : ce qui précède le dernier séparateur avant le premier caractère
+     * spécial du motif.
+     */
+    private static Path racineDuMotif(String motif) {
+        int special = motif.length();
+        for (char c : new char[]{'*', '?', '[', '{'}) {
+            int position = motif.indexOf(c);
+            if (position >= 0) {
+                special = Math.min(special, position);
+            }
+        }
+        int separateur = motif.lastIndexOf('/', special);
+        if (separateur < 0) {
+            return Paths.get(".");
+        }
+        return Paths.get(separateur == 0 ? "/" : motif.substring(0, separateur));
+    }
+
+    private static boolean lisible(Path fichier) {
+        String nom = fichier.getFileName().toString();
+        int point = nom.lastIndexOf('.');
+        return !nom.startsWith(".") && point > 0
+                && EXTENSIONS.contains(nom.substring(point + 1).toLowerCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,654 @@
+package rag.ingestion;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentParser;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
+import dev.langchain4j.data.document.parser.apache.tika.ApacheTikaDocumentParser;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import rag.embedding.ParallelEmbeddingModel;
+import rag.store.IndexLexical;
+import rag.store.MappedEmbeddingStore;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Ingestion incrémentale dans un {@link MappedEmbeddingStore}.
+ * <p>
+ * Chaque fichier est identifié par l'empreinte SHA-256 de son contenu, et chaque segment par
+ * l'empreinte de (modèle d'embedding, paramètres du découpage, fichier, texte). Un manifeste
+ * conservé à côté de l'index mémorise les segments de chaque fichier : seuls les segments
+ * nouveaux passent par {@code embedAll}, ceux qui ont disparu sont retirés du magasin et les
+ * autres y restent tels quels. L'{@link IndexLexical} du magasin est réécrit à chaque modification.
+ * <p>
+ * Les fichiers modifiés sont traités en flux : Tika les analyse page par page, jusqu'à
+ * {@code analyseurs} fichiers à la fois, chacun dans sa file bornée de pages ; le thread appelant
+ * découpe les fichiers dans l'ordre où leur analyse a commencé, et les segments nouveaux sont
+ * embeddés et écrits par lots. L'analyse des fichiers suivants avance donc pendant l'inférence
+ * ONNX, et la mémoire utilisée ne dépend ni de la taille des fichiers ni de leur nombre. Les
+ * threads d'analyse peuvent être ceux d'un pool partagé par plusieurs ingestions
+ * ({@link Builder#analyse}). Les segments ne chevauchent pas deux pages ; leur métadonnée
+ * {@code index} est numérotée sur tout le fichier.
+ */
+public class IncrementalIngestor {
+
+    private final MappedEmbeddingStore store;
+    private final EmbeddingModel embeddingModel;
+    private final String modelId;
+    private final DocumentParser parser;
+    private final int maxSegmentSize;
+    private final int maxOverlap;
+    private final Predicate<TextSegment> filtre;
+    private final Path manifeste;
+    private final int tailleLot;
+    private final int pagesEnAttente;
+    private final int analyseurs;
+    private final ExecutorService analyse;
+
+    private IncrementalIngestor(Builder builder) {
+        this.store = builder.store;
+        this.embeddingModel = builder.embeddingModel;
+        this.modelId = builder.modelId;
+        this.parser = builder.parser;
+        this.maxSegmentSize = builder.maxSegmentSize;
+        this.maxOverlap = builder.maxOverlap;
+        this.filtre = builder.filtre;
+        this.manifeste = builder.manifeste != null ? builder.manifeste : store.repertoire().resolve("manifeste.tsv");
+        this.tailleLot = builder.tailleLot > 0 ? builder.tailleLot
+                : builder.embeddingModel instanceof ParallelEmbeddingModel parallele ? parallele.segmentsParAppel()
+                : 64;
+        this.pagesEnAttente = builder.pagesEnAttente;
+        this.analyseurs = builder.analyseurs;
+        this.analyse = builder.analyse;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Met l'index à jour pour les fichiers donnés. Les fichiers présents dans le manifeste mais
+     * supprimés du disque sont également retirés du magasin.
+     */
+    public Rapport ingerer(List<Path> fichiers) {
+        long debut = System.nanoTime();
+        Rapport rapport = new Rapport();
+        String configuration = configuration();
+        if (!Files.exists(manifeste) && !store.estVide()) {
+            // Index construit sans manifeste : ses identifiants ne peuvent pas être rapprochés
+            store.removeAll();
+        }
+        Map<String, EntreeManifeste> entrees = lireManifeste();
+
+        for (String chemin : new ArrayList<>(entrees.keySet())) {
+            if (!Files.exists(Path.of(chemin))) {
+                List<String> ids = entrees.remove(chemin).ids;
+                store.removeAll(ids);
+                rapport.segmentsSupprimes += ids.size();
+            }
+        }
+
+        Map<Path, String> aTraiter = new LinkedHashMap<>();
+        for (Path fichier : fichiers) {
+            String chemin = fichier.toAbsolutePath().normalize().toString();
+            String empreinteFichier = empreinte(fichier);
+            EntreeManifeste precedente = entrees.get(chemin);
+
+            if (precedente != null
+                    && precedente.empreinte.equals(empreinteFichier)
+                    && precedente.configuration.equals(configuration)
+                    && precedente.ids.stream().allMatch(store::contient)) {
+                rapport.fichiersInchanges++;
+                rapport.segmentsConserves += precedente.ids.size();
+            } else {
+                aTraiter.put(fichier, empreinteFichier);
+            }
+        }
+
+        try {
+            if (!aTraiter.isEmpty()) {
+                traiter(aTraiter, entrees, configuration, rapport);
+            }
+        } finally {
+            // Même après un échec, les segments déjà écrits restent rattachés à leur fichier
+            store.flush();
+            ecrireManifeste(entrees);
+        }
+        // Index lexical reconstruit sur les mêmes segments, pour la recherche BM25
+        Path lexical = store.repertoire().resolve(IndexLexical.FICHIER);
+        if (rapport.segmentsAjoutes + rapport.segmentsSupprimes + rapport.segmentsRenumerotes > 0
+                || !Files.exists(lexical)) {
+            IndexLexical.construire(store).ecrire(lexical);
+        }
+        rapport.dureeMs = (System.nanoTime() - debut) / 1_000_000;
+        return rapport;
+    }
+
+    // ==================== Pipeline en flux ====================
+
+    /**
+     * Ingère les fichiers modifiés en flux : jusqu'à {@code analyseurs} fichiers sont analysés page
+     * par page pendant que le thread appelant découpe, filtre et embedde par lots. Seules
+     * {@code pagesEnAttente} pages par fichier en cours et un lot de segments sont en mémoire à
+     * un instant donné.
+     * <p>
+     * Un segment conservé qui a changé de position dans son fichier est réécrit avec son nouvel
+     * {@code index}, et son vecteur tel quel. Si l'ingestion échoue au milieu d'un fichier, son
+     * entrée du manifeste garde ses anciens segments et ceux déjà écrits, sans empreinte : le
+     * fichier sera repris à la prochaine ingestion.
+     */
+    private void traiter(Map<Path, String> fichiers, Map<String, EntreeManifeste> entrees,
+                         String configuration, Rapport rapport) {
+        ExecutorService pool = analyse;
+        if (pool == null) {
+            AtomicInteger compteur = new AtomicInteger();
+            pool = Executors.newFixedThreadPool(analyseurs, runnable -> {
+                Thread thread = new Thread(runnable, "ingestion-analyse-" + compteur.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        Analyse pages = new Analyse(new ArrayList<>(fichiers.keySet()), pool);
+
+        DocumentSplitter splitter = DocumentSplitters.recursive(maxSegmentSize, maxOverlap);
+        Lot lot = new Lot();
+        Fichier courant = null;
+        try {
+            while (true) {
+                Page page = pages.suivante();
+                if (page.erreur != null) {
+                    throw page.erreur instanceof RuntimeException
+                            ? (RuntimeException) page.erreur
+                            : new IllegalStateException(page.erreur);
+                }
+                if (page.fichier == null) {
+                    break;
+                }
+                if (courant == null) {
+                    courant = new Fichier(page.fichier, entrees.get(chemin(page.fichier)));
+                }
+                if (page.texte == null) {
+                    // Fin du fichier : son dernier lot est écrit avant de retirer les segments disparus
+                    lot.ecrire(rapport);
+                    Fichier termine = courant;
+                    List<String> obsoletes = termine.anciens.stream().filter(id -> !termine.vus.contains(id)).toList();
+                    store.removeAll(obsoletes);
+                    rapport.segmentsSupprimes += obsoletes.size();
+                    entrees.put(courant.chemin, new EntreeManifeste(fichiers.get(page.fichier), configuration, courant.ids));
+                    rapport.fichiersModifies++;
+                    courant = null;
+                    continue;
+                }
+
+                rapport.pages++;
+                Document document = Document.from(page.texte, courant.metadata);
+                for (TextSegment segment : splitter.split(document)) {
+                    // Un segment sans lettre ni chiffre (espaces insécables d'une page vide...) n'a
+                    // rien à embedder
+                    if (!filtre.test(segment) || segment.text().codePoints().noneMatch(Character::isLetterOrDigit)) {
+                        continue;
+                    }
+                    // Numérotation continue sur tout le fichier, d'une page à l'autre
+                    Metadata metadata = courant.metadata.copy().put("index", String.valueOf(courant.ids.size()));
+                    TextSegment numerote = TextSegment.from(segment.text(), metadata);
+                    // Un même texte répété dans le fichier reçoit un identifiant par occurrence
+                    int occurrence = courant.occurrences.merge(empreinte(segment.text()), 1, Integer::sum);
+                    String id = empreinte(configuration, courant.chemin, segment.text(), String.valueOf(occurrence));
+                    courant.ids.add(id);
+                    courant.vus.add(id);
+                    if (courant.anciens.contains(id) && store.contient(id)) {
+                        rapport.segmentsConserves++;
+                        TextSegment stocke = store.segment(id);
+                        if (stocke == null || !metadata.getString("index")
+                                .equals(String.valueOf(stocke.metadata().toMap().get("index")))) {
+                            lot.renumeroter(id, numerote, rapport);
+                        }
+                    } else {
+                        lot.ajouter(id, numerote);
+                        if (lot.plein()) {
+                            lot.ecrire(rapport);
+                        }
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Ingestion interrompue", e);
+        } finally {
+            if (courant != null) {
+                // Fichier interrompu : ni ses anciens segments ni ceux déjà écrits ne sont orphelins
+                Set<String> ids = new LinkedHashSet<>(courant.anciens);
+                ids.addAll(courant.ids);
+                entrees.put(courant.chemin, new EntreeManifeste("", configuration, new ArrayList<>(ids)));
+            }
+            pages.arreter();
+            if (pool != analyse) {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Analyse en parallèle des fichiers à ingérer. Chaque fichier a sa file bornée de pages,
+     * terminée par une marque de fin de fichier (ou par l'erreur rencontrée) ; les files sont
+     * remises au consommateur dans l'ordre où leur analyse a commencé. Au plus {@code analyseurs}
+     * fichiers sont commencés sans avoir été entièrement consommés.
+     * <p>
+     * Le fichier que découpe le consommateur est toujours en cours d'analyse ou terminé : même sur
+     * un pool partagé par plusieurs ingestions, aucune analyse n'attend indéfiniment de place.
+     */
+    private final class Analyse {
+        private final List<Path> fichiers;
+        private final BlockingQueue<BlockingQueue<Page>> commences = new LinkedBlockingQueue<>();
+        private final Semaphore enCours = new Semaphore(analyseurs);
+        private final List<Future<?>> taches = new CopyOnWriteArrayList<>();
+        private final Thread distribution;
+        private BlockingQueue<Page> courante;
+        private int consommes;
+
+        Analyse(List<Path> fichiers, ExecutorService pool) {
+            this.fichiers = fichiers;
+            this.distribution = new Thread(() -> distribuer(pool), "ingestion-distribution");
+            distribution.setDaemon(true);
+            distribution.start();
+        }
+
+        private void distribuer(ExecutorService pool) {
+            try {
+                for (Path fichier : fichiers) {
+                    enCours.acquire();
+                    taches.add(pool.submit(() -> analyser(fichier)));
+                }
+            } catch (InterruptedException e) {
+                // Ingestion abandonnée par le thread appelant
+            } catch (RuntimeException e) {
+                BlockingQueue<Page> erreur = new ArrayBlockingQueue<>(1);
+                erreur.offer(new Page(null, null, e));
+                commences.offer(erreur);
+            }
+        }
+
+        /**
+         * Tâche d'analyse d'un fichier : ses pages, puis une marque de fin de fichier.
+         */
+        private void analyser(Path fichier) {
+            BlockingQueue<Page> pages = new ArrayBlockingQueue<>(pagesEnAttente);
+            commences.offer(pages);
+            try {
+                if (parser == null || parser instanceof ApacheTikaDocumentParser) {
+                    LecteurPages.lire(fichier, LecteurPages.parserParDefaut(), texte -> pages.put(new Page(fichier, texte, null)));
+                } else {
+                    // Parseur quelconque : le document est lu en entier, comme une seule page
+                    pages.put(new Page(fichier, FileSystemDocumentLoader.loadDocument(fichier, parser).text(), null));
+                }
+                pages.put(new Page(fichier, null, null));
+            } catch (InterruptedException e) {
+                // Ingestion abandonnée par le thread appelant
+            } catch (RuntimeException | Error e) {
+                pages.clear();
+                pages.offer(new Page(null, null, e));
+            }
+        }
+
+        /**
+         * Page suivante du fichier en cours de découpage, marque de fin de fichier, erreur
+         * d'analyse, ou marque finale une fois tous les fichiers remis.
+         */
+        Page suivante() throws InterruptedException {
+            if (courante == null) {
+                if (consommes == fichiers.size()) {
+                    return new Page(null, null, null);
+                }
+                courante = commences.take();
+            }
+            Page page = courante.take();
+            if (page.texte == null && page.erreur == null) {
+                courante = null;
+                consommes++;
+                enCours.release();
+            }
+            return page;
+        }
+
+        void arreter() {
+            distribution.interrupt();
+            taches.forEach(tache -> tache.cancel(true));
+        }
+    }
+
+    private static String chemin(Path fichier) {
+        return fichier.toAbsolutePath().normalize().toString();
+    }
+
+    private static final class Page {
+        final Path fichier;
+        final String texte;
+        final Throwable erreur;
+
+        Page(Path fichier, String texte, Throwable erreur) {
+            this.fichier = fichier;
+            this.texte = texte;
+            this.erreur = erreur;
+        }
+    }
+
+    /**
+     * Fichier en cours d'ingestion.
+     */
+    private static final class Fichier {
+        final String chemin;
+        final Metadata metadata;
+        final Set<String> anciens;
+        final List<String> ids = new ArrayList<>();
+        final Set<String> vus = new HashSet<>();
+        final Map<String, Integer> occurrences = new HashMap<>();
+
+        Fichier(Path fichier, EntreeManifeste precedente) {
+            this.chemin = chemin(fichier);
+            Path absolu = fichier.toAbsolutePath().normalize();
+            this.metadata = Metadata.from("file_name", absolu.getFileName().toString())
+                    .put("absolute_directory_path", absolu.getParent().toString());
+            this.anciens = precedente == null ? Set.of() : new HashSet<>(precedente.ids);
+        }
+    }
+
+    /**
+     * Segments nouveaux en attente d'embedding, écrits dans le magasin par lots, et segments
+     * conservés dont seul l'index change.
+     */
+    private final class Lot {
+        final List<String> ids = new ArrayList<>(tailleLot);
+        final List<TextSegment> segments = new ArrayList<>(tailleLot);
+        final List<String> idsRenumerotes = new ArrayList<>();
+        final List<TextSegment> segmentsRenumerotes = new ArrayList<>();
+
+        void ajouter(String id, TextSegment segment) {
+            ids.add(id);
+            segments.add(segment);
+        }
+
+        boolean plein() {
+            return segments.size() >= tailleLot;
+        }
+
+        void renumeroter(String id, TextSegment segment, Rapport rapport) {
+            idsRenumerotes.add(id);
+            segmentsRenumerotes.add(segment);
+            if (idsRenumerotes.size() >= tailleLot) {
+                ecrireRenumerotes(rapport);
+            }
+        }
+
+        void ecrire(Rapport rapport) {
+            ecrireRenumerotes(rapport);
+            if (segments.isEmpty()) {
+                return;
+            }
+            List<Embedding> embeddings = embeddingModel.embedAll(segments).content();
+            store.addAll(new ArrayList<>(ids), embeddings, new ArrayList<>(segments));
+            rapport.segmentsAjoutes += segments.size();
+            ids.clear();
+            segments.clear();
+        }
+
+        private void ecrireRenumerotes(Rapport rapport) {
+            if (idsRenumerotes.isEmpty()) {
+                return;
+            }
+            // Même identifiant : l'entrée est remplacée, avec le vecteur déjà calculé
+            List<Embedding> embeddings = new ArrayList<>(idsRenumerotes.size());
+            for (String id : idsRenumerotes) {
+                embeddings.add(Embedding.from(store.vecteur(id)));
+            }
+            store.addAll(new ArrayList<>(idsRenumerotes), embeddings, new ArrayList<>(segmentsRenumerotes));
+            rapport.segmentsRenumerotes += idsRenumerotes.size();
+            idsRenumerotes.clear();
+            segmentsRenumerotes.clear();
+        }
+    }
+
+    private String configuration() {
+        return modelId + ";recursive-pages;" + maxSegmentSize + ";" + maxOverlap;
+    }
+
+    // ==================== Manifeste ====================
+
+    private static class EntreeManifeste {
+        final String empreinte;
+        final String configuration;
+        final List<String> ids;
+
+        EntreeManifeste(String empreinte, String configuration, List<String> ids) {
+            this.empreinte = empreinte;
+            this.configuration = configuration;
+            this.ids = ids;
+        }
+    }
+
+    // Format : chemin \t empreinte du fichier \t configuration \t id1,id2,...
+    private Map<String, EntreeManifeste> lireManifeste() {
+        Map<String, EntreeManifeste> entrees = new LinkedHashMap<>();
+        if (!Files.exists(manifeste)) {
+            return entrees;
+        }
+        try {
+            for (String ligne : Files.readAllLines(manifeste, StandardCharsets.UTF_8)) {
+                String[] colonnes = ligne.split("\t", -1);
+                if (colonnes.length != 4) {
+                    continue;
+                }
+                List<String> ids = colonnes[3].isEmpty() ? new ArrayList<>() : new ArrayList<>(Arrays.asList(colonnes[3].split(",")));
+                entrees.put(colonnes[0], new EntreeManifeste(colonnes[1], colonnes[2], ids));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Lecture du manifeste impossible : " + manifeste, e);
+        }
+        return entrees;
+    }
+
+    private void ecrireManifeste(Map<String, EntreeManifeste> entrees) {
+        List<String> lignes = new ArrayList<>();
+        entrees.forEach((chemin, entree) -> lignes.add(
+                chemin + "\t" + entree.empreinte + "\t" + entree.configuration + "\t" + String.join(",", entree.ids)));
+        try {
+            Path temporaire = manifeste.resolveSibling(manifeste.getFileName() + ".tmp");
+            Files.write(temporaire, lignes, StandardCharsets.UTF_8);
+            Files.move(temporaire, manifeste, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Écriture du manifeste impossible : " + manifeste, e);
+        }
+    }
+
+    // ==================== Empreintes ====================
+
+    private static String empreinte(Path fichier) {
+        MessageDigest digest = sha256();
+        byte[] tampon = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(fichier)) {
+            int lus;
+            while ((lus = in.read(tampon)) > 0) {
+                digest.update(tampon, 0, lus);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Lecture impossible : " + fichier, e);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static String empreinte(String... parties) {
+        MessageDigest digest = sha256();
+        for (String partie : parties) {
+            digest.update(partie.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // ==================== Rapport ====================
+
+    public static class Rapport {
+        int fichiersInchanges;
+        int fichiersModifies;
+        int segmentsAjoutes;
+        int segmentsConserves;
+        int segmentsSupprimes;
+        int segmentsRenumerotes;
+        int pages;
+        long dureeMs;
+
+        public int segmentsAjoutes() {
+            return segmentsAjoutes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d fichier(s) inchangé(s), %d modifié(s) (%d pages) ; segments : %d ajouté(s), %d conservé(s) dont %d renuméroté(s), %d supprimé(s) en %d ms",
+                    fichiersInchanges, fichiersModifies, pages, segmentsAjoutes, segmentsConserves, segmentsRenumerotes,
+                    segmentsSupprimes, dureeMs);
+        }
+    }
+
+    // ==================== Builder ====================
+
+    public static class Builder {
+        private MappedEmbeddingStore store;
+        private EmbeddingModel embeddingModel;
+        private String modelId = "all-minilm-l6-v2";
+        private DocumentParser parser;
+        private int maxSegmentSize = 300;
+        private int maxOverlap = 30;
+        private Predicate<TextSegment> filtre = segment -> true;
+        private Path manifeste;
+        private int tailleLot;
+        private int pagesEnAttente = 16;
+        private int analyseurs = 1;
+        private ExecutorService analyse;
+
+        public Builder store(MappedEmbeddingStore store) {
+            this.store = store;
+            return this;
+        }
+
+        public Builder embeddingModel(EmbeddingModel embeddingModel) {
+            this.embeddingModel = embeddingModel;
+            return this;
+        }
+
+        public Builder modelId(String modelId) {
+            this.modelId = modelId;
+            return this;
+        }
+
+        /**
+         * Parseur des fichiers. Tika par défaut, en flux page par page ; tout autre parseur lit
+         * chaque fichier en entier.
+         */
+        public Builder parser(DocumentParser parser) {
+            this.parser = parser;
+            return this;
+        }
+
+        public Builder splitter(int maxSegmentSize, int maxOverlap) {
+            this.maxSegmentSize = maxSegmentSize;
+            this.maxOverlap = maxOverlap;
+            return this;
+        }
+
+        public Builder filtre(Predicate<TextSegment> filtre) {
+            this.filtre = filtre;
+            return this;
+        }
+
+        public Builder manifeste(Path manifeste) {
+            this.manifeste = manifeste;
+            return this;
+        }
+
+        /**
+         * Nombre de segments nouveaux embeddés ensemble. Par défaut, de quoi occuper tous les
+         * threads d'un {@link ParallelEmbeddingModel} ({@link ParallelEmbeddingModel#segmentsParAppel()}),
+         * 64 pour un autre modèle.
+         */
+        public Builder tailleLot(int tailleLot) {
+            this.tailleLot = tailleLot;
+            return this;
+        }
+
+        /**
+         * Pages analysées d'avance au plus, par fichier en cours ; au-delà l'analyse de ce fichier
+         * attend le découpage.
+         */
+        public Builder pagesEnAttente(int pagesEnAttente) {
+            this.pagesEnAttente = pagesEnAttente;
+            return this;
+        }
+
+        /**
+         * Nombre de fichiers analysés par Tika en même temps (1 par défaut).
+         */
+        public Builder analyseurs(int analyseurs) {
+            this.analyseurs = analyseurs;
+            return this;
+        }
+
+        /**
+         * Pool sur lequel les fichiers sont analysés, par exemple partagé par les ingestions de
+         * plusieurs index pour borner le nombre total d'analyses Tika ; sans pool, chaque
+         * ingestion crée ses {@code analyseurs} threads.
+         */
+        public Builder analyse(ExecutorService analyse) {
+            this.analyse = analyse;
+            return this;
+        }
+
+        public IncrementalIngestor build() {
+            if (store == null || embeddingModel == null) {
+                throw new IllegalStateException("store et embeddingModel sont obligatoires");
+            }
+            if (analyseurs < 1) {
+                throw new IllegalStateException("analyseurs doit être au moins 1");
+            }
+            return new IncrementalIngestor(this);
+        }
+    }
+}
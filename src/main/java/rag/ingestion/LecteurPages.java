@@ -0,0 +1,149 @@
+package rag.ingestion;
+
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+/**
+ * Lecture d'un fichier par Tika en flux SAX : le texte est remis page par page (éléments
+ * {@code <div class="page">} produits pour les PDF) au lieu d'être assemblé en un seul
+ * {@code Document}. Les formats sans pages sont découpés à la fin d'un bloc dès que
+ * {@value #TAILLE_BLOC} caractères sont accumulés.
+ * <p>
+ * La page est passée au consommateur depuis le thread d'analyse : s'il bloque (file pleine),
+ * l'analyse attend, ce qui borne la mémoire.
+ */
+final class LecteurPages extends DefaultHandler {
+
+    /**
+     * Reçoit chaque page ; peut bloquer.
+     */
+    @FunctionalInterface
+    interface Consommateur {
+        void page(String texte) throws InterruptedException;
+    }
+
+    private static final int TAILLE_BLOC = 64 * 1024;
+    private static final Set<String> BLOCS = Set.of("p", "li", "tr", "h1", "h2", "h3", "h4", "h5", "h6", "br");
+
+    private final Consommateur consommateur;
+    private final StringBuilder texte = new StringBuilder();
+    private boolean dansCorps;
+    private boolean pagine;
+    private int profondeurDiv;
+    private int profondeurPage = -1;
+
+    private LecteurPages(Consommateur consommateur) {
+        this.consommateur = consommateur;
+    }
+
+    /**
+     * Analyse le fichier et remet ses pages au consommateur, dans l'ordre.
+     *
+     * @throws InterruptedException si le thread est interrompu pendant une remise
+     */
+    static void lire(Path fichier, Parser parser, Consommateur consommateur) throws InterruptedException {
+        LecteurPages lecteur = new LecteurPages(consommateur);
+        try (InputStream in = Files.newInputStream(fichier)) {
+            parser.parse(in, lecteur, new Metadata(), new ParseContext());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Lecture impossible : " + fichier, e);
+        } catch (SAXException | TikaException e) {
+            // Une interruption du consommateur remonte enveloppée par SAX, parfois par Tika
+            for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                if (cause instanceof InterruptedException) {
+                    throw (InterruptedException) cause;
+                }
+            }
+            throw new IllegalStateException("Analyse impossible : " + fichier, e);
+        }
+    }
+
+    /**
+     * Parser Tika partagé : sa construction (registre des formats) n'est payée qu'une fois par
+     * JVM, et il peut servir à plusieurs analyses simultanées.
+     */
+    static Parser parserParDefaut() {
+        return ParserParDefaut.INSTANCE;
+    }
+
+    private static final class ParserParDefaut {
+        private static final Parser INSTANCE = new AutoDetectParser();
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+        if ("body".equals(localName)) {
+            dansCorps = true;
+        } else if ("div".equals(localName)) {
+            profondeurDiv++;
+            if (profondeurPage < 0 && "page".equals(attributes.getValue("class"))) {
+                pagine = true;
+                profondeurPage = profondeurDiv;
+                emettre();
+            }
+        }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+        if ("body".equals(localName)) {
+            dansCorps = false;
+        } else if ("div".equals(localName)) {
+            texte.append('\n');
+            if (profondeurDiv-- == profondeurPage) {
+                profondeurPage = -1;
+                emettre();
+            }
+        } else if (BLOCS.contains(localName)) {
+            texte.append('\n');
+            if (!pagine && texte.length() >= TAILLE_BLOC) {
+                emettre();
+            }
+        }
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) {
+        // Comme BodyContentHandler : le titre et les métadonnées de l'en-tête sont ignorés
+        if (dansCorps) {
+            texte.append(ch, start, length);
+        }
+    }
+
+    @Override
+    public void ignorableWhitespace(char[] ch, int start, int length) {
+        characters(ch, start, length);
+    }
+
+    @Override
+    public void endDocument() throws SAXException {
+        emettre();
+    }
+
+    private void emettre() throws SAXException {
+        if (texte.toString().isBlank()) {
+            texte.setLength(0);
+            return;
+        }
+        String page = texte.toString();
+        texte.setLength(0);
+        try {
+            consommateur.page(page);
+        } catch (InterruptedException e) {
+            throw new SAXException(e);
+        }
+    }
+}
@@ -0,0 +1,340 @@
+package rag.injection;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.injector.ContentInjector;
+import dev.langchain4j.rag.content.injector.DefaultContentInjector;
+import dev.langchain4j.store.embedding.CosineSimilarity;
+import rag.llm.EstimateurJetons;
+import rag.metrics.LatencyHistogram;
+import rag.metrics.RegistreMetriques;
+import rag.metrics.Statistique;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link ContentInjector} qui compacte les segments avant de les injecter dans le message :
+ * <ol>
+ *     <li>les segments consécutifs d'un même document (métadonnée {@code index} du découpage) sont
+ *     fusionnés en un seul passage, sans répéter leur chevauchement ; un segment qui porte le même
+ *     index qu'un autre n'est fusionné que s'il a le même texte, sinon il reste un passage à part ;</li>
+ *     <li>les passages presque identiques (cosinus des embeddings au moins {@code seuilDoublon})
+ *     ne sont gardés qu'une fois ;</li>
+ *     <li>les passages sont pris dans l'ordre de pertinence tant que le budget de jetons le
+ *     permet, le premier étant toujours gardé.</li>
+ * </ol>
+ * La mise en forme finale est celle de {@link DefaultContentInjector}. Le nombre de jetons
+ * (estimés) de la question et des segments, bruts puis compactés, est enregistré à chaque question
+ * dans les statistiques {@code rag_jetons_contexte_avant} et {@code rag_jetons_contexte_apres} ;
+ * le message n'est mis en forme qu'une fois, avec les segments compactés.
+ */
+public class CompactageContentInjector implements ContentInjector {
+
+    // En deçà, un suffixe égal au préfixe du segment suivant est une coïncidence (espace, article...)
+    // plutôt que le chevauchement du découpage
+    private static final int CHEVAUCHEMENT_MIN = 20;
+
+    private final ContentInjector delegate;
+    private final EmbeddingModel embeddingModel;
+    private final double seuilDoublon;
+    private final int budgetJetons;
+    private final LatencyHistogram latence;
+    private final Statistique jetonsAvant;
+    private final Statistique jetonsApres;
+
+    private CompactageContentInjector(Builder builder) {
+        this.delegate = builder.delegate;
+        this.embeddingModel = builder.embeddingModel;
+        this.seuilDoublon = builder.seuilDoublon;
+        this.budgetJetons = builder.budgetJetons;
+        String composant = "injection:" + builder.nom;
+        this.latence = builder.metriques.latence(composant);
+        this.jetonsAvant = builder.metriques.statistique("rag_jetons_contexte_avant", composant);
+        this.jetonsApres = builder.metriques.statistique("rag_jetons_contexte_apres", composant);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public ChatMessage inject(List<Content> contents, ChatMessage chatMessage) {
+        if (contents.isEmpty()) {
+            return delegate.inject(contents, chatMessage);
+        }
+        long debut = System.nanoTime();
+        List<Content> compactes = compacter(contents);
+        ChatMessage message = delegate.inject(compactes, chatMessage);
+        latence.enregistrerNanos(System.nanoTime() - debut);
+        int question = EstimateurJetons.estimer(texte(chatMessage));
+        jetonsAvant.enregistrer(question + jetons(contents));
+        jetonsApres.enregistrer(question + jetons(compactes));
+        return message;
+    }
+
+    private static int jetons(List<Content> contenus) {
+        int jetons = 0;
+        for (Content contenu : contenus) {
+            jetons += EstimateurJetons.estimer(contenu.textSegment().text());
+        }
+        return jetons;
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public UserMessage inject(List<Content> contents, UserMessage userMessage) {
+        return (UserMessage) inject(contents, (ChatMessage) userMessage);
+    }
+
+    public String statistiques() {
+        double avant = jetonsAvant.moyenne();
+        double apres = jetonsApres.moyenne();
+        return String.format("Contexte : %d question(s), %.0f -> %.0f jetons estimés par question et segments en moyenne (%.0f %% économisés)",
+                jetonsApres.nombre(), avant, apres, avant > 0 ? 100 * (avant - apres) / avant : 0.0);
+    }
+
+    /**
+     * Segments fusionnés, dédoublonnés et limités au budget, du plus pertinent au moins pertinent.
+     */
+    List<Content> compacter(List<Content> contenus) {
+        List<Passage> passages = fusionnerVoisins(contenus);
+        passages = retirerDoublons(passages);
+
+        List<Content> retenus = new ArrayList<>(passages.size());
+        int jetons = 0;
+        for (Passage passage : passages) {
+            int cout = EstimateurJetons.estimer(passage.texte);
+            if (!retenus.isEmpty() && jetons + cout > budgetJetons) {
+                continue;
+            }
+            retenus.add(passage.contenu());
+            jetons += cout;
+        }
+        return retenus;
+    }
+
+    private static List<Passage> fusionnerVoisins(List<Content> contenus) {
+        // Segments regroupés par document, avec leur rang de pertinence
+        Map<String, List<Passage>> parDocument = new LinkedHashMap<>();
+        List<Passage> passages = new ArrayList<>();
+        for (int rang = 0; rang < contenus.size(); rang++) {
+            TextSegment segment = contenus.get(rang).textSegment();
+            Passage passage = new Passage(rang, segment.text(), segment.metadata(), index(segment.metadata()));
+            String document = document(segment.metadata());
+            if (document == null || passage.premier < 0) {
+                passages.add(passage);
+            } else {
+                parDocument.computeIfAbsent(document, d -> new ArrayList<>()).add(passage);
+            }
+        }
+
+        for (List<Passage> segments : parDocument.values()) {
+            segments.sort(Comparator.comparingInt((Passage p) -> p.premier).thenComparingInt(p -> p.rang));
+            List<Passage> document = new ArrayList<>();
+            for (Passage segment : segments) {
+                Passage suite = null;
+                boolean doublon = false;
+                for (Passage passage : document) {
+                    if (passage.dernier == segment.premier && passage.texteDernier.equals(segment.texte)) {
+                        // Même segment renvoyé deux fois
+                        doublon = true;
+                        break;
+                    }
+                    // Deux segments de même index (index périmé d'une ancienne version du fichier) :
+                    // le suivant prolonge celui dont il reprend le texte, sinon le plus pertinent
+                    if (passage.dernier == segment.premier - 1 && (suite == null
+                            || chevauchement(suite.texteDernier, segment.texte) == 0
+                            && chevauchement(passage.texteDernier, segment.texte) > 0)) {
+                        suite = passage;
+                    }
+                }
+                if (doublon) {
+                    continue;
+                }
+                if (suite != null) {
+                    suite.absorber(segment);
+                } else {
+                    document.add(segment);
+                    passages.add(segment);
+                }
+            }
+        }
+        passages.sort(Comparator.comparingInt((Passage p) -> p.rang));
+        return passages;
+    }
+
+    private List<Passage> retirerDoublons(List<Passage> passages) {
+        if (embeddingModel == null || passages.size() < 2) {
+            return passages;
+        }
+        List<TextSegment> segments = new ArrayList<>(passages.size());
+        for (Passage passage : passages) {
+            segments.add(TextSegment.from(passage.texte));
+        }
+        List<Embedding> embeddings = embeddingModel.embedAll(segments).content();
+        List<Passage> uniques = new ArrayList<>(passages.size());
+        List<Embedding> gardes = new ArrayList<>(passages.size());
+        for (int i = 0; i < passages.size(); i++) {
+            boolean doublon = false;
+            for (Embedding garde : gardes) {
+                if (CosineSimilarity.between(garde, embeddings.get(i)) >= seuilDoublon) {
+                    doublon = true;
+                    break;
+                }
+            }
+            if (!doublon) {
+                uniques.add(passages.get(i));
+                gardes.add(embeddings.get(i));
+            }
+        }
+        return uniques;
+    }
+
+    /**
+     * Identifie le document d'origine (chemin du fichier, ou URL d'un résultat web).
+     */
+    private static String document(Metadata metadata) {
+        Map<String, Object> valeurs = metadata.toMap();
+        Object fichier = valeurs.get("file_name");
+        if (fichier != null) {
+            Object repertoire = valeurs.get("absolute_directory_path");
+            return repertoire == null ? fichier.toString() : repertoire + "/" + fichier;
+        }
+        Object url = valeurs.get("url");
+        return url == null ? null : url.toString();
+    }
+
+    private static int index(Metadata metadata) {
+        Object index = metadata.toMap().get("index");
+        if (index == null) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(index.toString());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String texte(ChatMessage message) {
+        return message instanceof UserMessage && ((UserMessage) message).hasSingleText()
+                ? ((UserMessage) message).singleText()
+                : message.toString();
+    }
+
+    /**
+     * Plus long suffixe de {@code a} qui est aussi un préfixe de {@code b} (le chevauchement
+     * laissé par le découpage), d'au moins {@value #CHEVAUCHEMENT_MIN} caractères et au plus la
+     * moitié du plus court des deux ; 0 s'il n'y en a pas.
+     */
+    static int chevauchement(String a, String b) {
+        int max = Math.min(a.length(), b.length()) / 2;
+        for (int longueur = max; longueur >= CHEVAUCHEMENT_MIN; longueur--) {
+            if (a.regionMatches(a.length() - longueur, b, 0, longueur)) {
+                return longueur;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Suite de segments consécutifs d'un même document.
+     */
+    private static final class Passage {
+        private int rang;
+        private String texte;
+        private String texteDernier;
+        private final Metadata metadata;
+        private final int premier;
+        private int dernier;
+
+        private Passage(int rang, String texte, Metadata metadata, int index) {
+            this.rang = rang;
+            this.texte = texte;
+            this.texteDernier = texte;
+            this.metadata = metadata;
+            this.premier = index;
+            this.dernier = index;
+        }
+
+        /**
+         * Ajoute le segment qui suit immédiatement le dernier segment du passage.
+         */
+        private void absorber(Passage suivant) {
+            String ajout = suivant.texte.substring(chevauchement(texteDernier, suivant.texte)).strip();
+            texte = texte.strip() + (ajout.isEmpty() ? "" : "\n" + ajout);
+            texteDernier = suivant.texte;
+            dernier = suivant.dernier;
+            // Le passage prend le rang du plus pertinent de ses segments
+            rang = Math.min(rang, suivant.rang);
+        }
+
+        private Content contenu() {
+            return Content.from(TextSegment.from(texte, metadata));
+        }
+    }
+
+    public static class Builder {
+        private ContentInjector delegate = new DefaultContentInjector();
+        private EmbeddingModel embeddingModel;
+        private double seuilDoublon = 0.95;
+        private int budgetJetons = 800;
+        private String nom = "compactage";
+        private RegistreMetriques metriques = RegistreMetriques.global();
+
+        /**
+         * Mise en forme des segments retenus ({@link DefaultContentInjector} par défaut).
+         */
+        public Builder delegate(ContentInjector delegate) {
+            this.delegate = delegate;
+            return this;
+        }
+
+        /**
+         * Modèle servant à repérer les quasi-doublons ; sans modèle, seuls les segments voisins
+         * sont fusionnés. Les passages étant embeddés à chaque question, ce modèle ne doit pas
+         * partager le cache des embeddings de requêtes, qu'ils évinceraient
+         * ({@link rag.pipeline.Pipelines#compactage} lui donne son propre cache).
+         */
+        public Builder embeddingModel(EmbeddingModel embeddingModel) {
+            this.embeddingModel = embeddingModel;
+            return this;
+        }
+
+        public Builder seuilDoublon(double seuilDoublon) {
+            this.seuilDoublon = seuilDoublon;
+            return this;
+        }
+
+        /**
+         * Nombre maximal de jetons (estimés) de segments injectés.
+         */
+        public Builder budgetJetons(int budgetJetons) {
+            this.budgetJetons = budgetJetons;
+            return this;
+        }
+
+        public Builder nom(String nom) {
+            this.nom = nom;
+            return this;
+        }
+
+        public Builder metriques(RegistreMetriques metriques) {
+            this.metriques = metriques;
+            return this;
+        }
+
+        public CompactageContentInjector build() {
+            return new CompactageContentInjector(this);
+        }
+    }
+}
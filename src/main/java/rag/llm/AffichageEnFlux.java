@@ -0,0 +1,114 @@
+package rag.llm;
+
+import dev.langchain4j.service.TokenStream;
+import rag.cache.SemanticResponseCache;
+import rag.metrics.LatencyHistogram;
+
+import java.io.PrintStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+/**
+ * Affiche les réponses d'un assistant en flux, au fil des jetons, et mesure séparément :
+ * <ul>
+ *     <li>la recherche : de la question au retour de {@code chat}, qui n'a lieu qu'une fois le
+ *     contexte récupéré et injecté ;</li>
+ *     <li>le premier jeton : de la question au premier fragment reçu ;</li>
+ *     <li>le total : de la question à la fin de la réponse.</li>
+ * </ul>
+ * Les réponses servies par le cache sémantique sont comptées à part.
+ */
+public class AffichageEnFlux {
+
+    private final PrintStream sortie;
+    private final LatencyHistogram recherche = new LatencyHistogram("recherche");
+    private final LatencyHistogram premierJeton = new LatencyHistogram("premier jeton");
+    private final LatencyHistogram total = new LatencyHistogram("total");
+    private final LatencyHistogram cache = new LatencyHistogram("réponse en cache");
+
+    public AffichageEnFlux(PrintStream sortie) {
+        this.sortie = sortie;
+    }
+
+    public AffichageEnFlux() {
+        this(System.out);
+    }
+
+    /**
+     * Affiche la réponse à la question, précédée de {@code prefixe}, et la renvoie complète.
+     */
+    public String repondre(String prefixe, String question, Function<String, TokenStream> assistant) {
+        return repondre(prefixe, question, assistant, null);
+    }
+
+    /**
+     * Comme {@link #repondre(String, String, Function)}, en servant d'abord depuis le cache
+     * sémantique (qui mémorise ensuite la réponse produite).
+     */
+    public String repondre(String prefixe, String question, Function<String, TokenStream> assistant,
+                           SemanticResponseCache cacheReponses) {
+        long debut = System.nanoTime();
+        SemanticResponseCache.Recherche enCache = null;
+        if (cacheReponses != null) {
+            enCache = cacheReponses.rechercher(question);
+            if (enCache.reponse().isPresent()) {
+                String reponse = enCache.reponse().get();
+                sortie.println(prefixe + reponse);
+                cache.enregistrerNanos(System.nanoTime() - debut);
+                return reponse;
+            }
+        }
+
+        TokenStream flux = assistant.apply(question);
+        long finRecherche = System.nanoTime();
+        recherche.enregistrerNanos(finRecherche - debut);
+
+        StringBuilder texte = new StringBuilder();
+        long[] premier = {0};
+        CompletableFuture<String> fin = new CompletableFuture<>();
+        sortie.print(prefixe);
+        flux.onNext(fragment -> {
+                    if (premier[0] == 0) {
+                        premier[0] = System.nanoTime();
+                    }
+                    texte.append(fragment);
+                    sortie.print(fragment);
+                    sortie.flush();
+                })
+                .onComplete(response -> fin.complete(texte.toString()))
+                .onError(fin::completeExceptionally)
+                .start();
+
+        String reponse;
+        try {
+            reponse = fin.join();
+        } catch (CompletionException e) {
+            sortie.println();
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+        long finReponse = System.nanoTime();
+        sortie.println();
+        if (premier[0] != 0) {
+            premierJeton.enregistrerNanos(premier[0] - debut);
+        }
+        total.enregistrerNanos(finReponse - debut);
+        sortie.printf(" (recherche %.0f ms, premier jeton %.0f ms, total %.0f ms)%n",
+                (finRecherche - debut) / 1e6, premier[0] == 0 ? 0 : (premier[0] - debut) / 1e6, (finReponse - debut) / 1e6);
+
+        if (cacheReponses != null) {
+            cacheReponses.enregistrer(enCache, reponse);
+        }
+        return reponse;
+    }
+
+    public String statistiques() {
+        StringBuilder texte = new StringBuilder("latences :");
+        for (LatencyHistogram histogramme : new LatencyHistogram[]{recherche, premierJeton, total, cache}) {
+            if (histogramme.nombre() > 0) {
+                texte.append(System.lineSeparator()).append("  ").append(histogramme.resume());
+            }
+        }
+        return texte.toString();
+    }
+}
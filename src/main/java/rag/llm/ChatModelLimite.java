@@ -0,0 +1,75 @@
+package rag.llm;
+
+import dev.langchain4j.agent.tool.ToolSpecification;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Décorateur de {@link ChatLanguageModel} qui borne le nombre d'appels simultanés. Au-delà, un
+ * appel attend une place au plus {@code attenteMax}, puis échoue avec une
+ * {@link SaturationException} : la contre-pression remonte jusqu'au client au lieu d'accumuler
+ * des requêtes chez le fournisseur.
+ */
+public class ChatModelLimite implements ChatLanguageModel {
+
+    private final ChatLanguageModel delegate;
+    private final Semaphore places;
+    private final int maxAppels;
+    private final long attenteMaxNanos;
+    private final AtomicLong refus = new AtomicLong();
+
+    public ChatModelLimite(ChatLanguageModel delegate, int maxAppels, Duration attenteMax) {
+        this.delegate = delegate;
+        this.places = new Semaphore(maxAppels, true);
+        this.maxAppels = maxAppels;
+        this.attenteMaxNanos = attenteMax.toNanos();
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages) {
+        acquerir();
+        try {
+            return delegate.generate(messages);
+        } finally {
+            places.release();
+        }
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages, List<ToolSpecification> outils) {
+        acquerir();
+        try {
+            return delegate.generate(messages, outils);
+        } finally {
+            places.release();
+        }
+    }
+
+    public int appelsEnCours() {
+        return maxAppels - places.availablePermits();
+    }
+
+    public long refus() {
+        return refus.get();
+    }
+
+    private void acquerir() {
+        try {
+            if (!places.tryAcquire(attenteMaxNanos, TimeUnit.NANOSECONDS)) {
+                refus.incrementAndGet();
+                throw new SaturationException("Trop d'appels au LLM en cours (" + maxAppels + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SaturationException("Attente d'un appel au LLM interrompue");
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package rag.llm;
+
+/**
+ * Estimation du nombre de jetons d'un texte sans tokenizer : environ 4 caractères par jeton,
+ * ordre de grandeur des tokenizers de Gemini en français comme en anglais. Sert à borner la
+ * taille du contexte envoyé au LLM, pas à facturer.
+ */
+public final class EstimateurJetons {
+
+    private static final int CARACTERES_PAR_JETON = 4;
+
+    private EstimateurJetons() {
+    }
+
+    public static int estimer(String texte) {
+        return texte == null ? 0 : (texte.length() + CARACTERES_PAR_JETON - 1) / CARACTERES_PAR_JETON;
+    }
+}
@@ -0,0 +1,242 @@
+package rag.llm;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.StreamingResponseHandler;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
+import dev.langchain4j.model.output.FinishReason;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.model.output.TokenUsage;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Modèle de chat Gemini en flux, sur l'API REST {@code streamGenerateContent} (événements SSE) :
+ * chaque fragment de texte est transmis dès sa réception.
+ * <p>
+ * La version de langchain4j-google-ai-gemini utilisée (0.35.0) ne fournit que le modèle
+ * bloquant ; cette classe se limite au texte (pas d'outils ni d'images), ce qui suffit aux
+ * assistants RAG.
+ */
+public class GeminiStreamingChatModel implements StreamingChatLanguageModel {
+
+    private final String baseUrl;
+    private final String apiKey;
+    private final String modelName;
+    private final Double temperature;
+    private final Duration timeout;
+    private final HttpClient client;
+
+    private GeminiStreamingChatModel(Builder builder) {
+        this.baseUrl = builder.baseUrl.endsWith("/") ? builder.baseUrl : builder.baseUrl + "/";
+        this.apiKey = builder.apiKey;
+        this.modelName = builder.modelName;
+        this.temperature = builder.temperature;
+        this.timeout = builder.timeout;
+        this.client = HttpClient.newBuilder()
+                .connectTimeout(builder.timeout)
+                .build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public void generate(List<ChatMessage> messages, StreamingResponseHandler<AiMessage> handler) {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(baseUrl + "models/" + URLEncoder.encode(modelName, StandardCharsets.UTF_8)
+                        + ":streamGenerateContent?alt=sse"))
+                .timeout(timeout)
+                .header("Content-Type", "application/json")
+                .header("x-goog-api-key", apiKey)
+                .POST(HttpRequest.BodyPublishers.ofString(corps(messages).toString(), StandardCharsets.UTF_8))
+                .build();
+
+        client.sendAsync(request, HttpResponse.BodyHandlers.ofLines())
+                .thenAccept(response -> lire(response, handler))
+                .exceptionally(erreur -> {
+                    handler.onError(erreur.getCause() != null ? erreur.getCause() : erreur);
+                    return null;
+                });
+    }
+
+    private void lire(HttpResponse<Stream<String>> response, StreamingResponseHandler<AiMessage> handler) {
+        try (Stream<String> lignes = response.body()) {
+            if (response.statusCode() != 200) {
+                String detail = lignes.collect(Collectors.joining("\n"));
+                handler.onError(new IOException("Gemini a répondu " + response.statusCode() + " : " + detail));
+                return;
+            }
+            StringBuilder texte = new StringBuilder();
+            TokenUsage[] usage = {null};
+            FinishReason[] fin = {null};
+            lignes.filter(ligne -> ligne.startsWith("data:"))
+                    .map(ligne -> JsonParser.parseString(ligne.substring(5).trim()).getAsJsonObject())
+                    .forEach(evenement -> {
+                        String fragment = fragment(evenement);
+                        if (!fragment.isEmpty()) {
+                            texte.append(fragment);
+                            handler.onNext(fragment);
+                        }
+                        if (evenement.has("usageMetadata")) {
+                            usage[0] = usage(evenement.getAsJsonObject("usageMetadata"));
+                        }
+                        FinishReason raison = raisonFin(evenement);
+                        if (raison != null) {
+                            fin[0] = raison;
+                        }
+                    });
+            handler.onComplete(Response.from(AiMessage.from(texte.toString()), usage[0], fin[0]));
+        } catch (RuntimeException e) {
+            handler.onError(e);
+        }
+    }
+
+    private JsonObject corps(List<ChatMessage> messages) {
+        JsonObject corps = new JsonObject();
+        JsonArray contents = new JsonArray();
+        StringBuilder instructions = new StringBuilder();
+        for (ChatMessage message : messages) {
+            if (message instanceof SystemMessage) {
+                instructions.append(instructions.length() > 0 ? "\n" : "").append(((SystemMessage) message).text());
+            } else if (message instanceof UserMessage) {
+                contents.add(contenu("user", ((UserMessage) message).singleText()));
+            } else if (message instanceof AiMessage && ((AiMessage) message).text() != null) {
+                contents.add(contenu("model", ((AiMessage) message).text()));
+            }
+        }
+        corps.add("contents", contents);
+        if (instructions.length() > 0) {
+            JsonObject systeme = new JsonObject();
+            systeme.add("parts", parties(instructions.toString()));
+            corps.add("systemInstruction", systeme);
+        }
+        if (temperature != null) {
+            JsonObject configuration = new JsonObject();
+            configuration.addProperty("temperature", temperature);
+            corps.add("generationConfig", configuration);
+        }
+        return corps;
+    }
+
+    private static JsonObject contenu(String role, String texte) {
+        JsonObject contenu = new JsonObject();
+        contenu.addProperty("role", role);
+        contenu.add("parts", parties(texte));
+        return contenu;
+    }
+
+    private static JsonArray parties(String texte) {
+        JsonObject partie = new JsonObject();
+        partie.addProperty("text", texte);
+        JsonArray parties = new JsonArray();
+        parties.add(partie);
+        return parties;
+    }
+
+    private static String fragment(JsonObject evenement) {
+        StringBuilder texte = new StringBuilder();
+        JsonArray candidats = evenement.getAsJsonArray("candidates");
+        if (candidats == null || candidats.isEmpty()) {
+            return "";
+        }
+        JsonObject contenu = candidats.get(0).getAsJsonObject().getAsJsonObject("content");
+        if (contenu == null || !contenu.has("parts")) {
+            return "";
+        }
+        for (JsonElement partie : contenu.getAsJsonArray("parts")) {
+            JsonElement text = partie.getAsJsonObject().get("text");
+            // Les parties « thought » des modèles qui raisonnent ne font pas partie de la réponse
+            if (text != null && !partie.getAsJsonObject().has("thought")) {
+                texte.append(text.getAsString());
+            }
+        }
+        return texte.toString();
+    }
+
+    private static TokenUsage usage(JsonObject metadata) {
+        return new TokenUsage(entier(metadata, "promptTokenCount"), entier(metadata, "candidatesTokenCount"),
+                entier(metadata, "totalTokenCount"));
+    }
+
+    private static Integer entier(JsonObject objet, String champ) {
+        return objet.has(champ) ? objet.get(champ).getAsInt() : null;
+    }
+
+    private static FinishReason raisonFin(JsonObject evenement) {
+        JsonArray candidats = evenement.getAsJsonArray("candidates");
+        if (candidats == null || candidats.isEmpty() || !candidats.get(0).getAsJsonObject().has("finishReason")) {
+            return null;
+        }
+        switch (candidats.get(0).getAsJsonObject().get("finishReason").getAsString()) {
+            case "STOP":
+                return FinishReason.STOP;
+            case "MAX_TOKENS":
+                return FinishReason.LENGTH;
+            case "SAFETY":
+            case "RECITATION":
+            case "BLOCKLIST":
+            case "PROHIBITED_CONTENT":
+                return FinishReason.CONTENT_FILTER;
+            default:
+                return FinishReason.OTHER;
+        }
+    }
+
+    public static class Builder {
+        private String baseUrl = "https://generativelanguage.googleapis.com/v1beta/";
+        private String apiKey;
+        private String modelName = "gemini-2.5-flash";
+        private Double temperature;
+        private Duration timeout = Duration.ofSeconds(60);
+
+        public Builder baseUrl(String baseUrl) {
+            this.baseUrl = baseUrl;
+            return this;
+        }
+
+        public Builder apiKey(String apiKey) {
+            this.apiKey = apiKey;
+            return this;
+        }
+
+        public Builder modelName(String modelName) {
+            this.modelName = modelName;
+            return this;
+        }
+
+        public Builder temperature(Double temperature) {
+            this.temperature = temperature;
+            return this;
+        }
+
+        public Builder timeout(Duration timeout) {
+            this.timeout = timeout;
+            return this;
+        }
+
+        public GeminiStreamingChatModel build() {
+            if (apiKey == null || apiKey.isBlank()) {
+                throw new IllegalStateException("Clé d'API Gemini manquante");
+            }
+            return new GeminiStreamingChatModel(this);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package rag.llm;
+
+/**
+ * Levée quand un appel au LLM n'a pas obtenu de place dans le délai imparti : le service est
+ * saturé et la requête doit être refusée plutôt que mise en attente indéfiniment.
+ */
+public class SaturationException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public SaturationException(String message) {
+        super(message);
+    }
+}
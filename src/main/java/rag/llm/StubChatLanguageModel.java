@@ -0,0 +1,111 @@
+package rag.llm;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.model.output.TokenUsage;
+
+import rag.charge.DistributionLatence;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Modèle de chat factice pour les tests de charge hors ligne : il attend une latence tirée d'une
+ * distribution puis renvoie une réponse fabriquée à partir du dernier message utilisateur. La
+ * réponse ne dépend que des messages : seule la latence varie d'une exécution à l'autre.
+ */
+public class StubChatLanguageModel implements ChatLanguageModel {
+
+    private static final Pattern REQUETE = Pattern.compile("User query: (.+?)(\\n\\n|$)", Pattern.DOTALL);
+    private static final Pattern OPTION = Pattern.compile("(?m)^(\\d+): ");
+
+    private final DistributionLatence latence;
+    private final Function<String, String> reponse;
+
+    public StubChatLanguageModel(DistributionLatence latence) {
+        this(latence, StubChatLanguageModel::reponseSimulee);
+    }
+
+    /**
+     * @param reponse fabrique la réponse à partir du dernier message utilisateur
+     */
+    public StubChatLanguageModel(DistributionLatence latence, Function<String, String> reponse) {
+        this.latence = latence;
+        this.reponse = reponse;
+    }
+
+    /**
+     * Latence constante.
+     */
+    public static StubChatLanguageModel fixe(Duration latence) {
+        return new StubChatLanguageModel(DistributionLatence.fixe(latence));
+    }
+
+    /**
+     * Latence log-normale de médiane donnée : {@code sigma} règle la longueur de la queue (0,5
+     * donne un p99 d'environ 3,2 fois la médiane).
+     */
+    public static StubChatLanguageModel logNormale(Duration mediane, double sigma) {
+        return new StubChatLanguageModel(DistributionLatence.logNormale(mediane, sigma));
+    }
+
+    /**
+     * Modèle factice pour les appels auxiliaires des transformateurs et routeurs de requêtes de
+     * langchain4j : une demande de reformulation renvoie la requête telle quelle, une demande de
+     * routage désigne toutes les sources proposées. Le pipeline reste ainsi exploitable (la
+     * recherche porte sur la vraie question) tout en payant la latence de l'appel.
+     */
+    public static StubChatLanguageModel auxiliaire(DistributionLatence latence) {
+        return new StubChatLanguageModel(latence, StubChatLanguageModel::reponseAuxiliaire);
+    }
+
+    /**
+     * Modèle factice pour les résumés de conversation : la réponse reprend les {@code mots}
+     * derniers mots de la consigne, soit un résumé de taille bornée comme celui d'un vrai LLM.
+     */
+    public static StubChatLanguageModel resumeur(DistributionLatence latence, int mots) {
+        return new StubChatLanguageModel(latence, consigne -> {
+            String[] tous = consigne.trim().split("\\s+");
+            return String.join(" ", List.of(tous).subList(Math.max(0, tous.length - mots), tous.length));
+        });
+    }
+
+    static String reponseSimulee(String question) {
+        String extrait = question.length() > 80 ? question.substring(0, 80) + "…" : question;
+        return "Réponse simulée à : " + extrait;
+    }
+
+    static String reponseAuxiliaire(String prompt) {
+        Matcher options = OPTION.matcher(prompt);
+        StringBuilder numeros = new StringBuilder();
+        while (options.find()) {
+            numeros.append(numeros.length() > 0 ? ", " : "").append(options.group(1));
+        }
+        if (numeros.length() > 0) {
+            return numeros.toString();
+        }
+        Matcher requete = REQUETE.matcher(prompt);
+        return requete.find() ? requete.group(1).trim() : prompt;
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages) {
+        latence.attendre();
+        String question = "";
+        int caracteres = 0;
+        for (ChatMessage message : messages) {
+            if (message instanceof UserMessage) {
+                question = ((UserMessage) message).singleText();
+            }
+            caracteres += message.toString().length();
+        }
+        String texte = reponse.apply(question);
+        return Response.from(AiMessage.from(texte), new TokenUsage(caracteres / 4, texte.length() / 4));
+    }
+}
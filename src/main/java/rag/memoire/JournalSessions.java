@@ -0,0 +1,239 @@
+package rag.memoire;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.ChatMessageDeserializer;
+import dev.langchain4j.data.message.ChatMessageSerializer;
+import dev.langchain4j.data.message.SystemMessage;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Journal des conversations en ajout seul : une ligne JSON par événement (message ajouté, résumé
+ * remplaçant les plus anciens messages, session effacée), écrite et vidée à chaque événement. Une
+ * session se reprend après redémarrage en rejouant ses événements.
+ * <p>
+ * À l'ouverture, le journal est relu en entier et l'état de chaque session reconstitué ; si les
+ * lignes devenues inutiles (messages résumés, sessions effacées) sont plus nombreuses que les
+ * lignes utiles, le fichier est réécrit avec le seul état courant, dans un fichier temporaire
+ * ensuite renommé. Une dernière ligne tronquée (arrêt pendant une écriture) est ignorée.
+ */
+public class JournalSessions implements Closeable {
+
+    private final Path fichier;
+    private final Map<String, Etat> etats = new HashMap<>();
+    private Writer sortie;
+    private long evenements;
+
+    private JournalSessions(Path fichier) {
+        this.fichier = fichier;
+    }
+
+    public static JournalSessions ouvrir(Path fichier) {
+        JournalSessions journal = new JournalSessions(fichier);
+        try {
+            if (fichier.getParent() != null) {
+                Files.createDirectories(fichier.getParent());
+            }
+            long lignes = journal.relire();
+            long utiles = journal.lignesUtiles();
+            if (lignes > 2 * utiles && lignes > 0) {
+                journal.reecrire();
+            }
+            journal.sortie = Files.newBufferedWriter(fichier, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Ouverture du journal des sessions impossible : " + fichier, e);
+        }
+        return journal;
+    }
+
+    /**
+     * État enregistré de la session (résumé, message système, messages gardés tels quels), vide si
+     * elle est inconnue. L'état n'est rendu qu'une fois : c'est la mémoire qui le tient ensuite.
+     */
+    public synchronized Etat reprendre(Object session) {
+        Etat etat = etats.remove(String.valueOf(session));
+        return etat != null ? etat : new Etat();
+    }
+
+    public synchronized void ajouter(Object session, ChatMessage message) {
+        JsonObject evenement = evenement(session, message instanceof SystemMessage ? "systeme" : "message");
+        evenement.addProperty("message", ChatMessageSerializer.messageToJson(message));
+        ecrire(evenement);
+    }
+
+    /**
+     * Les {@code retires} plus anciens messages de la session sont remplacés par {@code resume}.
+     */
+    public synchronized void resumer(Object session, String resume, int retires) {
+        JsonObject evenement = evenement(session, "resume");
+        evenement.addProperty("resume", resume);
+        evenement.addProperty("retires", retires);
+        ecrire(evenement);
+    }
+
+    public synchronized void effacer(Object session) {
+        etats.remove(String.valueOf(session));
+        ecrire(evenement(session, "effacement"));
+    }
+
+    /**
+     * Nombre d'événements écrits depuis l'ouverture.
+     */
+    public synchronized long evenements() {
+        return evenements;
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            if (sortie != null) {
+                sortie.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static JsonObject evenement(Object session, String type) {
+        JsonObject evenement = new JsonObject();
+        evenement.addProperty("session", String.valueOf(session));
+        evenement.addProperty("type", type);
+        return evenement;
+    }
+
+    private void ecrire(JsonObject evenement) {
+        try {
+            sortie.write(evenement.toString());
+            sortie.write('\n');
+            sortie.flush();
+            evenements++;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Écriture du journal des sessions impossible : " + fichier, e);
+        }
+    }
+
+    /**
+     * Rejoue le journal dans {@link #etats} et renvoie le nombre de lignes lues.
+     */
+    private long relire() throws IOException {
+        if (!Files.exists(fichier)) {
+            return 0;
+        }
+        long lignes = 0;
+        try (BufferedReader entree = Files.newBufferedReader(fichier, StandardCharsets.UTF_8)) {
+            String ligne;
+            while ((ligne = entree.readLine()) != null) {
+                if (ligne.isBlank()) {
+                    continue;
+                }
+                lignes++;
+                JsonObject evenement;
+                try {
+                    evenement = JsonParser.parseString(ligne).getAsJsonObject();
+                } catch (JsonParseException | IllegalStateException e) {
+                    continue;
+                }
+                appliquer(evenement);
+            }
+        }
+        return lignes;
+    }
+
+    private void appliquer(JsonObject evenement) {
+        String session = evenement.get("session").getAsString();
+        switch (evenement.get("type").getAsString()) {
+            case "message":
+                etats.computeIfAbsent(session, s -> new Etat()).messages
+                        .add(ChatMessageDeserializer.messageFromJson(evenement.get("message").getAsString()));
+                break;
+            case "systeme":
+                etats.computeIfAbsent(session, s -> new Etat()).systeme =
+                        (SystemMessage) ChatMessageDeserializer.messageFromJson(evenement.get("message").getAsString());
+                break;
+            case "resume":
+                Etat etat = etats.computeIfAbsent(session, s -> new Etat());
+                int retires = Math.min(evenement.get("retires").getAsInt(), etat.messages.size());
+                etat.messages.subList(0, retires).clear();
+                etat.resume = evenement.get("resume").getAsString();
+                break;
+            case "effacement":
+                etats.remove(session);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private long lignesUtiles() {
+        long utiles = 0;
+        for (Etat etat : etats.values()) {
+            utiles += etat.messages.size() + (etat.systeme != null ? 1 : 0) + (etat.resume.isEmpty() ? 0 : 1);
+        }
+        return utiles;
+    }
+
+    private void reecrire() throws IOException {
+        Path temporaire = Files.createTempFile(fichier.toAbsolutePath().getParent(), fichier.getFileName().toString(), ".tmp");
+        try {
+            try (BufferedWriter ecriture = Files.newBufferedWriter(temporaire, StandardCharsets.UTF_8)) {
+                this.sortie = ecriture;
+                for (Map.Entry<String, Etat> session : etats.entrySet()) {
+                    Etat etat = session.getValue();
+                    if (etat.systeme != null) {
+                        ajouter(session.getKey(), etat.systeme);
+                    }
+                    if (!etat.resume.isEmpty()) {
+                        resumer(session.getKey(), etat.resume, 0);
+                    }
+                    for (ChatMessage message : etat.messages) {
+                        ajouter(session.getKey(), message);
+                    }
+                }
+            }
+            Files.move(temporaire, fichier, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            this.sortie = null;
+            this.evenements = 0;
+            Files.deleteIfExists(temporaire);
+        }
+    }
+
+    /**
+     * État d'une session reconstitué depuis le journal.
+     */
+    public static final class Etat {
+        private String resume = "";
+        private SystemMessage systeme;
+        private final List<ChatMessage> messages = new ArrayList<>();
+
+        public String resume() {
+            return resume;
+        }
+
+        public SystemMessage systeme() {
+            return systeme;
+        }
+
+        public List<ChatMessage> messages() {
+            return messages;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package rag.memoire;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.ChatMemory;
+import rag.llm.EstimateurJetons;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Mémoire d'une conversation bornée par un budget de jetons (estimés) : les tours récents sont
+ * gardés tels quels, les plus anciens sont fondus dans un résumé glissant, envoyé au LLM comme
+ * message système.
+ * <p>
+ * Quand le budget est dépassé, les plus anciens tours sont marqués « à résumer » et le résumé est
+ * demandé au LLM sur le thread de {@link MemoiresResumees}, hors du chemin de la question : ces
+ * tours restent envoyés tels quels jusqu'à ce que le nouveau résumé soit prêt. Le tour courant
+ * n'est jamais résumé. Dans les questions des tours précédents, le contexte injecté par le RAG
+ * (tout ce qui suit le marqueur de l'injecteur) est retiré : il sera de toute façon recherché à
+ * nouveau.
+ * <p>
+ * Chaque ajout et chaque résumé sont écrits dans le {@link JournalSessions} éventuel.
+ */
+public class MemoireResumee implements ChatMemory {
+
+    private final Object id;
+    private final MemoiresResumees parent;
+    private final JournalSessions journal;
+
+    private SystemMessage systeme;
+    private String resume = "";
+    private final List<ChatMessage> messages = new ArrayList<>();
+    // Les aResumer premiers messages sont ceux confiés (ou à confier) au LLM pour le résumé
+    private int aResumer;
+    private boolean resumeEnCours;
+    // Incrémenté par clear() : un résumé lancé avant est alors ignoré
+    private int generation;
+    // Jetons des derniers messages bruts, pour comparer à une fenêtre glissante classique
+    private final Deque<Integer> fenetre = new ArrayDeque<>();
+    private int jetonsFenetre;
+
+    MemoireResumee(Object id, MemoiresResumees parent, JournalSessions journal) {
+        this.id = id;
+        this.parent = parent;
+        this.journal = journal;
+        if (journal != null) {
+            JournalSessions.Etat etat = journal.reprendre(id);
+            this.systeme = etat.systeme();
+            this.resume = etat.resume();
+            for (ChatMessage message : etat.messages()) {
+                appliquer(message);
+            }
+            synchronized (this) {
+                compacter();
+            }
+        }
+    }
+
+    @Override
+    public Object id() {
+        return id;
+    }
+
+    @Override
+    public synchronized void add(ChatMessage message) {
+        if (message instanceof SystemMessage) {
+            if (message.equals(systeme)) {
+                return;
+            }
+            systeme = (SystemMessage) message;
+        } else {
+            appliquer(message);
+        }
+        if (journal != null) {
+            journal.ajouter(id, message);
+        }
+        if (message instanceof UserMessage) {
+            // Ce que coûte le tour qui commence, comparé à la fenêtre de messages bruts
+            parent.mesurer(EstimateurJetons.estimer(texte(messages())), jetonsFenetre);
+        }
+        compacter();
+    }
+
+    @Override
+    public synchronized List<ChatMessage> messages() {
+        List<ChatMessage> vue = new ArrayList<>(messages.size() + 1);
+        String consignes = systeme != null ? systeme.text() : "";
+        if (!resume.isEmpty()) {
+            consignes = (consignes.isEmpty() ? "" : consignes + "\n\n")
+                    + "Résumé de la conversation précédente :\n" + resume;
+        }
+        if (!consignes.isEmpty()) {
+            vue.add(SystemMessage.from(consignes));
+        }
+        vue.addAll(messages);
+        return vue;
+    }
+
+    @Override
+    public synchronized void clear() {
+        messages.clear();
+        resume = "";
+        systeme = null;
+        aResumer = 0;
+        generation++;
+        fenetre.clear();
+        jetonsFenetre = 0;
+        if (journal != null) {
+            journal.effacer(id);
+        }
+    }
+
+    public synchronized String resume() {
+        return resume;
+    }
+
+    /**
+     * Ajoute un message (hors système) : la question précédente perd son contexte injecté.
+     */
+    private void appliquer(ChatMessage message) {
+        if (message instanceof UserMessage) {
+            for (int i = messages.size() - 1; i >= 0; i--) {
+                if (messages.get(i) instanceof UserMessage) {
+                    messages.set(i, parent.sansContexte((UserMessage) messages.get(i)));
+                    break;
+                }
+            }
+        }
+        messages.add(message);
+        int jetons = EstimateurJetons.estimer(texte(message));
+        fenetre.addLast(jetons);
+        jetonsFenetre += jetons;
+        while (fenetre.size() > parent.fenetreReference()) {
+            jetonsFenetre -= fenetre.removeFirst();
+        }
+    }
+
+    /**
+     * Marque les plus anciens tours à résumer tant que le budget est dépassé, puis lance le
+     * résumé s'il n'y en a pas déjà un en cours.
+     */
+    private void compacter() {
+        int jetons = EstimateurJetons.estimer(texte(messages()));
+        int debutTour = aResumer;
+        while (jetons > parent.budgetJetons()) {
+            int finTour = finTour(debutTour);
+            if (finTour >= dernierTour()) {
+                break;
+            }
+            debutTour = finTour;
+            // Les tours à résumer restent envoyés jusqu'au résumé : le compte estime l'état d'après
+            for (int i = aResumer; i < finTour; i++) {
+                jetons -= EstimateurJetons.estimer(texte(messages.get(i)));
+            }
+            aResumer = finTour;
+        }
+        if (aResumer > 0 && !resumeEnCours) {
+            resumeEnCours = true;
+            parent.resumer(this, generation, resume, new ArrayList<>(messages.subList(0, aResumer)));
+        }
+    }
+
+    /**
+     * Remplace les {@code retires} premiers messages par le résumé, s'il n'y a pas eu de
+     * {@code clear()} entre-temps. {@code resume} vaut {@code null} si le LLM a échoué : les
+     * messages sont gardés et le résumé sera retenté au prochain ajout.
+     */
+    synchronized void resumeTermine(int generationLancee, String nouveauResume, int retires) {
+        resumeEnCours = false;
+        if (generationLancee != generation || nouveauResume == null) {
+            return;
+        }
+        messages.subList(0, retires).clear();
+        aResumer -= retires;
+        resume = nouveauResume;
+        if (journal != null) {
+            journal.resumer(id, nouveauResume, retires);
+        }
+        compacter();
+    }
+
+    /**
+     * Indice du premier message après le tour qui commence en {@code debut}.
+     */
+    private int finTour(int debut) {
+        int i = debut + 1;
+        while (i < messages.size() && !(messages.get(i) instanceof UserMessage)) {
+            i++;
+        }
+        return i;
+    }
+
+    private int dernierTour() {
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            if (messages.get(i) instanceof UserMessage) {
+                return i;
+            }
+        }
+        return messages.size();
+    }
+
+    static String texte(List<ChatMessage> messages) {
+        StringBuilder texte = new StringBuilder();
+        for (ChatMessage message : messages) {
+            texte.append(texte(message)).append('\n');
+        }
+        return texte.toString();
+    }
+
+    static String texte(ChatMessage message) {
+        if (message instanceof UserMessage) {
+            return ((UserMessage) message).hasSingleText() ? ((UserMessage) message).singleText() : message.toString();
+        }
+        if (message instanceof AiMessage) {
+            return ((AiMessage) message).text() != null ? ((AiMessage) message).text() : message.toString();
+        }
+        if (message instanceof SystemMessage) {
+            return ((SystemMessage) message).text();
+        }
+        return message.toString();
+    }
+}
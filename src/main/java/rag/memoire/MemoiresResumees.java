@@ -0,0 +1,234 @@
+package rag.memoire;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.chat.ChatMemoryProvider;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import rag.metrics.RegistreMetriques;
+import rag.metrics.Statistique;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fabrique des {@link MemoireResumee} d'une application : réglages communs, journal des sessions,
+ * threads des résumés et mesures. S'utilise comme {@link ChatMemoryProvider} d'{@code AiServices}
+ * (une mémoire par session) ou directement avec {@link #get(Object)}.
+ * <p>
+ * À chaque question, le nombre de jetons (estimés) de l'historique envoyé est comparé à celui
+ * d'une fenêtre glissante des {@code fenetreReference} derniers messages bruts, ce que faisait
+ * {@code MessageWindowChatMemory} : statistiques {@code rag_jetons_memoire} et
+ * {@code rag_jetons_memoire_fenetre} du registre.
+ */
+public class MemoiresResumees implements ChatMemoryProvider, AutoCloseable {
+
+    private static final String CONSIGNE = "Tu résumes une conversation entre un utilisateur et un assistant. "
+            + "Fonds le résumé existant et les nouveaux échanges en un seul résumé factuel, en français, "
+            + "de %d mots au plus. Garde les sujets abordés, les faits, chiffres, noms et préférences de "
+            + "l'utilisateur ; pas de formule d'introduction.%n%nRésumé existant :%n%s%n%nNouveaux échanges :%n%s";
+
+    private final ChatLanguageModel chatModel;
+    private final JournalSessions journal;
+    private final int budgetJetons;
+    private final int motsResume;
+    private final int fenetreReference;
+    private final String marqueurContexte;
+    private final ExecutorService executor;
+
+    private final Statistique jetonsEnvoyes;
+    private final Statistique jetonsFenetre;
+    private final AtomicLong resumes = new AtomicLong();
+    private final AtomicLong echecs = new AtomicLong();
+
+    private MemoiresResumees(Builder builder) {
+        this.chatModel = builder.chatModel;
+        this.journal = builder.journal;
+        this.budgetJetons = builder.budgetJetons;
+        this.motsResume = builder.motsResume;
+        this.fenetreReference = builder.fenetreReference;
+        this.marqueurContexte = builder.marqueurContexte;
+        this.jetonsEnvoyes = builder.metriques.statistique("rag_jetons_memoire", builder.nom);
+        this.jetonsFenetre = builder.metriques.statistique("rag_jetons_memoire_fenetre", builder.nom);
+        AtomicInteger compteur = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(builder.threads, runnable -> {
+            Thread thread = new Thread(runnable, "resume-" + compteur.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Mémoire de la session, reprise depuis le journal s'il en a une trace.
+     */
+    @Override
+    public MemoireResumee get(Object memoryId) {
+        return new MemoireResumee(memoryId, this, journal);
+    }
+
+    public String statistiques() {
+        double envoyes = jetonsEnvoyes.moyenne();
+        double fenetre = jetonsFenetre.moyenne();
+        return String.format("Mémoire : %d tour(s), %.0f jetons d'historique par question contre %.0f pour une fenêtre de %d messages (%.0f économisés par tour), %d résumé(s), %d échec(s)",
+                jetonsEnvoyes.nombre(), envoyes, fenetre, fenetreReference, fenetre - envoyes, resumes.get(), echecs.get());
+    }
+
+    /**
+     * Arrête les threads des résumés ; le journal, partagé, reste ouvert.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    int budgetJetons() {
+        return budgetJetons;
+    }
+
+    int fenetreReference() {
+        return fenetreReference;
+    }
+
+    void mesurer(int envoyes, int fenetre) {
+        jetonsEnvoyes.enregistrer(envoyes);
+        jetonsFenetre.enregistrer(fenetre);
+    }
+
+    /**
+     * Question seule, sans le contexte que l'injecteur a ajouté après le marqueur.
+     */
+    UserMessage sansContexte(UserMessage message) {
+        if (!message.hasSingleText()) {
+            return message;
+        }
+        int marqueur = message.singleText().indexOf(marqueurContexte);
+        if (marqueur < 0) {
+            return message;
+        }
+        String question = message.singleText().substring(0, marqueur);
+        return message.name() != null ? UserMessage.from(message.name(), question) : UserMessage.from(question);
+    }
+
+    /**
+     * Demande au LLM, hors du thread appelant, de fondre {@code aResumer} dans {@code resume} ;
+     * sans LLM, les messages sont simplement oubliés.
+     */
+    void resumer(MemoireResumee memoire, int generation, String resume, List<ChatMessage> aResumer) {
+        if (chatModel == null) {
+            memoire.resumeTermine(generation, resume, aResumer.size());
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                String nouveau = null;
+                try {
+                    nouveau = chatModel.generate(String.format(CONSIGNE, motsResume,
+                            resume.isEmpty() ? "(aucun)" : resume, echanges(aResumer))).trim();
+                    resumes.incrementAndGet();
+                } catch (RuntimeException e) {
+                    echecs.incrementAndGet();
+                }
+                memoire.resumeTermine(generation, nouveau, aResumer.size());
+            });
+        } catch (RejectedExecutionException e) {
+            memoire.resumeTermine(generation, null, 0);
+        }
+    }
+
+    /**
+     * Échanges préfixés par leur auteur, pour la consigne de résumé.
+     */
+    private static String echanges(List<ChatMessage> messages) {
+        StringBuilder texte = new StringBuilder();
+        for (ChatMessage message : messages) {
+            texte.append(message instanceof UserMessage ? "Utilisateur : " : "Assistant : ")
+                    .append(MemoireResumee.texte(message)).append('\n');
+        }
+        return texte.toString();
+    }
+
+    public static class Builder {
+        private ChatLanguageModel chatModel;
+        private JournalSessions journal;
+        private int budgetJetons = 1500;
+        private int motsResume = 150;
+        private int fenetreReference = 10;
+        private String marqueurContexte = "\n\nAnswer using the following information:";
+        private int threads = 1;
+        private String nom = "memoire";
+        private RegistreMetriques metriques = RegistreMetriques.global();
+
+        /**
+         * LLM qui rédige les résumés ; sans LLM, les tours hors budget sont oubliés.
+         */
+        public Builder chatModel(ChatLanguageModel chatModel) {
+            this.chatModel = chatModel;
+            return this;
+        }
+
+        /**
+         * Journal où les sessions sont enregistrées et d'où elles sont reprises (facultatif).
+         */
+        public Builder journal(JournalSessions journal) {
+            this.journal = journal;
+            return this;
+        }
+
+        /**
+         * Nombre maximal de jetons (estimés) de l'historique envoyé, résumé compris ; le tour
+         * courant est toujours gardé en entier.
+         */
+        public Builder budgetJetons(int budgetJetons) {
+            this.budgetJetons = budgetJetons;
+            return this;
+        }
+
+        public Builder motsResume(int motsResume) {
+            this.motsResume = motsResume;
+            return this;
+        }
+
+        /**
+         * Taille de la fenêtre glissante à laquelle l'historique envoyé est comparé.
+         */
+        public Builder fenetreReference(int fenetreReference) {
+            this.fenetreReference = fenetreReference;
+            return this;
+        }
+
+        /**
+         * Début du contexte ajouté par l'injecteur à la question (celui de
+         * {@code DefaultContentInjector} par défaut).
+         */
+        public Builder marqueurContexte(String marqueurContexte) {
+            this.marqueurContexte = marqueurContexte;
+            return this;
+        }
+
+        public Builder threads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        public Builder nom(String nom) {
+            this.nom = nom;
+            return this;
+        }
+
+        public Builder metriques(RegistreMetriques metriques) {
+            this.metriques = metriques;
+            return this;
+        }
+
+        public MemoiresResumees build() {
+            return new MemoiresResumees(this);
+        }
+    }
+}
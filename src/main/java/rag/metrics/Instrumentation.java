@@ -0,0 +1,330 @@
+package rag.metrics;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.StreamingResponseHandler;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.model.output.TokenUsage;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.aggregator.ContentAggregator;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.rag.query.router.QueryRouter;
+import dev.langchain4j.rag.query.transformer.QueryTransformer;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.filter.Filter;
+import rag.cache.CachingContentRetriever;
+import rag.reclassement.ReclassementContentAggregator;
+import rag.store.Versionne;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Décorateurs qui mesurent les composants du pipeline dans un {@link RegistreMetriques} :
+ * latence de chaque appel, erreurs, et selon le composant le nombre de textes embeddés, de
+ * résultats et leurs scores, de segments récupérés ou retenus, de requêtes produites, de sources choisies
+ * ou de jetons consommés.
+ * <p>
+ * Rien n'est journalisé et aucun contenu n'est conservé : chaque appel ne coûte que deux lectures
+ * d'horloge et quelques additions sans verrou. Les séries sont nommées {@code type:nom}, par
+ * exemple {@code retriever:IA} ou {@code chat:gemini}.
+ */
+public class Instrumentation {
+
+    private static final Instrumentation GLOBALE = new Instrumentation(RegistreMetriques.global());
+
+    private final RegistreMetriques registre;
+
+    public Instrumentation(RegistreMetriques registre) {
+        this.registre = registre;
+    }
+
+    /**
+     * Instrumentation sur le registre global (publié en JMX).
+     */
+    public static Instrumentation globale() {
+        return GLOBALE;
+    }
+
+    public RegistreMetriques registre() {
+        return registre;
+    }
+
+    public EmbeddingModel embeddingModel(String nom, EmbeddingModel delegate) {
+        Mesure mesure = new Mesure("embedding:" + nom);
+        LongAdder textes = registre.compteur("rag_textes_embeddes_total", mesure.composant);
+        return new EmbeddingModel() {
+            @Override
+            public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+                Response<List<Embedding>> reponse = mesure.chronometrer(() -> delegate.embedAll(segments));
+                textes.add(segments.size());
+                return reponse;
+            }
+
+            @Override
+            public int dimension() {
+                return delegate.dimension();
+            }
+        };
+    }
+
+    /**
+     * Mesure les recherches (latence, nombre de résultats, scores) et compte les ajouts. Le
+     * décorateur reste {@link Versionne} pour que les caches placés au-dessus continuent de voir
+     * les modifications du magasin.
+     */
+    public <T> EmbeddingStore<T> embeddingStore(String nom, EmbeddingStore<T> delegate) {
+        return new StoreMesure<>(new Mesure("store:" + nom), delegate);
+    }
+
+    /**
+     * Mesure un retriever ; le taux de succès d'un {@link CachingContentRetriever} est publié en
+     * plus.
+     */
+    public ContentRetriever retriever(String nom, ContentRetriever delegate) {
+        Mesure mesure = new Mesure("retriever:" + nom);
+        Statistique segments = registre.statistique("rag_segments_recuperes", mesure.composant);
+        if (delegate instanceof CachingContentRetriever) {
+            cache(mesure.composant, ((CachingContentRetriever) delegate)::tauxSucces);
+        }
+        return query -> {
+            List<Content> contenus = mesure.chronometrer(() -> delegate.retrieve(query));
+            segments.enregistrer(contenus.size());
+            return contenus;
+        };
+    }
+
+    /**
+     * Mesure un agrégateur (latence, nombre de segments retenus) ; les replis d'un
+     * {@link ReclassementContentAggregator} sont publiés en plus.
+     */
+    public ContentAggregator contentAggregator(String nom, ContentAggregator delegate) {
+        Mesure mesure = new Mesure("agregation:" + nom);
+        Statistique retenus = registre.statistique("rag_segments_retenus", mesure.composant);
+        if (delegate instanceof ReclassementContentAggregator) {
+            registre.jauge("rag_reclassement_replis", mesure.composant, ((ReclassementContentAggregator) delegate)::replis);
+        }
+        return contenus -> {
+            List<Content> agreges = mesure.chronometrer(() -> delegate.aggregate(contenus));
+            retenus.enregistrer(agreges.size());
+            return agreges;
+        };
+    }
+
+    public QueryTransformer queryTransformer(String nom, QueryTransformer delegate) {
+        Mesure mesure = new Mesure("transformation:" + nom);
+        Statistique requetes = registre.statistique("rag_requetes_produites", mesure.composant);
+        return query -> {
+            Collection<Query> transformees = mesure.chronometrer(() -> delegate.transform(query));
+            requetes.enregistrer(transformees.size());
+            return transformees;
+        };
+    }
+
+    public QueryRouter queryRouter(String nom, QueryRouter delegate) {
+        Mesure mesure = new Mesure("routage:" + nom);
+        Statistique sources = registre.statistique("rag_sources_choisies", mesure.composant);
+        return query -> {
+            Collection<ContentRetriever> choisies = mesure.chronometrer(() -> delegate.route(query));
+            sources.enregistrer(choisies.size());
+            return choisies;
+        };
+    }
+
+    public ChatLanguageModel chatModel(String nom, ChatLanguageModel delegate) {
+        Mesure mesure = new Mesure("chat:" + nom);
+        Jetons jetons = new Jetons(mesure.composant);
+        return new ChatLanguageModel() {
+            @Override
+            public Response<AiMessage> generate(List<ChatMessage> messages) {
+                Response<AiMessage> reponse = mesure.chronometrer(() -> delegate.generate(messages));
+                jetons.enregistrer(reponse.tokenUsage());
+                return reponse;
+            }
+        };
+    }
+
+    /**
+     * Mesure le délai jusqu'au premier fragment (série {@code chat:nom:premier jeton}) et jusqu'à
+     * la fin de la réponse.
+     */
+    public StreamingChatLanguageModel streamingChatModel(String nom, StreamingChatLanguageModel delegate) {
+        Mesure mesure = new Mesure("chat:" + nom);
+        LatencyHistogram premierJeton = registre.latence(mesure.composant + ":premier jeton");
+        Jetons jetons = new Jetons(mesure.composant);
+        return (messages, handler) -> {
+            long debut = System.nanoTime();
+            delegate.generate(messages, new StreamingResponseHandler<AiMessage>() {
+                private boolean premier = true;
+
+                @Override
+                public void onNext(String fragment) {
+                    if (premier) {
+                        premier = false;
+                        premierJeton.enregistrerNanos(System.nanoTime() - debut);
+                    }
+                    handler.onNext(fragment);
+                }
+
+                @Override
+                public void onComplete(Response<AiMessage> reponse) {
+                    mesure.latence.enregistrerNanos(System.nanoTime() - debut);
+                    jetons.enregistrer(reponse.tokenUsage());
+                    handler.onComplete(reponse);
+                }
+
+                @Override
+                public void onError(Throwable erreur) {
+                    mesure.erreurs.increment();
+                    handler.onError(erreur);
+                }
+            });
+        };
+    }
+
+    /**
+     * Publie le taux de succès d'un cache (entre 0 et 1).
+     */
+    public void cache(String nom, DoubleSupplier tauxSucces) {
+        registre.jauge("rag_cache_taux_succes", nom, tauxSucces);
+    }
+
+    private final class Mesure {
+        private final String composant;
+        private final LatencyHistogram latence;
+        private final LongAdder erreurs;
+
+        private Mesure(String composant) {
+            this.composant = composant;
+            this.latence = registre.latence(composant);
+            this.erreurs = registre.compteur("rag_erreurs_total", composant);
+        }
+
+        private <R> R chronometrer(Supplier<R> appel) {
+            long debut = System.nanoTime();
+            try {
+                return appel.get();
+            } catch (RuntimeException e) {
+                erreurs.increment();
+                throw e;
+            } finally {
+                latence.enregistrerNanos(System.nanoTime() - debut);
+            }
+        }
+    }
+
+    private final class Jetons {
+        private final LongAdder entree;
+        private final LongAdder sortie;
+
+        private Jetons(String composant) {
+            this.entree = registre.compteur("rag_jetons_entree_total", composant);
+            this.sortie = registre.compteur("rag_jetons_sortie_total", composant);
+        }
+
+        private void enregistrer(TokenUsage usage) {
+            if (usage == null) {
+                return;
+            }
+            if (usage.inputTokenCount() != null) {
+                entree.add(usage.inputTokenCount());
+            }
+            if (usage.outputTokenCount() != null) {
+                sortie.add(usage.outputTokenCount());
+            }
+        }
+    }
+
+    private final class StoreMesure<T> implements EmbeddingStore<T>, Versionne {
+        private final Mesure mesure;
+        private final EmbeddingStore<T> delegate;
+        private final Statistique resultats;
+        private final Statistique scores;
+        private final LongAdder ajouts;
+
+        private StoreMesure(Mesure mesure, EmbeddingStore<T> delegate) {
+            this.mesure = mesure;
+            this.delegate = delegate;
+            this.resultats = registre.statistique("rag_resultats", mesure.composant);
+            this.scores = registre.statistique("rag_scores", mesure.composant);
+            this.ajouts = registre.compteur("rag_ajouts_total", mesure.composant);
+        }
+
+        @Override
+        public EmbeddingSearchResult<T> search(EmbeddingSearchRequest request) {
+            EmbeddingSearchResult<T> resultat = mesure.chronometrer(() -> delegate.search(request));
+            resultats.enregistrer(resultat.matches().size());
+            for (EmbeddingMatch<T> match : resultat.matches()) {
+                scores.enregistrer(match.score());
+            }
+            return resultat;
+        }
+
+        @Override
+        public long version() {
+            return delegate instanceof Versionne ? ((Versionne) delegate).version() : 0;
+        }
+
+        @Override
+        public String add(Embedding embedding) {
+            ajouts.increment();
+            return delegate.add(embedding);
+        }
+
+        @Override
+        public void add(String id, Embedding embedding) {
+            ajouts.increment();
+            delegate.add(id, embedding);
+        }
+
+        @Override
+        public String add(Embedding embedding, T embedded) {
+            ajouts.increment();
+            return delegate.add(embedding, embedded);
+        }
+
+        @Override
+        public List<String> addAll(List<Embedding> embeddings) {
+            ajouts.add(embeddings.size());
+            return delegate.addAll(embeddings);
+        }
+
+        @Override
+        public List<String> addAll(List<Embedding> embeddings, List<T> embedded) {
+            ajouts.add(embeddings.size());
+            return delegate.addAll(embeddings, embedded);
+        }
+
+        @Override
+        public void remove(String id) {
+            delegate.remove(id);
+        }
+
+        @Override
+        public void removeAll(Filter filter) {
+            delegate.removeAll(filter);
+        }
+
+        @Override
+        public void removeAll(Collection<String> ids) {
+            delegate.removeAll(ids);
+        }
+
+        @Override
+        public void removeAll() {
+            delegate.removeAll();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package rag.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogramme de latences à seaux logarithmiques (8 seaux par puissance de deux, soit environ 9 %
+ * de précision relative), de la microseconde à quelques heures. L'enregistrement est sans verrou
+ * et la mémoire fixe, quel que soit le nombre de mesures.
+ */
+public class LatencyHistogram {
+
+    private static final int SOUS_SEAUX = 8;
+    private static final int PUISSANCES = 34; // 2^34 µs ≈ 4,8 h
+    private static final int SEAUX = PUISSANCES * SOUS_SEAUX;
+
+    private final String nom;
+    private final AtomicLongArray comptes = new AtomicLongArray(SEAUX);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong sommeMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    public LatencyHistogram(String nom) {
+        this.nom = nom;
+    }
+
+    public String nom() {
+        return nom;
+    }
+
+    public void enregistrer(long duree, TimeUnit unite) {
+        enregistrerNanos(unite.toNanos(duree));
+    }
+
+    public void enregistrerNanos(long nanos) {
+        long micros = Math.max(1, nanos / 1000);
+        comptes.incrementAndGet(seau(micros));
+        total.incrementAndGet();
+        sommeMicros.addAndGet(micros);
+        maxMicros.accumulateAndGet(micros, Math::max);
+    }
+
+    public long nombre() {
+        return total.get();
+    }
+
+    public double moyenneMillis() {
+        long n = total.get();
+        return n == 0 ? 0 : sommeMicros.get() / 1000.0 / n;
+    }
+
+    public double maxMillis() {
+        return maxMicros.get() / 1000.0;
+    }
+
+    /**
+     * Percentile en millisecondes (borne haute du seau qui le contient), {@code p} entre 0 et 100.
+     */
+    public double percentileMillis(double p) {
+        long n = total.get();
+        if (n == 0) {
+            return 0;
+        }
+        long rang = Math.max(1, (long) Math.ceil(p / 100 * n));
+        long cumul = 0;
+        for (int i = 0; i < SEAUX; i++) {
+            cumul += comptes.get(i);
+            if (cumul >= rang) {
+                return Math.min(borneHaute(i), maxMicros.get()) / 1000.0;
+            }
+        }
+        return maxMillis();
+    }
+
+    public void reinitialiser() {
+        for (int i = 0; i < SEAUX; i++) {
+            comptes.set(i, 0);
+        }
+        total.set(0);
+        sommeMicros.set(0);
+        maxMicros.set(0);
+    }
+
+    public String resume() {
+        return String.format("%-20s n=%-6d moy=%8.1f ms  p50=%8.1f  p95=%8.1f  p99=%8.1f  max=%8.1f",
+                nom, nombre(), moyenneMillis(), percentileMillis(50), percentileMillis(95),
+                percentileMillis(99), maxMillis());
+    }
+
+    @Override
+    public String toString() {
+        return resume();
+    }
+
+    private static int seau(long micros) {
+        int puissance = 63 - Long.numberOfLeadingZeros(micros);
+        if (puissance >= PUISSANCES) {
+            return SEAUX - 1;
+        }
+        // Les bits qui suivent le bit de poids fort choisissent le sous-seau
+        int sousSeau = puissance < 3
+                ? (int) ((micros << (3 - puissance)) & (SOUS_SEAUX - 1))
+                : (int) ((micros >>> (puissance - 3)) & (SOUS_SEAUX - 1));
+        return puissance * SOUS_SEAUX + sousSeau;
+    }
+
+    private static long borneHaute(int seau) {
+        int puissance = seau / SOUS_SEAUX;
+        int sousSeau = seau % SOUS_SEAUX;
+        double base = Math.pow(2, puissance);
+        return (long) Math.ceil(base * (1 + (sousSeau + 1) / (double) SOUS_SEAUX));
+    }
+}
@@ -0,0 +1,217 @@
+package rag.metrics;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Registre des métriques du pipeline : latences ({@link LatencyHistogram}), compteurs, statistiques
+ * (jetons, segments, scores) et jauges, chacune identifiée par une famille et un composant.
+ * <p>
+ * L'enregistrement ne prend aucun verrou : seule la création d'une série passe par la table
+ * concurrente, et les décorateurs de {@link Instrumentation} la font une fois à la construction.
+ * Les valeurs sont lues à la demande, en JMX ou au format texte de Prometheus.
+ */
+public class RegistreMetriques implements RegistreMetriquesMXBean {
+
+    private static final RegistreMetriques GLOBAL = new RegistreMetriques().publierJmx("global");
+
+    private final Map<Serie, Object> series = new ConcurrentHashMap<>();
+
+    /**
+     * Registre partagé par les points d'entrée, publié en JMX sous {@code rag:type=Metriques,nom=global}.
+     */
+    public static RegistreMetriques global() {
+        return GLOBAL;
+    }
+
+    public LatencyHistogram latence(String composant) {
+        return serie("rag_latence_ms", composant, LatencyHistogram.class, () -> new LatencyHistogram(composant));
+    }
+
+    public LongAdder compteur(String famille, String composant) {
+        return serie(famille, composant, LongAdder.class, LongAdder::new);
+    }
+
+    public Statistique statistique(String famille, String composant) {
+        return serie(famille, composant, Statistique.class, Statistique::new);
+    }
+
+    /**
+     * Histogrammes de latence enregistrés, par nom de composant.
+     */
+    public List<LatencyHistogram> latences() {
+        List<LatencyHistogram> latences = new ArrayList<>();
+        triees().values().forEach(metrique -> {
+            if (metrique instanceof LatencyHistogram) {
+                latences.add((LatencyHistogram) metrique);
+            }
+        });
+        return latences;
+    }
+
+    /**
+     * Valeur lue à chaque export (taux de succès d'un cache, taille d'une table...).
+     */
+    public void jauge(String famille, String composant, DoubleSupplier valeur) {
+        series.put(new Serie(famille, composant), valeur);
+    }
+
+    /**
+     * Publie ce registre dans le serveur JMX de la plateforme ; sans effet s'il l'est déjà.
+     */
+    public RegistreMetriques publierJmx(String nom) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+                    new ObjectName("rag:type=Metriques,nom=" + ObjectName.quote(nom)));
+        } catch (InstanceAlreadyExistsException e) {
+            // Déjà publié
+        } catch (JMException e) {
+            throw new IllegalStateException("Publication JMX impossible : " + e.getMessage(), e);
+        }
+        return this;
+    }
+
+    @Override
+    public Map<String, Double> getValeurs() {
+        Map<String, Double> valeurs = new LinkedHashMap<>();
+        triees().forEach((serie, metrique) -> {
+            String nom = serie.famille + "{composant=\"" + serie.composant + "\"}";
+            if (metrique instanceof LatencyHistogram) {
+                LatencyHistogram histogramme = (LatencyHistogram) metrique;
+                valeurs.put(nom + ".n", (double) histogramme.nombre());
+                valeurs.put(nom + ".moyenne", histogramme.moyenneMillis());
+                valeurs.put(nom + ".p50", histogramme.percentileMillis(50));
+                valeurs.put(nom + ".p95", histogramme.percentileMillis(95));
+                valeurs.put(nom + ".p99", histogramme.percentileMillis(99));
+                valeurs.put(nom + ".max", histogramme.maxMillis());
+            } else if (metrique instanceof Statistique) {
+                Statistique statistique = (Statistique) metrique;
+                valeurs.put(nom + ".n", (double) statistique.nombre());
+                valeurs.put(nom + ".moyenne", statistique.moyenne());
+                valeurs.put(nom + ".min", statistique.min());
+                valeurs.put(nom + ".max", statistique.max());
+            } else {
+                valeurs.put(nom, valeur(metrique));
+            }
+        });
+        return valeurs;
+    }
+
+    @Override
+    public String getTexte() {
+        StringBuilder texte = new StringBuilder();
+        String familleCourante = null;
+        for (Map.Entry<Serie, Object> entree : triees().entrySet()) {
+            Serie serie = entree.getKey();
+            Object metrique = entree.getValue();
+            String etiquette = "{composant=\"" + echapper(serie.composant) + "\"";
+            if (!serie.famille.equals(familleCourante)) {
+                familleCourante = serie.famille;
+                texte.append("# TYPE ").append(serie.famille).append(' ').append(type(metrique)).append('\n');
+            }
+            if (metrique instanceof LatencyHistogram) {
+                LatencyHistogram histogramme = (LatencyHistogram) metrique;
+                for (double quantile : new double[]{0.5, 0.95, 0.99}) {
+                    ligne(texte, serie.famille, etiquette + ",quantile=\"" + quantile + "\"}",
+                            histogramme.percentileMillis(quantile * 100));
+                }
+                ligne(texte, serie.famille + "_sum", etiquette + "}", histogramme.moyenneMillis() * histogramme.nombre());
+                ligne(texte, serie.famille + "_count", etiquette + "}", histogramme.nombre());
+            } else if (metrique instanceof Statistique) {
+                Statistique statistique = (Statistique) metrique;
+                ligne(texte, serie.famille + "_sum", etiquette + "}", statistique.somme());
+                ligne(texte, serie.famille + "_count", etiquette + "}", statistique.nombre());
+            } else {
+                ligne(texte, serie.famille, etiquette + "}", valeur(metrique));
+            }
+        }
+        return texte.toString();
+    }
+
+    @Override
+    public void reinitialiser() {
+        series.values().forEach(metrique -> {
+            if (metrique instanceof LatencyHistogram) {
+                ((LatencyHistogram) metrique).reinitialiser();
+            } else if (metrique instanceof Statistique) {
+                ((Statistique) metrique).reinitialiser();
+            } else if (metrique instanceof LongAdder) {
+                ((LongAdder) metrique).reset();
+            }
+        });
+    }
+
+    private <T> T serie(String famille, String composant, Class<T> type, Supplier<T> creation) {
+        Object metrique = series.computeIfAbsent(new Serie(famille, composant), cle -> creation.get());
+        if (!type.isInstance(metrique)) {
+            throw new IllegalStateException(famille + "{" + composant + "} est déjà enregistrée avec un autre type");
+        }
+        return type.cast(metrique);
+    }
+
+    private TreeMap<Serie, Object> triees() {
+        return new TreeMap<>(series);
+    }
+
+    private static String type(Object metrique) {
+        if (metrique instanceof LatencyHistogram || metrique instanceof Statistique) {
+            return "summary";
+        }
+        return metrique instanceof LongAdder ? "counter" : "gauge";
+    }
+
+    private static double valeur(Object metrique) {
+        return metrique instanceof LongAdder ? ((LongAdder) metrique).sum() : ((DoubleSupplier) metrique).getAsDouble();
+    }
+
+    private static void ligne(StringBuilder texte, String nom, String etiquettes, double valeur) {
+        texte.append(nom).append(etiquettes).append(' ')
+                .append(valeur == Math.rint(valeur) && Math.abs(valeur) < 1e15
+                        ? Long.toString((long) valeur)
+                        : String.format(Locale.ROOT, "%.4f", valeur))
+                .append('\n');
+    }
+
+    private static String echapper(String texte) {
+        return texte.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static final class Serie implements Comparable<Serie> {
+        private final String famille;
+        private final String composant;
+
+        private Serie(String famille, String composant) {
+            this.famille = famille;
+            this.composant = composant;
+        }
+
+        @Override
+        public int compareTo(Serie autre) {
+            int comparaison = famille.compareTo(autre.famille);
+            return comparaison != 0 ? comparaison : composant.compareTo(autre.composant);
+        }
+
+        @Override
+        public boolean equals(Object autre) {
+            return autre instanceof Serie && ((Serie) autre).famille.equals(famille)
+                    && ((Serie) autre).composant.equals(composant);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * famille.hashCode() + composant.hashCode();
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package rag.metrics;
+
+import java.util.Map;
+
+/**
+ * Vue JMX d'un {@link RegistreMetriques} (visible dans JConsole ou VisualVM sous {@code rag}).
+ */
+public interface RegistreMetriquesMXBean {
+
+    /**
+     * Toutes les valeurs courantes, par nom de série (par exemple
+     * {@code rag_latence_ms{composant="gemini"}.p95}).
+     */
+    Map<String, Double> getValeurs();
+
+    /**
+     * Les mêmes valeurs au format texte de Prometheus.
+     */
+    String getTexte();
+
+    void reinitialiser();
+}
@@ -0,0 +1,52 @@
+package rag.metrics;
+
+import java.util.concurrent.atomic.DoubleAccumulator;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Nombre, somme et extrêmes d'une grandeur sans unité de temps (jetons, segments, scores), sans
+ * verrou.
+ */
+public class Statistique {
+
+    private final LongAdder nombre = new LongAdder();
+    private final DoubleAdder somme = new DoubleAdder();
+    private final DoubleAccumulator min = new DoubleAccumulator(Math::min, Double.POSITIVE_INFINITY);
+    private final DoubleAccumulator max = new DoubleAccumulator(Math::max, Double.NEGATIVE_INFINITY);
+
+    public void enregistrer(double valeur) {
+        nombre.increment();
+        somme.add(valeur);
+        min.accumulate(valeur);
+        max.accumulate(valeur);
+    }
+
+    public long nombre() {
+        return nombre.sum();
+    }
+
+    public double somme() {
+        return somme.sum();
+    }
+
+    public double moyenne() {
+        long n = nombre();
+        return n == 0 ? 0 : somme() / n;
+    }
+
+    public double min() {
+        return nombre() == 0 ? 0 : min.get();
+    }
+
+    public double max() {
+        return nombre() == 0 ? 0 : max.get();
+    }
+
+    public void reinitialiser() {
+        nombre.reset();
+        somme.reset();
+        min.reset();
+        max.reset();
+    }
+}
@@ -0,0 +1,428 @@
+package rag.pipeline;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.scoring.ScoringModel;
+import dev.langchain4j.rag.DefaultRetrievalAugmentor;
+import dev.langchain4j.rag.RetrievalAugmentor;
+import dev.langchain4j.rag.content.aggregator.ContentAggregator;
+import dev.langchain4j.rag.content.injector.ContentInjector;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.content.retriever.WebSearchContentRetriever;
+import dev.langchain4j.rag.query.router.DefaultQueryRouter;
+import dev.langchain4j.rag.query.router.LanguageModelQueryRouter;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.web.search.WebSearchEngine;
+import rag.cache.CachingContentRetriever;
+import rag.cache.CachingEmbeddingModel;
+import rag.cache.CachingWebSearchEngine;
+import rag.cache.SemanticWebCache;
+import rag.ingestion.Corpus;
+import rag.ingestion.IncrementalIngestor;
+import rag.injection.CompactageContentInjector;
+import rag.memoire.JournalSessions;
+import rag.memoire.MemoiresResumees;
+import rag.metrics.Instrumentation;
+import rag.reclassement.ReclassementContentAggregator;
+import rag.retrieval.AdaptatifContentRetriever;
+import rag.retrieval.Bm25ContentRetriever;
+import rag.retrieval.CompressionConditionnelleQueryTransformer;
+import rag.retrieval.EmbeddingQueryRouter;
+import rag.retrieval.FanOutContentRetriever;
+import rag.retrieval.FusionContentRetriever;
+import rag.store.MappedEmbeddingStore;
+import rag.store.ShardedEmbeddingStore;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Predicate;
+
+/**
+ * Assemblage des pipelines RAG des points d'entrée (avancé, routage, hybride documents + web).
+ * <p>
+ * Les modèles, magasins et retrievers sont fournis par l'appelant : les programmes interactifs y
+ * passent Gemini et Tavily, le générateur de charge des composants factices, et tous exécutent
+ * ainsi la même pile {@code DefaultRetrievalAugmentor}. Les transformateurs, routeurs et
+ * retrievers créés ici sont mesurés par l'{@link Instrumentation} reçue.
+ */
+public final class Pipelines {
+
+    public static final String DESCRIPTION_IA =
+            "Documents de cours sur le RAG, le fine-tuning et l'intelligence artificielle";
+    public static final String DESCRIPTION_RECETTES =
+            "Document sur les recettes de cuisine faciles, les ingrédients et les instructions de préparation";
+
+    // Part minimale de l'information de la question qu'un segment BM25 doit couvrir
+    private static final double COUVERTURE_BM25 = 0.3;
+
+    private Pipelines() {
+    }
+
+    /**
+     * Écarte les segments vides ou presque (moins de 10 caractères utiles).
+     */
+    public static Predicate<TextSegment> filtreSegments() {
+        return segment -> segment.text() != null &&
+                segment.text().trim().length() > 10 &&
+                !segment.text().trim().matches("\\s*");
+    }
+
+    /**
+     * Ingestion incrémentale en segments de 300 caractères (chevauchement 30), réglage commun
+     * aux index {@code rag-300-30} et {@code recettes-300-30}. Les fichiers sont lus par Tika,
+     * page par page ; avec un {@link rag.embedding.ParallelEmbeddingModel}, chaque lot de segments
+     * nouveaux occupe tous ses threads.
+     */
+    public static IncrementalIngestor ingestor(MappedEmbeddingStore store, EmbeddingModel embeddingModel) {
+        return ingestor(store, embeddingModel, null, 1);
+    }
+
+    /**
+     * Même ingestion, les fichiers étant analysés jusqu'à {@code analyseurs} à la fois sur
+     * {@code analyse}, pool partagé par plusieurs ingestions ({@code null} : pool propre).
+     */
+    public static IncrementalIngestor ingestor(MappedEmbeddingStore store, EmbeddingModel embeddingModel,
+                                               ExecutorService analyse, int analyseurs) {
+        return IncrementalIngestor.builder()
+                .store(store)
+                .embeddingModel(embeddingModel)
+                .splitter(300, 30)
+                .filtre(filtreSegments())
+                .analyse(analyse)
+                .analyseurs(analyseurs)
+                .build();
+    }
+
+    /**
+     * Corpus IA : {@code -Drag.corpus.ia} (fichier, répertoire ou motif glob, {@code rag.pdf} par
+     * défaut), réparti en {@code -Drag.corpus.shards} index (1 par défaut). Avec un seul fichier et
+     * un seul shard, l'index reste {@code rag-300-30}.
+     */
+    public static Corpus corpusIA() {
+        return Corpus.depuis("rag-300-30", System.getProperty("rag.corpus.ia", "src/main/resources/rag.pdf"),
+                Integer.getInteger("rag.corpus.shards", 1));
+    }
+
+    /**
+     * Corpus Recettes : {@code -Drag.corpus.recettes} ({@code Easy_recipes.pdf} par défaut), réparti
+     * comme {@link #corpusIA()} ; index {@code recettes-300-30} par défaut.
+     */
+    public static Corpus corpusRecettes() {
+        return Corpus.depuis("recettes-300-30",
+                System.getProperty("rag.corpus.recettes", "src/main/resources/Easy_recipes.pdf"),
+                Integer.getInteger("rag.corpus.shards", 1));
+    }
+
+    public static CachingContentRetriever retriever(EmbeddingStore<TextSegment> index, EmbeddingModel modeleRequetes,
+                                                    int maxResults, double minScore) {
+        return CachingContentRetriever.builder()
+                .embeddingStore(index)
+                .embeddingModel(modeleRequetes)
+                .maxResults(maxResults)
+                .minScore(minScore)
+                .build();
+    }
+
+    /**
+     * Recherche dense dont le nombre de segments est choisi à chaque question d'après les scores :
+     * coupure {@code -Drag.recherche.coupure} ({@code coude} par défaut, {@code ecart} ou
+     * {@code fixe}), entre 1 et {@code -Drag.recherche.kMax} segments (6 par défaut) et dans
+     * {@code -Drag.recherche.budget} jetons (600 par défaut). Mesurée sous {@code adaptatif:nom}.
+     */
+    public static AdaptatifContentRetriever adaptatif(Instrumentation instrumentation, String nom,
+                                                      EmbeddingStore<TextSegment> index, EmbeddingModel modeleRequetes) {
+        return AdaptatifContentRetriever.builder()
+                .embeddingStore(index)
+                .embeddingModel(modeleRequetes)
+                .coupure(AdaptatifContentRetriever.Coupure.depuis(System.getProperty("rag.recherche.coupure", "coude")))
+                .kMax(Integer.getInteger("rag.recherche.kMax", 6))
+                .budgetJetons(Integer.getInteger("rag.recherche.budget", 600))
+                .nom(nom)
+                .metriques(instrumentation.registre())
+                .build();
+    }
+
+    /**
+     * Recherche dense et BM25 fusionnées par rang réciproque : chaque source propose ses
+     * {@code candidats} meilleurs segments et seuls les {@code maxResults} premiers après fusion
+     * sont gardés. Les deux sources sont mesurées sous {@code nom:dense} et {@code nom:bm25}.
+     * <p>
+     * Chaque source a son seuil, pour qu'une question hors sujet ne ramène pas {@code maxResults}
+     * segments faibles : score dense {@code 0.5} (cosinus positif), et pour BM25 au moins
+     * {@value #COUVERTURE_BM25} de l'information de la question.
+     */
+    public static FusionContentRetriever fusion(Instrumentation instrumentation, String nom,
+                                                EmbeddingStore<TextSegment> index, MappedEmbeddingStore store,
+                                                EmbeddingModel modeleRequetes, int maxResults) {
+        return fusion(instrumentation, nom, index, List.of(store), modeleRequetes, maxResults, 0.5);
+    }
+
+    /**
+     * Même fusion avec le seuil {@code minScore} de la recherche dense, par exemple plus bas quand
+     * un reclassement suit.
+     */
+    public static FusionContentRetriever fusion(Instrumentation instrumentation, String nom,
+                                                EmbeddingStore<TextSegment> index, MappedEmbeddingStore store,
+                                                EmbeddingModel modeleRequetes, int maxResults, double minScore) {
+        return fusion(instrumentation, nom, index, List.of(store), modeleRequetes, maxResults, minScore);
+    }
+
+    /**
+     * Même fusion sur un corpus réparti : {@code index} est la recherche dense sur tous ses shards
+     * (par exemple un {@link ShardedEmbeddingStore}) et BM25 interroge chaque shard de
+     * {@code stores}, dont les meilleurs segments sont fusionnés par score.
+     */
+    public static FusionContentRetriever fusion(Instrumentation instrumentation, String nom,
+                                                EmbeddingStore<TextSegment> index, List<MappedEmbeddingStore> stores,
+                                                EmbeddingModel modeleRequetes, int maxResults) {
+        return fusion(instrumentation, nom, index, stores, modeleRequetes, maxResults, 0.5);
+    }
+
+    /**
+     * Fusion sur un corpus réparti, avec le seuil {@code minScore} de la recherche dense.
+     */
+    public static FusionContentRetriever fusion(Instrumentation instrumentation, String nom,
+                                                EmbeddingStore<TextSegment> index, List<MappedEmbeddingStore> stores,
+                                                EmbeddingModel modeleRequetes, int maxResults, double minScore) {
+        int candidats = Math.max(10, 3 * maxResults);
+        return FusionContentRetriever.builder()
+                .source(instrumentation.retriever(nom + ":dense", retriever(index, modeleRequetes, candidats, minScore)))
+                .source(instrumentation.retriever(nom + ":bm25", Bm25ContentRetriever.builder()
+                        .stores(stores)
+                        .maxResults(candidats)
+                        .minScore(COUVERTURE_BM25)
+                        .build()))
+                .maxResults(maxResults)
+                .build();
+    }
+
+    /**
+     * RAG avancé : la question n'est reformulée par le LLM, à partir de la conversation, que si elle
+     * y fait référence ; la recherche de la question d'origine démarre pendant la reformulation.
+     * Les segments récupérés passent par {@code aggregator} (par exemple un
+     * {@link ReclassementContentAggregator}) puis sont injectés par {@code injecteur} ; l'un et
+     * l'autre peuvent être {@code null} pour garder ceux de langchain4j.
+     */
+    public static Assemblage avance(Instrumentation instrumentation, ChatLanguageModel chatModel,
+                                    ContentRetriever retriever, ContentAggregator aggregator,
+                                    ContentInjector injecteur) {
+        CompressionConditionnelleQueryTransformer compression = CompressionConditionnelleQueryTransformer.builder()
+                .chatModel(chatModel)
+                .prefetch(retriever)
+                .build();
+        DefaultRetrievalAugmentor.DefaultRetrievalAugmentorBuilder builder = DefaultRetrievalAugmentor.builder()
+                .queryTransformer(instrumentation.queryTransformer("compression", compression))
+                .contentRetriever(retriever);
+        if (aggregator != null) {
+            builder.contentAggregator(instrumentation.contentAggregator("reclassement", aggregator));
+        }
+        return new Assemblage(avecInjecteur(builder, injecteur).build(), null, null, compression);
+    }
+
+    /**
+     * Injection compactée (segments voisins fusionnés, quasi-doublons retirés) dans un budget de
+     * {@code -Drag.contexte.budget} jetons, 800 par défaut. Les passages sont embeddés par
+     * {@code modele} (celui du runtime, pas le cache des requêtes) à travers un cache qui leur est
+     * propre, mesuré sous {@code passages} : les mêmes segments reviennent d'une question à l'autre.
+     */
+    public static CompactageContentInjector compactage(Instrumentation instrumentation, EmbeddingModel modele) {
+        CachingEmbeddingModel passages = new CachingEmbeddingModel(
+                instrumentation.embeddingModel("passages", modele), 2048);
+        instrumentation.cache("passages", passages::tauxSucces);
+        return CompactageContentInjector.builder()
+                .embeddingModel(passages)
+                .budgetJetons(Integer.getInteger("rag.contexte.budget", 800))
+                .metriques(instrumentation.registre())
+                .build();
+    }
+
+    /**
+     * Reclassement par {@code scoringModel} (le cross-encoder de {@link RagRuntime#crossEncoder()}),
+     * ou {@code null} s'il n'y en a pas. Les 10 premiers candidats sont évalués en 300 ms au plus,
+     * et au plus {@code maxResults} segments et {@code budgetJetons} jetons sont gardés.
+     */
+    public static ReclassementContentAggregator reclassement(ScoringModel scoringModel, int maxResults,
+                                                             int budgetJetons) {
+        if (scoringModel == null) {
+            return null;
+        }
+        return ReclassementContentAggregator.builder()
+                .scoringModel(scoringModel)
+                .candidatsMax(10)
+                .maxResults(maxResults)
+                .budgetJetons(budgetJetons)
+                .delai(Duration.ofMillis(300))
+                .build();
+    }
+
+    /**
+     * Mémoires des sessions bornées à {@code -Drag.memoire.budget} jetons d'historique (1500 par
+     * défaut) : les tours plus anciens sont résumés par {@code chatModel} hors du chemin de la
+     * question, et les sessions sont enregistrées dans {@code journal} s'il n'est pas {@code null}.
+     */
+    public static MemoiresResumees memoires(Instrumentation instrumentation, ChatLanguageModel chatModel,
+                                            JournalSessions journal) {
+        return MemoiresResumees.builder()
+                .chatModel(chatModel)
+                .journal(journal)
+                .budgetJetons(Integer.getInteger("rag.memoire.budget", 1500))
+                .metriques(instrumentation.registre())
+                .build();
+    }
+
+    /**
+     * Moteur de recherche web dont les résultats sont gardés {@code -Drag.web.ttl} minutes (60 par
+     * défaut), en mémoire et, si {@code repertoire} n'est pas {@code null}, sur disque. Son taux de
+     * succès est publié sous {@code web}.
+     */
+    public static CachingWebSearchEngine cacheWeb(Instrumentation instrumentation, WebSearchEngine moteur,
+                                                  Path repertoire) {
+        CachingWebSearchEngine cache = CachingWebSearchEngine.builder()
+                .delegate(moteur)
+                .ttl(Duration.ofMinutes(Long.getLong("rag.web.ttl", 60)))
+                .repertoire(repertoire)
+                .build();
+        instrumentation.cache("web", cache::tauxSucces);
+        return cache;
+    }
+
+    public static Assemblage basique(ContentRetriever retriever) {
+        return new Assemblage(DefaultRetrievalAugmentor.builder()
+                .contentRetriever(retriever)
+                .build(), null, null, null);
+    }
+
+    /**
+     * Routage entre les corpus IA et Recettes : décision locale par similarité, le LLM n'étant
+     * consulté que si la question est ambiguë ; les corpus choisis sont interrogés en même temps.
+     * Chaque corpus est donné par ses index (un seul, ou un par shard).
+     */
+    public static Assemblage routage(Instrumentation instrumentation, ChatLanguageModel chatModel,
+                                     EmbeddingModel modeleRequetes,
+                                     ContentRetriever retrieverIA, List<MappedEmbeddingStore> storeIA,
+                                     ContentRetriever retrieverRecettes, List<MappedEmbeddingStore> storeRecettes,
+                                     ContentInjector injecteur) {
+        LanguageModelQueryRouter routeurLLM = new LanguageModelQueryRouter(chatModel, Map.of(
+                retrieverIA, DESCRIPTION_IA,
+                retrieverRecettes, DESCRIPTION_RECETTES));
+        EmbeddingQueryRouter routeur = EmbeddingQueryRouter.builder()
+                .embeddingModel(modeleRequetes)
+                .route("IA", retrieverIA, storeIA, DESCRIPTION_IA)
+                .route("Recettes", retrieverRecettes, storeRecettes, DESCRIPTION_RECETTES)
+                .repli(instrumentation.queryRouter("llm", routeurLLM))
+                .build();
+        FanOutContentRetriever fanOut = FanOutContentRetriever.builder()
+                .source("IA", retrieverIA, Duration.ofSeconds(2))
+                .source("Recettes", retrieverRecettes, Duration.ofSeconds(2))
+                .delaiGlobal(Duration.ofSeconds(2))
+                .build();
+        return new Assemblage(avecInjecteur(DefaultRetrievalAugmentor.builder()
+                .queryRouter(fanOut.router(instrumentation.queryRouter("corpus", routeur))), injecteur)
+                .build(), routeur, fanOut, null);
+    }
+
+    /**
+     * RAG hybride : documents locaux et recherche web interrogés en même temps ; une recherche
+     * web trop lente est abandonnée et la réponse se fait sur les documents locaux.
+     * <p>
+     * Si {@code modeleRequetes} n'est pas {@code null}, les segments du web sont gardés
+     * {@code -Drag.web.cacheSemantique} minutes (15 par défaut) dans un {@link SemanticWebCache} :
+     * une question voisine d'une recherche récente est servie sans appel au moteur. Ces segments
+     * sont embeddés par {@code modeleSegments} (le modèle du runtime), pour ne pas évincer les
+     * questions du cache {@code modeleRequetes}.
+     */
+    public static Assemblage hybride(Instrumentation instrumentation, ContentRetriever documentRetriever,
+                                     WebSearchEngine webSearchEngine, EmbeddingModel modeleRequetes,
+                                     EmbeddingModel modeleSegments, ContentInjector injecteur) {
+        ContentRetriever recherche = WebSearchContentRetriever.builder()
+                .webSearchEngine(webSearchEngine)
+                .maxResults(3)
+                .build();
+        SemanticWebCache cacheWeb = null;
+        if (modeleRequetes != null) {
+            cacheWeb = SemanticWebCache.builder()
+                    .delegate(recherche)
+                    .embeddingModel(modeleRequetes)
+                    .modeleSegments(modeleSegments)
+                    .maxResultats(3)
+                    .ttl(Duration.ofMinutes(Long.getLong("rag.web.cacheSemantique", 15)))
+                    .build();
+            instrumentation.cache("web sémantique", cacheWeb::tauxSucces);
+            recherche = cacheWeb;
+        }
+        ContentRetriever webRetriever = instrumentation.retriever("web", recherche);
+        FanOutContentRetriever fanOut = FanOutContentRetriever.builder()
+                .source("documents", documentRetriever, Duration.ofSeconds(2))
+                .source("web", webRetriever, Duration.ofSeconds(4))
+                .delaiGlobal(Duration.ofSeconds(4))
+                .build();
+        return new Assemblage(avecInjecteur(DefaultRetrievalAugmentor.builder()
+                .queryRouter(fanOut.router(new DefaultQueryRouter(documentRetriever, webRetriever))), injecteur)
+                .build(), null, fanOut, null, cacheWeb);
+    }
+
+    private static DefaultRetrievalAugmentor.DefaultRetrievalAugmentorBuilder avecInjecteur(
+            DefaultRetrievalAugmentor.DefaultRetrievalAugmentorBuilder builder, ContentInjector injecteur) {
+        return injecteur != null ? builder.contentInjector(injecteur) : builder;
+    }
+
+    /**
+     * Augmentateur assemblé, avec le routeur, le fan-out, la compression et le cache web éventuels
+     * (pour leurs statistiques).
+     */
+    public static final class Assemblage {
+
+        private final RetrievalAugmentor augmentor;
+        private final EmbeddingQueryRouter routeur;
+        private final FanOutContentRetriever fanOut;
+        private final CompressionConditionnelleQueryTransformer compression;
+        private final SemanticWebCache cacheWeb;
+
+        private Assemblage(RetrievalAugmentor augmentor, EmbeddingQueryRouter routeur, FanOutContentRetriever fanOut,
+                           CompressionConditionnelleQueryTransformer compression) {
+            this(augmentor, routeur, fanOut, compression, null);
+        }
+
+        private Assemblage(RetrievalAugmentor augmentor, EmbeddingQueryRouter routeur, FanOutContentRetriever fanOut,
+                           CompressionConditionnelleQueryTransformer compression, SemanticWebCache cacheWeb) {
+            this.augmentor = augmentor;
+            this.routeur = routeur;
+            this.fanOut = fanOut;
+            this.compression = compression;
+            this.cacheWeb = cacheWeb;
+        }
+
+        public RetrievalAugmentor augmentor() {
+            return augmentor;
+        }
+
+        public EmbeddingQueryRouter routeur() {
+            return routeur;
+        }
+
+        public FanOutContentRetriever fanOut() {
+            return fanOut;
+        }
+
+        public String statistiques() {
+            StringBuilder texte = new StringBuilder();
+            if (routeur != null) {
+                texte.append(routeur.statistiques());
+            }
+            if (fanOut != null) {
+                texte.append(texte.length() > 0 ? System.lineSeparator() : "").append(fanOut.statistiques());
+            }
+            if (compression != null) {
+                texte.append(texte.length() > 0 ? System.lineSeparator() : "").append(compression.statistiques());
+            }
+            if (cacheWeb != null) {
+                texte.append(texte.length() > 0 ? System.lineSeparator() : "").append(cacheWeb.statistiques());
+            }
+            return texte.toString();
+        }
+    }
+}
@@ -0,0 +1,416 @@
+package rag.pipeline;
+
+import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
+import dev.langchain4j.data.document.parser.apache.tika.ApacheTikaDocumentParser;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.rag.AugmentationRequest;
+import dev.langchain4j.rag.query.Metadata;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import rag.embedding.EmbeddingModelDiffere;
+import rag.embedding.ParallelEmbeddingModel;
+import rag.ingestion.Corpus;
+import rag.ingestion.IncrementalIngestor;
+import rag.llm.StubChatLanguageModel;
+import rag.memoire.JournalSessions;
+import rag.metrics.Instrumentation;
+import rag.metrics.RegistreMetriques;
+import rag.reclassement.OnnxCrossEncoder;
+import rag.store.IndexLexical;
+import rag.store.IndexRecherche;
+import rag.store.MappedEmbeddingStore;
+import rag.store.ShardedEmbeddingStore;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Composants lourds partagés par les points d'entrée d'une même JVM : le modèle d'embedding
+ * (session ONNX), le cross-encoder éventuel, les index persistants et leurs index de recherche en
+ * mémoire. Chacun est chargé une seule fois, le modèle d'embedding en arrière-plan pendant que les
+ * index s'ouvrent ; {@link #prechauffer()} fait ensuite passer quelques questions par l'embedding,
+ * la recherche dense, BM25 et le reclassement, pour que le JIT et ONNX Runtime aient compilé ces
+ * chemins avant la première vraie question.
+ * <p>
+ * Le démarrage est mesuré depuis le lancement de la JVM et publié dans le registre global
+ * ({@code rag_demarrage_ms}, par étape) : durée de chaque étape, instant où le runtime est prêt, et
+ * démarrage à froid jusqu'à la première réponse, c'est-à-dire l'instant « prêt » plus la latence
+ * de la première question (l'attente d'un utilisateur ou d'un client n'est pas comptée).
+ * <p>
+ * Le chargement des classes (Tika, PDFBox, ONNX Runtime, langchain4j) se réduit avec une archive
+ * AppCDS : {@code mvn -Pcds verify} exécute {@link #main} pour produire
+ * {@code target/rag-cds.jsa}, à passer ensuite à la JVM avec
+ * {@code -XX:SharedArchiveFile=target/rag-cds.jsa} (même classpath, jar du projet en tête).
+ * <p>
+ * Les ingestions partagent un pool borné d'analyse Tika ({@code -Drag.ingestion.analyseurs}
+ * threads, la moitié des cœurs par défaut) et les corpus répartis en plusieurs index
+ * ({@link Corpus}) un pool d'interrogation de leurs shards.
+ */
+public final class RagRuntime implements AutoCloseable {
+
+    private static final List<String> QUESTIONS = List.of(
+            "Qu'est-ce que le RAG ?",
+            "Quelle est la différence entre RAG et fine-tuning ?",
+            "Comment découper un document en segments ?",
+            "Quels ingrédients faut-il pour un gâteau au chocolat ?",
+            "How does a retriever work?");
+
+    private static RagRuntime partage;
+
+    private final Path racine;
+    private final RegistreMetriques metriques;
+    private final ParallelEmbeddingModel embeddingModel;
+    private final OnnxCrossEncoder crossEncoder;
+    private final Map<String, MappedEmbeddingStore> stores = new ConcurrentHashMap<>();
+    private final Map<String, Recherche> recherches = new ConcurrentHashMap<>();
+    private JournalSessions journalSessions;
+
+    private final int analyseurs;
+    private final ExecutorService analyse;
+    private final ExecutorService shards;
+
+    private final Map<String, Long> etapes = new LinkedHashMap<>();
+    private volatile long pretMs = -1;
+    private volatile long premiereReponseMs = -1;
+    private final AtomicBoolean premiereReponseVue = new AtomicBoolean();
+
+    private RagRuntime(Path racine, RegistreMetriques metriques) {
+        this.racine = racine;
+        this.metriques = metriques;
+        int coeurs = Runtime.getRuntime().availableProcessors();
+        this.analyseurs = Math.max(1, Integer.getInteger("rag.ingestion.analyseurs", Math.max(1, coeurs / 2)));
+        this.analyse = pool("tika", analyseurs);
+        this.shards = pool("shard", coeurs);
+        metriques.jauge("rag_demarrage_ms", "prêt", () -> pretMs);
+        metriques.jauge("rag_demarrage_ms", "première réponse", () -> premiereReponseMs);
+
+        // La session ONNX se crée en arrière-plan pendant l'ouverture des index et l'ingestion
+        this.embeddingModel = ParallelEmbeddingModel.allMiniLmL6V2(new EmbeddingModelDiffere(() -> {
+            long debutModele = System.nanoTime();
+            EmbeddingModel modele = ParallelEmbeddingModel.chargerAllMiniLmL6V2();
+            etape("modèle (arrière-plan)", debutModele);
+            return modele;
+        }));
+
+        String modele = System.getProperty("rag.reclassement.modele");
+        String tokenizer = System.getProperty("rag.reclassement.tokenizer");
+        if (modele != null && tokenizer != null) {
+            long debut = System.nanoTime();
+            this.crossEncoder = OnnxCrossEncoder.builder()
+                    .modele(Path.of(modele))
+                    .tokenizer(Path.of(tokenizer))
+                    .build();
+            etape("cross-encoder", debut);
+        } else {
+            this.crossEncoder = null;
+        }
+    }
+
+    /**
+     * Runtime de la JVM, créé au premier appel sur les index de {@code index/} ; ses mesures vont
+     * dans le registre global.
+     */
+    public static synchronized RagRuntime partage() {
+        if (partage == null) {
+            partage = new RagRuntime(Paths.get("index"), RegistreMetriques.global());
+        }
+        return partage;
+    }
+
+    public ParallelEmbeddingModel embeddingModel() {
+        return embeddingModel;
+    }
+
+    /**
+     * Cross-encoder désigné par {@code -Drag.reclassement.modele} et
+     * {@code -Drag.reclassement.tokenizer}, ou {@code null} s'ils ne sont pas renseignés.
+     */
+    public OnnxCrossEncoder crossEncoder() {
+        return crossEncoder;
+    }
+
+    /**
+     * Index persistant {@code index/<nom>}, ouvert au premier appel.
+     */
+    public MappedEmbeddingStore store(String nom) {
+        return stores.computeIfAbsent(nom, n -> {
+            long debut = System.nanoTime();
+            MappedEmbeddingStore store = MappedEmbeddingStore.ouvrir(racine.resolve(n));
+            etape("index " + n, debut);
+            return store;
+        });
+    }
+
+    /**
+     * Met l'index {@code nom} à jour à partir des fichiers (ingestion incrémentale de
+     * {@link Pipelines#ingestor}).
+     */
+    public IncrementalIngestor.Rapport ingerer(String nom, List<Path> fichiers) {
+        long debut = System.nanoTime();
+        IncrementalIngestor.Rapport rapport = Pipelines.ingestor(store(nom), embeddingModel, analyse, analyseurs)
+                .ingerer(fichiers);
+        etape("ingestion " + nom, debut);
+        return rapport;
+    }
+
+    /**
+     * Met à jour tous les index des corpus en même temps : leurs fichiers sont analysés sur le pool
+     * Tika partagé et leurs segments embeddés par lots, chaque index sur son thread.
+     *
+     * @return rapport de chaque index, par nom
+     */
+    public Map<String, IncrementalIngestor.Rapport> ingerer(Corpus... corpus) {
+        long debut = System.nanoTime();
+        Map<String, CompletableFuture<IncrementalIngestor.Rapport>> ingestions = new LinkedHashMap<>();
+        for (Corpus un : corpus) {
+            un.index().forEach((nom, fichiers) -> ingestions.put(nom,
+                    CompletableFuture.supplyAsync(() -> ingerer(nom, fichiers))));
+        }
+        Map<String, IncrementalIngestor.Rapport> rapports = new LinkedHashMap<>();
+        try {
+            ingestions.forEach((nom, ingestion) -> rapports.put(nom, ingestion.join()));
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+        etape("ingestion des corpus", debut);
+        return rapports;
+    }
+
+    /**
+     * Chemin {@code index/<nom>}, pour les données persistantes qui ne sont pas des index (caches).
+     */
+    public Path repertoire(String nom) {
+        return racine.resolve(nom);
+    }
+
+    /**
+     * Journal des conversations {@code index/sessions.jsonl}, ouvert (et compacté si besoin) au
+     * premier appel ; il est fermé avec le runtime.
+     */
+    public synchronized JournalSessions journalSessions() {
+        if (journalSessions == null) {
+            long debut = System.nanoTime();
+            journalSessions = JournalSessions.ouvrir(racine.resolve("sessions.jsonl"));
+            etape("sessions", debut);
+        }
+        return journalSessions;
+    }
+
+    /**
+     * Index de recherche en mémoire de l'index {@code nom} ({@link IndexRecherche}), construit une
+     * fois par version de l'index persistant.
+     */
+    public EmbeddingStore<TextSegment> recherche(String nom) {
+        MappedEmbeddingStore store = store(nom);
+        Recherche recherche = recherches.compute(nom, (n, actuelle) -> {
+            if (actuelle != null && actuelle.version == store.version()) {
+                return actuelle;
+            }
+            long debut = System.nanoTime();
+            Recherche nouvelle = new Recherche(store.version(), IndexRecherche.depuis(store));
+            etape("recherche " + n, debut);
+            return nouvelle;
+        });
+        return recherche.index;
+    }
+
+    /**
+     * Recherche dense sur tous les index du corpus : l'index de recherche du seul index, ou un
+     * {@link ShardedEmbeddingStore} qui interroge chacun en même temps et fusionne leurs top-k.
+     * À appeler après chaque ingestion, les index de recherche étant ceux de la version courante.
+     */
+    public EmbeddingStore<TextSegment> recherche(Corpus corpus) {
+        List<String> noms = new ArrayList<>(corpus.index().keySet());
+        if (noms.size() == 1) {
+            return recherche(noms.get(0));
+        }
+        ShardedEmbeddingStore.Builder builder = ShardedEmbeddingStore.builder().executor(shards);
+        noms.forEach(nom -> builder.shard(recherche(nom)));
+        return builder.build();
+    }
+
+    /**
+     * Index persistants du corpus, dans l'ordre de leurs noms.
+     */
+    public List<MappedEmbeddingStore> stores(Corpus corpus) {
+        List<MappedEmbeddingStore> liste = new ArrayList<>();
+        corpus.index().keySet().forEach(nom -> liste.add(store(nom)));
+        return liste;
+    }
+
+    /**
+     * Fait passer quelques questions par l'embedding (requête seule et lot), la recherche dense et
+     * BM25 de chaque index ouvert, puis le cross-encoder, sans toucher aux caches ni aux mesures
+     * des pipelines ; le runtime est ensuite déclaré prêt. Le nombre de passages se règle avec
+     * {@code -Drag.prechauffage.iterations} (20 par défaut, 0 pour ne pas préchauffer).
+     */
+    public synchronized RagRuntime prechauffer() {
+        if (pretMs >= 0) {
+            return this;
+        }
+        long debut = System.nanoTime();
+        int iterations = Integer.getInteger("rag.prechauffage.iterations", 20);
+        Map<String, IndexLexical> lexicaux = new LinkedHashMap<>();
+        for (Map.Entry<String, MappedEmbeddingStore> store : stores.entrySet()) {
+            if (!store.getValue().estVide()) {
+                lexicaux.put(store.getKey(), IndexLexical.ouvrir(store.getValue()));
+            }
+        }
+
+        List<TextSegment> candidats = new ArrayList<>();
+        for (int i = 0; i < iterations; i++) {
+            String question = QUESTIONS.get(i % QUESTIONS.size());
+            Embedding embedding = embeddingModel.embed(question).content();
+            for (Map.Entry<String, IndexLexical> lexical : lexicaux.entrySet()) {
+                List<EmbeddingMatch<TextSegment>> resultats = recherche(lexical.getKey()).search(
+                        EmbeddingSearchRequest.builder()
+                                .queryEmbedding(embedding)
+                                .maxResults(10)
+                                .build()).matches();
+                lexical.getValue().rechercher(question, 10);
+                if (candidats.isEmpty()) {
+                    resultats.forEach(resultat -> candidats.add(resultat.embedded()));
+                }
+            }
+        }
+        if (iterations > 0 && !candidats.isEmpty()) {
+            // Chemin des lots (ingestion) et du reclassement, avec des segments réels
+            embeddingModel.embedAll(candidats);
+            if (crossEncoder != null) {
+                for (int i = 0; i < Math.min(iterations, 5); i++) {
+                    crossEncoder.scoreAll(candidats, QUESTIONS.get(i % QUESTIONS.size()));
+                }
+            }
+        }
+        etape("préchauffage", debut);
+        pretMs = depuisLancement();
+        return this;
+    }
+
+    /**
+     * Signale une réponse commencée à {@code debutNanos} ({@link System#nanoTime()}) ; seule la
+     * première est retenue, comme démarrage à froid jusqu'à la première réponse.
+     */
+    public void reponse(long debutNanos) {
+        if (premiereReponseVue.compareAndSet(false, true)) {
+            long pret = pretMs >= 0 ? pretMs : depuisLancement();
+            premiereReponseMs = pret + (System.nanoTime() - debutNanos) / 1_000_000;
+        }
+    }
+
+    public String statistiques() {
+        StringBuilder texte = new StringBuilder("Démarrage :");
+        synchronized (etapes) {
+            etapes.forEach((etape, ms) -> texte.append(' ').append(etape).append(' ').append(ms).append(" ms,"));
+        }
+        texte.append(pretMs >= 0 ? " prêt à " + pretMs + " ms" : " non préchauffé");
+        if (premiereReponseMs >= 0) {
+            texte.append(", première réponse à ").append(premiereReponseMs).append(" ms");
+        }
+        return texte.append(" (depuis le lancement de la JVM)").toString();
+    }
+
+    private void etape(String nom, long debutNanos) {
+        long ms = (System.nanoTime() - debutNanos) / 1_000_000;
+        synchronized (etapes) {
+            etapes.merge(nom, ms, Long::sum);
+        }
+        metriques.jauge("rag_demarrage_ms", nom, () -> {
+            synchronized (etapes) {
+                return etapes.get(nom);
+            }
+        });
+    }
+
+    private static ExecutorService pool(String nom, int threads) {
+        AtomicInteger compteur = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, nom + "-" + compteur.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static long depuisLancement() {
+        return ManagementFactory.getRuntimeMXBean().getUptime();
+    }
+
+    @Override
+    public void close() {
+        analyse.shutdownNow();
+        shards.shutdownNow();
+        embeddingModel.close();
+        if (crossEncoder != null) {
+            crossEncoder.close();
+        }
+        stores.values().forEach(MappedEmbeddingStore::close);
+        synchronized (this) {
+            if (journalSessions != null) {
+                journalSessions.close();
+            }
+        }
+    }
+
+    private static final class Recherche {
+        private final long version;
+        private final EmbeddingStore<TextSegment> index;
+
+        private Recherche(long version, EmbeddingStore<TextSegment> index) {
+            this.version = version;
+            this.index = index;
+        }
+    }
+
+    /**
+     * Exécution d'entraînement pour l'archive AppCDS : ingestion des deux corpus, analyse Tika des
+     * PDF, préchauffage et quelques questions à travers le pipeline avancé (LLM factice), afin que
+     * la JVM charge le graphe de classes d'une exécution réelle.
+     */
+    public static void main(String[] args) {
+        RagRuntime runtime = partage();
+        List<Path> ia = List.of(Paths.get("src/main/resources/rag.pdf"));
+        List<Path> recettes = List.of(Paths.get("src/main/resources/Easy_recipes.pdf"));
+        runtime.ingerer(Pipelines.corpusIA(), Pipelines.corpusRecettes())
+                .forEach((nom, rapport) -> System.out.println("Ingestion " + nom + " : " + rapport));
+        // L'ingestion ne relit pas les fichiers inchangés : l'analyse est forcée ici
+        ApacheTikaDocumentParser parser = new ApacheTikaDocumentParser();
+        for (Path fichier : List.of(ia.get(0), recettes.get(0))) {
+            FileSystemDocumentLoader.loadDocument(fichier, parser);
+        }
+
+        MappedEmbeddingStore store = runtime.store("rag-300-30");
+        runtime.recherche("recettes-300-30");
+        Instrumentation instrumentation = new Instrumentation(new RegistreMetriques());
+        Pipelines.Assemblage assemblage = Pipelines.avance(instrumentation, StubChatLanguageModel.fixe(Duration.ZERO),
+                Pipelines.fusion(instrumentation, "IA", runtime.recherche("rag-300-30"), store,
+                        runtime.embeddingModel(), 3),
+                Pipelines.reclassement(runtime.crossEncoder(), 3, 400),
+                Pipelines.compactage(instrumentation, runtime.embeddingModel()));
+        runtime.prechauffer();
+        for (String question : QUESTIONS) {
+            long debut = System.nanoTime();
+            UserMessage message = UserMessage.from(question);
+            assemblage.augmentor().augment(new AugmentationRequest(message, Metadata.from(message, "cds", List.of())));
+            runtime.reponse(debut);
+        }
+        System.out.println(runtime.statistiques());
+        runtime.close();
+    }
+}
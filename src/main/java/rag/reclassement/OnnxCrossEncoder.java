@@ -0,0 +1,168 @@
+package rag.reclassement;
+
+import ai.djl.huggingface.tokenizers.Encoding;
+import ai.djl.huggingface.tokenizers.HuggingFaceTokenizer;
+import ai.djl.util.PairList;
+import ai.onnxruntime.OnnxTensor;
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.model.scoring.ScoringModel;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cross-encoder ONNX exécuté sur CPU (par exemple {@code ms-marco-MiniLM-L-6-v2} exporté en ONNX,
+ * avec son {@code tokenizer.json}) : chaque paire (requête, segment) est encodée ensemble et le
+ * modèle renvoie un logit de pertinence, ramené entre 0 et 1 par une sigmoïde.
+ * <p>
+ * Les paires sont évaluées par lots (une seule inférence par lot, séquences complétées à la plus
+ * longue) ; le segment est tronqué si la paire dépasse la longueur maximale du modèle, jamais la
+ * requête. ONNX Runtime et le tokenizer sont ceux déjà utilisés par les modèles d'embedding
+ * locaux.
+ */
+public class OnnxCrossEncoder implements ScoringModel, AutoCloseable {
+
+    private final OrtEnvironment environnement;
+    private final OrtSession session;
+    private final HuggingFaceTokenizer tokenizer;
+    private final boolean typesAttendus;
+    private final int tailleLot;
+
+    private OnnxCrossEncoder(Builder builder) {
+        try {
+            this.environnement = OrtEnvironment.getEnvironment();
+            OrtSession.SessionOptions options = new OrtSession.SessionOptions();
+            options.setIntraOpNumThreads(builder.threads);
+            options.setOptimizationLevel(OrtSession.SessionOptions.OptLevel.ALL_OPT);
+            this.session = environnement.createSession(builder.modele.toString(), options);
+            this.typesAttendus = session.getInputNames().contains("token_type_ids");
+        } catch (OrtException e) {
+            throw new IllegalStateException("Chargement du cross-encoder impossible : " + builder.modele, e);
+        }
+        try {
+            this.tokenizer = HuggingFaceTokenizer.builder()
+                    .optTokenizerPath(builder.tokenizer)
+                    .optMaxLength(builder.longueurMax)
+                    .optTruncateSecondOnly()
+                    .optPadding(true)
+                    .build();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Lecture du tokenizer impossible : " + builder.tokenizer, e);
+        }
+        this.tailleLot = builder.tailleLot;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public Response<List<Double>> scoreAll(List<TextSegment> segments, String query) {
+        List<Double> scores = new ArrayList<>(segments.size());
+        for (int debut = 0; debut < segments.size(); debut += tailleLot) {
+            scores.addAll(evaluer(segments.subList(debut, Math.min(segments.size(), debut + tailleLot)), query));
+        }
+        return Response.from(scores);
+    }
+
+    private List<Double> evaluer(List<TextSegment> lot, String requete) {
+        PairList<String, String> paires = new PairList<>(lot.size());
+        for (TextSegment segment : lot) {
+            paires.add(requete, segment.text());
+        }
+        Encoding[] encodages = tokenizer.batchEncode(paires);
+        long[][] ids = new long[encodages.length][];
+        long[][] masques = new long[encodages.length][];
+        long[][] types = new long[encodages.length][];
+        for (int i = 0; i < encodages.length; i++) {
+            ids[i] = encodages[i].getIds();
+            masques[i] = encodages[i].getAttentionMask();
+            types[i] = encodages[i].getTypeIds();
+        }
+
+        Map<String, OnnxTensor> entrees = new HashMap<>();
+        try {
+            entrees.put("input_ids", OnnxTensor.createTensor(environnement, ids));
+            entrees.put("attention_mask", OnnxTensor.createTensor(environnement, masques));
+            if (typesAttendus) {
+                entrees.put("token_type_ids", OnnxTensor.createTensor(environnement, types));
+            }
+            try (OrtSession.Result resultat = session.run(entrees)) {
+                float[][] logits = (float[][]) resultat.get(0).getValue();
+                List<Double> scores = new ArrayList<>(logits.length);
+                for (float[] logit : logits) {
+                    // Une sortie à deux classes donne la pertinence dans sa dernière colonne
+                    scores.add(1 / (1 + Math.exp(-logit[logit.length - 1])));
+                }
+                return scores;
+            }
+        } catch (OrtException e) {
+            throw new IllegalStateException("Inférence du cross-encoder impossible : " + e.getMessage(), e);
+        } finally {
+            entrees.values().forEach(OnnxTensor::close);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            session.close();
+        } catch (OrtException e) {
+            throw new IllegalStateException(e);
+        }
+        tokenizer.close();
+    }
+
+    public static class Builder {
+        private Path modele;
+        private Path tokenizer;
+        private int longueurMax = 512;
+        private int tailleLot = 16;
+        private int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+        public Builder modele(Path modele) {
+            this.modele = modele;
+            return this;
+        }
+
+        public Builder tokenizer(Path tokenizer) {
+            this.tokenizer = tokenizer;
+            return this;
+        }
+
+        public Builder longueurMax(int longueurMax) {
+            this.longueurMax = longueurMax;
+            return this;
+        }
+
+        public Builder tailleLot(int tailleLot) {
+            this.tailleLot = tailleLot;
+            return this;
+        }
+
+        /**
+         * Threads ONNX Runtime par inférence (la moitié des cœurs par défaut, l'autre restant aux
+         * requêtes concurrentes).
+         */
+        public Builder threads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        public OnnxCrossEncoder build() {
+            if (modele == null || tokenizer == null) {
+                throw new IllegalStateException("modele et tokenizer sont obligatoires");
+            }
+            return new OnnxCrossEncoder(this);
+        }
+    }
+}
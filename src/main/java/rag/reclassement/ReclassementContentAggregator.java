@@ -0,0 +1,231 @@
+package rag.reclassement;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.scoring.ScoringModel;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.aggregator.ContentAggregator;
+import dev.langchain4j.rag.content.aggregator.ReciprocalRankFuser;
+import dev.langchain4j.rag.query.Query;
+import rag.llm.EstimateurJetons;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link ContentAggregator} qui reclasse les candidats avec un {@link ScoringModel} (typiquement
+ * un {@link OnnxCrossEncoder}) puis ne garde que les meilleurs dans un budget de jetons.
+ * <p>
+ * Les listes reçues sont d'abord fusionnées par rang réciproque, comme le fait
+ * {@code DefaultContentAggregator}, et les {@code candidatsMax} premiers sont évalués en un seul
+ * appel à {@code scoreAll} contre la requête. L'évaluation a une échéance : passé le délai (ou en
+ * cas d'erreur du modèle), l'ordre de la fusion est gardé tel quel, de sorte que le reclassement
+ * n'ajoute jamais plus que ce délai à la latence d'une question.
+ * <p>
+ * Les segments sont ensuite retenus dans l'ordre tant que leur score atteint {@code minScore},
+ * qu'il y en a moins de {@code maxResults} et que le budget n'est pas dépassé ; le premier est
+ * toujours gardé.
+ */
+public class ReclassementContentAggregator implements ContentAggregator, AutoCloseable {
+
+    private final ScoringModel scoringModel;
+    private final int candidatsMax;
+    private final int maxResults;
+    private final double minScore;
+    private final int budgetJetons;
+    private final long delaiNanos;
+    private final ExecutorService executor;
+
+    private final AtomicLong reclassements = new AtomicLong();
+    private final AtomicLong replis = new AtomicLong();
+    private final AtomicLong jetonsCandidats = new AtomicLong();
+    private final AtomicLong jetonsRetenus = new AtomicLong();
+
+    private ReclassementContentAggregator(Builder builder) {
+        this.scoringModel = builder.scoringModel;
+        this.candidatsMax = builder.candidatsMax;
+        this.maxResults = builder.maxResults;
+        this.minScore = builder.minScore;
+        this.budgetJetons = builder.budgetJetons;
+        this.delaiNanos = builder.delai.toNanos();
+        AtomicInteger compteur = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(builder.threads, runnable -> {
+            Thread thread = new Thread(runnable, "reclassement-" + compteur.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public List<Content> aggregate(Map<Query, Collection<List<Content>>> contenusParRequete) {
+        List<List<Content>> listes = new ArrayList<>();
+        contenusParRequete.values().forEach(listes::addAll);
+        List<Content> candidats = ReciprocalRankFuser.fuse(listes);
+        if (candidats.isEmpty()) {
+            return candidats;
+        }
+        candidats = candidats.subList(0, Math.min(candidatsMax, candidats.size()));
+
+        double[] scores = evaluer(requete(contenusParRequete), candidats);
+        List<Integer> ordre = new ArrayList<>();
+        for (int i = 0; i < candidats.size(); i++) {
+            ordre.add(i);
+        }
+        if (scores != null) {
+            ordre.sort(Comparator.comparingDouble((Integer i) -> scores[i]).reversed());
+        }
+
+        List<Content> retenus = new ArrayList<>(maxResults);
+        int jetons = 0;
+        for (int i : ordre) {
+            int cout = EstimateurJetons.estimer(candidats.get(i).textSegment().text());
+            jetonsCandidats.addAndGet(cout);
+            if (retenus.isEmpty()
+                    || (retenus.size() < maxResults
+                    && (scores == null || scores[i] >= minScore)
+                    && jetons + cout <= budgetJetons)) {
+                retenus.add(candidats.get(i));
+                jetons += cout;
+            }
+        }
+        jetonsRetenus.addAndGet(jetons);
+        return retenus;
+    }
+
+    /**
+     * Scores des candidats, ou {@code null} si le modèle n'a pas répondu dans le délai.
+     */
+    private double[] evaluer(String requete, List<Content> candidats) {
+        List<TextSegment> segments = new ArrayList<>(candidats.size());
+        for (Content candidat : candidats) {
+            segments.add(candidat.textSegment());
+        }
+        Future<List<Double>> evaluation = executor.submit(() -> scoringModel.scoreAll(segments, requete).content());
+        try {
+            List<Double> scores = evaluation.get(delaiNanos, TimeUnit.NANOSECONDS);
+            reclassements.incrementAndGet();
+            return scores.stream().mapToDouble(Double::doubleValue).toArray();
+        } catch (TimeoutException | ExecutionException e) {
+            evaluation.cancel(true);
+            replis.incrementAndGet();
+            return null;
+        } catch (InterruptedException e) {
+            evaluation.cancel(true);
+            Thread.currentThread().interrupt();
+            replis.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Texte contre lequel les candidats sont évalués : la requête elle-même, ou la plus longue si
+     * la requête d'origine a été développée en plusieurs.
+     */
+    private static String requete(Map<Query, Collection<List<Content>>> contenusParRequete) {
+        String texte = "";
+        for (Query query : contenusParRequete.keySet()) {
+            if (query.text().length() > texte.length()) {
+                texte = query.text();
+            }
+        }
+        return texte;
+    }
+
+    /**
+     * Nombre de questions dont les candidats n'ont pas pu être reclassés (délai dépassé ou
+     * erreur du modèle).
+     */
+    public long replis() {
+        return replis.get();
+    }
+
+    public String statistiques() {
+        long total = reclassements.get() + replis.get();
+        return String.format("Reclassement : %d question(s), %d repli(s) sur l'ordre de fusion ; contexte %d -> %d jetons estimés",
+                total, replis.get(), jetonsCandidats.get(), jetonsRetenus.get());
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    public static class Builder {
+        private ScoringModel scoringModel;
+        private int candidatsMax = 10;
+        private int maxResults = 3;
+        private double minScore = 0;
+        private int budgetJetons = Integer.MAX_VALUE;
+        private Duration delai = Duration.ofMillis(500);
+        private int threads = 2;
+
+        public Builder scoringModel(ScoringModel scoringModel) {
+            this.scoringModel = scoringModel;
+            return this;
+        }
+
+        /**
+         * Nombre de candidats évalués par question, après fusion.
+         */
+        public Builder candidatsMax(int candidatsMax) {
+            this.candidatsMax = candidatsMax;
+            return this;
+        }
+
+        public Builder maxResults(int maxResults) {
+            this.maxResults = maxResults;
+            return this;
+        }
+
+        public Builder minScore(double minScore) {
+            this.minScore = minScore;
+            return this;
+        }
+
+        /**
+         * Nombre maximal de jetons (estimés) de segments envoyés au LLM.
+         */
+        public Builder budgetJetons(int budgetJetons) {
+            this.budgetJetons = budgetJetons;
+            return this;
+        }
+
+        /**
+         * Temps accordé au modèle de reclassement avant de garder l'ordre de la fusion.
+         */
+        public Builder delai(Duration delai) {
+            this.delai = delai;
+            return this;
+        }
+
+        /**
+         * Évaluations simultanées au plus (les suivantes attendent et peuvent tomber en repli).
+         */
+        public Builder threads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        public ReclassementContentAggregator build() {
+            if (scoringModel == null) {
+                throw new IllegalStateException("scoringModel est obligatoire");
+            }
+            return new ReclassementContentAggregator(this);
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package rag.retrieval;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import rag.llm.EstimateurJetons;
+import rag.metrics.RegistreMetriques;
+import rag.metrics.Statistique;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Recherche dense dont le nombre de segments gardés est choisi à chaque question d'après la
+ * distribution des scores, au lieu d'un couple {@code (maxResults, minScore)} fixe.
+ * <p>
+ * Les {@code candidats} meilleurs segments au-dessus du plancher {@code minScore} sont demandés
+ * au magasin, puis coupés entre {@code kMin} et {@code kMax} selon la {@link Coupure} :
+ * <ul>
+ *     <li>{@link Coupure#ECART} : coupure au plus grand écart entre deux scores consécutifs ; si
+ *     aucun écart n'atteint {@code ecartMin}, les scores sont jugés équivalents et {@code kMax}
+ *     segments sont gardés ;</li>
+ *     <li>{@link Coupure#COUDE} : coupure au coude de la courbe des scores, le point le plus
+ *     éloigné sous la droite qui joint le premier et le dernier candidat ;</li>
+ *     <li>{@link Coupure#FIXE} : {@code kMax} segments, comme un retriever classique.</li>
+ * </ul>
+ * Les segments retenus sont enfin limités à {@code budgetJetons} jetons (estimés), le premier
+ * étant toujours gardé. Le nombre de segments et les jetons renvoyés sont enregistrés à chaque
+ * question dans les statistiques {@code rag_k_recherche} et {@code rag_jetons_recherche}.
+ */
+public class AdaptatifContentRetriever implements ContentRetriever {
+
+    public enum Coupure {
+        FIXE, ECART, COUDE;
+
+        /**
+         * Coupure désignée par {@code nom} ({@code fixe}, {@code ecart} ou {@code coude}).
+         */
+        public static Coupure depuis(String nom) {
+            return valueOf(nom.trim().toUpperCase(Locale.ROOT).replace('É', 'E'));
+        }
+    }
+
+    private final EmbeddingStore<TextSegment> embeddingStore;
+    private final EmbeddingModel embeddingModel;
+    private final Coupure coupure;
+    private final int candidats;
+    private final int kMin;
+    private final int kMax;
+    private final double minScore;
+    private final double ecartMin;
+    private final int budgetJetons;
+    private final Statistique segments;
+    private final Statistique jetons;
+
+    private AdaptatifContentRetriever(Builder builder) {
+        this.embeddingStore = builder.embeddingStore;
+        this.embeddingModel = builder.embeddingModel;
+        this.coupure = builder.coupure;
+        this.kMin = builder.kMin;
+        this.kMax = builder.kMax;
+        this.candidats = Math.max(builder.candidats, builder.kMax + 1);
+        this.minScore = builder.minScore;
+        this.ecartMin = builder.ecartMin;
+        this.budgetJetons = builder.budgetJetons;
+        String composant = "adaptatif:" + builder.nom;
+        this.segments = builder.metriques.statistique("rag_k_recherche", composant);
+        this.jetons = builder.metriques.statistique("rag_jetons_recherche", composant);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public List<Content> retrieve(Query query) {
+        Embedding embedding = embeddingModel.embed(query.text()).content();
+        List<EmbeddingMatch<TextSegment>> resultats = embeddingStore.search(EmbeddingSearchRequest.builder()
+                .queryEmbedding(embedding)
+                .maxResults(candidats)
+                .minScore(minScore)
+                .build()).matches();
+
+        double[] scores = new double[resultats.size()];
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = resultats.get(i).score();
+        }
+        int k = couper(scores);
+
+        List<Content> contenus = new ArrayList<>(k);
+        int total = 0;
+        for (EmbeddingMatch<TextSegment> resultat : resultats.subList(0, k)) {
+            int cout = EstimateurJetons.estimer(resultat.embedded().text());
+            if (!contenus.isEmpty() && total + cout > budgetJetons) {
+                break;
+            }
+            contenus.add(Content.from(resultat.embedded()));
+            total += cout;
+        }
+        segments.enregistrer(contenus.size());
+        jetons.enregistrer(total);
+        return contenus;
+    }
+
+    /**
+     * Nombre de segments à garder parmi des scores triés par ordre décroissant.
+     */
+    private int couper(double[] scores) {
+        int n = scores.length;
+        int min = Math.min(kMin, n);
+        int max = Math.min(kMax, n);
+        if (n <= min) {
+            return n;
+        }
+        switch (coupure) {
+            case ECART:
+                return ecart(scores, min, max);
+            case COUDE:
+                return coude(scores, min, max);
+            default:
+                return max;
+        }
+    }
+
+    private int ecart(double[] scores, int min, int max) {
+        int meilleur = max;
+        double plusGrand = 0;
+        for (int k = Math.max(min, 1); k <= max; k++) {
+            // Garder k segments, c'est couper entre scores[k - 1] et le suivant (ou le plancher)
+            double ecart = scores[k - 1] - (k < scores.length ? scores[k] : minScore);
+            if (ecart > plusGrand) {
+                plusGrand = ecart;
+                meilleur = k;
+            }
+        }
+        return plusGrand >= ecartMin ? meilleur : max;
+    }
+
+    private static int coude(double[] scores, int min, int max) {
+        int n = scores.length;
+        if (n < 3) {
+            return max;
+        }
+        double premier = scores[0];
+        double pente = (scores[n - 1] - premier) / (n - 1);
+        int meilleur = max;
+        double plusLoin = 0;
+        for (int i = 1; i < n - 1; i++) {
+            double sousLaDroite = premier + pente * i - scores[i];
+            if (sousLaDroite > plusLoin) {
+                plusLoin = sousLaDroite;
+                meilleur = i;
+            }
+        }
+        // Le coude est le premier point de la partie basse : on garde ceux qui le précèdent
+        return Math.max(min, Math.min(max, meilleur));
+    }
+
+    public String statistiques() {
+        return String.format("Recherche adaptative (%s) : %d question(s), %.1f segment(s) en moyenne (%.0f à %.0f), %.0f jetons de contexte par question",
+                coupure.name().toLowerCase(Locale.ROOT), segments.nombre(), segments.moyenne(),
+                segments.nombre() > 0 ? segments.min() : 0.0, segments.nombre() > 0 ? segments.max() : 0.0,
+                jetons.moyenne());
+    }
+
+    public static class Builder {
+        private EmbeddingStore<TextSegment> embeddingStore;
+        private EmbeddingModel embeddingModel;
+        private Coupure coupure = Coupure.COUDE;
+        private int candidats = 10;
+        private int kMin = 1;
+        private int kMax = 6;
+        private double minScore = 0.5;
+        private double ecartMin = 0.03;
+        private int budgetJetons = 600;
+        private String nom = "dense";
+        private RegistreMetriques metriques = RegistreMetriques.global();
+
+        public Builder embeddingStore(EmbeddingStore<TextSegment> embeddingStore) {
+            this.embeddingStore = embeddingStore;
+            return this;
+        }
+
+        public Builder embeddingModel(EmbeddingModel embeddingModel) {
+            this.embeddingModel = embeddingModel;
+            return this;
+        }
+
+        public Builder coupure(Coupure coupure) {
+            this.coupure = coupure;
+            return this;
+        }
+
+        /**
+         * Nombre de segments demandés au magasin avant la coupure (10 par défaut, au moins
+         * {@code kMax + 1} pour que la coupure après le dernier gardé soit visible).
+         */
+        public Builder candidats(int candidats) {
+            this.candidats = candidats;
+            return this;
+        }
+
+        public Builder kMin(int kMin) {
+            this.kMin = kMin;
+            return this;
+        }
+
+        public Builder kMax(int kMax) {
+            this.kMax = kMax;
+            return this;
+        }
+
+        /**
+         * Plancher de score des candidats (0,5 par défaut, soit un cosinus nul) : en dessous, un
+         * segment n'est jamais gardé.
+         */
+        public Builder minScore(double minScore) {
+            this.minScore = minScore;
+            return this;
+        }
+
+        /**
+         * Écart de score en dessous duquel {@link Coupure#ECART} ne coupe pas (0,03 par défaut,
+         * les scores de langchain4j valant {@code (cosinus + 1) / 2}).
+         */
+        public Builder ecartMin(double ecartMin) {
+            this.ecartMin = ecartMin;
+            return this;
+        }
+
+        public Builder budgetJetons(int budgetJetons) {
+            this.budgetJetons = budgetJetons;
+            return this;
+        }
+
+        public Builder nom(String nom) {
+            this.nom = nom;
+            return this;
+        }
+
+        public Builder metriques(RegistreMetriques metriques) {
+            this.metriques = metriques;
+            return this;
+        }
+
+        public AdaptatifContentRetriever build() {
+            if (embeddingStore == null || embeddingModel == null) {
+                throw new IllegalStateException("embeddingStore et embeddingModel sont obligatoires");
+            }
+            if (kMin < 1 || kMax < kMin) {
+                throw new IllegalStateException("Il faut 1 <= kMin <= kMax");
+            }
+            return new AdaptatifContentRetriever(this);
+        }
+    }
+}
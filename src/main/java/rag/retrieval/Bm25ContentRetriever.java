@@ -0,0 +1,141 @@
+package rag.retrieval;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import rag.store.IndexLexical;
+import rag.store.MappedEmbeddingStore;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Recherche lexicale BM25 sur un ou plusieurs {@link MappedEmbeddingStore}, via leur
+ * {@link IndexLexical}.
+ * <p>
+ * L'index écrit par l'ingestion est relu à la construction ; si le magasin change ensuite (sa
+ * version avance), l'index est reconstruit en mémoire avant la recherche suivante. Sur plusieurs
+ * magasins (les shards d'un corpus), chacun donne ses {@code maxResults} meilleurs segments et les
+ * listes sont fusionnées par score : les statistiques de fréquence sont celles de chaque shard,
+ * proches d'un shard à l'autre quand les fichiers y sont répartis au hasard.
+ * <p>
+ * Le score BM25 brut dépend de la question et du corpus ; le seuil {@code minScore} porte donc sur
+ * le score rapporté à {@link IndexLexical#scoreReference}, la part de l'information de la question
+ * que le segment couvre. Sans seuil, une question hors sujet qui partage un mot banal avec le
+ * corpus remplit quand même les {@code maxResults} places.
+ */
+public class Bm25ContentRetriever implements ContentRetriever {
+
+    private final List<Shard> shards = new ArrayList<>();
+    private final int maxResults;
+    private final double minScore;
+
+    private Bm25ContentRetriever(Builder builder) {
+        for (MappedEmbeddingStore store : builder.stores) {
+            shards.add(new Shard(store));
+        }
+        this.maxResults = builder.maxResults;
+        this.minScore = builder.minScore;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public List<Content> retrieve(Query query) {
+        List<EmbeddingMatch<TextSegment>> resultats = new ArrayList<>();
+        for (Shard shard : shards) {
+            IndexLexical index = shard.index();
+            double seuil = minScore * index.scoreReference(query.text());
+            for (EmbeddingMatch<TextSegment> resultat : index.rechercher(query.text(), maxResults)) {
+                if (resultat.score() >= seuil) {
+                    resultats.add(resultat);
+                }
+            }
+        }
+        if (shards.size() > 1) {
+            resultats.sort(Comparator.comparingDouble((EmbeddingMatch<TextSegment> resultat) -> resultat.score()).reversed());
+        }
+        List<Content> contenus = new ArrayList<>(Math.min(maxResults, resultats.size()));
+        for (EmbeddingMatch<TextSegment> resultat : resultats.subList(0, Math.min(maxResults, resultats.size()))) {
+            contenus.add(Content.from(resultat.embedded()));
+        }
+        return contenus;
+    }
+
+    /**
+     * Index à jour de la version courante du (premier) magasin.
+     */
+    public IndexLexical index() {
+        return shards.get(0).index();
+    }
+
+    private static final class Shard {
+        private final MappedEmbeddingStore store;
+        private volatile IndexLexical index;
+        private volatile long versionVue;
+
+        Shard(MappedEmbeddingStore store) {
+            this.store = store;
+            this.versionVue = store.version();
+            this.index = IndexLexical.ouvrir(store);
+        }
+
+        IndexLexical index() {
+            long version = store.version();
+            if (version != versionVue) {
+                synchronized (this) {
+                    if (version != versionVue) {
+                        index = IndexLexical.construire(store);
+                        versionVue = version;
+                    }
+                }
+            }
+            return index;
+        }
+    }
+
+    public static class Builder {
+        private final List<MappedEmbeddingStore> stores = new ArrayList<>();
+        private int maxResults = 10;
+        private double minScore;
+
+        /**
+         * Magasin interrogé ; peut être appelé plusieurs fois, pour les shards d'un même corpus.
+         */
+        public Builder store(MappedEmbeddingStore store) {
+            this.stores.add(store);
+            return this;
+        }
+
+        public Builder stores(List<MappedEmbeddingStore> stores) {
+            this.stores.addAll(stores);
+            return this;
+        }
+
+        public Builder maxResults(int maxResults) {
+            this.maxResults = maxResults;
+            return this;
+        }
+
+        /**
+         * Part minimale de l'information de la question (somme des IDF de ses termes) que le score
+         * d'un segment doit atteindre ; 0 par défaut, sans seuil.
+         */
+        public Builder minScore(double minScore) {
+            this.minScore = minScore;
+            return this;
+        }
+
+        public Bm25ContentRetriever build() {
+            if (stores.isEmpty()) {
+                throw new IllegalStateException("store est obligatoire");
+            }
+            return new Bm25ContentRetriever(this);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package rag.retrieval;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.rag.query.transformer.CompressingQueryTransformer;
+import dev.langchain4j.rag.query.transformer.QueryTransformer;
+import rag.cache.CachingEmbeddingModel;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * {@link CompressingQueryTransformer} qui n'appelle le LLM que si c'est utile.
+ * <p>
+ * La question est gardée telle quelle, sans appel distant, quand la conversation n'a pas encore
+ * de tour précédent ou qu'elle ne contient aucune reprise (pronom, démonstratif, relance du type
+ * « et pour... ? ») : elle se suffit alors à elle-même. Sinon la reformulation est demandée au
+ * LLM, et mémorisée (LRU borné) pour le même état de conversation.
+ * <p>
+ * Pendant l'appel au LLM, la question d'origine est déjà recherchée par le retriever de
+ * {@code prefetch} : ses caches (embedding, résultats) sont chauds si la reformulation revient
+ * identique, et la question d'origine sert de repli si le LLM ne répond pas dans le délai.
+ */
+public class CompressionConditionnelleQueryTransformer implements QueryTransformer, AutoCloseable {
+
+    private static final Pattern REPRISE = Pattern.compile(
+            "\\b(il|elle|ils|elles|lui|eux|leur|leurs|celui|celle|ceux|celles|cela|ceci|ça|cette|cet|ces"
+                    + "|dernier|derni[eè]re|pr[ée]c[ée]dente?|dessus|m[eê]me chose"
+                    + "|it|its|they|them|their|this|that|these|those|he|she)\\b"
+                    + "|^(et|mais|sinon|aussi|and|what about)\\b", Pattern.UNICODE_CHARACTER_CLASS);
+    private static final int MOTS_RELANCE = 3;
+
+    private final QueryTransformer compression;
+    private final ContentRetriever prefetch;
+    private final long delaiNanos;
+    private final int tailleMax;
+    private final ExecutorService executor;
+
+    private final LinkedHashMap<String, Collection<Query>> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final AtomicLong sansHistorique = new AtomicLong();
+    private final AtomicLong sansReprise = new AtomicLong();
+    private final AtomicLong succesCache = new AtomicLong();
+    private final AtomicLong appelsLLM = new AtomicLong();
+    private final AtomicLong replis = new AtomicLong();
+
+    private CompressionConditionnelleQueryTransformer(Builder builder) {
+        this.compression = new CompressingQueryTransformer(builder.chatModel);
+        this.prefetch = builder.prefetch;
+        this.delaiNanos = builder.delai.toNanos();
+        this.tailleMax = builder.tailleMax;
+        AtomicInteger compteur = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(builder.threads, runnable -> {
+            Thread thread = new Thread(runnable, "compression-" + compteur.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public Collection<Query> transform(Query query) {
+        List<ChatMessage> memoire = query.metadata() == null ? null : query.metadata().chatMemory();
+        String historique = historique(memoire);
+        if (historique.isEmpty()) {
+            sansHistorique.incrementAndGet();
+            return List.of(query);
+        }
+        if (!contientReprise(query.text())) {
+            sansReprise.incrementAndGet();
+            return List.of(query);
+        }
+
+        String cle = historique + '\n' + CachingEmbeddingModel.normaliser(query.text());
+        synchronized (cache) {
+            Collection<Query> transformees = cache.get(cle);
+            if (transformees != null) {
+                succesCache.incrementAndGet();
+                return transformees;
+            }
+        }
+
+        appelsLLM.incrementAndGet();
+        long echeance = System.nanoTime() + delaiNanos;
+        Future<Collection<Query>> reformulation = executor.submit(() -> compression.transform(query));
+        if (prefetch != null) {
+            try {
+                prefetch.retrieve(query);
+            } catch (RuntimeException e) {
+                // Simple préchargement : la vraie recherche se fera après la reformulation
+            }
+        }
+        try {
+            Collection<Query> transformees = reformulation.get(Math.max(0, echeance - System.nanoTime()), TimeUnit.NANOSECONDS);
+            synchronized (cache) {
+                cache.put(cle, transformees);
+                Iterator<String> plusAnciennes = cache.keySet().iterator();
+                while (cache.size() > tailleMax && plusAnciennes.hasNext()) {
+                    plusAnciennes.next();
+                    plusAnciennes.remove();
+                }
+            }
+            return transformees;
+        } catch (TimeoutException | ExecutionException e) {
+            reformulation.cancel(true);
+            replis.incrementAndGet();
+            return List.of(query);
+        } catch (InterruptedException e) {
+            reformulation.cancel(true);
+            Thread.currentThread().interrupt();
+            replis.incrementAndGet();
+            return List.of(query);
+        }
+    }
+
+    /**
+     * Indique si la question renvoie à la conversation : pronom ou démonstratif, début de relance,
+     * ou question trop courte pour se comprendre seule.
+     */
+    public static boolean contientReprise(String question) {
+        String texte = question.toLowerCase(Locale.ROOT).replace("est-ce", " ").trim();
+        return REPRISE.matcher(texte).find() || texte.split("[^\\p{L}\\p{N}]+").length <= MOTS_RELANCE;
+    }
+
+    /**
+     * Tours précédents de la conversation (questions et réponses), vide s'il n'y en a pas.
+     */
+    private static String historique(List<ChatMessage> memoire) {
+        if (memoire == null) {
+            return "";
+        }
+        StringBuilder texte = new StringBuilder();
+        for (ChatMessage message : memoire) {
+            if (message instanceof UserMessage && ((UserMessage) message).hasSingleText()) {
+                texte.append("U:").append(CachingEmbeddingModel.normaliser(((UserMessage) message).singleText())).append('\n');
+            } else if (message instanceof AiMessage && ((AiMessage) message).text() != null) {
+                texte.append("A:").append(CachingEmbeddingModel.normaliser(((AiMessage) message).text())).append('\n');
+            }
+        }
+        return texte.toString();
+    }
+
+    public String statistiques() {
+        long total = sansHistorique.get() + sansReprise.get() + succesCache.get() + appelsLLM.get();
+        return String.format("Compression : %d question(s), %d sans historique, %d sans reprise, %d en cache, %d appel(s) LLM dont %d hors délai",
+                total, sansHistorique.get(), sansReprise.get(), succesCache.get(), appelsLLM.get(), replis.get());
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    public static class Builder {
+        private ChatLanguageModel chatModel;
+        private ContentRetriever prefetch;
+        private Duration delai = Duration.ofSeconds(5);
+        private int tailleMax = 512;
+        private int threads = 8;
+
+        public Builder chatModel(ChatLanguageModel chatModel) {
+            this.chatModel = chatModel;
+            return this;
+        }
+
+        /**
+         * Retriever interrogé avec la question d'origine pendant la reformulation.
+         */
+        public Builder prefetch(ContentRetriever prefetch) {
+            this.prefetch = prefetch;
+            return this;
+        }
+
+        /**
+         * Temps accordé au LLM avant de garder la question d'origine.
+         */
+        public Builder delai(Duration delai) {
+            this.delai = delai;
+            return this;
+        }
+
+        public Builder tailleMax(int tailleMax) {
+            this.tailleMax = tailleMax;
+            return this;
+        }
+
+        public Builder threads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        public CompressionConditionnelleQueryTransformer build() {
+            if (chatModel == null) {
+                throw new IllegalStateException("chatModel est obligatoire");
+            }
+            return new CompressionConditionnelleQueryTransformer(this);
+        }
+    }
+}
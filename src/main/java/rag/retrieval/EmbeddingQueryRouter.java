@@ -0,0 +1,268 @@
+package rag.retrieval;
+
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.rag.query.router.QueryRouter;
+import rag.store.MappedEmbeddingStore;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Routeur local : la requête est envoyée au corpus dont un prototype est le plus proche de son
+ * embedding. Les prototypes d'un corpus sont son centroïde (moyenne des vecteurs normalisés,
+ * calculée une fois à la construction) et l'embedding de ses descriptions ; les descriptions
+ * compensent le biais de langue du centroïde quand un corpus est rédigé dans une autre langue que
+ * les questions.
+ * <p>
+ * La confiance est l'écart de similarité cosinus entre le meilleur et le deuxième corpus. Sous la
+ * marge minimale, ou si même le meilleur corpus est trop éloigné, la décision est laissée au
+ * routeur de repli (typiquement un {@code LanguageModelQueryRouter}).
+ */
+public class EmbeddingQueryRouter implements QueryRouter {
+
+    private final EmbeddingModel embeddingModel;
+    private final List<Route> routes;
+    private final QueryRouter repli;
+    private final double margeMin;
+    private final double similariteMin;
+
+    private final AtomicLong decisionsLocales = new AtomicLong();
+    private final AtomicLong replis = new AtomicLong();
+    private final AtomicLong nanosDecisions = new AtomicLong();
+
+    private EmbeddingQueryRouter(Builder builder) {
+        this.embeddingModel = builder.embeddingModel;
+        this.routes = builder.routes;
+        this.repli = builder.repli;
+        this.margeMin = builder.margeMin;
+        this.similariteMin = builder.similariteMin;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public Collection<ContentRetriever> route(Query query) {
+        Decision decision = classer(query.text());
+        if (decision.sure || repli == null) {
+            return List.of(decision.route.retriever);
+        }
+        return repli.route(query);
+    }
+
+    /**
+     * Classe un texte sans appeler le repli.
+     */
+    public Decision classer(String texte) {
+        long debut = System.nanoTime();
+        float[] requete = normaliser(embeddingModel.embed(texte).content().vector());
+
+        Route meilleure = null;
+        double meilleureSimilarite = -2;
+        double deuxieme = -2;
+        for (Route route : routes) {
+            double similarite = -1;
+            for (float[] prototype : route.prototypes) {
+                similarite = Math.max(similarite, produitScalaire(requete, prototype));
+            }
+            if (similarite > meilleureSimilarite) {
+                deuxieme = meilleureSimilarite;
+                meilleureSimilarite = similarite;
+                meilleure = route;
+            } else if (similarite > deuxieme) {
+                deuxieme = similarite;
+            }
+        }
+        double confiance = routes.size() == 1 ? meilleureSimilarite : meilleureSimilarite - deuxieme;
+        boolean sure = confiance >= margeMin && meilleureSimilarite >= similariteMin;
+
+        long nanos = System.nanoTime() - debut;
+        nanosDecisions.addAndGet(nanos);
+        (sure || repli == null ? decisionsLocales : replis).incrementAndGet();
+        return new Decision(meilleure, meilleureSimilarite, confiance, sure, nanos);
+    }
+
+    public String statistiques() {
+        long locales = decisionsLocales.get();
+        long total = locales + replis.get();
+        return String.format("routage : %d décisions locales, %d replis, %.2f ms par décision en moyenne",
+                locales, replis.get(), total == 0 ? 0 : nanosDecisions.get() / 1e6 / total);
+    }
+
+    private static float[] centroide(List<MappedEmbeddingStore> corpus) {
+        float[] somme = null;
+        for (MappedEmbeddingStore shard : corpus) {
+            if (shard.estVide()) {
+                continue;
+            }
+            float[] total = somme != null ? somme : new float[shard.dimension()];
+            shard.parcourir((id, vecteur, segment) -> {
+                float[] normalise = normaliser(vecteur);
+                for (int i = 0; i < total.length; i++) {
+                    total[i] += normalise[i];
+                }
+            });
+            somme = total;
+        }
+        return normaliser(somme);
+    }
+
+    private static float[] normaliser(float[] vecteur) {
+        double norme = Math.sqrt(produitScalaire(vecteur, vecteur));
+        float[] normalise = new float[vecteur.length];
+        if (norme > 0) {
+            for (int i = 0; i < vecteur.length; i++) {
+                normalise[i] = (float) (vecteur[i] / norme);
+            }
+        }
+        return normalise;
+    }
+
+    private static double produitScalaire(float[] a, float[] b) {
+        double somme = 0;
+        for (int i = 0; i < a.length; i++) {
+            somme += a[i] * b[i];
+        }
+        return somme;
+    }
+
+    private static final class Route {
+        final String nom;
+        final ContentRetriever retriever;
+        final List<float[]> prototypes;
+
+        Route(String nom, ContentRetriever retriever, List<float[]> prototypes) {
+            this.nom = nom;
+            this.retriever = retriever;
+            this.prototypes = prototypes;
+        }
+    }
+
+    /**
+     * Résultat d'une classification : corpus retenu, similarité, confiance (marge sur le deuxième)
+     * et durée de la décision.
+     */
+    public static final class Decision {
+        private final Route route;
+        private final double similarite;
+        private final double confiance;
+        private final boolean sure;
+        private final long nanos;
+
+        private Decision(Route route, double similarite, double confiance, boolean sure, long nanos) {
+            this.route = route;
+            this.similarite = similarite;
+            this.confiance = confiance;
+            this.sure = sure;
+            this.nanos = nanos;
+        }
+
+        public String corpus() {
+            return route.nom;
+        }
+
+        public double similarite() {
+            return similarite;
+        }
+
+        public double confiance() {
+            return confiance;
+        }
+
+        /**
+         * Faux si la décision aurait été confiée au routeur de repli.
+         */
+        public boolean sure() {
+            return sure;
+        }
+
+        public double millis() {
+            return nanos / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s (similarité %.3f, confiance %.3f%s, %.2f ms)",
+                    route.nom, similarite, confiance, sure ? "" : ", incertain", millis());
+        }
+    }
+
+    public static class Builder {
+        private EmbeddingModel embeddingModel;
+        private final List<Route> routes = new ArrayList<>();
+        private QueryRouter repli;
+        private double margeMin = 0.05;
+        private double similariteMin = 0.25;
+
+        public Builder embeddingModel(EmbeddingModel embeddingModel) {
+            this.embeddingModel = embeddingModel;
+            return this;
+        }
+
+        /**
+         * Déclare un corpus ; son centroïde et l'embedding de ses descriptions sont calculés
+         * immédiatement (le modèle d'embedding doit donc être fixé avant).
+         */
+        public Builder route(String nom, ContentRetriever retriever, MappedEmbeddingStore corpus,
+                             String... descriptions) {
+            return route(nom, retriever, List.of(corpus), descriptions);
+        }
+
+        /**
+         * Déclare un corpus réparti en plusieurs index (shards) ; son centroïde est celui de tous
+         * leurs segments.
+         */
+        public Builder route(String nom, ContentRetriever retriever, List<MappedEmbeddingStore> corpus,
+                             String... descriptions) {
+            if (embeddingModel == null) {
+                throw new IllegalStateException("embeddingModel doit être fixé avant les routes");
+            }
+            if (corpus.stream().allMatch(MappedEmbeddingStore::estVide)) {
+                throw new IllegalArgumentException("Le corpus " + nom + " est vide");
+            }
+            List<float[]> prototypes = new ArrayList<>();
+            prototypes.add(centroide(corpus));
+            for (String description : descriptions) {
+                prototypes.add(normaliser(embeddingModel.embed(description).content().vector()));
+            }
+            routes.add(new Route(nom, retriever, prototypes));
+            return this;
+        }
+
+        /**
+         * Routeur consulté quand la décision locale est incertaine.
+         */
+        public Builder repli(QueryRouter repli) {
+            this.repli = repli;
+            return this;
+        }
+
+        /**
+         * Écart minimal de similarité entre les deux meilleurs corpus pour décider localement.
+         */
+        public Builder margeMin(double margeMin) {
+            this.margeMin = margeMin;
+            return this;
+        }
+
+        /**
+         * Similarité minimale avec le meilleur corpus pour décider localement.
+         */
+        public Builder similariteMin(double similariteMin) {
+            this.similariteMin = similariteMin;
+            return this;
+        }
+
+        public EmbeddingQueryRouter build() {
+            if (embeddingModel == null || routes.isEmpty()) {
+                throw new IllegalStateException("embeddingModel et au moins une route sont obligatoires");
+            }
+            return new EmbeddingQueryRouter(this);
+        }
+    }
+}
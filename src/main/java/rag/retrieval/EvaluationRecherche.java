@@ -0,0 +1,209 @@
+package rag.retrieval;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import rag.cache.CachingEmbeddingModel;
+import rag.llm.EstimateurJetons;
+import rag.metrics.LatencyHistogram;
+import rag.metrics.RegistreMetriques;
+import rag.pipeline.RagRuntime;
+import rag.store.MappedEmbeddingStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+
+/**
+ * Compare les politiques de recherche sur un jeu de questions étiquetées : réglages fixes des
+ * points d'entrée, fusion dense + BM25 et coupures adaptatives d'{@link AdaptatifContentRetriever}.
+ * <p>
+ * Chaque question désigne un index ({@code rag-300-30} ou {@code recettes-300-30}) et les passages
+ * qu'un segment pertinent doit contenir. Pour chaque politique sont mesurés le rappel (part des
+ * segments pertinents de l'index qui sont renvoyés), la réussite (part des questions avec au moins
+ * un segment pertinent), le nombre de segments et de jetons (estimés) de contexte par prompt, et
+ * la latence de recherche. L'embedding des questions est calculé une fois, pendant un passage
+ * d'échauffement, pour que la latence ne compare que les recherches.
+ * <p>
+ * Usage : {@code EvaluationRecherche [fichier de questions]}, par défaut
+ * {@code src/main/resources/evaluation-recherche.tsv} ; {@code -Drag.evaluation.passes} (5) règle
+ * le nombre de passages mesurés.
+ */
+public class EvaluationRecherche {
+
+    private static final Map<String, Path> CORPUS = Map.of(
+            "rag-300-30", Paths.get("src/main/resources/rag.pdf"),
+            "recettes-300-30", Paths.get("src/main/resources/Easy_recipes.pdf"));
+
+    public static void main(String[] args) throws IOException {
+        Path fichier = Paths.get(args.length > 0 ? args[0] : "src/main/resources/evaluation-recherche.tsv");
+        int passes = Integer.getInteger("rag.evaluation.passes", 5);
+        List<Question> questions = questions(fichier);
+
+        RagRuntime runtime = RagRuntime.partage();
+        CachingEmbeddingModel modele = new CachingEmbeddingModel(runtime.embeddingModel(), 4096);
+        Map<String, Map<String, ContentRetriever>> politiques = new LinkedHashMap<>();
+        Map<String, Map<String, Integer>> pertinents = new LinkedHashMap<>();
+        for (Question question : questions) {
+            if (!politiques.containsKey(question.index)) {
+                if (CORPUS.containsKey(question.index)) {
+                    runtime.ingerer(question.index, List.of(CORPUS.get(question.index)));
+                }
+                MappedEmbeddingStore store = runtime.store(question.index);
+                politiques.put(question.index, politiques(runtime.recherche(question.index), store, modele));
+                pertinents.put(question.index, new LinkedHashMap<>());
+            }
+            pertinents.get(question.index).put(question.texte, pertinents(runtime.store(question.index), question));
+        }
+        runtime.prechauffer();
+
+        System.out.println("=== Évaluation de la recherche : " + questions.size() + " questions, "
+                + passes + " passage(s) ===");
+        System.out.printf("%-22s %7s %9s %9s %8s %10s %10s%n",
+                "politique", "rappel", "réussite", "segments", "jetons", "moy. (ms)", "p95 (ms)");
+        for (String politique : politiques.values().iterator().next().keySet()) {
+            LatencyHistogram latence = new LatencyHistogram(politique);
+            double rappel = 0;
+            int reussites = 0;
+            long segments = 0;
+            long jetons = 0;
+            for (int passe = 0; passe <= passes; passe++) {
+                for (Question question : questions) {
+                    ContentRetriever retriever = politiques.get(question.index).get(politique);
+                    long debut = System.nanoTime();
+                    List<Content> contenus = retriever.retrieve(Query.from(question.texte));
+                    long duree = System.nanoTime() - debut;
+                    // Passage 0 : échauffement et embeddings des questions, non compté
+                    if (passe == 0) {
+                        continue;
+                    }
+                    latence.enregistrerNanos(duree);
+                    if (passe > 1) {
+                        continue;
+                    }
+                    Set<String> trouves = new HashSet<>();
+                    for (Content contenu : contenus) {
+                        String texte = contenu.textSegment().text();
+                        jetons += EstimateurJetons.estimer(texte);
+                        if (question.pertinent(texte)) {
+                            trouves.add(texte);
+                        }
+                    }
+                    segments += contenus.size();
+                    int attendus = pertinents.get(question.index).get(question.texte);
+                    rappel += attendus == 0 ? 0 : Math.min(1.0, (double) trouves.size() / attendus);
+                    reussites += trouves.isEmpty() ? 0 : 1;
+                }
+            }
+            int n = questions.size();
+            System.out.printf(Locale.ROOT, "%-22s %7.3f %9.3f %9.2f %8.0f %10.3f %10.3f%n",
+                    politique, rappel / n, (double) reussites / n, (double) segments / n, (double) jetons / n,
+                    latence.moyenneMillis(), latence.percentileMillis(95));
+        }
+        runtime.close();
+    }
+
+    /**
+     * Politiques comparées, dans l'ordre d'affichage ; aucune ne mémorise ses résultats, pour que
+     * chaque passage refasse la recherche.
+     */
+    private static Map<String, ContentRetriever> politiques(EmbeddingStore<TextSegment> index,
+                                                           MappedEmbeddingStore store,
+                                                           CachingEmbeddingModel modele) {
+        BiFunction<Integer, Double, ContentRetriever> fixe = (maxResults, minScore) ->
+                EmbeddingStoreContentRetriever.builder()
+                        .embeddingStore(index)
+                        .embeddingModel(modele)
+                        .maxResults(maxResults)
+                        .minScore(minScore)
+                        .build();
+        RegistreMetriques metriques = new RegistreMetriques();
+        Map<String, ContentRetriever> politiques = new LinkedHashMap<>();
+        politiques.put("fixe 3 / 0.7", fixe.apply(3, 0.7));
+        politiques.put("fixe 2 / 0.5", fixe.apply(2, 0.5));
+        politiques.put("fixe 3 / 0.5", fixe.apply(3, 0.5));
+        politiques.put("fixe 5 / 0.3", fixe.apply(5, 0.3));
+        politiques.put("fusion 3", FusionContentRetriever.builder()
+                .source(fixe.apply(10, 0.3))
+                .source(Bm25ContentRetriever.builder().store(store).maxResults(10).build())
+                .maxResults(3)
+                .build());
+        for (AdaptatifContentRetriever.Coupure coupure : List.of(
+                AdaptatifContentRetriever.Coupure.ECART, AdaptatifContentRetriever.Coupure.COUDE)) {
+            politiques.put("adaptatif " + coupure.name().toLowerCase(Locale.ROOT), AdaptatifContentRetriever.builder()
+                    .embeddingStore(index)
+                    .embeddingModel(modele)
+                    .coupure(coupure)
+                    .metriques(metriques)
+                    .build());
+        }
+        return politiques;
+    }
+
+    private static int pertinents(MappedEmbeddingStore store, Question question) {
+        Set<String> textes = new HashSet<>();
+        store.parcourir((id, vecteur, segment) -> {
+            if (segment != null && question.pertinent(segment.text())) {
+                textes.add(segment.text());
+            }
+        });
+        return textes.size();
+    }
+
+    private static List<Question> questions(Path fichier) throws IOException {
+        List<Question> questions = new ArrayList<>();
+        for (String ligne : Files.readAllLines(fichier)) {
+            if (ligne.isBlank() || ligne.startsWith("#")) {
+                continue;
+            }
+            String[] champs = ligne.split("\t");
+            if (champs.length < 3) {
+                throw new IllegalArgumentException("Ligne invalide (index, question, passages) : " + ligne);
+            }
+            List<String> passages = new ArrayList<>();
+            for (String passage : champs[2].split("\\|")) {
+                passages.add(normaliser(passage));
+            }
+            questions.add(new Question(champs[0].trim(), champs[1].trim(), passages));
+        }
+        return questions;
+    }
+
+    private static String normaliser(String texte) {
+        return texte.replaceAll("[\\s\\u00A0]+", " ").trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static final class Question {
+        private final String index;
+        private final String texte;
+        private final List<String> passages;
+
+        private Question(String index, String texte, List<String> passages) {
+            this.index = index;
+            this.texte = texte;
+            this.passages = passages;
+        }
+
+        private boolean pertinent(String segment) {
+            String normalise = normaliser(segment);
+            for (String passage : passages) {
+                if (normalise.contains(passage)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
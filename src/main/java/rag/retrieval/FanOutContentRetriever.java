@@ -0,0 +1,253 @@
+package rag.retrieval;
+
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.rag.query.router.QueryRouter;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Interroge plusieurs {@link ContentRetriever} en même temps et renvoie ce qui est arrivé à
+ * l'échéance.
+ * <p>
+ * Chaque source a son propre délai, et une échéance globale borne l'ensemble : une source en
+ * retard ou en erreur est abandonnée et la réponse se contente des autres (par exemple les
+ * documents locaux quand la recherche web traîne). {@link #retrieve} concatène les résultats dans
+ * l'ordre de déclaration des sources ; {@link #router} rend un retriever par source, pour que
+ * l'agrégateur de l'augmentateur fusionne leurs classements.
+ * <p>
+ * Les appels sont exécutés sur un pool borné de threads démons, partagé par toutes les requêtes.
+ * Les délais courent à partir du moment où l'appel commence sur le pool : l'attente d'un thread
+ * libre n'est pas décomptée, mais elle est mesurée dans les {@link #statistiques()}.
+ */
+public class FanOutContentRetriever implements ContentRetriever, AutoCloseable {
+
+    private final Map<ContentRetriever, Source> sources;
+    private final long delaiGlobalNanos;
+    private final ExecutorService executor;
+
+    private FanOutContentRetriever(Builder builder) {
+        this.sources = builder.sources;
+        this.delaiGlobalNanos = builder.delaiGlobal.toNanos();
+        AtomicInteger compteur = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(builder.threads, runnable -> {
+            Thread thread = new Thread(runnable, "recherche-" + compteur.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public List<Content> retrieve(Query query) {
+        return interroger(sources.keySet(), query);
+    }
+
+    /**
+     * Routeur qui rend, pour chaque retriever choisi par {@code routeur}, un retriever qui
+     * l'interroge sur le pool avec les délais de ce fan-out (un retriever non déclaré comme source
+     * reçoit le délai global). L'augmentateur appelant ces retrievers en parallèle et fusionnant
+     * leurs résultats, une source n'est pas reléguée derrière une autre.
+     */
+    public QueryRouter router(QueryRouter routeur) {
+        return query -> {
+            Collection<ContentRetriever> selection = routeur.route(query);
+            List<ContentRetriever> retrievers = new ArrayList<>(selection.size());
+            for (ContentRetriever retriever : selection) {
+                // Même une source seule passe par le pool, pour que son délai s'applique
+                retrievers.add(requete -> attendre(retriever, new Appel(retriever, requete), Long.MAX_VALUE));
+            }
+            return retrievers;
+        };
+    }
+
+    /**
+     * Interroge les retrievers donnés en parallèle et renvoie les résultats obtenus dans les
+     * délais, concaténés dans l'ordre des retrievers.
+     */
+    public List<Content> interroger(Collection<ContentRetriever> retrievers, Query query) {
+        Map<ContentRetriever, Appel> appels = new LinkedHashMap<>();
+        for (ContentRetriever retriever : retrievers) {
+            appels.put(retriever, new Appel(retriever, query));
+        }
+
+        List<Content> contenus = new ArrayList<>();
+        Appel premier = null;
+        for (Map.Entry<ContentRetriever, Appel> appel : appels.entrySet()) {
+            // Échéance globale comptée depuis le début du premier appel soumis, déjà attendu
+            long echeanceGlobale = premier == null ? Long.MAX_VALUE : premier.demarrage.join() + delaiGlobalNanos;
+            contenus.addAll(attendre(appel.getKey(), appel.getValue(), echeanceGlobale));
+            if (premier == null) {
+                premier = appel.getValue();
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                appels.values().forEach(restant -> restant.futur.cancel(true));
+                break;
+            }
+        }
+        return contenus;
+    }
+
+    /**
+     * Résultats de l'appel obtenus dans les délais de sa source, comptés depuis le début de
+     * l'appel, et au plus tard à {@code echeanceMax} ; liste vide sinon.
+     */
+    private List<Content> attendre(ContentRetriever retriever, Appel appel, long echeanceMax) {
+        Source source = sources.get(retriever);
+        try {
+            long debut = appel.demarrage.get();
+            long delai = source == null ? delaiGlobalNanos : Math.min(delaiGlobalNanos, source.delaiNanos);
+            long echeance = Math.min(echeanceMax, debut + delai);
+            if (source != null) {
+                source.attente(debut - appel.soumission);
+            }
+            Reponse reponse = appel.futur.get(Math.max(0, echeance - System.nanoTime()), TimeUnit.NANOSECONDS);
+            if (source != null) {
+                source.reussite(reponse.fin - debut);
+            }
+            return reponse.contenus;
+        } catch (TimeoutException e) {
+            appel.futur.cancel(true);
+            if (source != null) {
+                source.expirations.incrementAndGet();
+            }
+        } catch (ExecutionException e) {
+            if (source != null) {
+                source.erreurs.incrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            appel.futur.cancel(true);
+        }
+        return List.of();
+    }
+
+    public String statistiques() {
+        StringBuilder texte = new StringBuilder("fan-out :");
+        for (Source source : sources.values()) {
+            texte.append(String.format("%n  %-12s %d réussites (%.0f ms en moyenne), %d expirations, %d erreurs, %.0f ms d'attente du pool en moyenne",
+                    source.nom, source.reussites.get(), source.latenceMoyenneMillis(),
+                    source.expirations.get(), source.erreurs.get(), source.attenteMoyenneMillis()));
+        }
+        return texte.toString();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Appel soumis au pool ; {@code demarrage} reçoit l'instant où il commence.
+     */
+    private final class Appel {
+        final long soumission = System.nanoTime();
+        final CompletableFuture<Long> demarrage = new CompletableFuture<>();
+        final Future<Reponse> futur;
+
+        Appel(ContentRetriever retriever, Query query) {
+            this.futur = executor.submit(() -> {
+                demarrage.complete(System.nanoTime());
+                return new Reponse(retriever.retrieve(query), System.nanoTime());
+            });
+        }
+    }
+
+    private static final class Reponse {
+        final List<Content> contenus;
+        final long fin;
+
+        Reponse(List<Content> contenus, long fin) {
+            this.contenus = contenus;
+            this.fin = fin;
+        }
+    }
+
+    private static final class Source {
+        final String nom;
+        final long delaiNanos;
+        final AtomicLong reussites = new AtomicLong();
+        final AtomicLong nanosReussites = new AtomicLong();
+        final AtomicLong expirations = new AtomicLong();
+        final AtomicLong erreurs = new AtomicLong();
+        final AtomicLong appels = new AtomicLong();
+        final AtomicLong nanosAttente = new AtomicLong();
+
+        Source(String nom, Duration delai) {
+            this.nom = nom;
+            this.delaiNanos = delai.toNanos();
+        }
+
+        void reussite(long nanos) {
+            reussites.incrementAndGet();
+            nanosReussites.addAndGet(nanos);
+        }
+
+        void attente(long nanos) {
+            appels.incrementAndGet();
+            nanosAttente.addAndGet(nanos);
+        }
+
+        double attenteMoyenneMillis() {
+            long n = appels.get();
+            return n == 0 ? 0 : nanosAttente.get() / 1e6 / n;
+        }
+
+        double latenceMoyenneMillis() {
+            long n = reussites.get();
+            return n == 0 ? 0 : nanosReussites.get() / 1e6 / n;
+        }
+    }
+
+    public static class Builder {
+        private final Map<ContentRetriever, Source> sources = new LinkedHashMap<>();
+        private Duration delaiGlobal = Duration.ofSeconds(5);
+        private int threads = 8;
+
+        /**
+         * Déclare une source et le délai au-delà duquel ses résultats sont abandonnés.
+         */
+        public Builder source(String nom, ContentRetriever retriever, Duration delai) {
+            sources.put(retriever, new Source(nom, delai));
+            return this;
+        }
+
+        /**
+         * Échéance commune à toutes les sources d'une même requête.
+         */
+        public Builder delaiGlobal(Duration delaiGlobal) {
+            this.delaiGlobal = delaiGlobal;
+            return this;
+        }
+
+        public Builder threads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        public FanOutContentRetriever build() {
+            if (sources.isEmpty()) {
+                throw new IllegalStateException("Au moins une source est nécessaire");
+            }
+            return new FanOutContentRetriever(this);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package rag.retrieval;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fusion par rang réciproque (RRF) de plusieurs retrievers, typiquement une recherche dense et
+ * une recherche lexicale BM25.
+ * <p>
+ * Chaque source renvoie ses candidats classés ; un segment reçoit {@code poids / (k + rang)} par
+ * source qui le propose, et les {@code maxResults} meilleurs cumuls sont gardés. Seuls les rangs
+ * comptent : les scores cosinus et BM25, sur des échelles sans rapport, n'ont pas à être
+ * calibrés. Un segment trouvé par les deux sources remonte en tête, ce qui permet de garder un
+ * petit {@code maxResults} (et donc un prompt court) sans perdre les correspondances exactes.
+ */
+public class FusionContentRetriever implements ContentRetriever {
+
+    private final Map<ContentRetriever, Double> sources;
+    private final int k;
+    private final int maxResults;
+
+    private FusionContentRetriever(Builder builder) {
+        this.sources = builder.sources;
+        this.k = builder.k;
+        this.maxResults = builder.maxResults;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public List<Content> retrieve(Query query) {
+        Map<TextSegment, Content> contenus = new LinkedHashMap<>();
+        Map<TextSegment, Double> scores = new HashMap<>();
+        sources.forEach((retriever, poids) -> {
+            List<Content> classes = retriever.retrieve(query);
+            for (int rang = 0; rang < classes.size(); rang++) {
+                Content contenu = classes.get(rang);
+                contenus.putIfAbsent(contenu.textSegment(), contenu);
+                scores.merge(contenu.textSegment(), poids / (k + rang + 1), Double::sum);
+            }
+        });
+
+        List<TextSegment> classement = new ArrayList<>(contenus.keySet());
+        // Tri stable : à égalité, l'ordre de déclaration des sources départage
+        classement.sort((a, b) -> Double.compare(scores.get(b), scores.get(a)));
+        List<Content> resultats = new ArrayList<>(Math.min(maxResults, classement.size()));
+        for (TextSegment segment : classement.subList(0, Math.min(maxResults, classement.size()))) {
+            resultats.add(contenus.get(segment));
+        }
+        return resultats;
+    }
+
+    public static class Builder {
+        private final Map<ContentRetriever, Double> sources = new LinkedHashMap<>();
+        private int k = 60;
+        private int maxResults = 3;
+
+        public Builder source(ContentRetriever retriever) {
+            return source(retriever, 1.0);
+        }
+
+        public Builder source(ContentRetriever retriever, double poids) {
+            sources.put(retriever, poids);
+            return this;
+        }
+
+        /**
+         * Constante de lissage des rangs (60 par défaut, valeur usuelle de RRF).
+         */
+        public Builder k(int k) {
+            this.k = k;
+            return this;
+        }
+
+        public Builder maxResults(int maxResults) {
+            this.maxResults = maxResults;
+            return this;
+        }
+
+        public FusionContentRetriever build() {
+            if (sources.isEmpty()) {
+                throw new IllegalStateException("Au moins une source est nécessaire");
+            }
+            return new FusionContentRetriever(this);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package rag.serveur;
+
+import com.google.gson.JsonObject;
+import rag.metrics.LatencyHistogram;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Client de charge pour {@link ServeurRag} : N sessions concurrentes envoient chacune M questions
+ * à la suite, puis le débit, la répartition des statuts et les percentiles de latence sont
+ * affichés.
+ * <p>
+ * Usage : {@code ClientCharge [url] [sessions] [questionsParSession]}, par défaut
+ * {@code http://localhost:8080/chat 50 10}.
+ */
+public class ClientCharge {
+
+    private static final List<String> QUESTIONS = List.of(
+            "Qu'est-ce que le RAG ?",
+            "Quelle est la différence entre RAG et fine-tuning ?",
+            "Comment fonctionne un modèle d'embedding ?",
+            "À quoi sert un magasin de vecteurs ?",
+            "Comment découper un document en segments ?",
+            "Qu'est-ce qu'un retriever ?");
+
+    public static void main(String[] args) throws InterruptedException {
+        URI url = URI.create(args.length > 0 ? args[0] : "http://localhost:8080/chat");
+        int sessions = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int questionsParSession = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        HttpClient client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        LatencyHistogram latences = new LatencyHistogram("requête");
+        AtomicLong succes = new AtomicLong();
+        AtomicLong satures = new AtomicLong();
+        AtomicLong erreurs = new AtomicLong();
+
+        ExecutorService pool = Executors.newFixedThreadPool(sessions);
+        long debut = System.nanoTime();
+        for (int s = 0; s < sessions; s++) {
+            String session = "charge-" + s;
+            int decalage = s;
+            pool.execute(() -> {
+                for (int q = 0; q < questionsParSession; q++) {
+                    JsonObject corps = new JsonObject();
+                    corps.addProperty("session", session);
+                    corps.addProperty("question", QUESTIONS.get((decalage + q) % QUESTIONS.size()));
+                    HttpRequest requete = HttpRequest.newBuilder(url)
+                            .timeout(Duration.ofSeconds(60))
+                            .header("Content-Type", "application/json")
+                            .POST(HttpRequest.BodyPublishers.ofString(corps.toString()))
+                            .build();
+                    long t0 = System.nanoTime();
+                    try {
+                        int statut = client.send(requete, HttpResponse.BodyHandlers.discarding()).statusCode();
+                        latences.enregistrerNanos(System.nanoTime() - t0);
+                        (statut == 200 ? succes : statut == 503 ? satures : erreurs).incrementAndGet();
+                    } catch (Exception e) {
+                        erreurs.incrementAndGet();
+                    }
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.HOURS);
+        double secondes = (System.nanoTime() - debut) / 1e9;
+
+        long total = succes.get() + satures.get() + erreurs.get();
+        System.out.printf("%d requêtes en %.1f s (%.1f req/s) : %d OK, %d 503, %d erreurs%n",
+                total, secondes, total / secondes, succes.get(), satures.get(), erreurs.get());
+        System.out.println(latences.resume());
+    }
+}
@@ -0,0 +1,363 @@
+package rag.serveur;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.googleai.GoogleAiGeminiChatModel;
+import dev.langchain4j.rag.AugmentationRequest;
+import dev.langchain4j.rag.DefaultRetrievalAugmentor;
+import dev.langchain4j.rag.RetrievalAugmentor;
+import dev.langchain4j.rag.query.Metadata;
+import rag.cache.CachingEmbeddingModel;
+import rag.llm.ChatModelLimite;
+import rag.llm.SaturationException;
+import rag.llm.StubChatLanguageModel;
+import rag.metrics.Instrumentation;
+import rag.metrics.LatencyHistogram;
+import rag.metrics.RegistreMetriques;
+import rag.pipeline.Pipelines;
+import rag.pipeline.RagRuntime;
+import rag.store.MappedEmbeddingStore;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serveur HTTP/JSON multi-sessions devant le pipeline RAG.
+ * <p>
+ * Le magasin, le modèle d'embedding et l'augmentateur sont partagés par toutes les requêtes ;
+ * chaque session a sa mémoire dans une {@link TableSessions} bornée. Les requêtes sont traitées
+ * par un pool borné dont la file, une fois pleine, fait exécuter la requête par le thread
+ * d'acceptation (qui cesse alors d'accepter). Les appels au LLM passent par un
+ * {@link ChatModelLimite} : au-delà de la limite et du délai d'attente, la requête reçoit un 503.
+ * <p>
+ * Seule la question d'origine entre dans la mémoire de session, pas le message augmenté : le
+ * contexte est de toute façon recherché à nouveau à chaque tour.
+ * <p>
+ * Points d'accès : {@code POST /chat} avec {@code {"session": "...", "question": "..."}} (session
+ * facultative, créée si absente), {@code GET /sante} et {@code GET /metrics} (mesures du
+ * {@link RegistreMetriques} au format texte de Prometheus).
+ */
+public class ServeurRag {
+
+    private final ChatModelLimite chatModel;
+    private final RetrievalAugmentor augmentor;
+    private final TableSessions sessions;
+    private final HttpServer serveur;
+    private final ThreadPoolExecutor executor;
+    private final RegistreMetriques metriques;
+    private final LatencyHistogram latences;
+    private final RagRuntime runtime;
+
+    private ServeurRag(Builder builder) throws IOException {
+        this.chatModel = new ChatModelLimite(builder.chatModel, builder.maxAppelsLLM, builder.attenteLLM);
+        this.augmentor = builder.augmentor;
+        this.sessions = new TableSessions(builder.maxSessions, builder.inactiviteSession, builder.messagesParSession);
+        this.metriques = builder.metriques;
+        this.latences = metriques.latence("serveur:/chat");
+        this.runtime = builder.runtime;
+        metriques.jauge("rag_sessions", "serveur", sessions::taille);
+        metriques.jauge("rag_sessions_evincees", "serveur", sessions::evictions);
+        metriques.jauge("rag_appels_llm_en_cours", "serveur", chatModel::appelsEnCours);
+        metriques.jauge("rag_refus_llm", "serveur", chatModel::refus);
+
+        AtomicInteger compteur = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(builder.threads, builder.threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(builder.fileAttente),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "serveur-" + compteur.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+
+        this.serveur = HttpServer.create(new InetSocketAddress(builder.port), builder.fileAttente);
+        serveur.setExecutor(executor);
+        serveur.createContext("/chat", this::chat);
+        serveur.createContext("/sante", this::sante);
+        serveur.createContext("/metrics", this::metrics);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public ServeurRag demarrer() {
+        serveur.start();
+        return this;
+    }
+
+    public void arreter() {
+        serveur.stop(1);
+        executor.shutdownNow();
+    }
+
+    public int port() {
+        return serveur.getAddress().getPort();
+    }
+
+    /**
+     * Répond à une question dans une session ; les tours d'une même session sont sérialisés.
+     */
+    public String repondre(String sessionId, String question) {
+        TableSessions.Session session = sessions.obtenir(sessionId);
+        synchronized (session) {
+            UserMessage message = UserMessage.from(question);
+            List<ChatMessage> historique = session.memoire().messages();
+            ChatMessage augmente = augmentor == null ? message : augmentor.augment(
+                    new AugmentationRequest(message, Metadata.from(message, sessionId, historique))).chatMessage();
+
+            List<ChatMessage> messages = new ArrayList<>(historique);
+            messages.add(augmente);
+            AiMessage reponse = chatModel.generate(messages).content();
+
+            session.memoire().add(message);
+            session.memoire().add(reponse);
+            return reponse.text();
+        }
+    }
+
+    public String statistiques() {
+        return String.format("serveur : %d sessions (%d évincées), %d appels LLM en cours, %d refus%n  %s",
+                sessions.taille(), sessions.evictions(), chatModel.appelsEnCours(), chatModel.refus(),
+                latences.resume());
+    }
+
+    private void chat(HttpExchange echange) throws IOException {
+        long debut = System.nanoTime();
+        try {
+            if (!"POST".equals(echange.getRequestMethod())) {
+                repondreErreur(echange, 405, "POST attendu");
+                return;
+            }
+            JsonObject requete;
+            try (InputStream corps = echange.getRequestBody()) {
+                requete = JsonParser.parseString(new String(corps.readAllBytes(), StandardCharsets.UTF_8)).getAsJsonObject();
+            } catch (JsonParseException | IllegalStateException e) {
+                repondreErreur(echange, 400, "JSON invalide");
+                return;
+            }
+            if (!requete.has("question") || !requete.get("question").isJsonPrimitive()
+                    || requete.get("question").getAsString().isBlank()) {
+                repondreErreur(echange, 400, "Champ question manquant");
+                return;
+            }
+            if (requete.has("session") && !requete.get("session").isJsonPrimitive()) {
+                repondreErreur(echange, 400, "Champ session invalide");
+                return;
+            }
+            String session = requete.has("session") ? requete.get("session").getAsString() : UUID.randomUUID().toString();
+            String reponse = repondre(session, requete.get("question").getAsString());
+
+            JsonObject json = new JsonObject();
+            json.addProperty("session", session);
+            json.addProperty("reponse", reponse);
+            json.addProperty("millis", (System.nanoTime() - debut) / 1_000_000);
+            envoyer(echange, 200, json);
+            latences.enregistrerNanos(System.nanoTime() - debut);
+            if (runtime != null) {
+                runtime.reponse(debut);
+            }
+        } catch (SaturationException e) {
+            echange.getResponseHeaders().add("Retry-After", "1");
+            repondreErreur(echange, 503, e.getMessage());
+        } catch (RuntimeException e) {
+            repondreErreur(echange, 500, String.valueOf(e.getMessage()));
+        } finally {
+            echange.close();
+        }
+    }
+
+    private void sante(HttpExchange echange) throws IOException {
+        try {
+            JsonObject json = new JsonObject();
+            json.addProperty("sessions", sessions.taille());
+            json.addProperty("appelsLLMEnCours", chatModel.appelsEnCours());
+            json.addProperty("refus", chatModel.refus());
+            envoyer(echange, 200, json);
+        } finally {
+            echange.close();
+        }
+    }
+
+    private void metrics(HttpExchange echange) throws IOException {
+        try {
+            byte[] octets = metriques.getTexte().getBytes(StandardCharsets.UTF_8);
+            echange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            echange.sendResponseHeaders(200, octets.length);
+            try (OutputStream sortie = echange.getResponseBody()) {
+                sortie.write(octets);
+            }
+        } finally {
+            echange.close();
+        }
+    }
+
+    private void repondreErreur(HttpExchange echange, int statut, String message) throws IOException {
+        JsonObject json = new JsonObject();
+        json.addProperty("erreur", message);
+        envoyer(echange, statut, json);
+    }
+
+    private void envoyer(HttpExchange echange, int statut, JsonObject json) throws IOException {
+        metriques.compteur("rag_reponses_http_total", echange.getHttpContext().getPath() + " " + statut).increment();
+        byte[] octets = json.toString().getBytes(StandardCharsets.UTF_8);
+        echange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        echange.sendResponseHeaders(statut, octets.length);
+        try (OutputStream sortie = echange.getResponseBody()) {
+            sortie.write(octets);
+        }
+    }
+
+    /**
+     * Lance le serveur sur l'index de {@code rag.pdf}. Sans clé Gemini, ou avec
+     * {@code -Drag.serveur.stub=true}, le LLM est remplacé par un modèle factice (latence
+     * log-normale de médiane 800 ms) pour les tests de charge.
+     */
+    public static void main(String[] args) throws IOException {
+        int port = Integer.getInteger("rag.serveur.port", 8080);
+
+        RagRuntime runtime = RagRuntime.partage();
+        MappedEmbeddingStore store = runtime.store("rag-300-30");
+        runtime.ingerer("rag-300-30", List.of(Paths.get("src/main/resources/rag.pdf")));
+
+        Instrumentation instrumentation = Instrumentation.globale();
+        CachingEmbeddingModel modeleRequetes = new CachingEmbeddingModel(
+                instrumentation.embeddingModel("requêtes", runtime.embeddingModel()), 4096);
+        instrumentation.cache("embeddings", modeleRequetes::tauxSucces);
+        DefaultRetrievalAugmentor augmentor = DefaultRetrievalAugmentor.builder()
+                .contentRetriever(instrumentation.retriever("IA", Pipelines.fusion(instrumentation, "IA",
+                        instrumentation.embeddingStore("IA", runtime.recherche("rag-300-30")), store,
+                        modeleRequetes, 3)))
+                .build();
+
+        String cle = System.getenv("GeminiKey");
+        ChatLanguageModel chatModel = cle == null || Boolean.getBoolean("rag.serveur.stub")
+                ? StubChatLanguageModel.logNormale(Duration.ofMillis(800), 0.5)
+                : GoogleAiGeminiChatModel.builder()
+                        .apiKey(cle)
+                        .modelName("gemini-2.5-flash")
+                        .temperature(0.3)
+                        .build();
+
+        ServeurRag serveur = ServeurRag.builder()
+                .port(port)
+                .chatModel(instrumentation.chatModel(chatModel instanceof StubChatLanguageModel ? "simulé" : "gemini",
+                        chatModel))
+                .augmentor(augmentor)
+                .runtime(runtime.prechauffer())
+                .build()
+                .demarrer();
+        System.out.println("Serveur RAG sur http://localhost:" + serveur.port() + "/chat ("
+                + (chatModel instanceof StubChatLanguageModel ? "LLM simulé" : "Gemini") + ")");
+        System.out.println(runtime.statistiques());
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            System.out.println(serveur.statistiques());
+            System.out.println(runtime.statistiques());
+        }));
+    }
+
+    public static class Builder {
+        private int port = 8080;
+        private ChatLanguageModel chatModel;
+        private RetrievalAugmentor augmentor;
+        private int threads = 64;
+        private int fileAttente = 256;
+        private int maxAppelsLLM = 16;
+        private Duration attenteLLM = Duration.ofSeconds(2);
+        private int maxSessions = 10_000;
+        private Duration inactiviteSession = Duration.ofMinutes(30);
+        private int messagesParSession = 10;
+        private RegistreMetriques metriques = RegistreMetriques.global();
+        private RagRuntime runtime;
+
+        public Builder port(int port) {
+            this.port = port;
+            return this;
+        }
+
+        public Builder chatModel(ChatLanguageModel chatModel) {
+            this.chatModel = chatModel;
+            return this;
+        }
+
+        public Builder augmentor(RetrievalAugmentor augmentor) {
+            this.augmentor = augmentor;
+            return this;
+        }
+
+        /**
+         * Threads de traitement des requêtes HTTP.
+         */
+        public Builder threads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * Requêtes en attente d'un thread avant que l'acceptation ne ralentisse.
+         */
+        public Builder fileAttente(int fileAttente) {
+            this.fileAttente = fileAttente;
+            return this;
+        }
+
+        /**
+         * Appels simultanés au LLM, et attente maximale d'une place avant de répondre 503.
+         */
+        public Builder maxAppelsLLM(int maxAppelsLLM, Duration attenteLLM) {
+            this.maxAppelsLLM = maxAppelsLLM;
+            this.attenteLLM = attenteLLM;
+            return this;
+        }
+
+        public Builder sessions(int maxSessions, Duration inactiviteSession, int messagesParSession) {
+            this.maxSessions = maxSessions;
+            this.inactiviteSession = inactiviteSession;
+            this.messagesParSession = messagesParSession;
+            return this;
+        }
+
+        /**
+         * Registre des mesures du serveur, exposé sur {@code /metrics} (le registre global par
+         * défaut, qui contient aussi celles des composants instrumentés).
+         */
+        public Builder metriques(RegistreMetriques metriques) {
+            this.metriques = metriques;
+            return this;
+        }
+
+        /**
+         * Runtime dont le démarrage à froid jusqu'à la première réponse est mesuré (facultatif).
+         */
+        public Builder runtime(RagRuntime runtime) {
+            this.runtime = runtime;
+            return this;
+        }
+
+        public ServeurRag build() throws IOException {
+            if (chatModel == null) {
+                throw new IllegalStateException("chatModel est obligatoire");
+            }
+            return new ServeurRag(this);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package rag.serveur;
+
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Table bornée des sessions de conversation : chacune a sa propre mémoire glissante. Les sessions
+ * inactives depuis plus que le délai d'inactivité sont purgées, et la moins récemment utilisée
+ * est évincée quand la table est pleine.
+ */
+public class TableSessions {
+
+    private final int maxSessions;
+    private final long inactiviteNanos;
+    private final int messagesParSession;
+    private final LinkedHashMap<String, Session> sessions = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong evictions = new AtomicLong();
+
+    public TableSessions(int maxSessions, Duration inactivite, int messagesParSession) {
+        this.maxSessions = maxSessions;
+        this.inactiviteNanos = inactivite.toNanos();
+        this.messagesParSession = messagesParSession;
+    }
+
+    /**
+     * Renvoie la session, créée au besoin.
+     */
+    public synchronized Session obtenir(String id) {
+        long maintenant = System.nanoTime();
+        // Ordre d'accès : les plus anciennes sont en tête, on s'arrête à la première encore active
+        Iterator<Session> anciennes = sessions.values().iterator();
+        while (anciennes.hasNext()) {
+            Session session = anciennes.next();
+            if (maintenant - session.dernierAcces <= inactiviteNanos) {
+                break;
+            }
+            anciennes.remove();
+            evictions.incrementAndGet();
+        }
+
+        Session session = sessions.get(id);
+        if (session == null) {
+            session = new Session(id, MessageWindowChatMemory.builder()
+                    .id(id)
+                    .maxMessages(messagesParSession)
+                    .build());
+            sessions.put(id, session);
+            if (sessions.size() > maxSessions) {
+                Iterator<Session> plusAncienne = sessions.values().iterator();
+                plusAncienne.next();
+                plusAncienne.remove();
+                evictions.incrementAndGet();
+            }
+        }
+        session.dernierAcces = maintenant;
+        return session;
+    }
+
+    public synchronized int taille() {
+        return sessions.size();
+    }
+
+    public long evictions() {
+        return evictions.get();
+    }
+
+    public static final class Session {
+        private final String id;
+        private final ChatMemory memoire;
+        private volatile long dernierAcces;
+
+        private Session(String id, ChatMemory memoire) {
+            this.id = id;
+            this.memoire = memoire;
+        }
+
+        public String id() {
+            return id;
+        }
+
+        public ChatMemory memoire() {
+            return memoire;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package rag.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Magasin d'embeddings exact à stockage contigu : tous les vecteurs sont rangés, normalisés,
+ * dans un seul {@code float[]}, si bien que la similarité cosinus se réduit à un produit scalaire
+ * et que le parcours lit la mémoire séquentiellement. Les segments sont gardés dans un tableau à
+ * part, consulté seulement pour les k résultats retenus.
+ */
+public class DenseEmbeddingStore implements EmbeddingStore<TextSegment>, Versionne {
+
+    private final ReentrantReadWriteLock verrou = new ReentrantReadWriteLock();
+    private final Map<String, Integer> slotParId = new HashMap<>();
+    private final BitSet supprimes = new BitSet();
+    private final AtomicLong version = new AtomicLong();
+
+    private int dimension;
+    private float[] vecteurs = new float[0];
+    private String[] ids = new String[0];
+    private TextSegment[] segments = new TextSegment[0];
+    private int slots;
+
+    /**
+     * Copie l'index persistant dans un stockage contigu en mémoire.
+     */
+    public static DenseEmbeddingStore depuis(MappedEmbeddingStore source) {
+        DenseEmbeddingStore store = new DenseEmbeddingStore();
+        source.parcourir(store::ajouter);
+        return store;
+    }
+
+    public int taille() {
+        verrou.readLock().lock();
+        try {
+            return slotParId.size();
+        } finally {
+            verrou.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long version() {
+        return version.get();
+    }
+
+    /**
+     * Octets occupés par le tableau de vecteurs (capacité réservée comprise).
+     */
+    public long octetsVecteurs() {
+        return (long) vecteurs.length * Float.BYTES;
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        ajouter(id, embedding.vector(), null);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        ajouter(id, embedding.vector(), null);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment segment) {
+        String id = UUID.randomUUID().toString();
+        ajouter(id, embedding.vector(), segment);
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> nouveaux = new ArrayList<>(embeddings.size());
+        for (Embedding embedding : embeddings) {
+            nouveaux.add(add(embedding));
+        }
+        return nouveaux;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<TextSegment> segments) {
+        if (embeddings.size() != segments.size()) {
+            throw new IllegalArgumentException("embeddings et segments doivent avoir la même taille");
+        }
+        List<String> nouveaux = new ArrayList<>(embeddings.size());
+        for (int i = 0; i < embeddings.size(); i++) {
+            nouveaux.add(add(embeddings.get(i), segments.get(i)));
+        }
+        return nouveaux;
+    }
+
+    /**
+     * Ajoute un vecteur (normalisé à l'insertion). Un identifiant déjà présent est remplacé.
+     */
+    public void ajouter(String id, float[] vecteur, TextSegment segment) {
+        verrou.writeLock().lock();
+        try {
+            if (slots == 0 && dimension == 0) {
+                dimension = vecteur.length;
+            } else if (vecteur.length != dimension) {
+                throw new IllegalArgumentException("Dimension " + vecteur.length + " au lieu de " + dimension);
+            }
+            if (slots == ids.length) {
+                int capacite = Math.max(1024, slots * 2);
+                vecteurs = Arrays.copyOf(vecteurs, capacite * dimension);
+                ids = Arrays.copyOf(ids, capacite);
+                segments = Arrays.copyOf(segments, capacite);
+            }
+            Integer ancien = slotParId.put(id, slots);
+            if (ancien != null) {
+                supprimes.set(ancien);
+            }
+            System.arraycopy(VectorOps.normaliser(vecteur), 0, vecteurs, slots * dimension, dimension);
+            ids[slots] = id;
+            segments[slots] = segment;
+            slots++;
+            version.incrementAndGet();
+        } finally {
+            verrou.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll(Collection<String> aSupprimer) {
+        verrou.writeLock().lock();
+        try {
+            for (String id : aSupprimer) {
+                Integer slot = slotParId.remove(id);
+                if (slot != null) {
+                    supprimes.set(slot);
+                    segments[slot] = null;
+                }
+            }
+            version.incrementAndGet();
+        } finally {
+            verrou.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll() {
+        verrou.writeLock().lock();
+        try {
+            slotParId.clear();
+            supprimes.clear();
+            vecteurs = new float[0];
+            ids = new String[0];
+            segments = new TextSegment[0];
+            slots = 0;
+            version.incrementAndGet();
+        } finally {
+            verrou.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        float[] requete = VectorOps.normaliser(request.queryEmbedding().vector());
+        Filter filtre = request.filter();
+        int k = request.maxResults();
+        // RelevanceScore = (cos + 1) / 2 : le seuil est converti une fois pour toutes
+        float cosinusMin = (float) (2 * request.minScore() - 1);
+
+        verrou.readLock().lock();
+        try {
+            TopK meilleurs = new TopK(k);
+            for (int slot = 0, debut = 0; slot < slots; slot++, debut += dimension) {
+                float cosinus = VectorOps.dot(requete, 0, vecteurs, debut, dimension);
+                if (cosinus < cosinusMin || !meilleurs.accepterait(cosinus) || supprimes.get(slot)) {
+                    continue;
+                }
+                if (filtre != null && (segments[slot] == null || !filtre.test(segments[slot].metadata()))) {
+                    continue;
+                }
+                meilleurs.offrir(cosinus, slot);
+            }
+
+            float[] scores = new float[meilleurs.taille()];
+            int[] tries = meilleurs.extraireTries(scores);
+            List<EmbeddingMatch<TextSegment>> resultats = new ArrayList<>(tries.length);
+            for (int i = 0; i < tries.length; i++) {
+                int slot = tries[i];
+                float[] vecteur = Arrays.copyOfRange(vecteurs, slot * dimension, (slot + 1) * dimension);
+                resultats.add(new EmbeddingMatch<>(RelevanceScore.fromCosineSimilarity(scores[i]),
+                        ids[slot], Embedding.from(vecteur), segments[slot]));
+            }
+            return new EmbeddingSearchResult<>(resultats);
+        } finally {
+            verrou.readLock().unlock();
+        }
+    }
+}
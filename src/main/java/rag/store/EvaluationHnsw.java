@@ -0,0 +1,140 @@
+package rag.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Compare l'index HNSW à la recherche exacte d'{@link InMemoryEmbeddingStore} : rappel@k et
+ * latence moyenne pour plusieurs valeurs d'efSearch. La recherche exacte contiguë de
+ * {@link DenseEmbeddingStore} est mesurée au passage.
+ * <p>
+ * Usage : {@code EvaluationHnsw [repertoire d'index]}. Sans argument, un jeu synthétique de
+ * 20 000 vecteurs de dimension 384 est généré.
+ */
+public class EvaluationHnsw {
+
+    private static final int K = 5;
+    private static final int REQUETES = 200;
+
+    public static void main(String[] args) {
+        List<String> ids = new ArrayList<>();
+        List<float[]> vecteurs = new ArrayList<>();
+        if (args.length > 0) {
+            try (MappedEmbeddingStore source = MappedEmbeddingStore.ouvrir(Paths.get(args[0]))) {
+                source.parcourir((id, vecteur, segment) -> {
+                    ids.add(id);
+                    vecteurs.add(vecteur);
+                });
+            }
+        } else {
+            genererSynthetique(20_000, 384, ids, vecteurs);
+        }
+        System.out.println("=== Évaluation HNSW : " + vecteurs.size() + " vecteurs, rappel@" + K + " ===");
+
+        InMemoryEmbeddingStore<TextSegment> exact = new InMemoryEmbeddingStore<>();
+        for (int i = 0; i < ids.size(); i++) {
+            exact.add(ids.get(i), Embedding.from(vecteurs.get(i)));
+        }
+
+        // Requêtes : vecteurs de la collection légèrement bruités
+        Random aleatoire = new Random(42);
+        List<Embedding> requetes = new ArrayList<>();
+        for (int i = 0; i < REQUETES; i++) {
+            float[] base = vecteurs.get(aleatoire.nextInt(vecteurs.size())).clone();
+            for (int j = 0; j < base.length; j++) {
+                base[j] += (float) (aleatoire.nextGaussian() * 0.02);
+            }
+            requetes.add(Embedding.from(base));
+        }
+
+        List<Set<String>> verite = new ArrayList<>();
+        long debut = System.nanoTime();
+        for (Embedding requete : requetes) {
+            verite.add(ids(exact.search(requete(requete)).matches()));
+        }
+        double latenceExacte = (System.nanoTime() - debut) / 1e3 / REQUETES;
+        System.out.printf("Recherche exacte       : %8.1f µs/requête%n", latenceExacte);
+
+        DenseEmbeddingStore dense = new DenseEmbeddingStore();
+        for (int i = 0; i < ids.size(); i++) {
+            dense.ajouter(ids.get(i), vecteurs.get(i), null);
+        }
+        debut = System.nanoTime();
+        double rappelDense = 0;
+        for (int i = 0; i < REQUETES; i++) {
+            Set<String> communs = ids(dense.search(requete(requetes.get(i))).matches());
+            communs.retainAll(verite.get(i));
+            rappelDense += (double) communs.size() / verite.get(i).size();
+        }
+        System.out.printf("Recherche exacte dense : %8.1f µs/requête  rappel=%.3f%n",
+                (System.nanoTime() - debut) / 1e3 / REQUETES, rappelDense / REQUETES);
+
+        for (int m : new int[]{8, 16}) {
+            HnswEmbeddingStore hnsw = HnswEmbeddingStore.builder().m(m).efConstruction(200).efSearch(16).build();
+            long debutConstruction = System.nanoTime();
+            List<Integer> ordre = new ArrayList<>();
+            for (int i = 0; i < ids.size(); i++) {
+                ordre.add(i);
+            }
+            ordre.parallelStream().forEach(i -> hnsw.ajouter(ids.get(i), vecteurs.get(i), null));
+            System.out.printf("%nHNSW M=%d : construction en %d ms%n", m, (System.nanoTime() - debutConstruction) / 1_000_000);
+
+            for (int efSearch : new int[]{16, 32, 64, 128, 256}) {
+                hnsw.reglerEfSearch(efSearch);
+                double rappel = 0;
+                long debutRecherche = System.nanoTime();
+                List<Set<String>> trouves = new ArrayList<>();
+                for (Embedding requete : requetes) {
+                    trouves.add(ids(hnsw.search(requete(requete)).matches()));
+                }
+                double latence = (System.nanoTime() - debutRecherche) / 1e3 / REQUETES;
+                for (int i = 0; i < REQUETES; i++) {
+                    Set<String> communs = new HashSet<>(trouves.get(i));
+                    communs.retainAll(verite.get(i));
+                    rappel += (double) communs.size() / verite.get(i).size();
+                }
+                System.out.printf("  efSearch=%-4d rappel=%.3f  %8.1f µs/requête  (x%.1f)%n",
+                        efSearch, rappel / REQUETES, latence, latenceExacte / latence);
+            }
+        }
+    }
+
+    private static EmbeddingSearchRequest requete(Embedding embedding) {
+        return EmbeddingSearchRequest.builder().queryEmbedding(embedding).maxResults(K).minScore(0.0).build();
+    }
+
+    private static Set<String> ids(List<EmbeddingMatch<TextSegment>> matches) {
+        return matches.stream().map(EmbeddingMatch::embeddingId).collect(Collectors.toSet());
+    }
+
+    // Vecteurs regroupés autour de centres aléatoires, plus proches de vrais embeddings qu'un bruit uniforme
+    private static void genererSynthetique(int n, int dimension, List<String> ids, List<float[]> vecteurs) {
+        Random aleatoire = new Random(7);
+        float[][] centres = new float[64][dimension];
+        for (float[] centre : centres) {
+            for (int j = 0; j < dimension; j++) {
+                centre[j] = (float) aleatoire.nextGaussian();
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            float[] centre = centres[aleatoire.nextInt(centres.length)];
+            float[] vecteur = new float[dimension];
+            for (int j = 0; j < dimension; j++) {
+                vecteur[j] = centre[j] + (float) aleatoire.nextGaussian() * 0.8f;
+            }
+            ids.add("v" + i);
+            vecteurs.add(vecteur);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package rag.store;
+
+import dev.langchain4j.data.document.parser.apache.tika.ApacheTikaDocumentParser;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import rag.embedding.ParallelEmbeddingModel;
+import rag.ingestion.IncrementalIngestor;
+
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Mesure la mémoire gagnée et le rappel@k perdu par les modes quantifiés de
+ * {@link QuantizedEmbeddingStore}, sur les index de {@code rag.pdf} et {@code Easy_recipes.pdf}
+ * (construits au besoin) et un jeu de questions représentatif. La référence est la recherche
+ * exacte de {@link DenseEmbeddingStore}.
+ */
+public class EvaluationQuantification {
+
+    private static final int K = 5;
+
+    private static final List<String> QUESTIONS_IA = List.of(
+            "Qu'est-ce que le RAG ?",
+            "Quelle est la différence entre RAG et fine-tuning ?",
+            "Comment fonctionne un modèle d'embedding ?",
+            "À quoi sert un magasin de vecteurs ?",
+            "Comment découper un document en segments ?",
+            "Qu'est-ce qu'un retriever ?",
+            "Quels sont les avantages du RAG avancé ?",
+            "What is retrieval augmented generation?",
+            "How does query transformation work?",
+            "Comment évaluer la qualité des réponses d'un LLM ?");
+
+    private static final List<String> QUESTIONS_RECETTES = List.of(
+            "Comment faire une recette simple ?",
+            "Quels ingrédients pour une pâte à crêpes ?",
+            "How long should I bake the cake?",
+            "Which recipes use chicken?",
+            "What do I need to make pancakes?",
+            "How do I prepare a salad dressing?",
+            "Une recette de dessert au chocolat ?",
+            "What is the oven temperature for cookies?",
+            "Easy pasta recipe with tomato sauce",
+            "How many eggs are needed?");
+
+    public static void main(String[] args) {
+        ParallelEmbeddingModel embeddingModel = ParallelEmbeddingModel.allMiniLmL6V2();
+        evaluer("rag.pdf", "index/rag-300-30", QUESTIONS_IA, embeddingModel);
+        evaluer("Easy_recipes.pdf", "index/recettes-300-30", QUESTIONS_RECETTES, embeddingModel);
+    }
+
+    private static void evaluer(String fichier, String repertoire, List<String> questions,
+                                ParallelEmbeddingModel embeddingModel) {
+        try (MappedEmbeddingStore source = MappedEmbeddingStore.ouvrir(Paths.get(repertoire))) {
+            IncrementalIngestor.builder()
+                    .store(source)
+                    .embeddingModel(embeddingModel)
+                    .parser(new ApacheTikaDocumentParser())
+                    .splitter(300, 30)
+                    .filtre(segment -> segment.text() != null &&
+                            segment.text().trim().length() > 10 &&
+                            !segment.text().trim().matches("\\s*"))
+                    .build()
+                    .ingerer(List.of(Paths.get("src/main/resources", fichier)));
+
+            System.out.println("\n=== " + fichier + " : " + source.taille() + " segments, rappel@" + K + " ===");
+
+            List<Embedding> requetes = questions.stream()
+                    .map(question -> embeddingModel.embed(question).content())
+                    .collect(Collectors.toList());
+
+            DenseEmbeddingStore exact = DenseEmbeddingStore.depuis(source);
+            List<Set<String>> verite = requetes.stream().map(requete -> ids(exact, requete)).collect(Collectors.toList());
+            System.out.printf("%-28s %10d octets%n", "float32 (référence)",
+                    (long) source.taille() * source.dimension() * Float.BYTES);
+
+            for (QuantizedEmbeddingStore.Mode mode : QuantizedEmbeddingStore.Mode.values()) {
+                for (int facteur : new int[]{0, 4}) {
+                    QuantizedEmbeddingStore quantifie = QuantizedEmbeddingStore.builder()
+                            .source(source)
+                            .mode(mode)
+                            .facteurReclassement(facteur)
+                            .build();
+                    double rappel = 0;
+                    for (int i = 0; i < requetes.size(); i++) {
+                        Set<String> communs = ids(quantifie, requetes.get(i));
+                        communs.retainAll(verite.get(i));
+                        rappel += verite.get(i).isEmpty() ? 1 : (double) communs.size() / verite.get(i).size();
+                    }
+                    System.out.printf("%-28s %10d octets (%.1f%% de la pleine précision)  rappel=%.3f%n",
+                            mode + (facteur > 0 ? " + re-notation x" + facteur : " seul"),
+                            quantifie.octetsCodes(),
+                            100.0 * quantifie.octetsCodes() / quantifie.octetsPleinePrecision(),
+                            rappel / requetes.size());
+                }
+            }
+        }
+    }
+
+    private static Set<String> ids(EmbeddingStore<TextSegment> store, Embedding requete) {
+        EmbeddingSearchRequest request = EmbeddingSearchRequest.builder()
+                .queryEmbedding(requete)
+                .maxResults(K)
+                .minScore(0.0)
+                .build();
+        return store.search(request).matches().stream()
+                .map(EmbeddingMatch::embeddingId)
+                .collect(Collectors.toCollection(HashSet::new));
+    }
+}
@@ -0,0 +1,586 @@
+package rag.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Magasin d'embeddings en mémoire indexé par un graphe HNSW (Hierarchical Navigable Small World).
+ * <p>
+ * La recherche est approximative : {@code efSearch} règle le compromis rappel / latence.
+ * Les insertions peuvent être faites depuis plusieurs threads ; les suppressions sont logiques
+ * (le nœud reste dans le graphe pour la navigation mais n'est plus jamais renvoyé).
+ * Le filtre éventuel de la requête est appliqué sur les candidats du graphe.
+ * <p>
+ * Le graphe construit depuis un index persistant est enregistré à côté de lui
+ * ({@code hnsw.bin}) avec l'empreinte de l'index ; à l'ouverture suivante, il est relu au lieu
+ * d'être reconstruit tant que l'index n'a pas changé.
+ */
+public class HnswEmbeddingStore implements EmbeddingStore<TextSegment>, Versionne {
+
+    private static final int NIVEAU_MAX = 16;
+    private static final int MAGIC_GRAPHE = 0x484E5357; // "HNSW"
+    private static final int FORMAT_GRAPHE = 1;
+
+    private final int m;
+    private final int mMax0;
+    private final int efConstruction;
+    private volatile int efSearch;
+    private final double facteurNiveau;
+
+    private volatile AtomicReferenceArray<Noeud> noeuds = new AtomicReferenceArray<>(1024);
+    private volatile Noeud entree;
+    private int taille;
+
+    private final Map<String, Integer> numeroParId = new ConcurrentHashMap<>();
+    private final AtomicInteger vivants = new AtomicInteger();
+    private final AtomicLong version = new AtomicLong();
+    private final Object verrouEntree = new Object();
+
+    private HnswEmbeddingStore(Builder builder) {
+        this.m = builder.m;
+        this.mMax0 = 2 * builder.m;
+        this.efConstruction = builder.efConstruction;
+        this.efSearch = builder.efSearch;
+        this.facteurNiveau = 1 / Math.log(builder.m);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Index HNSW (paramètres par défaut) d'un index persistant : le graphe enregistré dans
+     * {@code hnsw.bin} s'il correspond à l'état de l'index, sinon un graphe construit en insérant
+     * les entrées en parallèle, puis enregistré.
+     */
+    public static HnswEmbeddingStore depuis(MappedEmbeddingStore source) {
+        Path fichier = source.repertoire().resolve("hnsw.bin");
+        String empreinte = source.empreinte();
+        HnswEmbeddingStore index = builder().build();
+        if (index.charger(fichier, empreinte, source)) {
+            return index;
+        }
+        index = builder().build();
+        index.ajouterTout(source);
+        index.enregistrer(fichier, empreinte);
+        return index;
+    }
+
+    public void ajouterTout(MappedEmbeddingStore source) {
+        List<Object[]> entrees = new ArrayList<>();
+        source.parcourir((id, vecteur, segment) -> entrees.add(new Object[]{id, vecteur, segment}));
+        entrees.parallelStream().forEach(e -> ajouter((String) e[0], (float[]) e[1], (TextSegment) e[2]));
+    }
+
+    public int taille() {
+        return vivants.get();
+    }
+
+    @Override
+    public long version() {
+        return version.get();
+    }
+
+    /**
+     * Modifie efSearch sans reconstruire le graphe (plus grand : meilleur rappel, plus lent).
+     */
+    public void reglerEfSearch(int efSearch) {
+        this.efSearch = efSearch;
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        ajouter(id, embedding.vector(), null);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        ajouter(id, embedding.vector(), null);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment segment) {
+        String id = UUID.randomUUID().toString();
+        ajouter(id, embedding.vector(), segment);
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> ids = new ArrayList<>(embeddings.size());
+        for (Embedding embedding : embeddings) {
+            ids.add(add(embedding));
+        }
+        return ids;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<TextSegment> segments) {
+        if (embeddings.size() != segments.size()) {
+            throw new IllegalArgumentException("embeddings et segments doivent avoir la même taille");
+        }
+        List<String> ids = new ArrayList<>(embeddings.size());
+        for (int i = 0; i < embeddings.size(); i++) {
+            ids.add(add(embeddings.get(i), segments.get(i)));
+        }
+        return ids;
+    }
+
+    @Override
+    public void removeAll(Collection<String> ids) {
+        for (String id : ids) {
+            Integer numero = numeroParId.remove(id);
+            if (numero != null) {
+                marquerSupprime(noeud(numero));
+            }
+        }
+        version.incrementAndGet();
+    }
+
+    @Override
+    public void removeAll() {
+        removeAll(new ArrayList<>(numeroParId.keySet()));
+    }
+
+    /**
+     * Insère un vecteur (normalisé en interne). Un identifiant déjà présent est remplacé.
+     */
+    public void ajouter(String id, float[] vecteur, TextSegment segment) {
+        int niveau = Math.min(NIVEAU_MAX, (int) (-Math.log(1 - ThreadLocalRandom.current().nextDouble()) * facteurNiveau));
+        Noeud noeud = publier(id, normaliser(vecteur), segment, niveau);
+
+        Integer ancien = numeroParId.put(id, noeud.numero);
+        if (ancien != null) {
+            marquerSupprime(noeud(ancien));
+        }
+        vivants.incrementAndGet();
+
+        Noeud pointEntree = entree;
+        if (pointEntree == null) {
+            synchronized (verrouEntree) {
+                if (entree == null) {
+                    entree = noeud;
+                    version.incrementAndGet();
+                    return;
+                }
+                pointEntree = entree;
+            }
+        }
+
+        Candidat courant = new Candidat(pointEntree.numero, similarite(noeud.vecteur, pointEntree.vecteur));
+        for (int l = pointEntree.niveau; l > niveau; l--) {
+            courant = gloutonne(noeud.vecteur, courant, l);
+        }
+
+        for (int l = Math.min(niveau, pointEntree.niveau); l >= 0; l--) {
+            PriorityQueue<Candidat> candidats = rechercherCouche(noeud.vecteur, courant, efConstruction, l);
+            List<Candidat> tries = trierDecroissant(candidats);
+            for (int voisin : selectionner(tries, m)) {
+                if (voisin == noeud.numero) {
+                    continue;
+                }
+                // D'autres insertions concurrentes ont pu déjà relier ce nœud : on complète sa liste
+                relier(noeud, voisin, l);
+                relier(noeud(voisin), noeud.numero, l);
+            }
+            courant = tries.get(0);
+        }
+
+        if (niveau > pointEntree.niveau) {
+            synchronized (verrouEntree) {
+                if (niveau > entree.niveau) {
+                    entree = noeud;
+                }
+            }
+        }
+        version.incrementAndGet();
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        Noeud pointEntree = entree;
+        if (pointEntree == null) {
+            return new EmbeddingSearchResult<>(List.of());
+        }
+        float[] requete = normaliser(request.queryEmbedding().vector());
+        Filter filtre = request.filter();
+
+        Candidat courant = new Candidat(pointEntree.numero, similarite(requete, pointEntree.vecteur));
+        for (int l = pointEntree.niveau; l > 0; l--) {
+            courant = gloutonne(requete, courant, l);
+        }
+        PriorityQueue<Candidat> candidats = rechercherCouche(requete, courant, Math.max(efSearch, request.maxResults()), 0);
+
+        List<EmbeddingMatch<TextSegment>> resultats = new ArrayList<>();
+        for (Candidat candidat : trierDecroissant(candidats)) {
+            Noeud noeud = noeud(candidat.numero);
+            double score = RelevanceScore.fromCosineSimilarity(candidat.similarite);
+            if (noeud.supprime || score < request.minScore()) {
+                continue;
+            }
+            if (filtre != null && (noeud.segment == null || !filtre.test(noeud.segment.metadata()))) {
+                continue;
+            }
+            resultats.add(new EmbeddingMatch<>(score, noeud.id, Embedding.from(noeud.vecteur.clone()), noeud.segment));
+            if (resultats.size() == request.maxResults()) {
+                break;
+            }
+        }
+        return new EmbeddingSearchResult<>(resultats);
+    }
+
+    // ==================== Enregistrement du graphe ====================
+
+    /**
+     * Écrit le graphe (identifiants, niveaux et voisins ; les vecteurs restent dans l'index
+     * persistant) dans un fichier temporaire renommé ensuite. Un échec d'écriture n'empêche pas
+     * d'utiliser le graphe : il sera reconstruit au prochain démarrage.
+     */
+    void enregistrer(Path fichier, String empreinte) {
+        Path temporaire = fichier.resolveSibling(fichier.getFileName() + ".tmp");
+        try {
+            synchronized (this) {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaire)))) {
+                    out.writeInt(MAGIC_GRAPHE);
+                    out.writeInt(FORMAT_GRAPHE);
+                    out.writeUTF(empreinte);
+                    out.writeInt(m);
+                    out.writeInt(efConstruction);
+                    out.writeInt(taille);
+                    out.writeInt(entree == null ? -1 : entree.numero);
+                    for (int numero = 0; numero < taille; numero++) {
+                        Noeud noeud = noeud(numero);
+                        out.writeUTF(noeud.id);
+                        out.writeBoolean(noeud.supprime);
+                        out.writeInt(noeud.niveau);
+                        for (int l = 0; l <= noeud.niveau; l++) {
+                            int[] voisins = noeud.voisins(l);
+                            out.writeInt(voisins.length);
+                            for (int voisin : voisins) {
+                                out.writeInt(voisin);
+                            }
+                        }
+                    }
+                }
+            }
+            Files.move(temporaire, fichier, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            try {
+                Files.deleteIfExists(temporaire);
+            } catch (IOException ignoree) {
+                // Fichier temporaire laissé : il sera remplacé au prochain enregistrement
+            }
+        }
+    }
+
+    /**
+     * Relit le graphe enregistré s'il a été construit sur l'état {@code empreinte} de
+     * {@code source} avec les mêmes paramètres ; les vecteurs et segments sont repris de
+     * {@code source}. À appeler sur un index vide.
+     *
+     * @return {@code false} si le fichier est absent, périmé ou illisible (l'index reste vide)
+     */
+    boolean charger(Path fichier, String empreinte, MappedEmbeddingStore source) {
+        if (!Files.exists(fichier)) {
+            return false;
+        }
+        Map<String, Object[]> entrees = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(fichier)))) {
+            if (in.readInt() != MAGIC_GRAPHE || in.readInt() != FORMAT_GRAPHE || !in.readUTF().equals(empreinte)
+                    || in.readInt() != m || in.readInt() != efConstruction) {
+                return false;
+            }
+            source.parcourir((id, vecteur, segment) -> entrees.put(id, new Object[]{vecteur, segment}));
+            int nombre = in.readInt();
+            int numeroEntree = in.readInt();
+            for (int numero = 0; numero < nombre; numero++) {
+                String id = in.readUTF();
+                boolean supprime = in.readBoolean();
+                int niveau = in.readInt();
+                Object[] entree = entrees.get(id);
+                if (entree == null) {
+                    return false;
+                }
+                Noeud noeud = publier(id, normaliser((float[]) entree[0]), (TextSegment) entree[1], niveau);
+                for (int l = 0; l <= niveau; l++) {
+                    int[] voisins = new int[in.readInt()];
+                    for (int i = 0; i < voisins.length; i++) {
+                        voisins[i] = in.readInt();
+                    }
+                    noeud.voisins[l] = Arrays.copyOf(voisins, Math.max(voisins.length, l == 0 ? mMax0 : m));
+                    noeud.nbVoisins[l] = voisins.length;
+                }
+                if (supprime) {
+                    noeud.supprime = true;
+                } else {
+                    numeroParId.put(id, numero);
+                    vivants.incrementAndGet();
+                }
+            }
+            entree = numeroEntree < 0 ? null : noeud(numeroEntree);
+            version.incrementAndGet();
+            return true;
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    // ==================== Graphe ====================
+
+    private static final class Noeud {
+        final int numero;
+        final String id;
+        final float[] vecteur;
+        final TextSegment segment;
+        final int niveau;
+        final int[][] voisins;
+        final int[] nbVoisins;
+        volatile boolean supprime;
+
+        Noeud(int numero, String id, float[] vecteur, TextSegment segment, int niveau) {
+            this.numero = numero;
+            this.id = id;
+            this.vecteur = vecteur;
+            this.segment = segment;
+            this.niveau = niveau;
+            this.voisins = new int[niveau + 1][];
+            this.nbVoisins = new int[niveau + 1];
+        }
+
+        synchronized int[] voisins(int niveau) {
+            int[] liste = voisins[niveau];
+            return liste == null ? new int[0] : Arrays.copyOf(liste, nbVoisins[niveau]);
+        }
+    }
+
+    private static final class Candidat {
+        final int numero;
+        final double similarite;
+
+        Candidat(int numero, double similarite) {
+            this.numero = numero;
+            this.similarite = similarite;
+        }
+    }
+
+    private static final Comparator<Candidat> CROISSANT = Comparator.comparingDouble(c -> c.similarite);
+
+    private Noeud publier(String id, float[] vecteur, TextSegment segment, int niveau) {
+        synchronized (this) {
+            int numero = taille++;
+            if (numero == noeuds.length()) {
+                AtomicReferenceArray<Noeud> agrandi = new AtomicReferenceArray<>(numero * 2);
+                for (int i = 0; i < numero; i++) {
+                    agrandi.set(i, noeuds.get(i));
+                }
+                noeuds = agrandi;
+            }
+            Noeud noeud = new Noeud(numero, id, vecteur, segment, niveau);
+            noeuds.set(numero, noeud);
+            return noeud;
+        }
+    }
+
+    private void marquerSupprime(Noeud noeud) {
+        synchronized (noeud) {
+            if (!noeud.supprime) {
+                noeud.supprime = true;
+                vivants.decrementAndGet();
+            }
+        }
+    }
+
+    private Noeud noeud(int numero) {
+        return noeuds.get(numero);
+    }
+
+    private Candidat gloutonne(float[] requete, Candidat depart, int niveau) {
+        Candidat courant = depart;
+        boolean ameliore = true;
+        while (ameliore) {
+            ameliore = false;
+            for (int voisin : noeud(courant.numero).voisins(niveau)) {
+                double s = similarite(requete, noeud(voisin).vecteur);
+                if (s > courant.similarite) {
+                    courant = new Candidat(voisin, s);
+                    ameliore = true;
+                }
+            }
+        }
+        return courant;
+    }
+
+    /**
+     * Recherche en largeur bornée dans une couche ; renvoie au plus {@code ef} candidats dans un
+     * tas dont la tête est le moins similaire.
+     */
+    private PriorityQueue<Candidat> rechercherCouche(float[] requete, Candidat depart, int ef, int niveau) {
+        BitSet visites = new BitSet();
+        visites.set(depart.numero);
+        PriorityQueue<Candidat> aExplorer = new PriorityQueue<>(CROISSANT.reversed());
+        PriorityQueue<Candidat> meilleurs = new PriorityQueue<>(CROISSANT);
+        aExplorer.add(depart);
+        meilleurs.add(depart);
+
+        while (!aExplorer.isEmpty()) {
+            Candidat candidat = aExplorer.poll();
+            if (meilleurs.size() >= ef && candidat.similarite < meilleurs.peek().similarite) {
+                break;
+            }
+            Noeud noeud = noeud(candidat.numero);
+            if (noeud.niveau < niveau) {
+                continue;
+            }
+            for (int voisin : noeud.voisins(niveau)) {
+                if (visites.get(voisin)) {
+                    continue;
+                }
+                visites.set(voisin);
+                double s = similarite(requete, noeud(voisin).vecteur);
+                if (meilleurs.size() < ef || s > meilleurs.peek().similarite) {
+                    Candidat nouveau = new Candidat(voisin, s);
+                    aExplorer.add(nouveau);
+                    meilleurs.add(nouveau);
+                    if (meilleurs.size() > ef) {
+                        meilleurs.poll();
+                    }
+                }
+            }
+        }
+        return meilleurs;
+    }
+
+    /**
+     * Heuristique de sélection des voisins : un candidat n'est retenu que s'il est plus proche de
+     * la cible que de tous les voisins déjà retenus, ce qui garde des liens dans des directions
+     * variées. Les places restantes sont complétées par les plus proches écartés.
+     */
+    private int[] selectionner(List<Candidat> triesDecroissant, int maximum) {
+        List<Candidat> retenus = new ArrayList<>(maximum);
+        List<Candidat> ecartes = new ArrayList<>();
+        for (Candidat candidat : triesDecroissant) {
+            if (retenus.size() == maximum) {
+                break;
+            }
+            float[] vecteur = noeud(candidat.numero).vecteur;
+            boolean diversifie = true;
+            for (Candidat retenu : retenus) {
+                if (similarite(vecteur, noeud(retenu.numero).vecteur) > candidat.similarite) {
+                    diversifie = false;
+                    break;
+                }
+            }
+            (diversifie ? retenus : ecartes).add(candidat);
+        }
+        for (int i = 0; retenus.size() < maximum && i < ecartes.size(); i++) {
+            retenus.add(ecartes.get(i));
+        }
+        return retenus.stream().mapToInt(c -> c.numero).toArray();
+    }
+
+    private void relier(Noeud voisin, int numero, int niveau) {
+        synchronized (voisin) {
+            int maximum = niveau == 0 ? mMax0 : m;
+            int[] liste = voisin.voisins[niveau];
+            if (liste == null) {
+                liste = new int[maximum];
+                voisin.voisins[niveau] = liste;
+            }
+            int n = voisin.nbVoisins[niveau];
+            if (n < maximum) {
+                liste[n] = numero;
+                voisin.nbVoisins[niveau] = n + 1;
+                return;
+            }
+            // Liste pleine : on refait la sélection sur les anciens voisins plus le nouveau
+            List<Candidat> candidats = new ArrayList<>(n + 1);
+            for (int i = 0; i < n; i++) {
+                candidats.add(new Candidat(liste[i], similarite(voisin.vecteur, noeud(liste[i]).vecteur)));
+            }
+            candidats.add(new Candidat(numero, similarite(voisin.vecteur, noeud(numero).vecteur)));
+            candidats.sort(CROISSANT.reversed());
+            int[] choisis = selectionner(candidats, maximum);
+            System.arraycopy(choisis, 0, liste, 0, choisis.length);
+            voisin.nbVoisins[niveau] = choisis.length;
+        }
+    }
+
+    private static List<Candidat> trierDecroissant(PriorityQueue<Candidat> tas) {
+        List<Candidat> liste = new ArrayList<>(tas);
+        liste.sort(CROISSANT.reversed());
+        return liste;
+    }
+
+    private static float[] normaliser(float[] vecteur) {
+        return VectorOps.normaliser(vecteur);
+    }
+
+    private static double similarite(float[] a, float[] b) {
+        return VectorOps.dot(a, b);
+    }
+
+    // ==================== Builder ====================
+
+    public static class Builder {
+        private int m = 16;
+        private int efConstruction = 200;
+        private int efSearch = 64;
+
+        /**
+         * Nombre de liens par nœud dans les couches hautes (le double dans la couche 0).
+         */
+        public Builder m(int m) {
+            this.m = m;
+            return this;
+        }
+
+        public Builder efConstruction(int efConstruction) {
+            this.efConstruction = efConstruction;
+            return this;
+        }
+
+        public Builder efSearch(int efSearch) {
+            this.efSearch = efSearch;
+            return this;
+        }
+
+        public HnswEmbeddingStore build() {
+            if (m < 2 || efConstruction < 1 || efSearch < 1) {
+                throw new IllegalArgumentException("Paramètres HNSW invalides");
+            }
+            return new HnswEmbeddingStore(this);
+        }
+    }
+}
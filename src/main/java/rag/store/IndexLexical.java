@@ -0,0 +1,357 @@
+package rag.store;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index inversé BM25 sur les segments d'un {@link MappedEmbeddingStore}, pour retrouver les
+ * correspondances exactes (noms d'ingrédients, acronymes) que la recherche dense laisse passer.
+ * <p>
+ * Les termes sont normalisés (minuscules, sans accents, sans mots vides français et anglais, sans
+ * le pluriel en « s »). Chaque liste de postings est un tableau d'octets : écarts entre numéros
+ * de document puis fréquence du terme, en entiers de longueur variable, soit 2 octets par
+ * occurrence dans la plupart des cas. L'index est immuable ; il est reconstruit et réécrit à côté
+ * du magasin ({@value #FICHIER}) par l'ingestion.
+ */
+public final class IndexLexical {
+
+    public static final String FICHIER = "lexical.bin";
+
+    private static final int MAGIC = 0x52414742; // "RAGB"
+    private static final int VERSION = 1;
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+
+    private static final Set<String> MOTS_VIDES = Set.of(
+            "a", "au", "aux", "avec", "ce", "ces", "cet", "cette", "dans", "de", "des", "du", "elle", "en", "est",
+            "et", "il", "ils", "la", "le", "les", "leur", "mais", "ne", "ou", "par", "pas", "pour", "qu", "que",
+            "qui", "sa", "se", "ses", "son", "sont", "sur", "un", "une", "d", "l", "s", "c", "j", "n", "y",
+            "comment", "quel", "quelle", "quels", "quelles", "quoi",
+            "an", "and", "are", "as", "at", "be", "by", "for", "from", "how", "in", "is", "it", "of", "on", "or",
+            "that", "the", "this", "to", "was", "what", "with");
+
+    private final String[] ids;
+    private final TextSegment[] segments;
+    private final int[] longueurs;
+    private final float longueurMoyenne;
+    private final Map<String, Integer> termes;
+    private final int[] frequencesDocuments;
+    private final byte[][] postings;
+
+    private IndexLexical(String[] ids, TextSegment[] segments, int[] longueurs,
+                         Map<String, Integer> termes, int[] frequencesDocuments, byte[][] postings) {
+        this.ids = ids;
+        this.segments = segments;
+        this.longueurs = longueurs;
+        this.termes = termes;
+        this.frequencesDocuments = frequencesDocuments;
+        this.postings = postings;
+        long total = 0;
+        for (int longueur : longueurs) {
+            total += longueur;
+        }
+        this.longueurMoyenne = longueurs.length == 0 ? 1 : Math.max(1, (float) total / longueurs.length);
+    }
+
+    /**
+     * Indexe les segments vivants du magasin.
+     */
+    public static IndexLexical construire(MappedEmbeddingStore store) {
+        List<String> ids = new ArrayList<>();
+        List<TextSegment> segments = new ArrayList<>();
+        store.parcourir((id, vecteur, segment) -> {
+            ids.add(id);
+            segments.add(segment);
+        });
+
+        Map<String, Integer> termes = new HashMap<>();
+        List<Postings> listes = new ArrayList<>();
+        int[] longueurs = new int[ids.size()];
+        for (int doc = 0; doc < ids.size(); doc++) {
+            List<String> jetons = termes(segments.get(doc).text());
+            longueurs[doc] = jetons.size();
+            Map<String, Integer> frequences = new LinkedHashMap<>();
+            for (String jeton : jetons) {
+                frequences.merge(jeton, 1, Integer::sum);
+            }
+            for (Map.Entry<String, Integer> entree : frequences.entrySet()) {
+                int terme = termes.computeIfAbsent(entree.getKey(), t -> {
+                    listes.add(new Postings());
+                    return listes.size() - 1;
+                });
+                listes.get(terme).ajouter(doc, entree.getValue());
+            }
+        }
+
+        int[] frequencesDocuments = new int[listes.size()];
+        byte[][] postings = new byte[listes.size()][];
+        for (int terme = 0; terme < listes.size(); terme++) {
+            frequencesDocuments[terme] = listes.get(terme).documents;
+            postings[terme] = listes.get(terme).octets();
+        }
+        return new IndexLexical(ids.toArray(new String[0]), segments.toArray(new TextSegment[0]), longueurs,
+                termes, frequencesDocuments, postings);
+    }
+
+    /**
+     * Relit l'index écrit par l'ingestion à côté du magasin ; il est reconstruit s'il est absent ou
+     * ne correspond plus au contenu du magasin.
+     */
+    public static IndexLexical ouvrir(MappedEmbeddingStore store) {
+        IndexLexical index = lire(store.repertoire().resolve(FICHIER), store);
+        return index != null ? index : construire(store);
+    }
+
+    public int taille() {
+        return ids.length;
+    }
+
+    public int nombreTermes() {
+        return termes.size();
+    }
+
+    /**
+     * Taille cumulée des listes de postings, en octets.
+     */
+    public long octetsPostings() {
+        long total = 0;
+        for (byte[] liste : postings) {
+            total += liste.length;
+        }
+        return total;
+    }
+
+    /**
+     * Les {@code maxResults} segments de meilleur score BM25 pour la requête, du meilleur au moins
+     * bon ; les segments sans aucun terme commun ne sont pas renvoyés.
+     */
+    public List<EmbeddingMatch<TextSegment>> rechercher(String requete, int maxResults) {
+        float[] scores = new float[ids.length];
+        boolean trouve = false;
+        for (String jeton : new LinkedHashSet<>(termes(requete))) {
+            Integer terme = termes.get(jeton);
+            if (terme == null) {
+                continue;
+            }
+            trouve = true;
+            int df = frequencesDocuments[terme];
+            float idf = (float) Math.log(1 + (ids.length - df + 0.5) / (df + 0.5));
+            byte[] liste = postings[terme];
+            int position = 0;
+            int doc = 0;
+            while (position < liste.length) {
+                int valeur = 0;
+                int decalage = 0;
+                byte octet;
+                do {
+                    octet = liste[position++];
+                    valeur |= (octet & 0x7F) << decalage;
+                    decalage += 7;
+                } while (octet < 0);
+                doc += valeur;
+                valeur = 0;
+                decalage = 0;
+                do {
+                    octet = liste[position++];
+                    valeur |= (octet & 0x7F) << decalage;
+                    decalage += 7;
+                } while (octet < 0);
+                float tf = valeur;
+                scores[doc] += idf * tf * (K1 + 1)
+                        / (tf + K1 * (1 - B + B * longueurs[doc] / longueurMoyenne));
+            }
+        }
+        if (!trouve || maxResults <= 0) {
+            return List.of();
+        }
+
+        TopK topK = new TopK(Math.min(maxResults, ids.length));
+        for (int doc = 0; doc < scores.length; doc++) {
+            if (scores[doc] > 0 && topK.accepterait(scores[doc])) {
+                topK.offrir(scores[doc], doc);
+            }
+        }
+        float[] scoresTries = new float[topK.taille()];
+        int[] docs = topK.extraireTries(scoresTries);
+        List<EmbeddingMatch<TextSegment>> resultats = new ArrayList<>(docs.length);
+        for (int i = 0; i < docs.length; i++) {
+            resultats.add(new EmbeddingMatch<>((double) scoresTries[i], ids[docs[i]], null, segments[docs[i]]));
+        }
+        return resultats;
+    }
+
+    /**
+     * Score BM25 d'un segment de longueur moyenne qui contiendrait une fois chaque terme de la
+     * requête, c'est-à-dire la somme de leurs IDF ; un terme absent du corpus compte avec l'IDF
+     * maximal. Rapporté à cette référence, le score d'un segment mesure la part de l'information
+     * de la question qu'il couvre, indépendamment de la longueur de la question et du corpus.
+     */
+    public float scoreReference(String requete) {
+        float reference = 0;
+        for (String jeton : new LinkedHashSet<>(termes(requete))) {
+            Integer terme = termes.get(jeton);
+            int df = terme == null ? 0 : frequencesDocuments[terme];
+            reference += (float) Math.log(1 + (ids.length - df + 0.5) / (df + 0.5));
+        }
+        return reference;
+    }
+
+    /**
+     * Écrit l'index (identifiants, dictionnaire et postings ; les textes restent dans le magasin).
+     */
+    public void ecrire(Path fichier) {
+        Path temporaire = fichier.resolveSibling(fichier.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaire)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(ids.length);
+            for (int doc = 0; doc < ids.length; doc++) {
+                out.writeUTF(ids[doc]);
+                out.writeInt(longueurs[doc]);
+            }
+            out.writeInt(termes.size());
+            for (Map.Entry<String, Integer> entree : termes.entrySet()) {
+                int terme = entree.getValue();
+                out.writeUTF(entree.getKey());
+                out.writeInt(frequencesDocuments[terme]);
+                out.writeInt(postings[terme].length);
+                out.write(postings[terme]);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Écriture de l'index lexical impossible : " + fichier, e);
+        }
+        try {
+            Files.move(temporaire, fichier, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Écriture de l'index lexical impossible : " + fichier, e);
+        }
+    }
+
+    /**
+     * Index lu sur disque, ou {@code null} s'il est absent, illisible ou désaccordé avec le magasin
+     * (nombre de segments différent ou identifiant inconnu).
+     */
+    private static IndexLexical lire(Path fichier, MappedEmbeddingStore store) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(fichier)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            int nombre = in.readInt();
+            if (nombre != store.taille()) {
+                return null;
+            }
+            String[] ids = new String[nombre];
+            TextSegment[] segments = new TextSegment[nombre];
+            int[] longueurs = new int[nombre];
+            for (int doc = 0; doc < nombre; doc++) {
+                ids[doc] = in.readUTF();
+                longueurs[doc] = in.readInt();
+                segments[doc] = store.segment(ids[doc]);
+                if (segments[doc] == null) {
+                    return null;
+                }
+            }
+            int nombreTermes = in.readInt();
+            Map<String, Integer> termes = new HashMap<>(nombreTermes * 2);
+            int[] frequencesDocuments = new int[nombreTermes];
+            byte[][] postings = new byte[nombreTermes][];
+            for (int terme = 0; terme < nombreTermes; terme++) {
+                termes.put(in.readUTF(), terme);
+                frequencesDocuments[terme] = in.readInt();
+                postings[terme] = in.readNBytes(in.readInt());
+            }
+            return new IndexLexical(ids, segments, longueurs, termes, frequencesDocuments, postings);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            // Fichier tronqué ou corrompu : il sera reconstruit
+            return null;
+        }
+    }
+
+    // ==================== Analyse du texte ====================
+
+    /**
+     * Termes normalisés du texte, dans l'ordre, répétitions comprises.
+     */
+    static List<String> termes(String texte) {
+        String normalise = Normalizer.normalize(texte.toLowerCase(Locale.ROOT), Normalizer.Form.NFD);
+        List<String> jetons = new ArrayList<>();
+        StringBuilder courant = new StringBuilder();
+        for (int i = 0; i <= normalise.length(); i++) {
+            char c = i < normalise.length() ? normalise.charAt(i) : ' ';
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (Character.isLetterOrDigit(c)) {
+                courant.append(c);
+            } else if (courant.length() > 0) {
+                String jeton = courant.toString();
+                courant.setLength(0);
+                if (!MOTS_VIDES.contains(jeton)) {
+                    jetons.add(jeton.length() > 3 && jeton.endsWith("s") && !jeton.endsWith("ss")
+                            ? jeton.substring(0, jeton.length() - 1)
+                            : jeton);
+                }
+            }
+        }
+        return jetons;
+    }
+
+    /**
+     * Liste de postings en cours de construction : (écart de document, fréquence) en entiers de
+     * longueur variable.
+     */
+    private static final class Postings {
+        private byte[] octets = new byte[8];
+        private int taille;
+        private int dernier;
+        private int documents;
+
+        private void ajouter(int doc, int frequence) {
+            ecrire(doc - dernier);
+            ecrire(frequence);
+            dernier = doc;
+            documents++;
+        }
+
+        private void ecrire(int valeur) {
+            while (true) {
+                if (taille == octets.length) {
+                    octets = Arrays.copyOf(octets, taille * 2);
+                }
+                if ((valeur & ~0x7F) == 0) {
+                    octets[taille++] = (byte) valeur;
+                    return;
+                }
+                octets[taille++] = (byte) ((valeur & 0x7F) | 0x80);
+                valeur >>>= 7;
+            }
+        }
+
+        private byte[] octets() {
+            return Arrays.copyOf(octets, taille);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package rag.store;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+
+/**
+ * Choix de l'index de recherche en mémoire construit à partir d'un index persistant : recherche
+ * exacte contiguë pour les petits corpus, HNSW au-delà de {@code -Drag.index.seuilHnsw}
+ * (50 000 segments par défaut). {@code -Drag.index.quantification=int8|pq} force un index
+ * quantifié, re-noté en pleine précision sur la projection de l'index persistant. Un index vide,
+ * qui n'a rien sur quoi apprendre la quantification, reçoit la recherche exacte.
+ */
+public final class IndexRecherche {
+
+    private static final int SEUIL_HNSW = Integer.getInteger("rag.index.seuilHnsw", 50_000);
+    private static final String QUANTIFICATION = System.getProperty("rag.index.quantification", "");
+
+    private IndexRecherche() {
+    }
+
+    public static EmbeddingStore<TextSegment> depuis(MappedEmbeddingStore source) {
+        if (source.estVide()) {
+            return DenseEmbeddingStore.depuis(source);
+        }
+        switch (QUANTIFICATION.toLowerCase()) {
+            case "int8":
+                return QuantizedEmbeddingStore.builder().source(source).mode(QuantizedEmbeddingStore.Mode.INT8).build();
+            case "pq":
+                return QuantizedEmbeddingStore.builder().source(source).mode(QuantizedEmbeddingStore.Mode.PRODUIT).build();
+            default:
+                break;
+        }
+        if (source.taille() > SEUIL_HNSW) {
+            return HnswEmbeddingStore.depuis(source);
+        }
+        return DenseEmbeddingStore.depuis(source);
+    }
+}
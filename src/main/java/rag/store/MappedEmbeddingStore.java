@@ -0,0 +1,616 @@
+package rag.store;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Magasin d'embeddings persistant : les vecteurs sont écrits dans un fichier projeté en mémoire
+ * ({@code vecteurs.bin}) et les segments (texte + métadonnées) dans un journal à part
+ * ({@code segments.log}). À la réouverture, seul le journal est relu : les vecteurs sont lus
+ * directement dans la projection, sans copie ni nouveau calcul d'embedding.
+ */
+public class MappedEmbeddingStore implements EmbeddingStore<TextSegment>, Versionne, Closeable {
+
+    private static final int MAGIC = 0x52414756; // "RAGV"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int CAPACITE_INITIALE = 1024;
+
+    private static final byte AJOUT = 1;
+    private static final byte SUPPRESSION = 2;
+
+    private static final byte TYPE_STRING = 0;
+    private static final byte TYPE_UUID = 1;
+    private static final byte TYPE_INTEGER = 2;
+    private static final byte TYPE_LONG = 3;
+    private static final byte TYPE_FLOAT = 4;
+    private static final byte TYPE_DOUBLE = 5;
+
+    private final Path repertoire;
+    private final Path fichierVecteurs;
+    private final Path fichierSegments;
+    private final ReentrantReadWriteLock verrou = new ReentrantReadWriteLock();
+
+    private final Map<String, Integer> slotParId = new HashMap<>();
+    private final List<String> idParSlot = new ArrayList<>();
+    private final List<TextSegment> segmentParSlot = new ArrayList<>();
+    private final BitSet supprimes = new BitSet();
+    private final AtomicLong version = new AtomicLong();
+    // Longueur du journal à l'ouverture ; les octets écrits depuis sont comptés par le flux
+    private long octetsJournal;
+
+    private FileChannel canal;
+    private MappedByteBuffer projection;
+    private FloatBuffer vecteurs;
+    private DataOutputStream journal;
+    private int dimension;
+    private int capacite;
+
+    private MappedEmbeddingStore(Path repertoire) {
+        this.repertoire = repertoire;
+        this.fichierVecteurs = repertoire.resolve("vecteurs.bin");
+        this.fichierSegments = repertoire.resolve("segments.log");
+    }
+
+    /**
+     * Ouvre (ou crée) l'index situé dans le répertoire donné.
+     */
+    public static MappedEmbeddingStore ouvrir(Path repertoire) {
+        MappedEmbeddingStore store = new MappedEmbeddingStore(repertoire);
+        try {
+            Files.createDirectories(repertoire);
+            if (Files.exists(store.fichierVecteurs)) {
+                store.chargerVecteurs();
+                store.rejouerJournal();
+            }
+            store.journal = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(
+                    store.fichierSegments, StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+            store.octetsJournal = Files.size(store.fichierSegments);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Impossible d'ouvrir l'index " + repertoire, e);
+        }
+        return store;
+    }
+
+    public boolean estVide() {
+        return taille() == 0;
+    }
+
+    public int taille() {
+        verrou.readLock().lock();
+        try {
+            return idParSlot.size() - supprimes.cardinality();
+        } finally {
+            verrou.readLock().unlock();
+        }
+    }
+
+    public int dimension() {
+        return dimension;
+    }
+
+    public Path repertoire() {
+        return repertoire;
+    }
+
+    @Override
+    public long version() {
+        return version.get();
+    }
+
+    /**
+     * Empreinte du contenu persistant (slots validés et longueur du journal) : contrairement à
+     * {@link #version()}, elle est la même d'une ouverture à l'autre tant que l'index n'est pas
+     * modifié, ce qui permet de réutiliser une structure dérivée enregistrée à côté (graphe HNSW).
+     */
+    public String empreinte() {
+        verrou.readLock().lock();
+        try {
+            return idParSlot.size() + ":" + (octetsJournal + journal.size());
+        } finally {
+            verrou.readLock().unlock();
+        }
+    }
+
+    public boolean contient(String id) {
+        verrou.readLock().lock();
+        try {
+            return slotParId.containsKey(id);
+        } finally {
+            verrou.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        add(id, embedding);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        addAll(List.of(id), List.of(embedding), null);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment segment) {
+        String id = UUID.randomUUID().toString();
+        addAll(List.of(id), List.of(embedding), List.of(segment));
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> ids = nouveauxIds(embeddings.size());
+        addAll(ids, embeddings, null);
+        return ids;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<TextSegment> segments) {
+        List<String> ids = nouveauxIds(embeddings.size());
+        addAll(ids, embeddings, segments);
+        return ids;
+    }
+
+    /**
+     * Ajoute des entrées avec des identifiants choisis par l'appelant. Un identifiant déjà
+     * présent est remplacé.
+     */
+    public void addAll(List<String> ids, List<Embedding> embeddings, List<TextSegment> segments) {
+        if (ids.size() != embeddings.size() || (segments != null && segments.size() != embeddings.size())) {
+            throw new IllegalArgumentException("ids, embeddings et segments doivent avoir la même taille");
+        }
+        if (embeddings.isEmpty()) {
+            return;
+        }
+        verrou.writeLock().lock();
+        try {
+            if (projection == null) {
+                creerFichier(embeddings.get(0).dimension());
+            }
+            assurerCapacite(idParSlot.size() + embeddings.size());
+            for (int i = 0; i < embeddings.size(); i++) {
+                float[] vecteur = embeddings.get(i).vector();
+                if (vecteur.length != dimension) {
+                    throw new IllegalArgumentException("Dimension " + vecteur.length + " au lieu de " + dimension);
+                }
+                String id = ids.get(i);
+                Integer ancien = slotParId.remove(id);
+                if (ancien != null) {
+                    supprimes.set(ancien);
+                }
+                int slot = idParSlot.size();
+                vecteurs.put(slot * dimension, vecteur);
+                TextSegment segment = segments == null ? null : segments.get(i);
+                idParSlot.add(id);
+                segmentParSlot.add(segment);
+                slotParId.put(id, slot);
+                ecrireAjout(slot, id, segment);
+            }
+            projection.putInt(12, idParSlot.size());
+            version.incrementAndGet();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            verrou.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll(Collection<String> ids) {
+        verrou.writeLock().lock();
+        try {
+            for (String id : ids) {
+                Integer slot = slotParId.remove(id);
+                if (slot != null) {
+                    supprimes.set(slot);
+                    journal.writeByte(SUPPRESSION);
+                    journal.writeUTF(id);
+                }
+            }
+            version.incrementAndGet();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            verrou.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll() {
+        verrou.writeLock().lock();
+        try {
+            removeAll(new ArrayList<>(slotParId.keySet()));
+        } finally {
+            verrou.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        float[] requete = request.queryEmbedding().vector();
+        Filter filtre = request.filter();
+        PriorityQueue<EmbeddingMatch<TextSegment>> meilleurs =
+                new PriorityQueue<>(Comparator.comparingDouble(EmbeddingMatch::score));
+
+        verrou.readLock().lock();
+        try {
+            int n = idParSlot.size();
+            for (int slot = 0; slot < n; slot++) {
+                if (supprimes.get(slot)) {
+                    continue;
+                }
+                TextSegment segment = segmentParSlot.get(slot);
+                if (filtre != null && (segment == null || !filtre.test(segment.metadata()))) {
+                    continue;
+                }
+                double score = RelevanceScore.fromCosineSimilarity(cosinus(requete, slot));
+                if (score < request.minScore()) {
+                    continue;
+                }
+                if (meilleurs.size() < request.maxResults()) {
+                    meilleurs.add(new EmbeddingMatch<>(score, idParSlot.get(slot), null, segment));
+                } else if (score > meilleurs.peek().score()) {
+                    meilleurs.poll();
+                    meilleurs.add(new EmbeddingMatch<>(score, idParSlot.get(slot), null, segment));
+                }
+            }
+
+            // Les vecteurs ne sont copiés hors de la projection que pour les k résultats retenus
+            List<EmbeddingMatch<TextSegment>> resultats = new ArrayList<>(meilleurs.size());
+            for (EmbeddingMatch<TextSegment> match : meilleurs) {
+                resultats.add(new EmbeddingMatch<>(match.score(), match.embeddingId(),
+                        Embedding.from(lireVecteur(slotParId.get(match.embeddingId()))), match.embedded()));
+            }
+            resultats.sort(Comparator.comparingDouble((EmbeddingMatch<TextSegment> m) -> m.score()).reversed());
+            return new EmbeddingSearchResult<>(resultats);
+        } finally {
+            verrou.readLock().unlock();
+        }
+    }
+
+    /**
+     * Vecteur pleine précision lu dans la projection, ou {@code null} si l'identifiant est absent.
+     */
+    public float[] vecteur(String id) {
+        verrou.readLock().lock();
+        try {
+            Integer slot = slotParId.get(id);
+            return slot == null ? null : lireVecteur(slot);
+        } finally {
+            verrou.readLock().unlock();
+        }
+    }
+
+    public TextSegment segment(String id) {
+        verrou.readLock().lock();
+        try {
+            Integer slot = slotParId.get(id);
+            return slot == null ? null : segmentParSlot.get(slot);
+        } finally {
+            verrou.readLock().unlock();
+        }
+    }
+
+    /**
+     * Parcourt les entrées vivantes, par exemple pour construire un index de recherche en mémoire.
+     * Le tableau passé au visiteur lui appartient.
+     */
+    public void parcourir(Visiteur visiteur) {
+        verrou.readLock().lock();
+        try {
+            for (int slot = 0; slot < idParSlot.size(); slot++) {
+                if (!supprimes.get(slot)) {
+                    visiteur.visiter(idParSlot.get(slot), lireVecteur(slot), segmentParSlot.get(slot));
+                }
+            }
+        } finally {
+            verrou.readLock().unlock();
+        }
+    }
+
+    @FunctionalInterface
+    public interface Visiteur {
+        void visiter(String id, float[] vecteur, TextSegment segment);
+    }
+
+    /**
+     * Force l'écriture des vecteurs et du journal sur disque.
+     */
+    public void flush() {
+        verrou.writeLock().lock();
+        try {
+            journal.flush();
+            if (projection != null) {
+                projection.force();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            verrou.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+        try {
+            journal.close();
+            if (canal != null) {
+                canal.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private double cosinus(float[] requete, int slot) {
+        int debut = slot * dimension;
+        double produit = 0;
+        double normeA = 0;
+        double normeB = 0;
+        for (int i = 0; i < dimension; i++) {
+            float a = requete[i];
+            float b = vecteurs.get(debut + i);
+            produit += a * b;
+            normeA += a * a;
+            normeB += b * b;
+        }
+        return produit / (Math.sqrt(normeA) * Math.sqrt(normeB));
+    }
+
+    private float[] lireVecteur(int slot) {
+        float[] vecteur = new float[dimension];
+        vecteurs.get(slot * dimension, vecteur);
+        return vecteur;
+    }
+
+    private static List<String> nouveauxIds(int n) {
+        List<String> ids = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            ids.add(UUID.randomUUID().toString());
+        }
+        return ids;
+    }
+
+    // ==================== Fichier de vecteurs ====================
+
+    private void creerFichier(int dimension) throws IOException {
+        this.dimension = dimension;
+        canal = FileChannel.open(fichierVecteurs,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        projeter(CAPACITE_INITIALE);
+        projection.putInt(0, MAGIC);
+        projection.putInt(4, VERSION);
+        projection.putInt(8, dimension);
+        projection.putInt(12, 0);
+    }
+
+    private void chargerVecteurs() throws IOException {
+        canal = FileChannel.open(fichierVecteurs, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer entete = canal.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+        entete.order(ByteOrder.LITTLE_ENDIAN);
+        if (entete.getInt(0) != MAGIC || entete.getInt(4) != VERSION) {
+            throw new IOException("Fichier de vecteurs invalide : " + fichierVecteurs);
+        }
+        dimension = entete.getInt(8);
+        long octetsParVecteur = (long) dimension * Float.BYTES;
+        projeter((int) Math.max(CAPACITE_INITIALE, (canal.size() - HEADER_BYTES) / octetsParVecteur));
+    }
+
+    private void assurerCapacite(int slots) throws IOException {
+        if (slots > capacite) {
+            int nouvelle = capacite;
+            while (nouvelle < slots) {
+                nouvelle *= 2;
+            }
+            projeter(nouvelle);
+        }
+    }
+
+    private void projeter(int slots) throws IOException {
+        long taille = HEADER_BYTES + (long) slots * dimension * Float.BYTES;
+        projection = canal.map(FileChannel.MapMode.READ_WRITE, 0, taille);
+        projection.order(ByteOrder.LITTLE_ENDIAN);
+        vecteurs = projection.duplicate().position(HEADER_BYTES).slice()
+                .order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+        capacite = slots;
+    }
+
+    // ==================== Journal des segments ====================
+
+    private void ecrireAjout(int slot, String id, TextSegment segment) throws IOException {
+        journal.writeByte(AJOUT);
+        journal.writeInt(slot);
+        journal.writeUTF(id);
+        journal.writeBoolean(segment != null);
+        if (segment == null) {
+            return;
+        }
+        byte[] texte = segment.text().getBytes(StandardCharsets.UTF_8);
+        journal.writeInt(texte.length);
+        journal.write(texte);
+        Map<String, Object> metadonnees = segment.metadata().toMap();
+        journal.writeInt(metadonnees.size());
+        for (Map.Entry<String, Object> entree : metadonnees.entrySet()) {
+            journal.writeUTF(entree.getKey());
+            Object valeur = entree.getValue();
+            if (valeur instanceof UUID) {
+                journal.writeByte(TYPE_UUID);
+                journal.writeUTF(valeur.toString());
+            } else if (valeur instanceof Integer) {
+                journal.writeByte(TYPE_INTEGER);
+                journal.writeInt((Integer) valeur);
+            } else if (valeur instanceof Long) {
+                journal.writeByte(TYPE_LONG);
+                journal.writeLong((Long) valeur);
+            } else if (valeur instanceof Float) {
+                journal.writeByte(TYPE_FLOAT);
+                journal.writeFloat((Float) valeur);
+            } else if (valeur instanceof Double) {
+                journal.writeByte(TYPE_DOUBLE);
+                journal.writeDouble((Double) valeur);
+            } else {
+                journal.writeByte(TYPE_STRING);
+                journal.writeUTF(String.valueOf(valeur));
+            }
+        }
+    }
+
+    private void rejouerJournal() throws IOException {
+        if (!Files.exists(fichierSegments)) {
+            return;
+        }
+        int slotsEcrits = projection.getInt(12);
+        // Fin du dernier enregistrement retenu : ce qui suit (ajouts jamais validés, enregistrement
+        // tronqué) est coupé, pour que les slots réutilisés ensuite n'aient qu'un enregistrement
+        long finValide = 0;
+        PositionInputStream position = new PositionInputStream(new BufferedInputStream(Files.newInputStream(fichierSegments)));
+        try (DataInputStream in = new DataInputStream(position)) {
+            while (true) {
+                byte type = in.readByte();
+                if (type == SUPPRESSION) {
+                    Integer slot = slotParId.remove(in.readUTF());
+                    if (slot != null) {
+                        supprimes.set(slot);
+                    }
+                    finValide = position.position;
+                    continue;
+                }
+                int slot = in.readInt();
+                String id = in.readUTF();
+                TextSegment segment = in.readBoolean() ? lireSegment(in) : null;
+                if (slot >= slotsEcrits) {
+                    // Ajout journalisé mais vecteur jamais validé dans l'en-tête : on l'ignore
+                    continue;
+                }
+                finValide = position.position;
+                while (idParSlot.size() <= slot) {
+                    supprimes.set(idParSlot.size());
+                    idParSlot.add(null);
+                    segmentParSlot.add(null);
+                }
+                // Un ajout orphelin d'une session interrompue (vecteur jamais validé) a pu être suivi
+                // d'un ajout sur le même slot : l'enregistrement le plus récent l'emporte
+                String precedent = idParSlot.get(slot);
+                if (precedent != null && Integer.valueOf(slot).equals(slotParId.get(precedent))) {
+                    slotParId.remove(precedent);
+                }
+                Integer ancien = slotParId.put(id, slot);
+                if (ancien != null && ancien != slot) {
+                    supprimes.set(ancien);
+                }
+                idParSlot.set(slot, id);
+                segmentParSlot.set(slot, segment);
+                supprimes.clear(slot);
+            }
+        } catch (EOFException fin) {
+            // Fin du journal (un dernier enregistrement tronqué est ignoré)
+        }
+        if (finValide < Files.size(fichierSegments)) {
+            try (FileChannel journalTronque = FileChannel.open(fichierSegments, StandardOpenOption.WRITE)) {
+                journalTronque.truncate(finValide);
+            }
+        }
+        // Les slots validés sans entrée dans le journal sont inutilisables
+        while (idParSlot.size() < slotsEcrits) {
+            supprimes.set(idParSlot.size());
+            idParSlot.add(null);
+            segmentParSlot.add(null);
+        }
+    }
+
+    /**
+     * Flux qui compte les octets lus, pour repérer la fin de chaque enregistrement du journal.
+     */
+    private static final class PositionInputStream extends FilterInputStream {
+        private long position;
+
+        private PositionInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int octet = super.read();
+            if (octet >= 0) {
+                position++;
+            }
+            return octet;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int lus = super.read(b, off, len);
+            if (lus > 0) {
+                position += lus;
+            }
+            return lus;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long sautes = super.skip(n);
+            position += sautes;
+            return sautes;
+        }
+    }
+
+    private static TextSegment lireSegment(DataInputStream in) throws IOException {
+        byte[] texte = new byte[in.readInt()];
+        in.readFully(texte);
+        int n = in.readInt();
+        Metadata metadonnees = new Metadata();
+        for (int i = 0; i < n; i++) {
+            String cle = in.readUTF();
+            switch (in.readByte()) {
+                case TYPE_UUID -> metadonnees.put(cle, UUID.fromString(in.readUTF()));
+                case TYPE_INTEGER -> metadonnees.put(cle, in.readInt());
+                case TYPE_LONG -> metadonnees.put(cle, in.readLong());
+                case TYPE_FLOAT -> metadonnees.put(cle, in.readFloat());
+                case TYPE_DOUBLE -> metadonnees.put(cle, in.readDouble());
+                default -> metadonnees.put(cle, in.readUTF());
+            }
+        }
+        return TextSegment.from(new String(texte, StandardCharsets.UTF_8), metadonnees);
+    }
+}
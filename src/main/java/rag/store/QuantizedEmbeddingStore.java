@@ -0,0 +1,447 @@
+package rag.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Index de recherche quantifié construit à partir d'un {@link MappedEmbeddingStore}.
+ * <p>
+ * Seuls les codes compressés sont gardés sur le tas : un octet par dimension en mode
+ * {@link Mode#INT8}, un octet par sous-espace de 8 dimensions en mode {@link Mode#PRODUIT}
+ * (quantification par produit). Les candidats sont d'abord classés sur ces codes, puis les
+ * meilleurs ({@code k × facteurReclassement}) sont re-notés avec les vecteurs pleine précision
+ * lus dans la projection de l'index persistant. Le filtre éventuel est appliqué à ce stade.
+ * <p>
+ * L'index est en lecture seule : il se reconstruit à partir de la source après une ingestion.
+ */
+public class QuantizedEmbeddingStore implements EmbeddingStore<TextSegment>, Versionne {
+
+    public enum Mode {
+        INT8,
+        PRODUIT
+    }
+
+    private final MappedEmbeddingStore source;
+    private final Mode mode;
+    private final Quantificateur quantificateur;
+    private final int facteurReclassement;
+    private final int octetsParVecteur;
+
+    private final String[] ids;
+    private final byte[] codes;
+    private final Map<String, Integer> slotParId = new HashMap<>();
+    private final BitSet supprimes = new BitSet();
+    private final AtomicLong version = new AtomicLong();
+
+    private QuantizedEmbeddingStore(Builder builder) {
+        this.source = builder.source;
+        this.mode = builder.mode;
+        this.facteurReclassement = builder.facteurReclassement;
+
+        List<String> listeIds = new ArrayList<>();
+        List<float[]> vecteurs = new ArrayList<>();
+        source.parcourir((id, vecteur, segment) -> {
+            listeIds.add(id);
+            vecteurs.add(VectorOps.normaliser(vecteur));
+        });
+        if (vecteurs.isEmpty()) {
+            throw new IllegalArgumentException("Impossible de quantifier un index vide");
+        }
+
+        this.quantificateur = mode == Mode.INT8 ? new ScalaireInt8(vecteurs) : new Produit(vecteurs);
+        this.octetsParVecteur = quantificateur.octetsParVecteur();
+        this.ids = listeIds.toArray(new String[0]);
+        this.codes = new byte[ids.length * octetsParVecteur];
+        for (int slot = 0; slot < ids.length; slot++) {
+            quantificateur.encoder(vecteurs.get(slot), codes, slot * octetsParVecteur);
+            slotParId.put(ids[slot], slot);
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public long version() {
+        return version.get();
+    }
+
+    public Mode mode() {
+        return mode;
+    }
+
+    /**
+     * Octets occupés sur le tas par les codes et les tables du quantificateur.
+     */
+    public long octetsCodes() {
+        return codes.length + quantificateur.octetsTables();
+    }
+
+    /**
+     * Octets qu'occuperaient les mêmes vecteurs en float pleine précision.
+     */
+    public long octetsPleinePrecision() {
+        return (long) ids.length * source.dimension() * Float.BYTES;
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        throw lectureSeule();
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        throw lectureSeule();
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment segment) {
+        throw lectureSeule();
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        throw lectureSeule();
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<TextSegment> segments) {
+        throw lectureSeule();
+    }
+
+    @Override
+    public synchronized void removeAll(Collection<String> aSupprimer) {
+        for (String id : aSupprimer) {
+            Integer slot = slotParId.remove(id);
+            if (slot != null) {
+                supprimes.set(slot);
+            }
+        }
+        version.incrementAndGet();
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        float[] requete = VectorOps.normaliser(request.queryEmbedding().vector());
+        Filter filtre = request.filter();
+        int k = request.maxResults();
+        Evaluateur evaluateur = quantificateur.preparer(requete);
+
+        // 1. Classement approximatif sur les codes compressés
+        TopK candidats = new TopK(facteurReclassement > 0 ? k * facteurReclassement : k);
+        BitSet exclus;
+        synchronized (this) {
+            exclus = (BitSet) supprimes.clone();
+        }
+        for (int slot = 0, debut = 0; slot < ids.length; slot++, debut += octetsParVecteur) {
+            float approche = evaluateur.score(codes, debut);
+            if (candidats.accepterait(approche) && !exclus.get(slot)) {
+                candidats.offrir(approche, slot);
+            }
+        }
+        float[] scoresApproches = new float[candidats.taille()];
+        int[] slots = candidats.extraireTries(scoresApproches);
+
+        // 2. Re-notation des candidats avec les vecteurs pleine précision
+        List<EmbeddingMatch<TextSegment>> resultats = new ArrayList<>(slots.length);
+        for (int i = 0; i < slots.length; i++) {
+            String id = ids[slots[i]];
+            float[] vecteur = source.vecteur(id);
+            TextSegment segment = source.segment(id);
+            if (vecteur == null) {
+                continue;
+            }
+            if (filtre != null && (segment == null || !filtre.test(segment.metadata()))) {
+                continue;
+            }
+            double cosinus = facteurReclassement > 0
+                    ? VectorOps.dot(requete, VectorOps.normaliser(vecteur))
+                    : scoresApproches[i];
+            double score = RelevanceScore.fromCosineSimilarity(cosinus);
+            if (score >= request.minScore()) {
+                resultats.add(new EmbeddingMatch<>(score, id, Embedding.from(vecteur), segment));
+            }
+        }
+        resultats.sort(Comparator.comparingDouble((EmbeddingMatch<TextSegment> m) -> m.score()).reversed());
+        return new EmbeddingSearchResult<>(resultats.size() > k ? resultats.subList(0, k) : resultats);
+    }
+
+    private static UnsupportedOperationException lectureSeule() {
+        return new UnsupportedOperationException(
+                "Index quantifié en lecture seule : ajouter dans l'index persistant puis reconstruire");
+    }
+
+    // ==================== Quantificateurs ====================
+
+    private interface Quantificateur {
+        int octetsParVecteur();
+
+        long octetsTables();
+
+        void encoder(float[] vecteur, byte[] destination, int debut);
+
+        Evaluateur preparer(float[] requete);
+    }
+
+    /**
+     * Produit scalaire approché entre la requête préparée et un vecteur codé.
+     */
+    private interface Evaluateur {
+        float score(byte[] codes, int debut);
+    }
+
+    /**
+     * Quantification scalaire : chaque dimension est ramenée sur 256 niveaux entre son minimum et
+     * son maximum observés. Le produit scalaire se calcule directement sur les octets :
+     * q·x ≈ Σ q[d]·(min[d] + (c[d] + 128)·pas[d]) = constante + Σ (q[d]·pas[d])·c[d].
+     */
+    private static final class ScalaireInt8 implements Quantificateur {
+
+        private final float[] min;
+        private final float[] pas;
+
+        ScalaireInt8(List<float[]> vecteurs) {
+            int dimension = vecteurs.get(0).length;
+            min = new float[dimension];
+            pas = new float[dimension];
+            float[] max = new float[dimension];
+            Arrays.fill(min, Float.POSITIVE_INFINITY);
+            Arrays.fill(max, Float.NEGATIVE_INFINITY);
+            for (float[] vecteur : vecteurs) {
+                for (int d = 0; d < dimension; d++) {
+                    min[d] = Math.min(min[d], vecteur[d]);
+                    max[d] = Math.max(max[d], vecteur[d]);
+                }
+            }
+            for (int d = 0; d < dimension; d++) {
+                pas[d] = max[d] > min[d] ? (max[d] - min[d]) / 255f : 1f;
+            }
+        }
+
+        @Override
+        public int octetsParVecteur() {
+            return min.length;
+        }
+
+        @Override
+        public long octetsTables() {
+            return 2L * min.length * Float.BYTES;
+        }
+
+        @Override
+        public void encoder(float[] vecteur, byte[] destination, int debut) {
+            for (int d = 0; d < min.length; d++) {
+                int niveau = Math.round((vecteur[d] - min[d]) / pas[d]);
+                destination[debut + d] = (byte) (Math.max(0, Math.min(255, niveau)) - 128);
+            }
+        }
+
+        @Override
+        public Evaluateur preparer(float[] requete) {
+            float[] poids = new float[min.length];
+            float constante = 0;
+            for (int d = 0; d < min.length; d++) {
+                poids[d] = requete[d] * pas[d];
+                constante += requete[d] * (min[d] + 128 * pas[d]);
+            }
+            float base = constante;
+            return (codes, debut) -> {
+                float s0 = 0;
+                float s1 = 0;
+                int d = 0;
+                for (; d + 1 < poids.length; d += 2) {
+                    s0 += poids[d] * codes[debut + d];
+                    s1 += poids[d + 1] * codes[debut + d + 1];
+                }
+                for (; d < poids.length; d++) {
+                    s0 += poids[d] * codes[debut + d];
+                }
+                return base + s0 + s1;
+            };
+        }
+    }
+
+    /**
+     * Quantification par produit : le vecteur est découpé en sous-vecteurs de 8 dimensions, chacun
+     * remplacé par l'indice du centroïde le plus proche parmi 256 appris par k-means. Pour une
+     * requête, une table des produits scalaires (sous-espace × centroïde) est calculée une fois,
+     * puis chaque score n'est qu'une somme de lectures dans cette table.
+     */
+    private static final class Produit implements Quantificateur {
+
+        private static final int DIMENSIONS_PAR_SOUS_ESPACE = 8;
+        private static final int ECHANTILLON_MAX = 10_000;
+        private static final int ITERATIONS = 8;
+
+        private final int sousEspaces;
+        private final int centroidesParSousEspace;
+        // centroides[s][c * 8 + j]
+        private final float[][] centroides;
+
+        Produit(List<float[]> vecteurs) {
+            int dimension = vecteurs.get(0).length;
+            if (dimension % DIMENSIONS_PAR_SOUS_ESPACE != 0) {
+                throw new IllegalArgumentException("La dimension " + dimension + " n'est pas un multiple de 8");
+            }
+            sousEspaces = dimension / DIMENSIONS_PAR_SOUS_ESPACE;
+            centroidesParSousEspace = Math.min(256, vecteurs.size());
+            centroides = new float[sousEspaces][];
+
+            Random aleatoire = new Random(17);
+            List<float[]> echantillon = new ArrayList<>(vecteurs);
+            if (echantillon.size() > ECHANTILLON_MAX) {
+                Collections.shuffle(echantillon, aleatoire);
+                echantillon = echantillon.subList(0, ECHANTILLON_MAX);
+            }
+            for (int s = 0; s < sousEspaces; s++) {
+                centroides[s] = kMeans(echantillon, s * DIMENSIONS_PAR_SOUS_ESPACE, aleatoire);
+            }
+        }
+
+        private float[] kMeans(List<float[]> echantillon, int decalage, Random aleatoire) {
+            int k = centroidesParSousEspace;
+            int d = DIMENSIONS_PAR_SOUS_ESPACE;
+            float[] centres = new float[k * d];
+            List<Integer> ordre = new ArrayList<>();
+            for (int i = 0; i < echantillon.size(); i++) {
+                ordre.add(i);
+            }
+            Collections.shuffle(ordre, aleatoire);
+            for (int c = 0; c < k; c++) {
+                System.arraycopy(echantillon.get(ordre.get(c)), decalage, centres, c * d, d);
+            }
+
+            int[] affectations = new int[echantillon.size()];
+            for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+                float[] sommes = new float[k * d];
+                int[] effectifs = new int[k];
+                for (int i = 0; i < echantillon.size(); i++) {
+                    int c = plusProche(centres, echantillon.get(i), decalage);
+                    affectations[i] = c;
+                    effectifs[c]++;
+                    for (int j = 0; j < d; j++) {
+                        sommes[c * d + j] += echantillon.get(i)[decalage + j];
+                    }
+                }
+                for (int c = 0; c < k; c++) {
+                    if (effectifs[c] == 0) {
+                        // Centre vide : on le relance sur un point tiré au hasard
+                        System.arraycopy(echantillon.get(aleatoire.nextInt(echantillon.size())), decalage, centres, c * d, d);
+                        continue;
+                    }
+                    for (int j = 0; j < d; j++) {
+                        centres[c * d + j] = sommes[c * d + j] / effectifs[c];
+                    }
+                }
+            }
+            return centres;
+        }
+
+        private int plusProche(float[] centres, float[] vecteur, int decalage) {
+            int d = DIMENSIONS_PAR_SOUS_ESPACE;
+            int meilleur = 0;
+            float distanceMin = Float.POSITIVE_INFINITY;
+            for (int c = 0; c < centroidesParSousEspace; c++) {
+                float distance = 0;
+                for (int j = 0; j < d; j++) {
+                    float ecart = vecteur[decalage + j] - centres[c * d + j];
+                    distance += ecart * ecart;
+                }
+                if (distance < distanceMin) {
+                    distanceMin = distance;
+                    meilleur = c;
+                }
+            }
+            return meilleur;
+        }
+
+        @Override
+        public int octetsParVecteur() {
+            return sousEspaces;
+        }
+
+        @Override
+        public long octetsTables() {
+            return (long) sousEspaces * centroidesParSousEspace * DIMENSIONS_PAR_SOUS_ESPACE * Float.BYTES;
+        }
+
+        @Override
+        public void encoder(float[] vecteur, byte[] destination, int debut) {
+            for (int s = 0; s < sousEspaces; s++) {
+                destination[debut + s] = (byte) plusProche(centroides[s], vecteur, s * DIMENSIONS_PAR_SOUS_ESPACE);
+            }
+        }
+
+        @Override
+        public Evaluateur preparer(float[] requete) {
+            int k = centroidesParSousEspace;
+            float[] table = new float[sousEspaces * k];
+            for (int s = 0; s < sousEspaces; s++) {
+                for (int c = 0; c < k; c++) {
+                    table[s * k + c] = VectorOps.dot(requete, s * DIMENSIONS_PAR_SOUS_ESPACE,
+                            centroides[s], c * DIMENSIONS_PAR_SOUS_ESPACE, DIMENSIONS_PAR_SOUS_ESPACE);
+                }
+            }
+            return (codes, debut) -> {
+                float score = 0;
+                for (int s = 0; s < sousEspaces; s++) {
+                    score += table[s * k + (codes[debut + s] & 0xFF)];
+                }
+                return score;
+            };
+        }
+    }
+
+    // ==================== Builder ====================
+
+    public static class Builder {
+        private MappedEmbeddingStore source;
+        private Mode mode = Mode.INT8;
+        private int facteurReclassement = 4;
+
+        public Builder source(MappedEmbeddingStore source) {
+            this.source = source;
+            return this;
+        }
+
+        public Builder mode(Mode mode) {
+            this.mode = mode;
+            return this;
+        }
+
+        /**
+         * Nombre de candidats re-notés en pleine précision, en multiple de maxResults ;
+         * 0 renvoie directement les scores approchés.
+         */
+        public Builder facteurReclassement(int facteurReclassement) {
+            this.facteurReclassement = facteurReclassement;
+            return this;
+        }
+
+        public QuantizedEmbeddingStore build() {
+            if (source == null) {
+                throw new IllegalStateException("source est obligatoire");
+            }
+            return new QuantizedEmbeddingStore(this);
+        }
+    }
+}
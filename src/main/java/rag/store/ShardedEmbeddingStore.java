@@ -0,0 +1,204 @@
+package rag.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.filter.Filter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Magasin réparti sur plusieurs magasins (shards), interrogés en même temps : chaque shard
+ * renvoie ses {@code maxResults} meilleurs segments et les listes sont fusionnées par score en un
+ * top-k global. Les scores sont comparables d'un shard à l'autre, tous les embeddings venant du
+ * même modèle.
+ * <p>
+ * Les shards autres que le premier sont interrogés sur un pool de threads démons (partagé s'il est
+ * fourni), le premier sur le thread appelant. Un ajout va au shard désigné par l'empreinte de son
+ * identifiant, ou aux shards à tour de rôle s'il n'en a pas ; une suppression est transmise à
+ * tous les shards, qui peuvent aussi avoir été remplis séparément (un index par collection ou par
+ * groupe de fichiers).
+ * <p>
+ * La version du magasin est la somme de celles des shards {@link Versionne}.
+ */
+public class ShardedEmbeddingStore implements EmbeddingStore<TextSegment>, Versionne, AutoCloseable {
+
+    private final List<EmbeddingStore<TextSegment>> shards;
+    private final ExecutorService executor;
+    private final boolean executorPropre;
+    private final AtomicInteger ajouts = new AtomicInteger();
+
+    private ShardedEmbeddingStore(Builder builder) {
+        this.shards = List.copyOf(builder.shards);
+        this.executorPropre = builder.executor == null;
+        if (executorPropre) {
+            AtomicInteger compteur = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(Math.max(1, Math.min(shards.size() - 1,
+                    Runtime.getRuntime().availableProcessors())), runnable -> {
+                Thread thread = new Thread(runnable, "shard-" + compteur.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            this.executor = builder.executor;
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public List<EmbeddingStore<TextSegment>> shards() {
+        return shards;
+    }
+
+    @Override
+    public long version() {
+        long version = 0;
+        for (EmbeddingStore<TextSegment> shard : shards) {
+            if (shard instanceof Versionne) {
+                version += ((Versionne) shard).version();
+            }
+        }
+        return version;
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        List<Future<EmbeddingSearchResult<TextSegment>>> enCours = new ArrayList<>(shards.size() - 1);
+        for (EmbeddingStore<TextSegment> shard : shards.subList(1, shards.size())) {
+            enCours.add(executor.submit(() -> shard.search(request)));
+        }
+        List<EmbeddingMatch<TextSegment>> resultats = new ArrayList<>(shards.get(0).search(request).matches());
+        try {
+            for (Future<EmbeddingSearchResult<TextSegment>> shard : enCours) {
+                resultats.addAll(shard.get().matches());
+            }
+        } catch (InterruptedException e) {
+            enCours.forEach(shard -> shard.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Recherche interrompue", e);
+        } catch (ExecutionException e) {
+            enCours.forEach(shard -> shard.cancel(true));
+            throw e.getCause() instanceof RuntimeException
+                    ? (RuntimeException) e.getCause()
+                    : new IllegalStateException(e.getCause());
+        }
+        // Tri stable : à score égal, l'ordre des shards départage
+        resultats.sort(Comparator.comparingDouble((EmbeddingMatch<TextSegment> resultat) -> resultat.score()).reversed());
+        return new EmbeddingSearchResult<>(resultats.size() > request.maxResults()
+                ? new ArrayList<>(resultats.subList(0, request.maxResults()))
+                : resultats);
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        return suivant().add(embedding);
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        shard(id).add(id, embedding);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment segment) {
+        return suivant().add(embedding, segment);
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> ids = new ArrayList<>(embeddings.size());
+        for (Embedding embedding : embeddings) {
+            ids.add(add(embedding));
+        }
+        return ids;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<TextSegment> segments) {
+        if (embeddings.size() != segments.size()) {
+            throw new IllegalArgumentException("embeddings et segments doivent avoir la même taille");
+        }
+        List<String> ids = new ArrayList<>(embeddings.size());
+        for (int i = 0; i < embeddings.size(); i++) {
+            ids.add(add(embeddings.get(i), segments.get(i)));
+        }
+        return ids;
+    }
+
+    @Override
+    public void removeAll(Collection<String> ids) {
+        shards.forEach(shard -> shard.removeAll(ids));
+    }
+
+    @Override
+    public void removeAll(Filter filter) {
+        shards.forEach(shard -> shard.removeAll(filter));
+    }
+
+    @Override
+    public void removeAll() {
+        shards.forEach(EmbeddingStore::removeAll);
+    }
+
+    /**
+     * Arrête le pool créé par le magasin ; un pool fourni reste à la charge de l'appelant.
+     */
+    @Override
+    public void close() {
+        if (executorPropre) {
+            executor.shutdownNow();
+        }
+    }
+
+    private EmbeddingStore<TextSegment> suivant() {
+        return shards.get(Math.floorMod(ajouts.getAndIncrement(), shards.size()));
+    }
+
+    private EmbeddingStore<TextSegment> shard(String id) {
+        return shards.get(Math.floorMod(id.hashCode(), shards.size()));
+    }
+
+    public static class Builder {
+        private final List<EmbeddingStore<TextSegment>> shards = new ArrayList<>();
+        private ExecutorService executor;
+
+        public Builder shard(EmbeddingStore<TextSegment> shard) {
+            this.shards.add(shard);
+            return this;
+        }
+
+        public Builder shards(Collection<? extends EmbeddingStore<TextSegment>> shards) {
+            this.shards.addAll(shards);
+            return this;
+        }
+
+        /**
+         * Pool sur lequel les shards sont interrogés, par exemple partagé par plusieurs magasins ;
+         * sans pool, le magasin crée le sien.
+         */
+        public Builder executor(ExecutorService executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        public ShardedEmbeddingStore build() {
+            if (shards.isEmpty()) {
+                throw new IllegalStateException("Il faut au moins un shard");
+            }
+            return new ShardedEmbeddingStore(this);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package rag.store;
+
+/**
+ * Sélection des k meilleurs (score, slot) sur un tas binaire minimum en tableaux primitifs :
+ * aucun objet n'est alloué par candidat pendant le parcours.
+ */
+final class TopK {
+
+    private final float[] scores;
+    private final int[] slots;
+    private int n;
+
+    TopK(int k) {
+        this.scores = new float[k];
+        this.slots = new int[k];
+    }
+
+    boolean plein() {
+        return n == scores.length;
+    }
+
+    /**
+     * Score à battre une fois le tas plein.
+     */
+    float seuil() {
+        return scores[0];
+    }
+
+    /**
+     * Indique si un score entrerait dans la sélection, sans l'ajouter.
+     */
+    boolean accepterait(float score) {
+        return n < scores.length || score > scores[0];
+    }
+
+    void offrir(float score, int slot) {
+        if (n < scores.length) {
+            scores[n] = score;
+            slots[n] = slot;
+            remonter(n++);
+        } else if (score > scores[0]) {
+            scores[0] = score;
+            slots[0] = slot;
+            descendre();
+        }
+    }
+
+    int taille() {
+        return n;
+    }
+
+    /**
+     * Vide le tas et renvoie les slots du meilleur au moins bon ; leurs scores sont copiés dans
+     * {@code scoresTries} (de longueur au moins {@link #taille()}).
+     */
+    int[] extraireTries(float[] scoresTries) {
+        int[] tries = new int[n];
+        for (int i = n - 1; i >= 0; i--) {
+            tries[i] = slots[0];
+            scoresTries[i] = scores[0];
+            n--;
+            scores[0] = scores[n];
+            slots[0] = slots[n];
+            descendre();
+        }
+        return tries;
+    }
+
+    private void remonter(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (scores[parent] <= scores[i]) {
+                return;
+            }
+            echanger(i, parent);
+            i = parent;
+        }
+    }
+
+    private void descendre() {
+        int i = 0;
+        while (true) {
+            int gauche = 2 * i + 1;
+            if (gauche >= n) {
+                return;
+            }
+            int plusPetit = gauche + 1 < n && scores[gauche + 1] < scores[gauche] ? gauche + 1 : gauche;
+            if (scores[i] <= scores[plusPetit]) {
+                return;
+            }
+            echanger(i, plusPetit);
+            i = plusPetit;
+        }
+    }
+
+    private void echanger(int i, int j) {
+        float score = scores[i];
+        scores[i] = scores[j];
+        scores[j] = score;
+        int slot = slots[i];
+        slots[i] = slots[j];
+        slots[j] = slot;
+    }
+}
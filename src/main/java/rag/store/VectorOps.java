@@ -0,0 +1,49 @@
+package rag.store;
+
+/**
+ * Noyaux de calcul sur vecteurs denses partagés par les magasins du paquetage.
+ * <p>
+ * Le produit scalaire utilise quatre accumulateurs indépendants : sans cela, la JIT ne peut pas
+ * réordonner les additions flottantes et chaque itération attend la précédente.
+ */
+final class VectorOps {
+
+    private VectorOps() {
+    }
+
+    static float dot(float[] a, float[] b) {
+        return dot(a, 0, b, 0, a.length);
+    }
+
+    static float dot(float[] a, int debutA, float[] b, int debutB, int longueur) {
+        float s0 = 0;
+        float s1 = 0;
+        float s2 = 0;
+        float s3 = 0;
+        int i = 0;
+        int fin = longueur & ~3;
+        for (; i < fin; i += 4) {
+            s0 += a[debutA + i] * b[debutB + i];
+            s1 += a[debutA + i + 1] * b[debutB + i + 1];
+            s2 += a[debutA + i + 2] * b[debutB + i + 2];
+            s3 += a[debutA + i + 3] * b[debutB + i + 3];
+        }
+        for (; i < longueur; i++) {
+            s0 += a[debutA + i] * b[debutB + i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    /**
+     * Copie normalisée (norme euclidienne 1) ; le vecteur nul reste nul.
+     */
+    static float[] normaliser(float[] vecteur) {
+        float norme = (float) Math.sqrt(dot(vecteur, vecteur));
+        float inverse = norme == 0 ? 0 : 1 / norme;
+        float[] resultat = new float[vecteur.length];
+        for (int i = 0; i < vecteur.length; i++) {
+            resultat[i] = vecteur[i] * inverse;
+        }
+        return resultat;
+    }
+}
@@ -0,0 +1,10 @@
+package rag.store;
+
+/**
+ * Magasin dont le contenu porte un numéro de version, incrémenté après chaque modification. Les
+ * caches de résultats de recherche s'en servent pour savoir si ce qu'ils ont mémorisé est périmé.
+ */
+public interface Versionne {
+
+    long version();
+}
@@ -0,0 +1,7 @@
+package test3;
+
+import dev.langchain4j.service.TokenStream;
+
+public interface StreamingAssistant {
+    TokenStream chat(String message);
+}
\ No newline at end of file
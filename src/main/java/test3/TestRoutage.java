@@ -1,40 +1,46 @@
 package test3;
 
 
-import dev.langchain4j.data.document.Document;
-import dev.langchain4j.data.document.DocumentParser;
-import dev.langchain4j.data.document.DocumentSplitter;
-import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
-import dev.langchain4j.data.document.parser.apache.tika.ApacheTikaDocumentParser;
-import dev.langchain4j.data.document.splitter.DocumentSplitters;
 import dev.langchain4j.data.segment.TextSegment;
-import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+import dev.langchain4j.memory.ChatMemory;
 import dev.langchain4j.model.chat.ChatLanguageModel;
-import dev.langchain4j.model.embedding.EmbeddingModel;
-import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
 import dev.langchain4j.model.googleai.GoogleAiGeminiChatModel;
-import dev.langchain4j.rag.DefaultRetrievalAugmentor;
 import dev.langchain4j.rag.content.retriever.ContentRetriever;
-import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
-import dev.langchain4j.rag.query.router.LanguageModelQueryRouter;
 import dev.langchain4j.service.AiServices;
 import dev.langchain4j.store.embedding.EmbeddingStore;
-import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import rag.cache.CachingEmbeddingModel;
+import rag.cache.SemanticResponseCache;
+import rag.embedding.ParallelEmbeddingModel;
+import rag.injection.CompactageContentInjector;
+import rag.ingestion.Corpus;
+import rag.llm.AffichageEnFlux;
+import rag.llm.GeminiStreamingChatModel;
+import rag.memoire.MemoiresResumees;
+import rag.metrics.Instrumentation;
+import rag.pipeline.Pipelines;
+import rag.pipeline.RagRuntime;
+import rag.store.MappedEmbeddingStore;
 
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Scanner;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 
 public class TestRoutage {
 
+    private static final boolean DEBUG = Boolean.getBoolean("rag.debug");
+
+    /**
+     * Journalisation détaillée de langchain4j, seulement avec {@code -Drag.debug=true} : elle
+     * affiche les requêtes et réponses complètes et ralentit chaque appel. Les mesures courantes
+     * sont publiées en JMX par {@link Instrumentation}.
+     */
     private static void configureLogger() {
+        if (!DEBUG) {
+            return;
+        }
         Logger packageLogger = Logger.getLogger("dev.langchain4j");
         packageLogger.setLevel(Level.FINE);
         ConsoleHandler handler = new ConsoleHandler();
@@ -42,75 +48,74 @@ public class TestRoutage {
         packageLogger.addHandler(handler);
     }
 
+    private static int taille(List<MappedEmbeddingStore> stores) {
+        return stores.stream().mapToInt(MappedEmbeddingStore::taille).sum();
+    }
+
     public static void main(String[] args) {
         configureLogger();
         
         System.out.println("=== Test 3 : Routage ===");
 
-        // Création du parser et du modèle d'embedding
-        DocumentParser parser = new ApacheTikaDocumentParser();
-        EmbeddingModel embeddingModel = new AllMiniLmL6V2EmbeddingModel();
+        // Modèle d'embedding et index chargés une fois par le runtime partagé
+        RagRuntime runtime = RagRuntime.partage();
+        ParallelEmbeddingModel embeddingModel = runtime.embeddingModel();
 
-        // Chargement et découpage des documents avec filtrage des segments vides
-        List<TextSegment> segmentsIA = loadAndSplit("src/main/resources/rag.pdf", parser);
-        List<TextSegment> segmentsRecettes = loadAndSplit("src/main/resources/Easy_recipes.pdf", parser);
+        // Corpus : un PDF chacun par défaut, ou un répertoire / motif glob (-Drag.corpus.ia,
+        // -Drag.corpus.recettes) réparti en -Drag.corpus.shards index persistants
+        Corpus corpusIA = Pipelines.corpusIA();
+        Corpus corpusRecettes = Pipelines.corpusRecettes();
+        System.out.println(corpusIA + ", " + corpusRecettes);
 
-        // FILTRE PLUS RIGOUREUX DES SEGMENTS VIDES
-        segmentsIA = segmentsIA.stream()
-                .filter(segment -> segment.text() != null && 
-                                 segment.text().trim().length() > 10 && // Au moins 10 caractères
-                                 !segment.text().trim().matches("\\s*")) // Pas seulement des espaces
-                .collect(Collectors.toList());
-        
-        segmentsRecettes = segmentsRecettes.stream()
-                .filter(segment -> segment.text() != null && 
-                                 segment.text().trim().length() > 10 && // Au moins 10 caractères
-                                 !segment.text().trim().matches("\\s*")) // Pas seulement des espaces
-                .collect(Collectors.toList());
+        try {
+            // Génération des embeddings avec gestion d'erreur : tous les index sont traités en même
+            // temps, les fichiers étant analysés par Tika sur un pool borné partagé
+            System.out.println("Mise à jour des index IA et Recettes...");
+            // Ingestion incrémentale : seuls les segments nouveaux ou modifiés sont embeddés (les
+            // segments vides ou presque sont écartés)
+            runtime.ingerer(corpusIA, corpusRecettes)
+                    .forEach((nom, rapport) -> System.out.println("Ingestion " + nom + " : " + rapport));
+            System.out.println("Embedding : " + embeddingModel.statistiques());
 
-        System.out.println("Segments IA (filtrés) : " + segmentsIA.size());
-        System.out.println("Segments Recettes (filtrés) : " + segmentsRecettes.size());
+        } catch (Exception e) {
+            System.err.println("Erreur lors de la génération des embeddings : " + e.getMessage());
+            return;
+        }
+
+        List<MappedEmbeddingStore> storeIA = runtime.stores(corpusIA);
+        List<MappedEmbeddingStore> storeRecettes = runtime.stores(corpusRecettes);
+        System.out.println("Index IA : " + taille(storeIA) + " segments en " + storeIA.size() + " shard(s)");
+        System.out.println("Index Recettes : " + taille(storeRecettes) + " segments en " + storeRecettes.size() + " shard(s)");
 
         // Vérification qu'il y a des segments valides
-        if (segmentsIA.isEmpty()) {
+        if (taille(storeIA) == 0) {
             System.err.println("Erreur : Aucun segment IA valide trouvé !");
             return;
         }
-        if (segmentsRecettes.isEmpty()) {
+        if (taille(storeRecettes) == 0) {
             System.err.println("Erreur : Aucun segment recette valide trouvé !");
             return;
         }
 
-        // Création des magasins d'embeddings séparés
-        EmbeddingStore<TextSegment> storeIA = new InMemoryEmbeddingStore<>();
-        EmbeddingStore<TextSegment> storeRecettes = new InMemoryEmbeddingStore<>();
-
-        try {
-            // Génération des embeddings avec gestion d'erreur
-            System.out.println("Génération des embeddings IA...");
-            storeIA.addAll(embeddingModel.embedAll(segmentsIA).content(), segmentsIA);
-            
-            System.out.println("Génération des embeddings Recettes...");
-            storeRecettes.addAll(embeddingModel.embedAll(segmentsRecettes).content(), segmentsRecettes);
-            
-        } catch (Exception e) {
-            System.err.println("Erreur lors de la génération des embeddings : " + e.getMessage());
-            return;
-        }
-
-        ContentRetriever retrieverIA = EmbeddingStoreContentRetriever.builder()
-                .embeddingStore(storeIA)
-                .embeddingModel(embeddingModel)
-                .maxResults(3)
-                .minScore(0.5)
-                .build();
-
-        ContentRetriever retrieverRecettes = EmbeddingStoreContentRetriever.builder()
-                .embeddingStore(storeRecettes)
-                .embeddingModel(embeddingModel)
-                .maxResults(3)
-                .minScore(0.5)
-                .build();
+        // Index de recherche en mémoire (exact et contigu, ou HNSW pour les gros corpus) ; les shards
+        // d'un corpus sont interrogés en même temps et leurs top-k fusionnés
+        // Chaque composant est mesuré (latences, scores, jetons, succès des caches) ; les mesures
+        // sont publiées en JMX sous rag:type=Metriques
+        Instrumentation instrumentation = Instrumentation.globale();
+        EmbeddingStore<TextSegment> indexIA = instrumentation.embeddingStore("IA", runtime.recherche(corpusIA));
+        EmbeddingStore<TextSegment> indexRecettes = instrumentation.embeddingStore("Recettes", runtime.recherche(corpusRecettes));
+
+        // Embeddings des requêtes mémorisés : une question n'est embeddée qu'une fois, quel que soit
+        // le nombre de retrievers et de caches qui la consultent
+        CachingEmbeddingModel modeleRequetes = new CachingEmbeddingModel(
+                instrumentation.embeddingModel("requêtes", embeddingModel), 1024);
+        instrumentation.cache("embeddings", modeleRequetes::tauxSucces);
+
+        // Recherche dense + BM25 : les noms d'ingrédients et les acronymes sont retrouvés tels quels
+        ContentRetriever retrieverIA = instrumentation.retriever("IA",
+                Pipelines.fusion(instrumentation, "IA", indexIA, storeIA, modeleRequetes, 3));
+        ContentRetriever retrieverRecettes = instrumentation.retriever("Recettes",
+                Pipelines.fusion(instrumentation, "Recettes", indexRecettes, storeRecettes, modeleRequetes, 3));
 
         // Modèle de chat Gemini
         String GEMINI_API_KEY = System.getenv("GeminiKey");
@@ -118,37 +123,57 @@ public class TestRoutage {
             throw new IllegalStateException("Variable d'environnement GeminiKey manquante !");
         }
 
-        ChatLanguageModel chatModel = GoogleAiGeminiChatModel.builder()
+        ChatLanguageModel chatModel = instrumentation.chatModel("gemini", GoogleAiGeminiChatModel.builder()
                 .apiKey(GEMINI_API_KEY)
                 .modelName("gemini-2.5-flash")
                 .temperature(0.3)
-                .logRequestsAndResponses(true)
-                .build();
-
-        // Configuration du routage avec descriptions
-        Map<ContentRetriever, String> retrieverDescriptions = new HashMap<>();
-        retrieverDescriptions.put(retrieverIA, "Documents de cours sur le RAG, le fine-tuning et l'intelligence artificielle");
-        retrieverDescriptions.put(retrieverRecettes, "Document sur les recettes de cuisine faciles, les ingrédients et les instructions de préparation");
+                .logRequestsAndResponses(DEBUG)
+                .build());
+
+        // Modèle en flux pour les réponses : les jetons sont affichés dès leur arrivée
+        StreamingChatLanguageModel streamingChatModel = instrumentation.streamingChatModel("gemini-flux",
+                GeminiStreamingChatModel.builder()
+                        .apiKey(GEMINI_API_KEY)
+                        .modelName("gemini-2.5-flash")
+                        .temperature(0.3)
+                        .build());
+
+        // Routage entre les deux corpus : décision locale par similarité aux corpus, le LLM n'est
+        // consulté que si la question est ambiguë ; les corpus choisis sont interrogés en même temps
+        // Segments voisins fusionnés et quasi-doublons retirés avant l'envoi à Gemini
+        CompactageContentInjector compactage = Pipelines.compactage(instrumentation, embeddingModel);
+        Pipelines.Assemblage routage = Pipelines.routage(instrumentation, chatModel, modeleRequetes,
+                retrieverIA, storeIA, retrieverRecettes, storeRecettes, compactage);
+
+        // Historique borné à -Drag.memoire.budget jetons : les tours anciens sont résumés par Gemini en
+        // arrière-plan, et la session (-Drag.session, "console" par défaut) reprend au prochain lancement
+        MemoiresResumees memoires = Pipelines.memoires(instrumentation, chatModel, runtime.journalSessions());
 
-        // Création du routeur de requêtes
-        LanguageModelQueryRouter queryRouter = new LanguageModelQueryRouter(chatModel, retrieverDescriptions);
-
-        // Création de l'augmentateur avec routage
-        DefaultRetrievalAugmentor augmentor = DefaultRetrievalAugmentor.builder()
-                .queryRouter(queryRouter)
+        // Création de l'assistant avec routage
+        ChatMemory memoire = memoires.get(System.getProperty("rag.session", "console") + ":routage");
+        StreamingAssistant assistant = AiServices.builder(StreamingAssistant.class)
+                .streamingChatLanguageModel(streamingChatModel)
+                .chatMemory(memoire)
+                .retrievalAugmentor(routage.augmentor())
                 .build();
 
-        // Création de l'assistant avec routage
-        Assistant assistant = AiServices.builder(Assistant.class)
-                .chatLanguageModel(chatModel)
-                .chatMemory(MessageWindowChatMemory.withMaxMessages(10))
-                .retrievalAugmentor(augmentor)
+        // Cache sémantique : le contexte comparé est celui des deux corpus, indépendamment du routage ;
+        // il ne sert qu'en début de conversation
+        SemanticResponseCache cache = SemanticResponseCache.builder()
+                .embeddingModel(modeleRequetes)
+                .contexte(retrieverIA, retrieverRecettes)
+                .memoire(memoire)
                 .build();
+        instrumentation.cache("réponses", cache::tauxSucces);
 
+        // JIT et ONNX préchauffés avant la première question
+        runtime.prechauffer();
+        System.out.println(runtime.statistiques());
         System.out.println(" Assistant RAG avec routage prêt !");
 
         // Interaction avec l'utilisateur
         Scanner scanner = new Scanner(System.in);
+        AffichageEnFlux affichage = new AffichageEnFlux();
         System.out.println("\nPosez votre question (ou 'exit' pour quitter) :");
         System.out.println("Exemples : 'Qu'est-ce que le RAG ?' ou 'Comment faire une recette simple ?'");
         
@@ -157,21 +182,22 @@ public class TestRoutage {
             String question = scanner.nextLine();
             if (question.equalsIgnoreCase("exit")) break;
 
+            long debut = System.nanoTime();
             try {
-                String reponse = assistant.chat(question);
-                System.out.println("Gemini : " + reponse);
+                affichage.repondre("Gemini : ", question, assistant::chat, cache);
+                runtime.reponse(debut);
             } catch (Exception e) {
                 System.err.println("Erreur lors de la réponse : " + e.getMessage());
             }
         }
         
         scanner.close();
-    }
-
-    private static List<TextSegment> loadAndSplit(String chemin, DocumentParser parser) {
-        Path path = Paths.get(chemin);
-        Document doc = FileSystemDocumentLoader.loadDocument(path, parser);
-        DocumentSplitter splitter = DocumentSplitters.recursive(300, 30);
-        return splitter.split(doc);
+        System.out.println(cache.statistiques());
+        System.out.println(modeleRequetes.statistiques());
+        System.out.println(routage.statistiques());
+        System.out.println(compactage.statistiques());
+        System.out.println(affichage.statistiques());
+        System.out.println(memoires.statistiques());
+        System.out.println(runtime.statistiques());
     }
 }
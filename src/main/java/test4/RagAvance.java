@@ -1,39 +1,48 @@
 package test4;
 
 
-import dev.langchain4j.data.document.Document;
-import dev.langchain4j.data.document.DocumentParser;
-import dev.langchain4j.data.document.DocumentSplitter;
-import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
-import dev.langchain4j.data.document.parser.apache.tika.ApacheTikaDocumentParser;
-import dev.langchain4j.data.document.splitter.DocumentSplitters;
 import dev.langchain4j.data.segment.TextSegment;
-import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+import dev.langchain4j.memory.ChatMemory;
 import dev.langchain4j.model.chat.ChatLanguageModel;
-import dev.langchain4j.model.embedding.EmbeddingModel;
-import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
 import dev.langchain4j.model.googleai.GoogleAiGeminiChatModel;
-import dev.langchain4j.rag.DefaultRetrievalAugmentor;
 import dev.langchain4j.rag.content.retriever.ContentRetriever;
-import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
-import dev.langchain4j.rag.query.transformer.CompressingQueryTransformer;
-import dev.langchain4j.rag.query.transformer.ExpandingQueryTransformer;
 import dev.langchain4j.service.AiServices;
 import dev.langchain4j.store.embedding.EmbeddingStore;
-import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import rag.cache.CachingEmbeddingModel;
+import rag.cache.SemanticResponseCache;
+import rag.embedding.ParallelEmbeddingModel;
+import rag.injection.CompactageContentInjector;
+import rag.llm.AffichageEnFlux;
+import rag.llm.GeminiStreamingChatModel;
+import rag.memoire.MemoiresResumees;
+import rag.metrics.Instrumentation;
+import rag.pipeline.Pipelines;
+import rag.pipeline.RagRuntime;
+import rag.reclassement.ReclassementContentAggregator;
+import rag.retrieval.AdaptatifContentRetriever;
+import rag.store.MappedEmbeddingStore;
 
-import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
 import java.util.Scanner;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 
 public class RagAvance {
 
+    private static final boolean DEBUG = Boolean.getBoolean("rag.debug");
+
+    /**
+     * Journalisation détaillée de langchain4j, seulement avec {@code -Drag.debug=true} : elle
+     * affiche les requêtes et réponses complètes et ralentit chaque appel. Les mesures courantes
+     * sont publiées en JMX par {@link Instrumentation}.
+     */
     private static void configureLogger() {
+        if (!DEBUG) {
+            return;
+        }
         Logger packageLogger = Logger.getLogger("dev.langchain4j");
         packageLogger.setLevel(Level.FINE);
         ConsoleHandler handler = new ConsoleHandler();
@@ -46,96 +55,126 @@ public class RagAvance {
         
         System.out.println("=== Test 4 : RAG Avancé ===");
 
-        // Création du parser et du modèle d'embedding
-        DocumentParser parser = new ApacheTikaDocumentParser();
-        EmbeddingModel embeddingModel = new AllMiniLmL6V2EmbeddingModel();
+        // Modèle d'embedding, cross-encoder et index chargés une fois par le runtime partagé
+        RagRuntime runtime = RagRuntime.partage();
+        ParallelEmbeddingModel embeddingModel = runtime.embeddingModel();
 
-        // Chargement et découpage du document avec filtrage
-        List<TextSegment> segments = loadAndSplit("src/main/resources/rag.pdf", parser);
-        
-        segments = segments.stream()
-                .filter(segment -> segment.text() != null && 
-                                 segment.text().trim().length() > 10 &&
-                                 !segment.text().trim().matches("\\s*"))
-                .collect(Collectors.toList());
-
-        System.out.println("Segments filtrés : " + segments.size());
+        // Index persistant : seuls les segments nouveaux ou modifiés sont embeddés
+        MappedEmbeddingStore embeddingStore = runtime.store("rag-300-30");
 
-        if (segments.isEmpty()) {
-            System.err.println("Erreur : Aucun segment valide trouvé !");
+        try {
+            // Ingestion incrémentale avec filtrage des segments vides
+            System.out.println("Mise à jour de l'index...");
+            System.out.println("Ingestion : " + runtime.ingerer("rag-300-30", List.of(Paths.get("src/main/resources/rag.pdf"))));
+            System.out.println("Embedding : " + embeddingModel.statistiques());
+        } catch (Exception e) {
+            System.err.println("Erreur lors de la génération des embeddings : " + e.getMessage());
             return;
         }
 
-        // Création du magasin d'embeddings
-        EmbeddingStore<TextSegment> embeddingStore = new InMemoryEmbeddingStore<>();
+        System.out.println("Segments indexés : " + embeddingStore.taille());
 
-        try {
-            System.out.println("Génération des embeddings...");
-            embeddingStore.addAll(embeddingModel.embedAll(segments).content(), segments);
-        } catch (Exception e) {
-            System.err.println("Erreur lors de la génération des embeddings : " + e.getMessage());
+        if (embeddingStore.estVide()) {
+            System.err.println("Erreur : Aucun segment valide trouvé !");
             return;
         }
 
+        // Index de recherche en mémoire (exact et contigu, ou HNSW pour les gros corpus)
+        // Chaque composant est mesuré (latences, scores, jetons, succès des caches) ; les mesures
+        // sont publiées en JMX sous rag:type=Metriques
+        Instrumentation instrumentation = Instrumentation.globale();
+        EmbeddingStore<TextSegment> indexRecherche = instrumentation.embeddingStore("IA", runtime.recherche("rag-300-30"));
+
         // Modèle de chat Gemini
         String GEMINI_API_KEY = System.getenv("GeminiKey");
         if (GEMINI_API_KEY == null) {
             throw new IllegalStateException("Variable d'environnement GeminiKey manquante !");
         }
 
-        ChatLanguageModel chatModel = GoogleAiGeminiChatModel.builder()
+        ChatLanguageModel chatModel = instrumentation.chatModel("gemini", GoogleAiGeminiChatModel.builder()
                 .apiKey(GEMINI_API_KEY)
                 .modelName("gemini-2.5-flash")
                 .temperature(0.3)
-                .logRequestsAndResponses(true)
-                .build();
-
-        // === TECHNIQUE 1: Query Transformation ===
-        CompressingQueryTransformer compressingTransformer = new CompressingQueryTransformer(chatModel);
-        ExpandingQueryTransformer expandingTransformer = new ExpandingQueryTransformer(chatModel);
-
-        // === TECHNIQUE 2: Content Retriever avec Re-ranking ===
-        ContentRetriever retriever = EmbeddingStoreContentRetriever.builder()
-                .embeddingStore(embeddingStore)
-                .embeddingModel(embeddingModel)
-                .maxResults(5) // Plus de résultats pour le re-ranking
-                .minScore(0.3) // Score plus permissif
-                .build();
-
-        // === TECHNIQUE 3: Augmentateur avancé avec transformations ===
-        DefaultRetrievalAugmentor augmentor = DefaultRetrievalAugmentor.builder()
-                .queryTransformer(compressingTransformer) // Compression des requêtes
-                .contentRetriever(retriever)
-                .build();
+                .logRequestsAndResponses(DEBUG)
+                .build());
+
+        // Modèle en flux pour les réponses : les jetons sont affichés dès leur arrivée
+        StreamingChatLanguageModel streamingChatModel = instrumentation.streamingChatModel("gemini-flux",
+                GeminiStreamingChatModel.builder()
+                        .apiKey(GEMINI_API_KEY)
+                        .modelName("gemini-2.5-flash")
+                        .temperature(0.3)
+                        .build());
+
+        // Embeddings des requêtes mémorisés : une question n'est embeddée qu'une fois, quel que soit
+        // le nombre de retrievers et de caches qui la consultent
+        CachingEmbeddingModel modeleRequetes = new CachingEmbeddingModel(
+                instrumentation.embeddingModel("requêtes", embeddingModel), 1024);
+        instrumentation.cache("embeddings", modeleRequetes::tauxSucces);
+
+        // === TECHNIQUE 2: Recherche hybride dense + BM25, puis re-ranking par cross-encoder local ===
+        // Avec -Drag.reclassement.modele et -Drag.reclassement.tokenizer, 8 candidats sont reclassés
+        // et seuls les 3 meilleurs (400 jetons au plus) partent vers Gemini ; sinon la fusion en garde 3
+        ReclassementContentAggregator reclassement = Pipelines.reclassement(runtime.crossEncoder(), 3, 400);
+        ContentRetriever retriever = instrumentation.retriever("avancé", Pipelines.fusion(instrumentation, "avancé",
+                indexRecherche, embeddingStore, modeleRequetes, reclassement != null ? 8 : 3, 0.3));
+        System.out.println(reclassement != null ? "Re-ranking : cross-encoder ONNX local"
+                : "Re-ranking désactivé (-Drag.reclassement.modele et -Drag.reclassement.tokenizer absents)");
+
+        // === TECHNIQUE 1 et 3: Augmentateur avancé avec compression des requêtes (Query Transformation) ===
+        // Segments voisins fusionnés et quasi-doublons retirés avant l'envoi à Gemini
+        CompactageContentInjector compactage = Pipelines.compactage(instrumentation, embeddingModel);
+        Pipelines.Assemblage avance = Pipelines.avance(instrumentation, chatModel, retriever, reclassement,
+                compactage);
+
+        // Historique borné à -Drag.memoire.budget jetons : les tours anciens sont résumés par Gemini en
+        // arrière-plan, et la session (-Drag.session, "console" par défaut) reprend au prochain lancement
+        String session = System.getProperty("rag.session", "console");
+        MemoiresResumees memoires = Pipelines.memoires(instrumentation, chatModel, runtime.journalSessions());
 
         // Assistant avec RAG avancé
-        Assistant assistantAvance = AiServices.builder(Assistant.class)
-                .chatLanguageModel(chatModel)
-                .chatMemory(MessageWindowChatMemory.withMaxMessages(10))
-                .retrievalAugmentor(augmentor)
+        ChatMemory memoireAvance = memoires.get(session + ":avance");
+        StreamingAssistant assistantAvance = AiServices.builder(StreamingAssistant.class)
+                .streamingChatLanguageModel(streamingChatModel)
+                .chatMemory(memoireAvance)
+                .retrievalAugmentor(avance.augmentor())
                 .build();
 
         // === TECHNIQUE 4: Assistant basique pour comparaison ===
-        ContentRetriever retrieverBasique = EmbeddingStoreContentRetriever.builder()
-                .embeddingStore(embeddingStore)
-                .embeddingModel(embeddingModel)
-                .maxResults(2)
-                .minScore(0.5)
+        // Recherche dense seule, avec un nombre de segments choisi d'après les scores de la question
+        AdaptatifContentRetriever adaptatif = Pipelines.adaptatif(instrumentation, "basique",
+                indexRecherche, modeleRequetes);
+        ContentRetriever retrieverBasique = instrumentation.retriever("basique", adaptatif);
+        Pipelines.Assemblage basique = Pipelines.basique(retrieverBasique);
+
+        ChatMemory memoireBasique = memoires.get(session + ":basique");
+        StreamingAssistant assistantBasique = AiServices.builder(StreamingAssistant.class)
+                .streamingChatLanguageModel(streamingChatModel)
+                .chatMemory(memoireBasique)
+                .retrievalAugmentor(basique.augmentor())
                 .build();
 
-        DefaultRetrievalAugmentor augmentorBasique = DefaultRetrievalAugmentor.builder()
-                .contentRetriever(retrieverBasique)
+        // Cache sémantique : un par assistant, chacun comparant le contexte de son propre retriever
+        SemanticResponseCache cacheAvance = SemanticResponseCache.builder()
+                .embeddingModel(modeleRequetes)
+                .contexte(retriever)
+                .memoire(memoireAvance)
                 .build();
-
-        Assistant assistantBasique = AiServices.builder(Assistant.class)
-                .chatLanguageModel(chatModel)
-                .chatMemory(MessageWindowChatMemory.withMaxMessages(10))
-                .retrievalAugmentor(augmentorBasique)
+        SemanticResponseCache cacheBasique = SemanticResponseCache.builder()
+                .embeddingModel(modeleRequetes)
+                .contexte(retrieverBasique)
+                .memoire(memoireBasique)
                 .build();
+        instrumentation.cache("réponses avancé", cacheAvance::tauxSucces);
+        instrumentation.cache("réponses basique", cacheBasique::tauxSucces);
 
+        // JIT et ONNX préchauffés avant la première question
+        runtime.prechauffer();
+        System.out.println(runtime.statistiques());
 
         // Interface utilisateur avec choix du mode
         Scanner scanner = new Scanner(System.in);
+        AffichageEnFlux affichage = new AffichageEnFlux();
         System.out.println("\nChoisissez le mode :");
         System.out.println("1. Assistant RAG Avancé (avec techniques avancées)");
         System.out.println("2. Assistant RAG Basique (pour comparaison)");
@@ -157,44 +196,46 @@ public class RagAvance {
             
             if (question.trim().isEmpty()) continue;
 
+            long debut = System.nanoTime();
             try {
                 switch (mode) {
                     case "1":
                         System.out.println("\n RAG AVANCÉ :");
-                        String reponseAvancee = assistantAvance.chat(question);
-                        System.out.println("Gemini (Avancé) : " + reponseAvancee);
+                        affichage.repondre("Gemini (Avancé) : ", question, assistantAvance::chat, cacheAvance);
                         break;
                         
                     case "2":
                         System.out.println("\n RAG BASIQUE :");
-                        String reponseBasique = assistantBasique.chat(question);
-                        System.out.println("Gemini (Basique) : " + reponseBasique);
+                        affichage.repondre("Gemini (Basique) : ", question, assistantBasique::chat, cacheBasique);
                         break;
                         
                     case "3":
                         System.out.println("\n RAG AVANCÉ :");
-                        String avancee = assistantAvance.chat(question);
-                        System.out.println("Gemini (Avancé) : " + avancee);
+                        affichage.repondre("Gemini (Avancé) : ", question, assistantAvance::chat, cacheAvance);
                         
                         System.out.println("\n RAG BASIQUE :");
-                        String basique = assistantBasique.chat(question);
-                        System.out.println("Gemini (Basique) : " + basique);
+                        affichage.repondre("Gemini (Basique) : ", question, assistantBasique::chat, cacheBasique);
                         
                         System.out.println("\n COMPARAISON TERMINÉE");
                         break;
                 }
+                runtime.reponse(debut);
             } catch (Exception e) {
                 System.err.println("Erreur lors de la réponse : " + e.getMessage());
             }
         }
         
         scanner.close();
-    }
-
-    private static List<TextSegment> loadAndSplit(String chemin, DocumentParser parser) {
-        Path path = Paths.get(chemin);
-        Document doc = FileSystemDocumentLoader.loadDocument(path, parser);
-        DocumentSplitter splitter = DocumentSplitters.recursive(300, 30);
-        return splitter.split(doc);
+        System.out.println("Avancé, " + cacheAvance.statistiques());
+        System.out.println("Basique, " + cacheBasique.statistiques());
+        System.out.println(modeleRequetes.statistiques());
+        System.out.println(affichage.statistiques());
+        System.out.println(compactage.statistiques());
+        System.out.println(adaptatif.statistiques());
+        System.out.println(memoires.statistiques());
+        System.out.println(runtime.statistiques());
+        if (reclassement != null) {
+            System.out.println(reclassement.statistiques());
+        }
     }
 }
@@ -1,41 +1,50 @@
 package test5;
 
 
-import dev.langchain4j.data.document.Document;
-import dev.langchain4j.data.document.DocumentParser;
-import dev.langchain4j.data.document.DocumentSplitter;
-import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
-import dev.langchain4j.data.document.parser.apache.tika.ApacheTikaDocumentParser;
-import dev.langchain4j.data.document.splitter.DocumentSplitters;
 import dev.langchain4j.data.segment.TextSegment;
-import dev.langchain4j.memory.chat.MessageWindowChatMemory;
-import dev.langchain4j.model.chat.ChatLanguageModel;
-import dev.langchain4j.model.embedding.EmbeddingModel;
-import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
 import dev.langchain4j.model.googleai.GoogleAiGeminiChatModel;
-import dev.langchain4j.rag.DefaultRetrievalAugmentor;
 import dev.langchain4j.rag.content.retriever.ContentRetriever;
-import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
-import dev.langchain4j.rag.content.retriever.WebSearchContentRetriever;
-import dev.langchain4j.rag.query.router.DefaultQueryRouter;
 import dev.langchain4j.service.AiServices;
 import dev.langchain4j.store.embedding.EmbeddingStore;
-import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
 import dev.langchain4j.web.search.WebSearchEngine;
 import dev.langchain4j.web.search.tavily.TavilyWebSearchEngine;
+import rag.cache.CachingEmbeddingModel;
+import rag.cache.CachingWebSearchEngine;
+import rag.cache.SemanticResponseCache;
+import rag.charge.FichierWebSearchEngine;
+import rag.embedding.ParallelEmbeddingModel;
+import rag.injection.CompactageContentInjector;
+import rag.llm.AffichageEnFlux;
+import rag.llm.GeminiStreamingChatModel;
+import rag.memoire.MemoiresResumees;
+import rag.metrics.Instrumentation;
+import rag.pipeline.Pipelines;
+import rag.pipeline.RagRuntime;
+import rag.store.MappedEmbeddingStore;
 
-import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.List;
 import java.util.Scanner;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 
 public class RagWebSearch {
 
+    private static final boolean DEBUG = Boolean.getBoolean("rag.debug");
+
+    /**
+     * Journalisation détaillée de langchain4j, seulement avec {@code -Drag.debug=true} : elle
+     * affiche les requêtes et réponses complètes et ralentit chaque appel. Les mesures courantes
+     * sont publiées en JMX par {@link Instrumentation}.
+     */
     private static void configureLogger() {
+        if (!DEBUG) {
+            return;
+        }
         Logger packageLogger = Logger.getLogger("dev.langchain4j");
         packageLogger.setLevel(Level.FINE);
         ConsoleHandler handler = new ConsoleHandler();
@@ -48,37 +57,36 @@ public class RagWebSearch {
 
         System.out.println("=== Test 5 : RAG avec Recherche Web ===");
 
-        // Création du parser et du modèle d'embedding
-        DocumentParser parser = new ApacheTikaDocumentParser();
-        EmbeddingModel embeddingModel = new AllMiniLmL6V2EmbeddingModel();
-
-        // Chargement et découpage du document avec filtrage
-        List<TextSegment> segments = loadAndSplit("src/main/resources/rag.pdf", parser);
+        // Modèle d'embedding et index chargés une fois par le runtime partagé
+        RagRuntime runtime = RagRuntime.partage();
+        ParallelEmbeddingModel embeddingModel = runtime.embeddingModel();
 
-        segments = segments.stream()
-                .filter(segment -> segment.text() != null &&
-                        segment.text().trim().length() > 10 &&
-                        !segment.text().trim().matches("\\s*"))
-                .collect(Collectors.toList());
+        // Index persistant : seuls les segments nouveaux ou modifiés sont embeddés
+        MappedEmbeddingStore embeddingStore = runtime.store("rag-300-30");
 
-        System.out.println("Segments filtrés : " + segments.size());
-
-        if (segments.isEmpty()) {
-            System.err.println("Erreur : Aucun segment valide trouvé !");
+        try {
+            // Ingestion incrémentale avec filtrage des segments vides
+            System.out.println("Mise à jour de l'index...");
+            System.out.println("Ingestion : " + runtime.ingerer("rag-300-30", List.of(Paths.get("src/main/resources/rag.pdf"))));
+            System.out.println("Embedding : " + embeddingModel.statistiques());
+        } catch (Exception e) {
+            System.err.println("Erreur lors de la génération des embeddings : " + e.getMessage());
             return;
         }
 
-        // Création du magasin d'embeddings pour les documents locaux
-        EmbeddingStore<TextSegment> embeddingStore = new InMemoryEmbeddingStore<>();
+        System.out.println("Segments indexés : " + embeddingStore.taille());
 
-        try {
-            System.out.println("Génération des embeddings...");
-            embeddingStore.addAll(embeddingModel.embedAll(segments).content(), segments);
-        } catch (Exception e) {
-            System.err.println("Erreur lors de la génération des embeddings : " + e.getMessage());
+        if (embeddingStore.estVide()) {
+            System.err.println("Erreur : Aucun segment valide trouvé !");
             return;
         }
 
+        // Index de recherche en mémoire (exact et contigu, ou HNSW pour les gros corpus)
+        // Chaque composant est mesuré (latences, scores, jetons, succès des caches) ; les mesures
+        // sont publiées en JMX sous rag:type=Metriques
+        Instrumentation instrumentation = Instrumentation.globale();
+        EmbeddingStore<TextSegment> indexRecherche = instrumentation.embeddingStore("IA", runtime.recherche("rag-300-30"));
+
         // Configuration des modèles
         String GEMINI_API_KEY = System.getenv("GeminiKey");
         String TAVILY_API_KEY = System.getenv("TavilyKey");
@@ -87,60 +95,92 @@ public class RagWebSearch {
             throw new IllegalStateException("Variable d'environnement GeminiKey manquante !");
         }
 
-        if (TAVILY_API_KEY == null) {
+        // -Drag.web.fichier : recherches enregistrées rejouées hors ligne, sans Tavily
+        String FICHIER_WEB = System.getProperty("rag.web.fichier");
+
+        if (TAVILY_API_KEY == null && FICHIER_WEB == null) {
             throw new IllegalStateException("Variable d'environnement TavilyKey manquante ! Obtenez une clé sur https://tavily.com/");
         }
 
-        ChatLanguageModel chatModel = GoogleAiGeminiChatModel.builder()
-                .apiKey(GEMINI_API_KEY)
-                .modelName("gemini-2.5-flash")
-                .temperature(0.3)
-                .logRequestsAndResponses(true)
-                .build();
+        // Modèle en flux : les jetons sont affichés dès leur arrivée
+        StreamingChatLanguageModel chatModel = instrumentation.streamingChatModel("gemini-flux",
+                GeminiStreamingChatModel.builder()
+                        .apiKey(GEMINI_API_KEY)
+                        .modelName("gemini-2.5-flash")
+                        .temperature(0.3)
+                        .build());
 
         // === CRÉATION DU RAG HYBRIDE (DOCUMENTS + WEB) ===
 
-        // 1. ContentRetriever pour les documents locaux
-        ContentRetriever documentRetriever = EmbeddingStoreContentRetriever.builder()
-                .embeddingStore(embeddingStore)
-                .embeddingModel(embeddingModel)
-                .maxResults(3)
-                .minScore(0.5)
-                .build();
-
-        // 2. WebSearchEngine avec Tavily
-        WebSearchEngine webSearchEngine = TavilyWebSearchEngine.builder()
+        // Embeddings des requêtes mémorisés : une question n'est embeddée qu'une fois, quel que soit
+        // le nombre de retrievers et de caches qui la consultent
+        CachingEmbeddingModel modeleRequetes = new CachingEmbeddingModel(
+                instrumentation.embeddingModel("requêtes", embeddingModel), 1024);
+        instrumentation.cache("embeddings", modeleRequetes::tauxSucces);
+
+        // 1. ContentRetriever pour les documents locaux (dense + BM25)
+        ContentRetriever documentRetriever = instrumentation.retriever("documents",
+                Pipelines.fusion(instrumentation, "documents", indexRecherche, embeddingStore, modeleRequetes, 3));
+
+        // 2. WebSearchEngine avec Tavily (ou recherches enregistrées), résultats gardés une heure en
+        // mémoire et dans index/web-cache : une question déjà cherchée ne repasse pas par Tavily,
+        // même après un redémarrage, et ce répertoire peut être rejoué avec -Drag.web.fichier
+        FichierWebSearchEngine moteurEnregistre = FICHIER_WEB != null
+                ? new FichierWebSearchEngine(Paths.get(FICHIER_WEB), null) : null;
+        WebSearchEngine moteur = moteurEnregistre != null ? moteurEnregistre : TavilyWebSearchEngine.builder()
                 .apiKey(TAVILY_API_KEY)
                 .build();
-
-        // 3. ContentRetriever pour la recherche web
-        ContentRetriever webRetriever = WebSearchContentRetriever.builder()
-                .webSearchEngine(webSearchEngine)
-                .maxResults(3)
-                .build();
-
-        // 4. QueryRouter pour utiliser les 2 ContentRetrievers
-        DefaultQueryRouter queryRouter = new DefaultQueryRouter(documentRetriever, webRetriever);
-
-        // 5. RetrievalAugmentor avec le QueryRouter
-        DefaultRetrievalAugmentor augmentor = DefaultRetrievalAugmentor.builder()
-                .queryRouter(queryRouter)
+        CachingWebSearchEngine webSearchEngine = Pipelines.cacheWeb(instrumentation, moteur,
+                moteurEnregistre != null ? null : runtime.repertoire("web-cache"));
+
+        // 3. Recherche web (3 résultats) et documents locaux interrogés en même temps : une
+        // recherche web trop lente est abandonnée et la réponse se fait sur les documents locaux
+        // Segments du web embeddés et gardés 15 minutes : une question voisine les réutilise
+        // Segments voisins fusionnés et quasi-doublons retirés avant l'envoi à Gemini
+        CompactageContentInjector compactage = Pipelines.compactage(instrumentation, embeddingModel);
+        Pipelines.Assemblage hybride = Pipelines.hybride(instrumentation, documentRetriever, webSearchEngine,
+                modeleRequetes, embeddingModel, compactage);
+
+        // Historique borné à -Drag.memoire.budget jetons : les tours anciens sont résumés par Gemini en
+        // arrière-plan, et la session (-Drag.session, "console" par défaut) reprend au prochain lancement
+        MemoiresResumees memoires = Pipelines.memoires(instrumentation,
+                instrumentation.chatModel("gemini-résumé", GoogleAiGeminiChatModel.builder()
+                        .apiKey(GEMINI_API_KEY)
+                        .modelName("gemini-2.5-flash")
+                        .temperature(0.2)
+                        .build()),
+                runtime.journalSessions());
+
+        // 4. Assistant avec RAG hybride
+        ChatMemory memoire = memoires.get(System.getProperty("rag.session", "console") + ":web");
+        StreamingAssistant assistant = AiServices.builder(StreamingAssistant.class)
+                .streamingChatLanguageModel(chatModel)
+                .chatMemory(memoire)
+                .retrievalAugmentor(hybride.augmentor())
                 .build();
 
-        // 6. Assistant avec RAG hybride
-        Assistant assistant = AiServices.builder(Assistant.class)
-                .chatLanguageModel(chatModel)
-                .chatMemory(MessageWindowChatMemory.withMaxMessages(10))
-                .retrievalAugmentor(augmentor)
+        // Cache sémantique : seul le contexte local sert d'empreinte (la recherche web serait un appel
+        // payant de plus), d'où un TTL court pour ne pas servir une actualité périmée
+        SemanticResponseCache cache = SemanticResponseCache.builder()
+                .embeddingModel(modeleRequetes)
+                .contexte(documentRetriever)
+                .memoire(memoire)
+                .ttl(Duration.ofMinutes(10))
                 .build();
+        instrumentation.cache("réponses", cache::tauxSucces);
 
+        // JIT et ONNX préchauffés avant la première question
+        runtime.prechauffer();
+        System.out.println(runtime.statistiques());
         System.out.println(" Assistant RAG hybride (Documents + Web) prêt !");
         System.out.println(" Sources utilisées :");
         System.out.println("  • Documents PDF locaux (rag.pdf)");
-        System.out.println("  • Recherche web via Tavily");
+        System.out.println(moteurEnregistre != null
+                ? "  • Recherches web enregistrées (" + FICHIER_WEB + ")" : "  • Recherche web via Tavily");
         System.out.println("  • Routeur automatique entre les sources");
 
         // Interface utilisateur
+        AffichageEnFlux affichage = new AffichageEnFlux();
         Scanner scanner = new Scanner(System.in);
         System.out.println("\nPosez votre question (ou 'exit' pour quitter) :");
         System.out.println(" Suggestions :");
@@ -155,16 +195,11 @@ public class RagWebSearch {
             if (question.equalsIgnoreCase("exit")) break;
             if (question.trim().isEmpty()) continue;
 
+            long debut = System.nanoTime();
             try {
                 System.out.println("\n Recherche en cours (documents + web)...");
-                long startTime = System.currentTimeMillis();
-
-                String reponse = assistant.chat(question);
-
-                long responseTime = System.currentTimeMillis() - startTime;
-
-                System.out.println(" Assistant RAG : " + reponse);
-                System.out.printf(" Temps de réponse : %d ms\n", responseTime);
+                affichage.repondre(" Assistant RAG : ", question, assistant::chat, cache);
+                runtime.reponse(debut);
 
             } catch (Exception e) {
                 System.err.println(" Erreur lors de la réponse : " + e.getMessage());
@@ -172,13 +207,17 @@ public class RagWebSearch {
         }
 
         scanner.close();
+        System.out.println(cache.statistiques());
+        System.out.println(modeleRequetes.statistiques());
+        System.out.println(hybride.statistiques());
+        System.out.println(webSearchEngine.statistiques());
+        if (moteurEnregistre != null) {
+            System.out.println(moteurEnregistre.statistiques());
+        }
+        System.out.println(compactage.statistiques());
+        System.out.println(affichage.statistiques());
+        System.out.println(memoires.statistiques());
+        System.out.println(runtime.statistiques());
         System.out.println("Au revoir !");
     }
-
-    private static List<TextSegment> loadAndSplit(String chemin, DocumentParser parser) {
-        Path path = Paths.get(chemin);
-        Document doc = FileSystemDocumentLoader.loadDocument(path, parser);
-        DocumentSplitter splitter = DocumentSplitters.recursive(300, 30);
-        return splitter.split(doc);
-    }
 }
\ No newline at end of file